@@ -0,0 +1,80 @@
+package minesweeper.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import minesweeper.BoardModel;
+import minesweeper.GameSession;
+import minesweeper.GameState;
+import minesweeper.SaveFormat;
+
+/**
+ * Measures capturing a game state from a board and writing it to, and reading
+ * it back from, a save file.
+ *
+ * @author laurencousin
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameStateBenchmark {
+
+	/** Number of columns and rows of the square board. */
+	@Param({ "20", "500", "1000" })
+	public int side;
+
+	/** Whether the saved planes are compressed. */
+	@Param({ "true", "false" })
+	public boolean compress;
+
+	private BoardModel model;
+	private GameSession session;
+	private GameState gameState;
+	private Path file;
+
+	@Setup
+	public void createGame() throws IOException {
+		model = new BoardModel(side, side, side * side / 6, 4);
+		model.click(side / 2, side / 2);
+		session = new GameSession();
+		session.newGame(model);
+		gameState = session.getState();
+		file = Files.createTempFile("minesweeper-benchmark", SaveFormat.EXTENSION);
+	}
+
+	@TearDown
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public GameState construct() {
+		return session.getState();
+	}
+
+	@Benchmark
+	public GameState saveAndLoad() throws IOException {
+		SaveFormat.write(gameState, file, compress);
+		return SaveFormat.read(file);
+	}
+
+}
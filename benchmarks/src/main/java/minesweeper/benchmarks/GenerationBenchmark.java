@@ -0,0 +1,76 @@
+package minesweeper.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import minesweeper.BoardModel;
+
+/**
+ * Measures board generation: placing the mines and counting the mines adjacent
+ * to each cell, for several board sizes and mine densities.
+ *
+ * @author laurencousin
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GenerationBenchmark {
+
+	/** Board size as columns x rows. */
+	@Param({ "9x9", "100x100", "1000x1000", "4000x4000" })
+	public String size;
+
+	/** Fraction of the cells which hold a mine. */
+	@Param({ "0.12", "0.2", "0.33", "0.5" })
+	public double density;
+
+	private int width, height, numMines;
+	private long seed;
+	private BoardModel empty;
+	private BoardModel placed;
+
+	@Setup(Level.Trial)
+	public void parseSize() {
+		String[] parts = size.split("x");
+		width = Integer.parseInt(parts[0]);
+		height = Integer.parseInt(parts[1]);
+		numMines = (int) (width * height * density);
+
+		placed = new BoardModel(width, height, numMines, 1);
+		placed.placeMines(-1);
+	}
+
+	@Setup(Level.Invocation)
+	public void createEmptyBoard() {
+		empty = new BoardModel(width, height, numMines, ++seed);
+	}
+
+	@Benchmark
+	public BoardModel placeMines() {
+		empty.placeMines(empty.index(height / 2, width / 2));
+		return empty;
+	}
+
+	@Benchmark
+	public BoardModel calculateNumAdjacentMines() {
+		placed.calculateNumAdjacentMines();
+		return placed;
+	}
+
+}
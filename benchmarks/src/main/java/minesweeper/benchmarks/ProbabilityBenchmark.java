@@ -0,0 +1,72 @@
+package minesweeper.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import minesweeper.BoardModel;
+import minesweeper.ProbabilityEngine;
+import minesweeper.Probabilities;
+import minesweeper.Solver;
+import minesweeper.Status;
+
+/**
+ * Measures computing mine probabilities on a game where no cell can be proven
+ * safe, both from scratch and with the components already counted by an
+ * earlier analysis.
+ *
+ * @author laurencousin
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProbabilityBenchmark {
+
+	// Long enough that every analysis completes
+	private static final long BUDGET_MILLIS = 60_000;
+
+	/** Number of columns and rows of the square board. */
+	@Param({ "30", "100", "300" })
+	public int side;
+
+	private BoardModel model;
+	private ProbabilityEngine warmEngine;
+
+	@Setup
+	public void createGame() {
+		model = new BoardModel(side, side, side * side / 5, 4);
+		Solver solver = new Solver(model);
+		solver.update(model.click(side / 2, side / 2));
+		int i;
+		while (model.getStatus() == Status.INPROGRESS && (i = solver.findSafeCell()) >= 0)
+			solver.update(model.click(i / side, i % side));
+
+		warmEngine = new ProbabilityEngine();
+		warmEngine.analyze(model, BUDGET_MILLIS);
+	}
+
+	@Benchmark
+	public Probabilities analyzeFromScratch() {
+		return new ProbabilityEngine().analyze(model, BUDGET_MILLIS);
+	}
+
+	@Benchmark
+	public Probabilities analyzeWithCache() {
+		return warmEngine.analyze(model, BUDGET_MILLIS);
+	}
+
+}
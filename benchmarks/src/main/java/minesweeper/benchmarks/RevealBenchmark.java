@@ -0,0 +1,113 @@
+package minesweeper.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import minesweeper.BoardModel;
+import minesweeper.CellDelta;
+
+/**
+ * Measures revealing cells: a worst-case opening, where a single click floods
+ * the whole board, and chord reveals, where clicking a satisfied number
+ * reveals the cells around it.
+ *
+ * @author laurencousin
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RevealBenchmark {
+
+	/**
+	 * A board whose only mine is in a corner, so clicking the opposite corner
+	 * reveals every other cell.
+	 */
+	@State(Scope.Thread)
+	public static class Opening {
+
+		/** Number of columns and rows of the square board. */
+		@Param({ "100", "1000", "3000" })
+		public int side;
+
+		BoardModel model;
+
+		@Setup(Level.Invocation)
+		public void createBoard() {
+			model = new BoardModel(side, side, 1, 1);
+			model.restoreCell(0, true, false, false);
+			model.calculateNumAdjacentMines();
+		}
+	}
+
+	/**
+	 * A board with every mine flagged and every number revealed, so that chording
+	 * on each number reveals the zeros next to it.
+	 */
+	@State(Scope.Thread)
+	public static class Chords {
+
+		/** Number of columns and rows of the square board. */
+		@Param({ "100", "1000", "3000" })
+		public int side;
+
+		BoardModel model;
+		int[] numbers;
+
+		@Setup(Level.Invocation)
+		public void createBoard() {
+			int numMines = side * side / 6;
+			BoardModel generated = new BoardModel(side, side, numMines, 2);
+			generated.placeMines(-1);
+			generated.calculateNumAdjacentMines();
+
+			model = new BoardModel(side, side, numMines, 2);
+			int count = 0;
+			for (int i = 0; i < generated.size(); i++) {
+				boolean mine = generated.hasMine(i);
+				boolean number = !mine && generated.getNumAdjacentMines(i) > 0;
+				model.restoreCell(i, mine, mine, number);
+				if (number)
+					count++;
+			}
+			model.calculateNumAdjacentMines();
+
+			numbers = new int[count];
+			count = 0;
+			for (int i = 0; i < model.size(); i++) {
+				if (model.isRevealed(i))
+					numbers[count++] = i;
+			}
+		}
+	}
+
+	@Benchmark
+	public int revealAroundOpening(Opening opening) {
+		return opening.model.click(opening.side - 1, opening.side - 1).size();
+	}
+
+	@Benchmark
+	public void tryQuickRevealEveryNumber(Chords chords, Blackhole blackhole) {
+		int side = chords.side;
+		for (int i : chords.numbers) {
+			CellDelta delta = chords.model.tryQuickReveal(i / side, i % side);
+			blackhole.consume(delta.size());
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+package minesweeper.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, so that runs of
+ * different releases can be compared by tools. Accepts the usual JMH command
+ * line options; unless <code>-rf</code> or <code>-rff</code> is given, results
+ * are written to <code>jmh-result-&lt;version&gt;.json</code>.
+ *
+ * @author laurencousin
+ *
+ */
+public class RunBenchmarks {
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args JMH command line options
+	 * @throws RunnerException            if a benchmark fails
+	 * @throws CommandLineOptionException if the options are invalid
+	 */
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+
+		if (!commandLine.getResultFormat().hasValue())
+			options.resultFormat(ResultFormatType.JSON);
+		if (!commandLine.getResult().hasValue()) {
+			String version = RunBenchmarks.class.getPackage().getImplementationVersion();
+			options.result("jmh-result-" + (version == null ? "dev" : version) + ".json");
+		}
+
+		new Runner(options.build()).run();
+	}
+
+}
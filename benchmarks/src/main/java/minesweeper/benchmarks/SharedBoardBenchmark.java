@@ -0,0 +1,74 @@
+package minesweeper.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import minesweeper.Move;
+import minesweeper.SharedBoard;
+
+/**
+ * Measures moves on a board shared by a player on every processor, to check
+ * that throughput grows with the number of players. Compare runs with
+ * <code>-t 1</code>, <code>-t 2</code> and so on.
+ *
+ * @author laurencousin
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class SharedBoardBenchmark {
+
+	/**
+	 * A large board with its mines placed, shared by every player.
+	 */
+	@State(Scope.Benchmark)
+	public static class Board {
+
+		/** Number of columns and rows of the square board. */
+		@Param({ "1000" })
+		public int side;
+
+		SharedBoard board;
+
+		@Setup(Level.Iteration)
+		public void createBoard() {
+			board = new SharedBoard(side, side, side * side / 6, 3);
+			// Revealing the center places the mines
+			board.play(1, Move.Kind.REVEAL, side * side / 2 + side / 2);
+		}
+	}
+
+	/**
+	 * Each player's own choice of cells.
+	 */
+	@State(Scope.Thread)
+	public static class Player {
+
+		SplittableRandom random = new SplittableRandom();
+	}
+
+	@Benchmark
+	public int toggleRandomFlag(Board board, Player player) {
+		int cell = player.random.nextInt(board.board.size());
+		return board.board.play(2, Move.Kind.FLAG, cell).size();
+	}
+
+}
@@ -0,0 +1,52 @@
+package minesweeper.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import minesweeper.BoardModel;
+import minesweeper.Status;
+
+/**
+ * Measures checking the status of a game in progress, which must not depend on
+ * the size of the board.
+ *
+ * @author laurencousin
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StatusBenchmark {
+
+	/** Number of columns and rows of the square board. */
+	@Param({ "9", "1000", "4000" })
+	public int side;
+
+	private BoardModel model;
+
+	@Setup
+	public void createGame() {
+		model = new BoardModel(side, side, side * side / 5, 3);
+		model.click(side / 2, side / 2);
+	}
+
+	@Benchmark
+	public Status checkStatus() {
+		return model.checkStatus();
+	}
+
+}
@@ -1,665 +1,970 @@
-package minesweeper;
-
-import java.awt.BorderLayout;
-import java.awt.Color;
-import java.awt.Font;
-import java.util.HashSet;
-import java.util.Random;
-import java.util.Set;
-
-import javax.swing.JFrame;
-import javax.swing.JLabel;
-import javax.swing.JMenu;
-import javax.swing.JMenuBar;
-import javax.swing.JMenuItem;
-import javax.swing.JOptionPane;
-import javax.swing.JPanel;
-import javax.swing.SwingConstants;
-import javax.swing.SwingUtilities;
-import javax.swing.border.EmptyBorder;
-
-import java.awt.GridLayout;
-
-import javax.swing.Icon;
-import javax.swing.ImageIcon;
-import javax.swing.JButton;
-import java.awt.event.ActionListener;
-import java.awt.event.MouseEvent;
-import java.awt.event.MouseListener;
-import java.io.Serializable;
-import java.awt.event.ActionEvent;
-import java.awt.Dimension;
-
-/**
- * Represents a board for the game Minesweeper, displaying the title of the
- * game, a timer, a button for marking cells with flags, and a grid of
- * cells.<br/>
- * A start button and a quit button are displayed below the grid.<br/>
- * There are also buttons to load a saved game, or save your current game.
- *
- * @author cameronlentz
- * @author laurencousin
- *
- */
-
-public class Board extends JFrame implements ActionListener, Serializable {
-
-	private static final long serialVersionUID = 1L;
-	private JPanel contentPane;
-	private Cell[][] cells;
-	private int width, height;
-	private int numMines;
-
-	private Status status;
-	private boolean flagging = false;
-	private boolean tempFlagging = false;
-
-	private static Random rand = new Random();
-
-	private static final int CELL_WIDTH = 35;
-	private static final int CELL_HEIGHT = 35;
-	static final Icon FLAG_ICON = new ImageIcon(Cell.class.getResource("/resources/flag.png"));
-	static final Icon TIMER_ICON = new ImageIcon(GameTimer.class.getResource("/resources/hourglass.png"));
-
-	private GameTimer gameTimer = new GameTimer();
-	private JButton btnStart;
-	private JPanel grid;
-
-	private JMenuItem save;
-	private JMenuItem load;
-	private JMenuItem updateBoardDifficulty;
-	private JMenuItem howToPlay;
-	private JPanel topPanel;
-
-	/**
-	 * Creates the board with the default parameters (9 cells by 9 cells, with 10
-	 * mines).
-	 */
-	public Board() {
-		this(9, 9, 10);
-	}
-
-	/**
-	 * Creates the frame.
-	 */
-	public Board(int width, int height, int numMines) {
-		if (width < 3 || height < 3) {
-			throw new IllegalArgumentException("Width and height of board must " + "be at least 3");
-		}
-		if (numMines < width * height / 20 + 1) {
-			throw new IllegalArgumentException("Too few mines for the selected " + "board size (should have at least "
-					+ width * height / 20 + 1 + " for " + width + "*" + height + " board)");
-		}
-		if (numMines > width * height / 2) {
-			throw new IllegalArgumentException("Too many mines for the selected " + "board size (should have at most "
-					+ width * height / 2 + " for " + width + "*" + height + " board)");
-		}
-
-		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-		setBounds(100, 100, CELL_WIDTH * width + 30, CELL_HEIGHT * height + 150);
-		setTitle("Minesweeper");
-		setJMenuBar(createMenuBar());
-		contentPane = new JPanel();
-		contentPane.setBorder(new EmptyBorder(5, 5, 5, 5));
-		contentPane.setLayout(new BorderLayout(0, 0));
-		setContentPane(contentPane);
-
-		topPanel = createTopPanel();
-		contentPane.add(topPanel, BorderLayout.NORTH);
-
-		/*
-		 * Technically this grid is just for show, since the "Start"/"Play again" button
-		 * replaces the current grid with a new one.
-		 */
-		grid = createButtonGrid(width, height);
-		contentPane.add(grid, BorderLayout.CENTER);
-
-		JPanel bottomPanel = createBottomPanel();
-		contentPane.add(bottomPanel, BorderLayout.SOUTH);
-
-		pack();
-
-		this.width = width;
-		this.height = height;
-		this.numMines = numMines; // Mines are placed when user clicks Start
-	}
-
-	/**
-	 * Creates the top panel, containing the game title, timer, and flag button.
-	 *
-	 * @return the top panel
-	 */
-	private JPanel createTopPanel() {
-		JPanel topPanel = new JPanel();
-
-		JButton btnFlag = new JButton();
-		btnFlag.setBackground(Color.WHITE);
-		btnFlag.setOpaque(true);
-		btnFlag.setIcon(FLAG_ICON);
-		btnFlag.addActionListener(new ActionListener() {
-			public void actionPerformed(ActionEvent e) {
-				if (status == Status.INPROGRESS) {
-					flagging = !flagging;
-					btnFlag.setBackground(flagging ? Color.GRAY : Color.WHITE);
-				}
-			}
-		});
-
-		topPanel.add(gameTimer.createLblTimer());
-		topPanel.add(createTitle());
-		topPanel.add(btnFlag);
-
-		return topPanel;
-	}
-
-	/**
-	 * Creates the bottom panel, containing the Start button and Quit button.
-	 *
-	 * @return the bottom panel
-	 */
-	private JPanel createBottomPanel() {
-		JPanel bottomPanel = new JPanel();
-
-		btnStart = new JButton("Start");
-		btnStart.addActionListener(new ActionListener() {
-			public void actionPerformed(ActionEvent e) {
-				status = Status.INPROGRESS;
-				btnStart.setVisible(false);
-
-				// Remove the existing game grid and replace it with a new one
-				contentPane.remove(grid);
-				grid = createButtonGrid(width, height);
-				contentPane.add(grid, BorderLayout.CENTER);
-				placeMines(numMines);
-				calculateNumAdjacentMines();
-
-				// Start timer
-				gameTimer.start();
-				
-				// Enable Save menu item
-				save.setEnabled(true);
-			}
-		});
-		bottomPanel.add(btnStart);
-
-		JButton btnQuit = new JButton("Quit");
-		btnQuit.addActionListener(new ActionListener() {
-			public void actionPerformed(ActionEvent e) {
-				gameTimer.stop();
-				Minesweeper.quit();
-			}
-		});
-		bottomPanel.add(btnQuit);
-
-		return bottomPanel;
-	}
-	
-	/**
-	 * Creates the button grid, containing a grid of clickable cells.
-	 *
-	 * @param width  the number of columns in the grid
-	 * @param height the number of rows in the grid
-	 * @return the button grid
-	 */
-	private JPanel createButtonGrid(int width, int height) {
-		return createButtonGrid(width, height, new HashSet<int[]>(), new HashSet<int[]>(), new HashSet<int[]>());
-	}
-
-	/**
-	 * Creates the button grid with cells whose attributes are defined by the
-	 * parameters.
-	 *
-	 * @param width         the number of columns in the grid
-	 * @param height        the number of rows in the grid
-	 * @param mineLocations a set of arrays representing coordinate pairs where
-	 *                      mines are hidden
-	 * @param flagLocations a set of arrays representing coordinate pairs where
-	 *                      flags have been placed
-	 * @param clickedCells  a set of arrays representing coordinate pairs where the
-	 *                      cell has been revealed
-	 * @return the button grid
-	 */
-	private JPanel createButtonGrid(int width, int height, Set<int[]> mineLocations, Set<int[]> flagLocations,
-			Set<int[]> clickedCells) {
-		/*
-		 * Each element in cells is an array representing a horizontal row, so the first
-		 * number here is the height (number of rows).
-		 */
-		cells = new Cell[height][width];
-
-		JPanel cellGrid = new JPanel();
-		cellGrid.setPreferredSize(new Dimension(CELL_WIDTH * width, CELL_HEIGHT * height));
-		cellGrid.setLayout(new GridLayout(cells.length, cells[0].length, 0, 0));
-
-		for (int x = 0; x < cells.length; x++) {
-			for (int y = 0; y < cells[0].length; y++) {
-				// Construct cell based on whether these coordinates are in the sets.
-				cells[x][y] = new Cell(setHasCoords(mineLocations, x, y), setHasCoords(flagLocations, x, y),
-						setHasCoords(clickedCells, x, y));
-
-				// The action listener requires its local variables to be final
-				final int thisX = x;
-				final int thisY = y;
-
-				cells[x][y].addActionListener(new ActionListener() {
-					public void actionPerformed(ActionEvent e) {
-						if (status == Status.INPROGRESS) {
-							if (flagging || tempFlagging) {
-								cells[thisX][thisY].toggleFlag();
-								tempFlagging = false;
-							} else if (!cells[thisX][thisY].hasFlag()) {
-								if (cells[thisX][thisY].isRevealed()) {
-									/*
-									 * If a cell is revealed and displaying a number, and you've already placed that
-									 * many flags next to it, clicking the number will "quick-reveal" the rest of
-									 * the adjacent cells.
-									 */
-									tryQuickReveal(thisX, thisY);
-								} else {
-									cells[thisX][thisY].reveal();
-								}
-
-								if (cells[thisX][thisY].getNumAdjacentMines() == 0) {
-									// Auto-reveal cells around a "0"
-									revealAround(thisX, thisY);
-								}
-
-								checkStatus();
-							}
-						}
-					}
-				});
-
-				/*
-				 * Right-click detection. JButton's ActionListener is only triggered by a left
-				 * click, so we use a MouseListener to detect right clicks.
-				 */
-				cells[x][y].addMouseListener(new MouseListener() {
-					/*
-					 * mouseClicked won't detect a click if the mouse is moved at all while the
-					 * button is held, which feels clunky and unresponsive. Instead I use the other
-					 * methods and a tempFlagging boolean for a nicer-feeling result.
-					 */
-					@Override
-					public void mouseClicked(MouseEvent e) {
-					}
-
-					@Override
-					public void mousePressed(MouseEvent e) {
-						if (status == Status.INPROGRESS && SwingUtilities.isRightMouseButton(e))
-							tempFlagging = true;
-					}
-
-					@Override
-					public void mouseReleased(MouseEvent e) {
-						if (status == Status.INPROGRESS && SwingUtilities.isRightMouseButton(e)) {
-							if (tempFlagging)
-								cells[thisX][thisY].toggleFlag();
-							tempFlagging = false;
-						}
-					}
-
-					@Override
-					public void mouseEntered(MouseEvent e) {
-					}
-
-					@Override
-					public void mouseExited(MouseEvent e) {
-						// Dragging out of the cell cancels the flag attempt.
-						if (status == Status.INPROGRESS)
-							tempFlagging = false;
-					}
-				});
-
-				cellGrid.add(cells[x][y]);
-			}
-		}
-
-		/*
-		 * The content pane uses BorderLayout, but we don't want the grid to expand to
-		 * fill the whole center area, so we place the grid in a new JPanel (which uses
-		 * FlowLayout and won't resize its contents).
-		 */
-		JPanel gridContainer = new JPanel();
-		gridContainer.add(cellGrid);
-
-		return gridContainer;
-	}
-	
-	/**
-	 * Returns true if the set of int arrays contains one representing the given
-	 * coordinates. (Set.contains() doesn't work as expected for this.)
-	 *
-	 * @param set
-	 * @param x
-	 * @param y
-	 * @return true if the coordinates are in the set
-	 */
-	private boolean setHasCoords(Set<int[]> set, int x, int y) {
-		for (int[] intArr : set) {
-			if (intArr.length == 2 && intArr[0] == x && intArr[1] == y)
-				return true;
-		}
-
-		return false;
-	}
-
-	/**
-	 * Creates the title of the game to be displayed.
-	 *
-	 * @return the title
-	 */
-	private JLabel createTitle() {
-		JLabel title = new JLabel("Minesweeper");
-		title.setHorizontalAlignment(SwingConstants.CENTER);
-		title.setBorder(new EmptyBorder(5, 40, 5, 40));
-		title.setFont(new Font("Tahoma", Font.PLAIN, 18));
-		return title;
-	}
-
-	/**
-	 * Creates the menu bar.
-	 * @return a menu bar
-	 */
-	private JMenuBar createMenuBar() {
-		JMenuBar menuBar = new JMenuBar();
-
-		JMenu fileMenu = new JMenu("File");
-		JMenu settingsMenu = new JMenu("Settings");
-		JMenu helpMenu = new JMenu("Help");
-
-		save = new JMenuItem("Save");
-		save.setEnabled(false);
-		load = new JMenuItem("Load");
-		updateBoardDifficulty = new JMenuItem("Update Board Difficulty");
-		howToPlay = new JMenuItem("How to Play");
-
-		fileMenu.add(save);
-		fileMenu.add(load);
-		settingsMenu.add(updateBoardDifficulty);
-		helpMenu.add(howToPlay);
-
-		menuBar.add(fileMenu);
-		menuBar.add(settingsMenu);
-		menuBar.add(helpMenu);
-
-		// add ActionListener to JMenuItems
-		save.addActionListener(this);
-		load.addActionListener(this);
-		updateBoardDifficulty.addActionListener(this);
-		howToPlay.addActionListener(this);
-
-		return menuBar;
-	}
-
-	/**
-	 * Reveals around the coordinates passed in as parameters.
-	 *
-	 * @param x
-	 * @param y
-	 */
-	private void revealAround(int x, int y) {
-		// This method can't use adjacentCells() because it needs to keep track
-		// of each adjacent cell's coordinates for the recursive call.
-		for (int xOff = -1; xOff <= 1; xOff++) {
-			for (int yOff = -1; yOff <= 1; yOff++) {
-				if ((x + xOff < 0) || (x + xOff >= cells.length) || (y + yOff < 0) || (y + yOff >= cells[0].length))
-					continue;
-
-				Cell thisCell = cells[x + xOff][y + yOff];
-				if (!thisCell.isRevealed() && !thisCell.hasFlag()) {
-					thisCell.reveal();
-					// If we newly uncovered a "0", reveal around that as well
-					if (thisCell.getNumAdjacentMines() == 0) {
-						revealAround(x + xOff, y + yOff);
-					}
-				}
-			}
-		}
-	}
-
-	/**
-	 * Attempts to "quick-reveal" around the cell at the given coordinates. If the
-	 * cell at the coordinates is showing a number and already has that many flags
-	 * around it, the remaining adjacent cells are automatically revealed.
-	 *
-	 * @param x
-	 * @param y
-	 */
-	private void tryQuickReveal(int x, int y) {
-		if (!cells[x][y].isRevealed())
-			return;
-
-		int flagCount = 0;
-		for (Cell c : adjacentCells(x, y)) {
-			if (c.hasFlag())
-				flagCount++;
-		}
-
-		if (flagCount == cells[x][y].getNumAdjacentMines()) {
-			revealAround(x, y);
-		}
-	}
-
-	/**
-	 * Returns a set of up to 8 cells adjacent to the given coordinates.
-	 *
-	 * @param x
-	 * @param y
-	 * @return a set of up to 8 cells
-	 */
-	private Set<Cell> adjacentCells(int x, int y) {
-		Set<Cell> adjCells = new HashSet<>();
-		for (int xOff = -1; xOff <= 1; xOff++) {
-			for (int yOff = -1; yOff <= 1; yOff++) {
-				// Ignore cells outside of the board
-				if ((x + xOff < 0) || (x + xOff >= cells.length) || (y + yOff < 0) || (y + yOff >= cells[0].length))
-					continue;
-
-				adjCells.add(cells[x + xOff][y + yOff]);
-			}
-		}
-		adjCells.remove(cells[x][y]);
-		return adjCells;
-	}
-
-	/**
-	 * Tells each cell in the board how many mines are adjacent to it.
-	 */
-	private void calculateNumAdjacentMines() {
-		// For each non-mine cell in the board
-		for (int x = 0; x < cells.length; x++) {
-			for (int y = 0; y < cells[0].length; y++) {
-				if (cells[x][y].hasMine()) {
-					// The value for cells with mines doesn't matter as long as
-					// it's non-zero
-					cells[x][y].setNumAdjacentMines(-1);
-					continue;
-				}
-
-				int count = 0;
-				for (Cell c : adjacentCells(x, y)) {
-					if (c.hasMine())
-						count++;
-				}
-
-				cells[x][y].setNumAdjacentMines(count);
-			}
-		}
-	}
-
-	/**
-	 * Places mines in the grid, ensuring that the same cell isn't chosen twice
-	 * (resulting in too few mines).
-	 *
-	 * @param minesToPlace the number of cells which will have a mine added
-	 */
-	private void placeMines(int minesToPlace) {
-		int numPlaced = 0;
-		while (numPlaced < minesToPlace) {
-			int x = rand.nextInt(cells.length);
-			int y = rand.nextInt(cells[0].length);
-			if (!cells[x][y].hasMine()) {
-				cells[x][y].setMine();
-				numPlaced++;
-			}
-		}
-	}
-
-	/**
-	 * Checks the status of the game.
-	 */
-	private void checkStatus() {
-		boolean isWon = true;
-		for (Cell[] row : cells) {
-			for (Cell c : row) {
-				if ((!c.hasMine()) && (!c.isRevealed())) {
-					// Unrevealed cell with no mine; game is not won yet
-					isWon = false;
-					/*
-					 * Continue rather than break because we still need to check remaining cells for
-					 * revealed mines
-					 */
-					continue;
-				}
-				if (c.hasMine() && c.isRevealed()) {
-					// Mine was revealed
-					status = Status.LOSE;
-					gameTimer.stop();
-					save.setEnabled(false);
-					// Reveal all mines & wrongly placed flags to the user
-					for (int x = 0; x < cells.length; x++) {
-						for (int y = 0; y < cells[0].length; y++) {
-							if (cells[x][y].hasMine()) {
-								cells[x][y].reveal();
-							} else if (cells[x][y].hasFlag()) {
-								// Safe cell with a flag
-								cells[x][y].setIcon(new ImageIcon(Cell.class.getResource("/resources/missedflag.png")));
-							}
-						}
-					}
-					break;
-				}
-			}
-		}
-		if (isWon) {
-			status = Status.WIN;
-			gameTimer.stop();
-			save.setEnabled(false);
-			// Mark remaining mines and turn the board a pale green
-			for (Cell[] row : cells) {
-				for (Cell c : row) {
-					if (c.isRevealed())
-						c.setBackground(new Color(230, 255, 200));
-					else if (c.hasMine())
-						c.setIcon(FLAG_ICON);
-				}
-			}
-		}
-
-		if (status == Status.INPROGRESS) {
-			btnStart.setVisible(false);
-		} else {
-			btnStart.setText("Play again?");
-			btnStart.setVisible(true);
-		}
-	}
-
-	/**
-	 * Returns the current state of the game as a GameState object.
-	 *
-	 * @return the current game state
-	 */
-	public GameState getGameState() {
-		return new GameState(cells, gameTimer);
-	}
-
-	/**
-	 * Handles actions for the menu bar options: Save, Load, Change Difficulty, How to Play.
-	 */
-	@Override
-	public void actionPerformed(ActionEvent e) {
-		Minesweeper game = new Minesweeper();
-
-		// Save game
-		if (e.getSource() == save) {
-			gameTimer.stop();
-			game.save(getGameState());
-		}
-		
-		// Load game
-		else if (e.getSource() == load) {
-			GameState gameState = game.load();
-			if(gameState == null) {
-				System.out.println("No game selected to load.");
-			}
-			else {
-				contentPane.remove(grid);
-				contentPane.invalidate();
-				
-				grid = createButtonGrid(gameState.getWidth(), gameState.getHeight(), gameState.getMineLocations(),
-						gameState.getFlagLocations(), gameState.getClickedCells());
-				calculateNumAdjacentMines();
-				contentPane.add(grid, BorderLayout.CENTER);
-				gameTimer = new GameTimer(gameState.getCurrentTime());
-				status = Status.INPROGRESS;
-				checkStatus();
-				
-				contentPane.remove(topPanel);
-				topPanel = createTopPanel();
-				contentPane.add(topPanel, BorderLayout.NORTH);
-				
-				contentPane.validate();
-				contentPane.repaint();
-				pack();
-			}
-		}
-
-		// Change difficulty
-		else if (e.getSource() == updateBoardDifficulty) {
-			Minesweeper minesweeper = new Minesweeper();
-			Object[] options = { "Easy", "Medium", "Hard" };
-			String s = (String) JOptionPane.showInputDialog(contentPane, "Select game difficulty:\n",
-					"Select game difficulty", JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
-			try {
-				if (s.toString().toLowerCase().contentEquals("easy")) {
-					width = 9;
-					height = 9;
-					numMines = 10; // about 1 in 8 cells
-					dispose();
-					minesweeper.newGame(width, height, numMines);
-				} else if (s.toString().toLowerCase().contentEquals("medium")) {
-					width = 15;
-					height = 15;
-					numMines = 45; // 1 in 5 cells
-					dispose();
-					minesweeper.newGame(width, height, numMines);
-				} else if (s.toString().toLowerCase().contentEquals("hard")) {
-					width = 20;
-					height = 20;
-					numMines = 130; // about 1 in 3 cells
-					dispose();
-					minesweeper.newGame(width, height, numMines);
-				}
-			} catch (Exception e1) {
-				e1.printStackTrace();
-			}
-		}
-		
-		// How to play
-		else if (e.getSource() == howToPlay) {
-			JOptionPane.showMessageDialog(contentPane, "The game contains a number of unmarked "
-					+ "square buttons in a grid, and some of these squares contain hidden mines. \n\n"
-					+ "Click squares to reveal them. \n\n"
-					+ "The goal is to reveal all of the safe squares without clicking any mines. \n\n"
-					+ "When a safe square is revealed, it is labeled with the number of mines in the 8 "
-					+ "surrounding squares. \n\n" + "If you suspect that a square has a mine, mark it with a flag, "
-					+ "which prevents it from being accidentally revealed. \n\n"
-					+ "A timer keeps track of how long you've been playing. \n\n"
-					+ "To mark a cell with a flag, click the flag button then the cells you want to " + "mark. \n\n",
-					"How to play Minesweeper", JOptionPane.INFORMATION_MESSAGE);
-		}
-
-	}
-
-}
+package minesweeper;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Font;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.ButtonGroup;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.JTextArea;
+import javax.swing.KeyStroke;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.border.EmptyBorder;
+
+
+import javax.swing.JButton;
+import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.Serializable;
+import java.awt.event.ActionEvent;
+
+/**
+ * Represents a board for the game Minesweeper, displaying the title of the
+ * game, a timer, a button for marking cells with flags, and a grid of
+ * cells.<br/>
+ * A start button and a quit button are displayed below the grid.<br/>
+ * There are also buttons to load a saved game, or save your current game.
+ *
+ * @author cameronlentz
+ * @author laurencousin
+ *
+ */
+
+public class Board extends JFrame implements ActionListener, Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private JPanel contentPane;
+	private BoardView view;
+	private int viewWidth, viewHeight;
+	private Topology viewTopology;
+	private BoardModel model;
+	private Solver solver;
+	// Applies the rules of the game and keeps its moves and clock
+	private final GameSession session = new GameSession();
+	private final ProbabilityEngine probabilityEngine = new ProbabilityEngine();
+	private AtomicBoolean analysisCancelled = new AtomicBoolean();
+	private final MoveRecorder recorder = new MoveRecorder();
+	// The moves which could already be undone when the recording started
+	private int recordedFrom;
+	// Runs while a replay is being watched, and is null otherwise
+	private Timer replayTimer;
+	private int width, height;
+	private int numMines;
+
+	private Status status;
+	private boolean flagging = false;
+	private boolean tempFlagging = false;
+
+	static final int CELL_WIDTH = 35;
+	static final int CELL_HEIGHT = 35;
+	// Boards with more cells than this are always painted onto a canvas
+	static final int CANVAS_THRESHOLD = 2500;
+	// Mine probabilities which take longer than this to compute are not shown
+	private static final long PROBABILITY_BUDGET_MILLIS = 1000;
+	// Time between two frames of a replay
+	private static final int REPLAY_FRAME_MILLIS = 15;
+
+	// Shared by every board, so the choice and the ready boards survive a change of difficulty
+	private static final BoardQueue NO_GUESS_BOARDS = new BoardQueue(new NoGuessGenerator());
+	private static boolean noGuessSelected = false;
+	// The topology of the boards started from now on, shared like the choice above
+	private static Topology selectedTopology = Topology.SQUARE;
+	// Autosaves the game in progress, so it can be recovered after a crash
+	private static final MoveJournal JOURNAL = new MoveJournal(MoveJournal.defaultDirectory());
+	// Keeps every finished game, for the history and best times
+	private static final GameHistoryStore HISTORY = new GameHistoryStore(
+			MoveJournal.defaultDirectory().resolve(GameHistoryStore.FILE_NAME));
+
+	private final GameTimer gameTimer = new GameTimer(session);
+	// Whether the current game's end has been recorded, or the game is not to be
+	private boolean gameRecorded;
+	private JButton btnStart;
+
+	private JMenuItem save;
+	private JMenuItem load;
+	private JMenuItem saveReplay;
+	private JMenuItem watchReplay;
+	private JMenuItem endlessGame;
+	private JMenuItem gameHistory;
+	private JMenuItem updateBoardDifficulty;
+	private JCheckBoxMenuItem canvasRendering;
+	private JCheckBoxMenuItem noGuessBoards;
+	private JMenuItem hint;
+	private JMenuItem autoSolve;
+	private JCheckBoxMenuItem showProbabilities;
+	private JMenuItem undo;
+	private JMenuItem redo;
+	private JMenuItem howToPlay;
+	private JMenuItem performance;
+	private JPanel topPanel;
+
+	/**
+	 * Creates the board with the default parameters (9 cells by 9 cells, with 10
+	 * mines).
+	 */
+	public Board() {
+		this(9, 9, 10);
+	}
+
+	/**
+	 * Creates the frame.
+	 */
+	public Board(int width, int height, int numMines) {
+		if (width < 3 || height < 3) {
+			throw new IllegalArgumentException("Width and height of board must " + "be at least 3");
+		}
+		if (numMines < width * height / 20 + 1) {
+			throw new IllegalArgumentException("Too few mines for the selected " + "board size (should have at least "
+					+ width * height / 20 + 1 + " for " + width + "*" + height + " board)");
+		}
+		if (numMines > width * height / 2) {
+			throw new IllegalArgumentException("Too many mines for the selected " + "board size (should have at most "
+					+ width * height / 2 + " for " + width + "*" + height + " board)");
+		}
+
+		// Every move made in the session is recorded for replays and in the journal
+		session.setListener(new GameSession.Listener() {
+			public void played(Move.Kind kind, int cell) {
+				recordMove(kind, cell);
+			}
+		});
+
+		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		setLocation(100, 100);
+		setTitle("Minesweeper");
+		setJMenuBar(createMenuBar());
+		contentPane = new JPanel();
+		contentPane.setBorder(new EmptyBorder(5, 5, 5, 5));
+		contentPane.setLayout(new BorderLayout(0, 0));
+		setContentPane(contentPane);
+
+		topPanel = createTopPanel();
+		contentPane.add(topPanel, BorderLayout.NORTH);
+		gameTimer.start();
+
+		// This grid stays empty until Start, which then reuses it for the first game
+		prepareView(width, height, selectedTopology);
+
+		JPanel bottomPanel = createBottomPanel();
+		contentPane.add(bottomPanel, BorderLayout.SOUTH);
+
+		pack();
+
+		this.width = width;
+		this.height = height;
+		this.numMines = numMines; // Mines are placed on the first click after Start
+
+		// Start generating no-guess boards while the player looks at the empty grid
+		Difficulty difficulty = Difficulty.of(width, height, numMines);
+		if (noGuessSelected && difficulty != null)
+			NO_GUESS_BOARDS.refill(difficulty);
+	}
+
+	/**
+	 * Creates the top panel, containing the game title, timer, and flag button.
+	 *
+	 * @return the top panel
+	 */
+	private JPanel createTopPanel() {
+		JPanel topPanel = new JPanel();
+
+		JButton btnFlag = new JButton();
+		btnFlag.setBackground(Color.WHITE);
+		btnFlag.setOpaque(true);
+		btnFlag.setIcon(TileCache.icon(TileCache.FLAG));
+		btnFlag.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (acceptsMoves()) {
+					flagging = !flagging;
+					btnFlag.setBackground(flagging ? Color.GRAY : Color.WHITE);
+				}
+			}
+		});
+
+		topPanel.add(gameTimer.createLblTimer());
+		topPanel.add(createTitle());
+		topPanel.add(btnFlag);
+
+		return topPanel;
+	}
+
+	/**
+	 * Creates the bottom panel, containing the Start button and Quit button.
+	 *
+	 * @return the bottom panel
+	 */
+	private JPanel createBottomPanel() {
+		JPanel bottomPanel = new JPanel();
+
+		btnStart = new JButton("Start");
+		btnStart.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				status = Status.INPROGRESS;
+				gameRecorded = false;
+				btnStart.setVisible(false);
+
+				model = takeNoGuessBoard();
+				if (model == null) {
+					// Mines are placed when the first cell is clicked, away from that cell
+					model = new BoardModel(width, height, numMines, MinePlacer.newSeed(), selectedTopology);
+					setTitle("Minesweeper");
+				} else {
+					setTitle("Minesweeper - No-guess board");
+				}
+				solver = new Solver(model);
+				session.newGame(model);
+				startRecording();
+				saveReplay.setEnabled(true);
+				prepareView(width, height, model.getTopology());
+				view.setModel(model);
+				save.setEnabled(model.hasMinesPlaced());
+				updateProbabilities();
+
+				// The clock starts with the first move
+				gameTimer.setLblText();
+				JOURNAL.start(session);
+			}
+		});
+		bottomPanel.add(btnStart);
+
+		JButton btnQuit = new JButton("Quit");
+		btnQuit.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				gameTimer.stop();
+				JOURNAL.close();
+				HISTORY.close();
+				Minesweeper.quit();
+			}
+		});
+		bottomPanel.add(btnQuit);
+
+		return bottomPanel;
+	}
+	
+	/**
+	 * Returns a ready no-guess board, with its center cell already revealed, if
+	 * no-guess boards are selected and this board is one of the presets on a
+	 * square grid.
+	 *
+	 * @return the board model, or null to start an ordinary game
+	 */
+	private BoardModel takeNoGuessBoard() {
+		Difficulty difficulty = Difficulty.of(width, height, numMines);
+		if (!noGuessSelected || difficulty == null || selectedTopology != Topology.SQUARE)
+			return null;
+		return NO_GUESS_BOARDS.take(difficulty);
+	}
+
+	/**
+	 * Makes sure the view has the given size and topology and the selected kind.
+	 * A view which
+	 * already fits is kept, and the next call to {@link BoardView#setModel} resets
+	 * its cells in place; otherwise it is replaced with a new one. Rebuilding a
+	 * grid of buttons means creating every cell and its listeners again and laying
+	 * out the whole frame, so a new game on the same board avoids it.
+	 *
+	 * @param width    the number of columns in the grid
+	 * @param height   the number of rows in the grid
+	 * @param topology how the cells are connected
+	 */
+	private void prepareView(int width, int height, Topology topology) {
+		if (view != null && viewWidth == width && viewHeight == height && viewTopology == topology
+				&& (view instanceof BoardCanvas) == usesCanvas(width, height, topology))
+			return;
+
+		if (view != null)
+			contentPane.remove(view.getComponent());
+		view = createView(width, height, topology);
+		viewWidth = width;
+		viewHeight = height;
+		viewTopology = topology;
+		contentPane.add(view.getComponent(), BorderLayout.CENTER);
+		contentPane.revalidate();
+	}
+
+	/**
+	 * Returns true if a board of the given size is painted onto a canvas rather
+	 * than shown as a grid of buttons. Hexagonal boards are always painted, since
+	 * their rows are offset from each other.
+	 *
+	 * @param width    the number of columns in the grid
+	 * @param height   the number of rows in the grid
+	 * @param topology how the cells are connected
+	 * @return whether to use a {@link BoardCanvas}
+	 */
+	private boolean usesCanvas(int width, int height, Topology topology) {
+		return canvasRendering.isSelected() || width * height > CANVAS_THRESHOLD || topology == Topology.HEX;
+	}
+
+	/**
+	 * Creates the view which displays the grid of cells. Boards with more than
+	 * {@link #CANVAS_THRESHOLD} cells, or all boards when canvas rendering is
+	 * selected in the Settings menu, are painted onto a single scrollable canvas;
+	 * smaller boards use a grid of buttons.
+	 *
+	 * @param width    the number of columns in the grid
+	 * @param height   the number of rows in the grid
+	 * @param topology how the cells are connected
+	 * @return the board view
+	 */
+	private BoardView createView(int width, int height, Topology topology) {
+		if (usesCanvas(width, height, topology))
+			return new BoardCanvas(this, width, height, topology);
+		return new ButtonGridView(this, width, height);
+	}
+
+	/**
+	 * Handles a left click on the cell at the given coordinates.
+	 *
+	 * @param x
+	 * @param y
+	 */
+	void cellClicked(int x, int y) {
+		if (acceptsMoves()) {
+			if (flagging || tempFlagging) {
+				toggleFlag(x, y);
+				tempFlagging = false;
+			} else {
+				long start = Metrics.start();
+				OperationEvent event = Metrics.begin();
+				// Clicking a revealed cell chords it
+				CellDelta delta = session.play(Move.Kind.REVEAL, model.index(x, y));
+				Metrics.record(Metric.CLICK, start, event, delta.size());
+				measurePaint(delta.size());
+				view.update(delta);
+				solver.update(delta);
+				checkStatus();
+				updateProbabilities();
+
+				// The game can be saved once the mines are placed
+				save.setEnabled(status == Status.INPROGRESS);
+			}
+		}
+	}
+
+	/**
+	 * Handles the right mouse button being pressed on a cell.
+	 */
+	void cellRightPressed() {
+		if (acceptsMoves())
+			tempFlagging = true;
+	}
+
+	/**
+	 * Handles the right mouse button being released on the cell at the given
+	 * coordinates.
+	 *
+	 * @param x
+	 * @param y
+	 */
+	void cellRightReleased(int x, int y) {
+		if (acceptsMoves()) {
+			if (tempFlagging)
+				toggleFlag(x, y);
+			tempFlagging = false;
+		}
+	}
+
+	/**
+	 * Handles the mouse leaving a cell, which cancels a flag attempt.
+	 */
+	void cellExited() {
+		if (acceptsMoves())
+			tempFlagging = false;
+	}
+
+	/**
+	 * Creates the title of the game to be displayed.
+	 *
+	 * @return the title
+	 */
+	private JLabel createTitle() {
+		JLabel title = new JLabel("Minesweeper");
+		title.setHorizontalAlignment(SwingConstants.CENTER);
+		title.setBorder(new EmptyBorder(5, 40, 5, 40));
+		title.setFont(new Font("Tahoma", Font.PLAIN, 18));
+		return title;
+	}
+
+	/**
+	 * Creates the Settings submenu which chooses the topology of the next boards.
+	 *
+	 * @return the submenu
+	 */
+	private JMenu createTopologyMenu() {
+		JMenu topologyMenu = new JMenu("Topology");
+		topologyMenu.setToolTipText("Takes effect when the next game starts");
+		ButtonGroup group = new ButtonGroup();
+		for (Topology topology : Topology.values()) {
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(topology.toString(), topology == selectedTopology);
+			item.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					selectedTopology = topology;
+				}
+			});
+			group.add(item);
+			topologyMenu.add(item);
+		}
+		return topologyMenu;
+	}
+
+	/**
+	 * Creates the menu bar.
+	 * @return a menu bar
+	 */
+	private JMenuBar createMenuBar() {
+		JMenuBar menuBar = new JMenuBar();
+
+		JMenu fileMenu = new JMenu("File");
+		JMenu editMenu = new JMenu("Edit");
+		JMenu settingsMenu = new JMenu("Settings");
+		JMenu solverMenu = new JMenu("Solver");
+		JMenu helpMenu = new JMenu("Help");
+
+		save = new JMenuItem("Save");
+		save.setEnabled(false);
+		load = new JMenuItem("Load");
+		saveReplay = new JMenuItem("Save Replay");
+		saveReplay.setEnabled(false);
+		watchReplay = new JMenuItem("Watch Replay");
+		endlessGame = new JMenuItem("New Endless Game");
+		endlessGame.setToolTipText("Opens a board without edges, with this board's density of mines");
+		gameHistory = new JMenuItem("Game History");
+		updateBoardDifficulty = new JMenuItem("Update Board Difficulty");
+		canvasRendering = new JCheckBoxMenuItem("Paint Board on Canvas");
+		canvasRendering.setToolTipText("Takes effect when the next game starts");
+		noGuessBoards = new JCheckBoxMenuItem("No-guess Boards", noGuessSelected);
+		noGuessBoards.setToolTipText(
+				"Starts the Easy, Medium and Hard boards with the center revealed, solvable without guessing");
+		hint = new JMenuItem("Hint");
+		autoSolve = new JMenuItem("Auto-solve Safe Cells");
+		showProbabilities = new JCheckBoxMenuItem("Show Mine Probabilities");
+		showProbabilities.setToolTipText("Labels each unrevealed cell with its chance of holding a mine, in percent");
+		undo = new JMenuItem("Undo");
+		undo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+		redo = new JMenuItem("Redo");
+		redo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+		howToPlay = new JMenuItem("How to Play");
+		performance = new JMenuItem("Performance Metrics");
+
+		fileMenu.add(save);
+		fileMenu.add(load);
+		fileMenu.addSeparator();
+		fileMenu.add(saveReplay);
+		fileMenu.add(watchReplay);
+		fileMenu.addSeparator();
+		fileMenu.add(endlessGame);
+		fileMenu.addSeparator();
+		fileMenu.add(gameHistory);
+		editMenu.add(undo);
+		editMenu.add(redo);
+		settingsMenu.add(updateBoardDifficulty);
+		settingsMenu.add(canvasRendering);
+		settingsMenu.add(noGuessBoards);
+		settingsMenu.add(createTopologyMenu());
+		solverMenu.add(hint);
+		solverMenu.add(autoSolve);
+		solverMenu.add(showProbabilities);
+		helpMenu.add(howToPlay);
+		helpMenu.add(performance);
+
+		menuBar.add(fileMenu);
+		menuBar.add(editMenu);
+		menuBar.add(settingsMenu);
+		menuBar.add(solverMenu);
+		menuBar.add(helpMenu);
+
+		// add ActionListener to JMenuItems
+		save.addActionListener(this);
+		load.addActionListener(this);
+		saveReplay.addActionListener(this);
+		watchReplay.addActionListener(this);
+		endlessGame.addActionListener(this);
+		gameHistory.addActionListener(this);
+		updateBoardDifficulty.addActionListener(this);
+		noGuessBoards.addActionListener(this);
+		hint.addActionListener(this);
+		autoSolve.addActionListener(this);
+		showProbabilities.addActionListener(this);
+		undo.addActionListener(this);
+		redo.addActionListener(this);
+		howToPlay.addActionListener(this);
+		performance.addActionListener(this);
+
+		return menuBar;
+	}
+
+	/**
+	 * Toggles the flag on the cell at the given coordinates.
+	 *
+	 * @param x
+	 * @param y
+	 */
+	private void toggleFlag(int x, int y) {
+		view.update(session.play(Move.Kind.FLAG, model.index(x, y)));
+	}
+
+	/**
+	 * Starts recording the game for a replay from the board as it is now.
+	 */
+	private void startRecording() {
+		recorder.start(model);
+		recordedFrom = session.getHistory().getUndoableMoves();
+	}
+
+	/**
+	 * Records a move which has just been made in the session, both for a replay
+	 * and in the journal. When the journal compacts its log, it keeps the undo
+	 * history with the board, so every move can still be undone, also in a
+	 * recovered game.
+	 *
+	 * @param kind the kind of move
+	 * @param cell the index of the cell the move was made on
+	 */
+	private void recordMove(Move.Kind kind, int cell) {
+		recorder.record(kind, cell);
+		JOURNAL.record(kind, cell, session.getElapsedTime());
+		if (JOURNAL.needsCheckpoint()) {
+			JOURNAL.checkpoint(session);
+		}
+	}
+
+	/**
+	 * Takes back the last move, including the move which ended the game. Only
+	 * the cells the move changed are redrawn, unless the end of the game has to
+	 * be cleared from the grid.
+	 */
+	private void undo() {
+		if (replayTimer != null || !session.canUndo())
+			return;
+
+		CellDelta delta = session.undo();
+		if (status != Status.INPROGRESS && model.getStatus() == Status.INPROGRESS) {
+			view.setModel(model);
+		} else {
+			view.update(delta);
+		}
+		/*
+		 * The solver's deductions stay true as long as the mines stay where they are,
+		 * but undoing the first click removes them.
+		 */
+		if (!model.hasMinesPlaced())
+			solver = new Solver(model);
+		else
+			solver.update(delta);
+		// A replay cannot undo a move made before it started, so it starts again here
+		if (session.getHistory().getUndoableMoves() < recordedFrom)
+			startRecording();
+		afterUndoOrRedo();
+	}
+
+	/**
+	 * Makes the last undone move again.
+	 */
+	private void redo() {
+		if (replayTimer != null || !session.canRedo())
+			return;
+
+		CellDelta delta = session.redo();
+		view.update(delta);
+		solver.update(delta);
+		afterUndoOrRedo();
+	}
+
+	private void afterUndoOrRedo() {
+		checkStatus();
+		updateProbabilities();
+		save.setEnabled(status == Status.INPROGRESS && model.hasMinesPlaced());
+	}
+
+	/**
+	 * Highlights a cell which the solver can prove is safe, or failing that one
+	 * which it can prove holds a mine.
+	 */
+	private void showHint() {
+		if (!acceptsMoves())
+			return;
+		if (!model.hasMinesPlaced()) {
+			JOptionPane.showMessageDialog(contentPane, "The first cell you click is always safe.", "Hint",
+					JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+
+		int i = solver.hint();
+		if (i < 0) {
+			JOptionPane.showMessageDialog(contentPane, "No cell can be deduced from the revealed numbers.", "Hint",
+					JOptionPane.INFORMATION_MESSAGE);
+		} else {
+			view.showHint(i, solver.isKnownMine(i));
+		}
+	}
+
+	/**
+	 * Reveals every cell which the solver can prove is safe, including the cells
+	 * which become provable as more numbers are revealed.
+	 */
+	private void autoSolve() {
+		if (!acceptsMoves() || !model.hasMinesPlaced())
+			return;
+
+		int revealed = 0;
+		int i;
+		while (model.getStatus() == Status.INPROGRESS && (i = solver.findSafeCell()) >= 0) {
+			// The cell is certainly safe, so a flag on it is a mistake
+			if (model.hasFlag(i))
+				view.update(session.play(Move.Kind.FLAG, i));
+			CellDelta delta = session.play(Move.Kind.REVEAL, i);
+			view.update(delta);
+			solver.update(delta);
+			revealed++;
+		}
+		checkStatus();
+		updateProbabilities();
+
+		if (revealed == 0) {
+			JOptionPane.showMessageDialog(contentPane, "No cell can be deduced from the revealed numbers.",
+					"Auto-solve", JOptionPane.INFORMATION_MESSAGE);
+		}
+	}
+
+	/**
+	 * Recomputes the mine probabilities shown on the board, if they are turned
+	 * on. The computation runs in the background so large boards stay
+	 * responsive, and a computation still running from an earlier move is
+	 * cancelled.
+	 */
+	private void updateProbabilities() {
+		analysisCancelled.set(true);
+		if (!showProbabilities.isSelected() || status != Status.INPROGRESS || !model.hasMinesPlaced()) {
+			view.showProbabilities(null);
+			return;
+		}
+
+		AtomicBoolean cancelled = new AtomicBoolean();
+		analysisCancelled = cancelled;
+		ProbabilityEngine.Problem problem = ProbabilityEngine.capture(model);
+		BoardView analyzedView = view;
+		new SwingWorker<Probabilities, Void>() {
+			@Override
+			protected Probabilities doInBackground() {
+				return probabilityEngine.solve(problem, PROBABILITY_BUDGET_MILLIS, cancelled);
+			}
+
+			@Override
+			protected void done() {
+				if (cancelled.get() || view != analyzedView)
+					return;
+				try {
+					Probabilities probabilities = get();
+					view.showProbabilities(probabilities.isComplete() ? probabilities : null);
+				} catch (InterruptedException | ExecutionException e) {
+					e.printStackTrace();
+				}
+			}
+		}.execute();
+	}
+
+	/**
+	 * Measures the time from now, just after a model update, until the view has
+	 * painted it. Swing queues the repaint as soon as the view is updated, so a
+	 * task queued after the update runs once painting is done. Updates too large
+	 * to draw in one frame are measured to their first frame.
+	 *
+	 * @param cells the number of cells changed by the update
+	 */
+	private void measurePaint(final int cells) {
+		final long start = Metrics.start();
+		final OperationEvent event = Metrics.begin();
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				Metrics.record(Metric.PAINT, start, event, cells);
+			}
+		});
+	}
+
+	/**
+	 * Checks the status of the game. The end-of-game sweep over the grid only runs
+	 * once, on the move that wins or loses the game, and the game is recorded in
+	 * the history the first time it ends.
+	 */
+	private void checkStatus() {
+		long start = Metrics.start();
+		OperationEvent event = Metrics.begin();
+		Status previous = status;
+		status = model.checkStatus();
+		if (status != previous && status != Status.INPROGRESS) {
+			save.setEnabled(false);
+			view.showEnd(status);
+			if (!gameRecorded) {
+				gameRecorded = true;
+				HISTORY.record(GameRecord.of(model, session.getElapsedTime(),
+						(int) Math.min(recorder.getRecorded(), Integer.MAX_VALUE)));
+			}
+		}
+		Metrics.record(Metric.STATUS_CHECK, start, event, 0);
+
+		if (status == Status.INPROGRESS) {
+			btnStart.setVisible(false);
+		} else {
+			btnStart.setText("Play again?");
+			btnStart.setVisible(true);
+		}
+	}
+
+	/**
+	 * Returns true if the player can make moves: a game is in progress and no
+	 * replay is being watched.
+	 *
+	 * @return whether moves are accepted
+	 */
+	private boolean acceptsMoves() {
+		return status == Status.INPROGRESS && replayTimer == null;
+	}
+
+	/**
+	 * Plays a replay back on the board. Moves are made as their recorded times
+	 * come up, scaled by the speed; at infinite speed every move is made on the
+	 * first frame. If the recording stops before the end of the game, the player
+	 * can carry on from there.
+	 *
+	 * @param replay the replay to watch
+	 * @param speed  how many times faster than recorded to play
+	 */
+	private void startReplay(Replay replay, double speed) {
+		stopReplay();
+		Replayer replayer = new Replayer(replay);
+		model = replayer.getModel();
+		// Replayed moves go into the session's history, so they can be undone once the player takes over
+		session.resume(replayer.getHistory(), 0);
+		gameTimer.setLblText();
+		solver = new Solver(model);
+		width = model.getWidth();
+		height = model.getHeight();
+		numMines = model.getNumMines();
+		prepareView(width, height, model.getTopology());
+		view.setModel(model);
+		status = Status.INPROGRESS;
+		// Games finished in a replay, or carried on from one, are not recorded
+		gameRecorded = true;
+		checkStatus();
+		updateProbabilities();
+		save.setEnabled(false);
+		saveReplay.setEnabled(false);
+		setTitle("Minesweeper - Replay");
+		pack();
+
+		long start = System.nanoTime();
+		replayTimer = new Timer(REPLAY_FRAME_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				double elapsed = speed == Double.POSITIVE_INFINITY ? Long.MAX_VALUE
+						: (System.nanoTime() - start) * speed;
+				while (replayer.hasNext() && replayer.nextTime() <= elapsed) {
+					CellDelta delta = replayer.step();
+					view.update(delta);
+					solver.update(delta);
+				}
+				if (!replayer.hasNext())
+					finishReplay();
+			}
+		});
+		replayTimer.start();
+	}
+
+	/**
+	 * Ends a replay which has made all its moves, handing the board to the
+	 * player if the game is still in progress.
+	 */
+	private void finishReplay() {
+		stopReplay();
+		setTitle("Minesweeper");
+		checkStatus();
+		updateProbabilities();
+		if (status == Status.INPROGRESS) {
+			startRecording();
+			saveReplay.setEnabled(true);
+			save.setEnabled(model.hasMinesPlaced());
+			JOURNAL.start(session);
+		}
+	}
+
+	/**
+	 * Stops the replay being watched, if any.
+	 */
+	private void stopReplay() {
+		if (replayTimer != null) {
+			replayTimer.stop();
+			replayTimer = null;
+		}
+	}
+
+	/**
+	 * Shows a game which was saved or recovered, with its timer running from the
+	 * time already played.
+	 *
+	 * @param history     the board model and the moves which can be undone on it
+	 * @param elapsedTime the game time in milliseconds
+	 */
+	void resumeGame(MoveHistory history, long elapsedTime) {
+		stopReplay();
+		this.model = history.getModel();
+		session.resume(history, elapsedTime);
+		solver = new Solver(model);
+		startRecording();
+		saveReplay.setEnabled(true);
+		setTitle("Minesweeper");
+		width = model.getWidth();
+		height = model.getHeight();
+		numMines = model.getNumMines();
+		prepareView(width, height, model.getTopology());
+		view.setModel(model);
+		gameTimer.setLblText();
+		JOURNAL.start(session);
+		status = Status.INPROGRESS;
+		gameRecorded = model.getStatus() != Status.INPROGRESS;
+		checkStatus();
+		updateProbabilities();
+
+		contentPane.validate();
+		contentPane.repaint();
+		pack();
+	}
+
+	/**
+	 * Returns the current state of the game as a GameState object.
+	 *
+	 * @return the current game state
+	 */
+	public GameState getGameState() {
+		return session.getState();
+	}
+
+	/**
+	 * Handles actions for the menu bar options: Save, Load, Save Replay, Watch
+	 * Replay, Undo, Redo, Hint, Auto-solve, Change Difficulty, No-guess Boards,
+	 * How to Play.
+	 */
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		Minesweeper game = new Minesweeper();
+
+		// Save game
+		if (e.getSource() == save) {
+			game.save(getGameState());
+		}
+		
+		// Load game
+		else if (e.getSource() == load) {
+			GameState gameState = game.load();
+			if(gameState == null) {
+				System.out.println("No game selected to load.");
+			}
+			else {
+				resumeGame(new MoveHistory(gameState.createModel()), gameState.getCurrentTime());
+			}
+		}
+
+		// Replays
+		else if (e.getSource() == saveReplay) {
+			try {
+				game.saveReplay(recorder.toReplay());
+			} catch (IllegalStateException e1) {
+				JOptionPane.showMessageDialog(contentPane, e1.getMessage(), "Save Replay",
+						JOptionPane.ERROR_MESSAGE);
+			}
+		} else if (e.getSource() == watchReplay) {
+			Replay replay = game.loadReplay();
+			if (replay != null) {
+				Object[] options = { "1x", "10x", "Maximum" };
+				int speed = JOptionPane.showOptionDialog(contentPane, "Select replay speed:", "Watch Replay",
+						JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+				if (speed >= 0)
+					startReplay(replay, speed == 0 ? 1 : speed == 1 ? 10 : Double.POSITIVE_INFINITY);
+			}
+		} else if (e.getSource() == endlessGame) {
+			double density = Math.max(0.1, Math.min(0.4, (double) numMines / (width * height)));
+			try {
+				new EndlessWindow(MinePlacer.newSeed(), density).setVisible(true);
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			}
+		} else if (e.getSource() == gameHistory) {
+			new HistoryDialog(this, HISTORY).setVisible(true);
+		}
+
+		// Undo and redo
+		else if (e.getSource() == undo) {
+			undo();
+		} else if (e.getSource() == redo) {
+			redo();
+		}
+
+		// Solver
+		else if (e.getSource() == hint) {
+			showHint();
+		} else if (e.getSource() == autoSolve) {
+			autoSolve();
+		} else if (e.getSource() == showProbabilities) {
+			if (model != null)
+				updateProbabilities();
+		}
+
+		// Change difficulty
+		else if (e.getSource() == updateBoardDifficulty) {
+			Minesweeper minesweeper = new Minesweeper();
+			Difficulty[] options = Difficulty.values();
+			Difficulty d = (Difficulty) JOptionPane.showInputDialog(contentPane, "Select game difficulty:\n",
+					"Select game difficulty", JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+			if (d != null) {
+				width = d.getWidth();
+				height = d.getHeight();
+				numMines = d.getNumMines();
+				stopReplay();
+				dispose();
+				minesweeper.newGame(width, height, numMines);
+			}
+		} else if (e.getSource() == noGuessBoards) {
+			noGuessSelected = noGuessBoards.isSelected();
+			Difficulty difficulty = Difficulty.of(width, height, numMines);
+			if (noGuessSelected && difficulty != null)
+				NO_GUESS_BOARDS.refill(difficulty);
+		}
+		
+		// How to play
+		else if (e.getSource() == howToPlay) {
+			JOptionPane.showMessageDialog(contentPane, "The game contains a number of unmarked "
+					+ "square buttons in a grid, and some of these squares contain hidden mines. \n\n"
+					+ "Click squares to reveal them. \n\n"
+					+ "The goal is to reveal all of the safe squares without clicking any mines. \n\n"
+					+ "When a safe square is revealed, it is labeled with the number of mines in the 8 "
+					+ "surrounding squares. \n\n" + "If you suspect that a square has a mine, mark it with a flag, "
+					+ "which prevents it from being accidentally revealed. \n\n"
+					+ "A timer keeps track of how long you've been playing. \n\n"
+					+ "To mark a cell with a flag, click the flag button then the cells you want to " + "mark. \n\n",
+					"How to play Minesweeper", JOptionPane.INFORMATION_MESSAGE);
+		}
+
+		else if (e.getSource() == performance) {
+			JTextArea metrics = new JTextArea(Metrics.toText());
+			metrics.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+			metrics.setEditable(false);
+			JOptionPane.showMessageDialog(contentPane, metrics, "Performance Metrics", JOptionPane.PLAIN_MESSAGE);
+		}
+
+	}
+
+}
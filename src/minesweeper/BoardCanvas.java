@@ -0,0 +1,347 @@
+package minesweeper;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import javax.swing.JComponent;
+import javax.swing.JScrollPane;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+/**
+ * Displays the board by painting every cell onto a single component inside a
+ * scroll pane, instead of creating a button per cell. Only the cells inside
+ * the visible part of the viewport are painted, and a move only repaints the
+ * rectangle containing the cells it changed, so the cost of creating and
+ * painting the board does not depend on its total size.
+ * <p>
+ * Hexagonal boards are drawn as bricks: every odd row is shifted right by half
+ * a cell, so each cell touches the two cells below it and the two above it, as
+ * in {@link Topology#HEX}.
+ *
+ * @author laurencousin
+ *
+ */
+public class BoardCanvas extends JComponent implements BoardView, Scrollable {
+
+	private static final long serialVersionUID = 1L;
+
+	// Large boards are shown in a viewport of at most this many cells
+	private static final int VIEWPORT_COLUMNS = 30;
+	private static final int VIEWPORT_ROWS = 20;
+	private static final Font PROBABILITY_FONT = new Font("Tahoma", Font.PLAIN, 10);
+
+	private final Board board;
+	private final int width, height;
+	// How far odd rows are shifted right, in pixels
+	private final int oddRowShift;
+	private final JScrollPane scrollPane;
+	private BoardModel model;
+
+	// The cells where the left and right buttons were pressed, or -1
+	private int leftPressed = -1;
+	private int rightPressed = -1;
+
+	// The cell highlighted by the last hint, or -1
+	private int hint = -1;
+	private boolean hintMine;
+
+	// The mine probabilities to label unrevealed cells with, or null
+	private Probabilities probabilities;
+
+	/**
+	 * Creates a canvas for a board of the given size.
+	 *
+	 * @param board  the board which handles clicks on the cells
+	 * @param width  the number of columns
+	 * @param height the number of rows
+	 */
+	public BoardCanvas(Board board, int width, int height) {
+		this(board, width, height, Topology.SQUARE);
+	}
+
+	/**
+	 * Creates a canvas for a board of the given size and topology.
+	 *
+	 * @param board    the board which handles clicks on the cells
+	 * @param width    the number of columns
+	 * @param height   the number of rows
+	 * @param topology how the cells are connected, which decides how they are
+	 *                 laid out
+	 */
+	public BoardCanvas(Board board, int width, int height, Topology topology) {
+		this.board = board;
+		this.width = width;
+		this.height = height;
+		this.oddRowShift = topology == Topology.HEX && height > 1 ? Board.CELL_WIDTH / 2 : 0;
+
+		setOpaque(true);
+		setBackground(TileCache.HIDDEN_COLOR);
+		setPreferredSize(new Dimension(Board.CELL_WIDTH * width + oddRowShift, Board.CELL_HEIGHT * height));
+
+		MouseAdapter mouse = new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				if (SwingUtilities.isLeftMouseButton(e)) {
+					leftPressed = cellAt(e);
+				} else if (SwingUtilities.isRightMouseButton(e)) {
+					rightPressed = cellAt(e);
+					board.cellRightPressed();
+				}
+			}
+
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				int i = cellAt(e);
+				if (SwingUtilities.isLeftMouseButton(e)) {
+					if (i >= 0 && i == leftPressed)
+						board.cellClicked(i / width, i % width);
+					leftPressed = -1;
+				} else if (SwingUtilities.isRightMouseButton(e)) {
+					if (i >= 0 && i == rightPressed)
+						board.cellRightReleased(i / width, i % width);
+					else
+						board.cellExited();
+					rightPressed = -1;
+				}
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				// Dragging out of the cell cancels the click or flag attempt.
+				int i = cellAt(e);
+				if (i != leftPressed)
+					leftPressed = -1;
+				if (rightPressed >= 0 && i != rightPressed) {
+					rightPressed = -1;
+					board.cellExited();
+				}
+			}
+
+			@Override
+			public void mouseExited(MouseEvent e) {
+				board.cellExited();
+			}
+		};
+		addMouseListener(mouse);
+		addMouseMotionListener(mouse);
+
+		scrollPane = new JScrollPane(this);
+	}
+
+	/**
+	 * Returns the index of the cell under the mouse, or -1 if the mouse is outside
+	 * the board.
+	 *
+	 * @param e the mouse event
+	 * @return the cell index, or -1
+	 */
+	private int cellAt(MouseEvent e) {
+		if (e.getX() < 0 || e.getY() < 0)
+			return -1;
+		int x = e.getY() / Board.CELL_HEIGHT;
+		if (x >= height || e.getX() < shift(x))
+			return -1;
+		int y = (e.getX() - shift(x)) / Board.CELL_WIDTH;
+		if (y >= width)
+			return -1;
+		return x * width + y;
+	}
+
+	/**
+	 * Returns how far the given row is shifted right, in pixels.
+	 */
+	private int shift(int x) {
+		return (x & 1) * oddRowShift;
+	}
+
+	@Override
+	public JComponent getComponent() {
+		return scrollPane;
+	}
+
+	@Override
+	public void setModel(BoardModel model) {
+		this.model = model;
+		hint = -1;
+		probabilities = null;
+		repaint();
+	}
+
+	@Override
+	public void update(CellDelta delta) {
+		if (delta.isEmpty())
+			return;
+		for (int n = 0; n < delta.size() && hint >= 0; n++) {
+			if (delta.get(n) == hint)
+				hint = -1;
+		}
+
+		// Repaint only the rectangle containing the changed cells
+		int minX = height, maxX = -1, minY = width, maxY = -1;
+		for (int n = 0; n < delta.size(); n++) {
+			int i = delta.get(n);
+			int x = i / width;
+			int y = i - x * width;
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+		}
+		repaint(minY * Board.CELL_WIDTH, minX * Board.CELL_HEIGHT, (maxY - minY + 1) * Board.CELL_WIDTH + oddRowShift,
+				(maxX - minX + 1) * Board.CELL_HEIGHT);
+	}
+
+	@Override
+	public void showEnd(Status status) {
+		// The end of the game is drawn from the model's status
+		hint = -1;
+		probabilities = null;
+		repaint();
+	}
+
+	@Override
+	public void showProbabilities(Probabilities probabilities) {
+		this.probabilities = probabilities;
+		repaint();
+	}
+
+	@Override
+	public void showHint(int i, boolean mine) {
+		if (hint >= 0)
+			repaintCell(hint);
+		hint = i;
+		hintMine = mine;
+		repaintCell(i);
+		scrollRectToVisible(cellBounds(i));
+	}
+
+	private Rectangle cellBounds(int i) {
+		return new Rectangle((i % width) * Board.CELL_WIDTH + shift(i / width), (i / width) * Board.CELL_HEIGHT,
+				Board.CELL_WIDTH, Board.CELL_HEIGHT);
+	}
+
+	private void repaintCell(int i) {
+		repaint(cellBounds(i));
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		if (clip == null)
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+
+		g.setColor(getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+		// Paint only the cells which intersect the clip
+		int firstX = Math.max(0, clip.y / Board.CELL_HEIGHT);
+		int lastX = Math.min(height - 1, (clip.y + clip.height - 1) / Board.CELL_HEIGHT);
+		int firstY = Math.max(0, (clip.x - oddRowShift) / Board.CELL_WIDTH);
+		int lastY = Math.min(width - 1, (clip.x + clip.width - 1) / Board.CELL_WIDTH);
+
+		for (int x = firstX; x <= lastX; x++) {
+			for (int y = firstY; y <= lastY; y++) {
+				paintCell(g, x, y);
+			}
+		}
+	}
+
+	/**
+	 * Paints a single cell, matching the appearance of a {@link Cell} button.
+	 */
+	private void paintCell(Graphics g, int x, int y) {
+		int px = y * Board.CELL_WIDTH + shift(x);
+		int py = x * Board.CELL_HEIGHT;
+		int w = Board.CELL_WIDTH;
+		int h = Board.CELL_HEIGHT;
+
+		Color background = TileCache.HIDDEN_COLOR;
+		int tile = 0;
+		boolean raised = true;
+		double probability = Double.NaN;
+
+		if (model != null) {
+			int i = model.index(x, y);
+			Status status = model.getStatus();
+			boolean mine = model.hasMine(i);
+
+			if (model.isRevealed(i) || (status == Status.LOSE && mine && !model.hasFlag(i))) {
+				raised = false;
+				if (mine) {
+					background = TileCache.MINE_COLOR;
+				} else {
+					background = status == Status.WIN ? TileCache.WIN_COLOR : TileCache.REVEALED_COLOR;
+					tile = model.getNumAdjacentMines(i);
+				}
+			} else if (model.hasFlag(i)) {
+				tile = status == Status.LOSE && !mine ? TileCache.MISSED_FLAG : TileCache.FLAG;
+			} else if (status == Status.WIN && mine) {
+				tile = TileCache.FLAG;
+			} else if (probabilities != null) {
+				probability = probabilities.mineProbability(i);
+			}
+			if (i == hint)
+				background = hintMine ? TileCache.MINE_HINT_COLOR : TileCache.SAFE_HINT_COLOR;
+		}
+
+		g.setColor(background);
+		g.fillRect(px, py, w, h);
+		if (raised) {
+			g.setColor(Color.WHITE);
+			g.drawLine(px, py, px + w - 2, py);
+			g.drawLine(px, py, px, py + h - 2);
+			g.setColor(TileCache.SHADOW_COLOR);
+			g.drawLine(px + w - 1, py, px + w - 1, py + h - 1);
+			g.drawLine(px, py + h - 1, px + w - 1, py + h - 1);
+		} else {
+			g.setColor(TileCache.GRID_COLOR);
+			g.drawRect(px, py, w - 1, h - 1);
+		}
+
+		if (tile != 0) {
+			TileCache.drawTile(g, tile, px, py, w, 1);
+		} else if (!Double.isNaN(probability)) {
+			String label = Long.toString(Math.round(probability * 100));
+			g.setFont(PROBABILITY_FONT);
+			g.setColor(Color.DARK_GRAY);
+			FontMetrics metrics = g.getFontMetrics();
+			g.drawString(label, px + (w - metrics.stringWidth(label)) / 2,
+					py + (h - metrics.getHeight()) / 2 + metrics.getAscent());
+		}
+	}
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize() {
+		return new Dimension(Board.CELL_WIDTH * Math.min(width, VIEWPORT_COLUMNS) + oddRowShift,
+				Board.CELL_HEIGHT * Math.min(height, VIEWPORT_ROWS));
+	}
+
+	@Override
+	public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return orientation == SwingConstants.HORIZONTAL ? Board.CELL_WIDTH : Board.CELL_HEIGHT;
+	}
+
+	@Override
+	public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return orientation == SwingConstants.HORIZONTAL ? visibleRect.width : visibleRect.height;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportWidth() {
+		return false;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight() {
+		return false;
+	}
+
+}
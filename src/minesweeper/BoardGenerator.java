@@ -0,0 +1,267 @@
+package minesweeper;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates large boards in parallel. The board is split into bands of whole
+ * rows, and each band places its share of the mines and computes the
+ * adjacent-mine counts of its own cells on the common fork-join pool, writing
+ * straight into the model's cell array. Counting a band only reads the row
+ * just above and below it (its halo, which wraps around on a torus), and no
+ * two bands write to the same cell, so bands never need to coordinate.
+ * <p>
+ * Small boards are generated on the calling thread, where splitting the work
+ * would cost more than it saves.
+ *
+ * @author laurencousin
+ *
+ */
+public final class BoardGenerator {
+
+	/** Boards with at least this many cells are generated in parallel. */
+	static final int PARALLEL_THRESHOLD = 1 << 18;
+
+	// Bands are split until they hold about this many cells
+	private static final int BAND_CELLS = 1 << 16;
+
+	private BoardGenerator() {
+	}
+
+	/**
+	 * Places <code>count</code> mines in the model from the given seed, keeping
+	 * the excluded cells clear.
+	 * <p>
+	 * The number of mines in each band is drawn from the hypergeometric
+	 * distribution, by splitting the remaining mines between the two halves of a
+	 * range as if the mines were dealt one by one, so every arrangement of mines
+	 * is as likely as with sequential placement. Each band then places its mines
+	 * with {@link MinePlacer} and a generator split off in a fixed order, so the
+	 * same seed always gives the same board regardless of thread timing.
+	 *
+	 * @param model    the board model, which must not have any mines yet
+	 * @param count    the number of mines to place
+	 * @param seed     the seed for this board
+	 * @param excluded sorted indices of cells which must not get a mine
+	 */
+	static void placeMines(BoardModel model, int count, long seed, int[] excluded) {
+		PlaceTask task = new PlaceTask(model, 0, model.getHeight(), count, excluded, new SplittableRandom(seed));
+		if (model.size() < PARALLEL_THRESHOLD)
+			task.compute();
+		else
+			ForkJoinPool.commonPool().invoke(task);
+	}
+
+	/**
+	 * Stores in each cell of the model how many mines are adjacent to it.
+	 *
+	 * @param model the board model
+	 */
+	static void countAdjacentMines(BoardModel model) {
+		if (model.size() < PARALLEL_THRESHOLD)
+			countRows(model, 0, model.getHeight());
+		else
+			ForkJoinPool.commonPool().invoke(new CountTask(model, 0, model.getHeight()));
+	}
+
+	/**
+	 * Returns the number of rows in a band of about {@link #BAND_CELLS} cells.
+	 */
+	private static int bandRows(BoardModel model) {
+		return Math.max(1, BAND_CELLS / model.getWidth());
+	}
+
+	/**
+	 * Counts the adjacent mines of every cell in rows <code>firstRow</code>
+	 * (inclusive) to <code>endRow</code> (exclusive).
+	 */
+	static void countRows(BoardModel model, int firstRow, int endRow) {
+		if (model.getTopology() != Topology.SQUARE) {
+			countRows(model, model.neighborTable(), firstRow, endRow);
+			return;
+		}
+		byte[] cells = model.cells();
+		int width = model.getWidth();
+		int height = model.getHeight();
+
+		for (int x = firstRow; x < endRow; x++) {
+			int above = x > 0 ? x - 1 : x;
+			int below = x < height - 1 ? x + 1 : x;
+			for (int y = 0; y < width; y++) {
+				int i = x * width + y;
+				if ((cells[i] & BoardModel.MINE) != 0) {
+					// The value for cells with mines doesn't matter as long as
+					// it's non-zero
+					cells[i] = (byte) (cells[i] | BoardModel.COUNT_MASK);
+					continue;
+				}
+
+				int left = y > 0 ? y - 1 : y;
+				int right = y < width - 1 ? y + 1 : y;
+				int count = 0;
+				for (int nx = above; nx <= below; nx++) {
+					int row = nx * width;
+					for (int ny = left; ny <= right; ny++) {
+						count += (cells[row + ny] >>> 4) & 1;
+					}
+				}
+				cells[i] = (byte) ((cells[i] & ~BoardModel.COUNT_MASK) | count);
+			}
+		}
+	}
+
+	/**
+	 * Counts the adjacent mines of every cell in the given rows through the
+	 * model's neighbor table, for boards which are not square grids.
+	 */
+	private static void countRows(BoardModel model, NeighborTable table, int firstRow, int endRow) {
+		byte[] cells = model.cells();
+		int width = model.getWidth();
+		int[] adj = new int[Topology.MAX_NEIGHBORS];
+
+		for (int i = firstRow * width; i < endRow * width; i++) {
+			if ((cells[i] & BoardModel.MINE) != 0) {
+				cells[i] = (byte) (cells[i] | BoardModel.COUNT_MASK);
+				continue;
+			}
+
+			int n = table.neighbors(i, adj);
+			int count = 0;
+			for (int k = 0; k < n; k++)
+				count += (cells[adj[k]] >>> 4) & 1;
+			cells[i] = (byte) ((cells[i] & ~BoardModel.COUNT_MASK) | count);
+		}
+	}
+
+	/**
+	 * Returns the number of cells in the given rows which are not excluded.
+	 */
+	private static int candidates(BoardModel model, int firstRow, int endRow, int[] excluded) {
+		int from = firstRow * model.getWidth();
+		int to = endRow * model.getWidth();
+		int n = to - from;
+		for (int e : excluded) {
+			if (e >= from && e < to)
+				n--;
+		}
+		return n;
+	}
+
+	/**
+	 * Returns how many of <code>mines</code> mines, spread uniformly over
+	 * <code>total</code> cells, fall among the first <code>part</code> of them.
+	 * The mines are dealt one by one, or the cells visited one by one, whichever
+	 * takes fewer steps.
+	 */
+	static int hypergeometric(int total, int mines, int part, SplittableRandom random) {
+		if (mines == 0 || part == 0)
+			return 0;
+		if (mines == total)
+			return part;
+		if (part == total)
+			return mines;
+		if (part > total - part)
+			return mines - hypergeometric(total, mines, total - part, random);
+		if (mines > total - mines)
+			return part - hypergeometric(total, total - mines, part, random);
+
+		int hits = 0;
+		if (mines <= part) {
+			// Deal each mine to the first part or the rest
+			int partLeft = part;
+			int totalLeft = total;
+			for (int m = 0; m < mines; m++) {
+				if (random.nextInt(totalLeft) < partLeft) {
+					hits++;
+					partLeft--;
+				}
+				totalLeft--;
+			}
+		} else {
+			// Visit each cell of the first part and decide whether it has a mine
+			int minesLeft = mines;
+			int totalLeft = total;
+			for (int c = 0; c < part && minesLeft > 0; c++) {
+				if (random.nextInt(totalLeft) < minesLeft) {
+					hits++;
+					minesLeft--;
+				}
+				totalLeft--;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Places a number of mines in a range of rows, splitting the range and the
+	 * mines in two until the range is a single band.
+	 */
+	private static class PlaceTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final BoardModel model;
+		private final int firstRow, endRow;
+		private final int count;
+		private final int[] excluded;
+		private final SplittableRandom random;
+
+		PlaceTask(BoardModel model, int firstRow, int endRow, int count, int[] excluded, SplittableRandom random) {
+			this.model = model;
+			this.firstRow = firstRow;
+			this.endRow = endRow;
+			this.count = count;
+			this.excluded = excluded;
+			this.random = random;
+		}
+
+		@Override
+		protected void compute() {
+			if (endRow - firstRow <= bandRows(model) || model.size() < PARALLEL_THRESHOLD) {
+				int width = model.getWidth();
+				MinePlacer.placeInRange(model, firstRow * width, endRow * width, count, excluded, random);
+				return;
+			}
+
+			int middle = (firstRow + endRow) >>> 1;
+			int total = candidates(model, firstRow, endRow, excluded);
+			int upper = candidates(model, firstRow, middle, excluded);
+			int upperMines = hypergeometric(total, count, upper, random);
+
+			// Split in a fixed order so the board only depends on the seed
+			SplittableRandom upperRandom = random.split();
+			SplittableRandom lowerRandom = random.split();
+			invokeAll(new PlaceTask(model, firstRow, middle, upperMines, excluded, upperRandom),
+					new PlaceTask(model, middle, endRow, count - upperMines, excluded, lowerRandom));
+		}
+	}
+
+	/**
+	 * Counts adjacent mines in a range of rows, splitting the range in two until
+	 * it is a single band.
+	 */
+	private static class CountTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final BoardModel model;
+		private final int firstRow, endRow;
+
+		CountTask(BoardModel model, int firstRow, int endRow) {
+			this.model = model;
+			this.firstRow = firstRow;
+			this.endRow = endRow;
+		}
+
+		@Override
+		protected void compute() {
+			if (endRow - firstRow <= bandRows(model)) {
+				countRows(model, firstRow, endRow);
+				return;
+			}
+
+			int middle = (firstRow + endRow) >>> 1;
+			invokeAll(new CountTask(model, firstRow, middle), new CountTask(model, middle, endRow));
+		}
+	}
+
+}
@@ -0,0 +1,552 @@
+package minesweeper;
+
+/**
+ * Holds the rules and state of a game of Minesweeper without any dependency on
+ * Swing, so that games can be played, simulated or analyzed headlessly.
+ * <p>
+ * Each cell is packed into a single byte: the low four bits hold the number of
+ * adjacent mines, and the remaining bits mark whether the cell has a mine, a
+ * flag, or has been revealed. Cells are addressed either by their (x, y)
+ * coordinates, where x is the row and y is the column (matching
+ * <code>Board</code>), or by their index <code>x * width + y</code>.
+ *
+ * @author cameronlentz
+ * @author laurencousin
+ *
+ */
+public class BoardModel {
+
+	static final int COUNT_MASK = 0x0F;
+	static final int MINE = 0x10;
+	static final int FLAG = 0x20;
+	static final int REVEALED = 0x40;
+
+	private final int width, height;
+	private final int numMines;
+	private final long seed;
+	private final Topology topology;
+	private final NeighborTable neighborTable;
+	private final byte[] cells;
+	private boolean minesPlaced;
+	private int safeCell = -1;
+
+	/*
+	 * Reused by every move so that playing does not allocate. The delta doubles as
+	 * the work queue of the flood fill: each newly revealed cell is appended once,
+	 * and zero cells are expanded in the order they were revealed.
+	 */
+	private final CellDelta delta = new CellDelta();
+	private final int[] adj = new int[8];
+
+	/*
+	 * Running totals kept up to date by every change to a cell, so the status of
+	 * the game never requires a scan of the board.
+	 */
+	private int unrevealedSafeCells;
+	private int revealedMines;
+	private int numFlags;
+	private Status status = Status.INPROGRESS;
+
+	/**
+	 * Creates an empty model with no mines placed yet, using a fresh seed.
+	 *
+	 * @param width    the number of columns
+	 * @param height   the number of rows
+	 * @param numMines the number of mines the board will hold
+	 */
+	public BoardModel(int width, int height, int numMines) {
+		this(width, height, numMines, MinePlacer.newSeed());
+	}
+
+	/**
+	 * Creates an empty model with no mines placed yet. The mines are placed from
+	 * the given seed, either explicitly by {@link #placeMines(int)} or on the
+	 * first click, so the same seed and first click always give the same board.
+	 *
+	 * @param width    the number of columns
+	 * @param height   the number of rows
+	 * @param numMines the number of mines the board will hold
+	 * @param seed     the seed used to place the mines
+	 */
+	public BoardModel(int width, int height, int numMines, long seed) {
+		this(width, height, numMines, seed, Topology.SQUARE);
+	}
+
+	/**
+	 * Creates an empty model with no mines placed yet, whose cells are connected
+	 * as the given topology describes.
+	 *
+	 * @param width    the number of columns
+	 * @param height   the number of rows
+	 * @param numMines the number of mines the board will hold
+	 * @param seed     the seed used to place the mines
+	 * @param topology how the cells are connected
+	 */
+	public BoardModel(int width, int height, int numMines, long seed, Topology topology) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("Width and height of board must be positive");
+		}
+		if (numMines < 0 || numMines > width * height) {
+			throw new IllegalArgumentException("Cannot place " + numMines + " mines in a " + width + "*" + height
+					+ " board");
+		}
+
+		this.width = width;
+		this.height = height;
+		this.numMines = numMines;
+		this.seed = seed;
+		this.topology = topology;
+		this.neighborTable = topology.table(width, height);
+		this.cells = new byte[width * height];
+		this.unrevealedSafeCells = cells.length;
+	}
+
+	/**
+	 * @return the number of columns
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the number of mines in the board
+	 */
+	public int getNumMines() {
+		return numMines;
+	}
+
+	/**
+	 * @return the seed used to place the mines
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return how the cells are connected
+	 */
+	public Topology getTopology() {
+		return topology;
+	}
+
+	/**
+	 * @return the cell kept clear of mines when they were placed, or -1
+	 */
+	public int getSafeCell() {
+		return safeCell;
+	}
+
+	/**
+	 * @return true once the mines have been placed or restored
+	 */
+	public boolean hasMinesPlaced() {
+		return minesPlaced;
+	}
+
+	/**
+	 * @return the total number of cells in the board
+	 */
+	public int size() {
+		return cells.length;
+	}
+
+	/**
+	 * Returns the index of the cell at the given coordinates.
+	 *
+	 * @param x the row
+	 * @param y the column
+	 * @return the cell index
+	 */
+	public int index(int x, int y) {
+		return x * width + y;
+	}
+
+	/**
+	 * @return the current status of the game
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the number of safe cells which have not been revealed yet
+	 */
+	public int getUnrevealedSafeCells() {
+		return unrevealedSafeCells;
+	}
+
+	/**
+	 * @return the number of mines which have been revealed
+	 */
+	public int getRevealedMines() {
+		return revealedMines;
+	}
+
+	/**
+	 * @return the number of flags currently placed
+	 */
+	public int getNumFlags() {
+		return numFlags;
+	}
+
+	/**
+	 * Returns true if and only if there is a mine in the cell at the given index.
+	 *
+	 * @param i the cell index
+	 * @return whether the cell contains a mine
+	 */
+	public boolean hasMine(int i) {
+		return (cells[i] & MINE) != 0;
+	}
+
+	/**
+	 * Returns true if and only if the cell at the given index has a flag.
+	 *
+	 * @param i the cell index
+	 * @return whether the cell is flagged
+	 */
+	public boolean hasFlag(int i) {
+		return (cells[i] & FLAG) != 0;
+	}
+
+	/**
+	 * Returns true if the cell at the given index has been revealed.
+	 *
+	 * @param i the cell index
+	 * @return whether the cell is revealed
+	 */
+	public boolean isRevealed(int i) {
+		return (cells[i] & REVEALED) != 0;
+	}
+
+	/**
+	 * Returns the number of mines adjacent to the cell at the given index. For
+	 * cells with a mine the value is meaningless, but never 0.
+	 *
+	 * @param i the cell index
+	 * @return the number of adjacent mines
+	 */
+	public int getNumAdjacentMines(int i) {
+		return cells[i] & COUNT_MASK;
+	}
+
+	public boolean hasMine(int x, int y) {
+		return hasMine(index(x, y));
+	}
+
+	public boolean hasFlag(int x, int y) {
+		return hasFlag(index(x, y));
+	}
+
+	public boolean isRevealed(int x, int y) {
+		return isRevealed(index(x, y));
+	}
+
+	public int getNumAdjacentMines(int x, int y) {
+		return getNumAdjacentMines(index(x, y));
+	}
+
+	/**
+	 * Sets the mine, flag and revealed bits of a cell directly, without applying
+	 * any game rules. This is used to restore a saved game; call
+	 * {@link #calculateNumAdjacentMines()} once every cell has been restored.
+	 *
+	 * @param i        the cell index
+	 * @param mine     whether the cell has a mine
+	 * @param flag     whether the cell has a flag
+	 * @param revealed whether the cell has been revealed
+	 */
+	public void restoreCell(int i, boolean mine, boolean flag, boolean revealed) {
+		int bits = cells[i] & COUNT_MASK;
+		if (mine)
+			bits |= MINE;
+		if (flag && !revealed)
+			bits |= FLAG;
+		if (revealed)
+			bits |= REVEALED;
+
+		minesPlaced = true;
+		count(cells[i], -1);
+		cells[i] = (byte) bits;
+		count(cells[i], 1);
+		updateStatus();
+	}
+
+	/**
+	 * Adds (or removes) the contribution of a cell's bits to the running totals.
+	 */
+	private void count(int bits, int sign) {
+		if ((bits & FLAG) != 0)
+			numFlags += sign;
+		if ((bits & REVEALED) != 0) {
+			if ((bits & MINE) != 0)
+				revealedMines += sign;
+		} else if ((bits & MINE) == 0) {
+			unrevealedSafeCells += sign;
+		}
+	}
+
+	private void updateStatus() {
+		if (revealedMines > 0)
+			status = Status.LOSE;
+		else if (unrevealedSafeCells == 0)
+			status = Status.WIN;
+		else
+			status = Status.INPROGRESS;
+	}
+
+	/**
+	 * Writes the indices of the up to 8 cells adjacent to the given cell into
+	 * <code>out</code>, as given by the board's {@link Topology}.
+	 *
+	 * @param i   the cell index
+	 * @param out an array with room for at least 8 indices
+	 * @return the number of neighbors written
+	 */
+	public int neighbors(int i, int[] out) {
+		return neighborTable.neighbors(i, out);
+	}
+
+	/**
+	 * @return the precomputed neighbors of every cell, for {@link BoardGenerator}
+	 */
+	NeighborTable neighborTable() {
+		return neighborTable;
+	}
+
+	/**
+	 * Places the board's mines from its seed, keeping the safe cell and its
+	 * neighbors clear. See {@link MinePlacer}.
+	 *
+	 * @param safeCell the index of the cell the player clicked first, or -1 to
+	 *                 allow mines anywhere
+	 */
+	public void placeMines(int safeCell) {
+		if (minesPlaced)
+			throw new IllegalStateException("Mines have already been placed");
+
+		long start = Metrics.start();
+		OperationEvent event = Metrics.begin();
+		MinePlacer.place(this, numMines, seed, safeCell);
+		Metrics.record(Metric.PLACE_MINES, start, event, numMines);
+		// No cell has been revealed before the mines are placed
+		unrevealedSafeCells -= numMines;
+		this.safeCell = safeCell;
+		minesPlaced = true;
+		updateStatus();
+	}
+
+	/**
+	 * Puts a mine in the given cell without updating the running totals. Used by
+	 * {@link MinePlacer}, possibly from several threads for different cells.
+	 *
+	 * @param i the cell index
+	 */
+	void setMine(int i) {
+		cells[i] |= MINE;
+	}
+
+	/**
+	 * Returns the packed cell array, for {@link BoardGenerator}.
+	 */
+	byte[] cells() {
+		return cells;
+	}
+
+	/**
+	 * Stores in each cell of the board how many mines are adjacent to it. Large
+	 * boards are counted in parallel by {@link BoardGenerator}.
+	 */
+	public void calculateNumAdjacentMines() {
+		long start = Metrics.start();
+		OperationEvent event = Metrics.begin();
+		BoardGenerator.countAdjacentMines(this);
+		Metrics.record(Metric.COUNT_ADJACENT_MINES, start, event, cells.length);
+	}
+
+	/**
+	 * Toggles whether there is a flag on the given cell, unless the cell is
+	 * already revealed.
+	 *
+	 * @param i the cell index
+	 * @return the changed cell, if any
+	 */
+	public CellDelta toggleFlag(int i) {
+		delta.clear();
+		if ((cells[i] & REVEALED) == 0) {
+			cells[i] ^= FLAG;
+			numFlags += (cells[i] & FLAG) != 0 ? 1 : -1;
+			delta.add(i);
+		}
+		return delta;
+	}
+
+	/**
+	 * Handles a click on the given cell: an unrevealed cell is revealed, a
+	 * revealed number is quick-revealed, and the cells around a "0" are revealed
+	 * automatically. Flagged cells are ignored. If the mines have not been placed
+	 * yet, they are placed now, away from the clicked cell.
+	 *
+	 * @param x the row
+	 * @param y the column
+	 * @return the cells revealed by the click
+	 */
+	public CellDelta click(int x, int y) {
+		int i = index(x, y);
+		delta.clear();
+		if ((cells[i] & FLAG) != 0)
+			return delta;
+
+		if (!minesPlaced) {
+			placeMines(i);
+			calculateNumAdjacentMines();
+		}
+
+		if ((cells[i] & REVEALED) != 0) {
+			if (getNumAdjacentMines(i) == 0 || countAdjacentFlags(i) == getNumAdjacentMines(i))
+				revealNeighbors(i);
+		} else {
+			revealCell(i);
+		}
+		floodFill();
+		updateStatus();
+		return delta;
+	}
+
+	/**
+	 * Reveals around the coordinates passed in as parameters, continuing through
+	 * every newly uncovered "0".
+	 *
+	 * @param x the row
+	 * @param y the column
+	 * @return the cells revealed
+	 */
+	public CellDelta revealAround(int x, int y) {
+		delta.clear();
+		revealNeighbors(index(x, y));
+		floodFill();
+		updateStatus();
+		return delta;
+	}
+
+	/**
+	 * Attempts to "quick-reveal" around the cell at the given coordinates. If the
+	 * cell at the coordinates is showing a number and already has that many flags
+	 * around it, the remaining adjacent cells are automatically revealed.
+	 *
+	 * @param x the row
+	 * @param y the column
+	 * @return the cells revealed
+	 */
+	public CellDelta tryQuickReveal(int x, int y) {
+		int i = index(x, y);
+		delta.clear();
+		if ((cells[i] & REVEALED) != 0 && countAdjacentFlags(i) == getNumAdjacentMines(i)) {
+			revealNeighbors(i);
+			floodFill();
+			updateStatus();
+		}
+		return delta;
+	}
+
+	/**
+	 * Hides cells again, undoing the move which revealed them. This takes time
+	 * proportional to the number of cells, however large the board.
+	 *
+	 * @param revealed an array holding the indices of the cells to hide
+	 * @param from     the position of the first cell in the array
+	 * @param to       the position after the last cell in the array
+	 * @return the cells hidden
+	 */
+	public CellDelta hide(int[] revealed, int from, int to) {
+		delta.clear();
+		for (int n = from; n < to; n++) {
+			int i = revealed[n];
+			if ((cells[i] & REVEALED) != 0) {
+				count(cells[i], -1);
+				cells[i] &= ~REVEALED;
+				count(cells[i], 1);
+				delta.add(i);
+			}
+		}
+		updateStatus();
+		return delta;
+	}
+
+	/**
+	 * Removes every mine, undoing the first click of a game, so the next click
+	 * places them again from the seed. Flags are kept. Every cell must be hidden.
+	 */
+	void removeMines() {
+		for (int i = 0; i < cells.length; i++)
+			cells[i] &= FLAG;
+		unrevealedSafeCells = cells.length;
+		revealedMines = 0;
+		minesPlaced = false;
+		safeCell = -1;
+		updateStatus();
+	}
+
+	private int countAdjacentFlags(int i) {
+		int n = neighbors(i, adj);
+		int flagCount = 0;
+		for (int k = 0; k < n; k++) {
+			if ((cells[adj[k]] & FLAG) != 0)
+				flagCount++;
+		}
+		return flagCount;
+	}
+
+	private void revealCell(int i) {
+		cells[i] |= REVEALED;
+		if ((cells[i] & MINE) != 0)
+			revealedMines++;
+		else
+			unrevealedSafeCells--;
+		delta.add(i);
+	}
+
+	private void revealNeighbors(int i) {
+		int n = neighbors(i, adj);
+		for (int k = 0; k < n; k++) {
+			int c = adj[k];
+			if ((cells[c] & (REVEALED | FLAG)) == 0)
+				revealCell(c);
+		}
+	}
+
+	/**
+	 * Expands every "0" in the delta, appending the cells it uncovers, until no
+	 * unexpanded "0" remains. Each cell is appended at most once, so this runs in
+	 * time and memory proportional to the number of cells revealed.
+	 */
+	private void floodFill() {
+		long start = Metrics.start();
+		OperationEvent event = Metrics.begin();
+		for (int head = 0; head < delta.size(); head++) {
+			int c = delta.get(head);
+			if ((cells[c] & (MINE | COUNT_MASK)) == 0)
+				revealNeighbors(c);
+		}
+		Metrics.record(Metric.FLOOD_FILL, start, event, delta.size());
+	}
+
+	/**
+	 * Checks the status of the game: lost if any mine has been revealed, won if
+	 * every safe cell has been revealed, and in progress otherwise. The status is
+	 * kept up to date by every move, so this takes constant time.
+	 *
+	 * @return the current status
+	 */
+	public Status checkStatus() {
+		return status;
+	}
+
+}
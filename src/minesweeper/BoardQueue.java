@@ -0,0 +1,110 @@
+package minesweeper;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a few no-guess boards ready for each preset, so that starting a game
+ * never waits for the {@link NoGuessGenerator}. Taking a board starts refilling
+ * the queue in the background.
+ * <p>
+ * A single refill thread generates the boards, one preset at a time, while the
+ * generator itself spreads each board over every processor. That keeps up
+ * even on one processor, where a Hard board takes about 20 milliseconds, so a
+ * queue is full again long before the game started from it ends.
+ *
+ * @author laurencousin
+ *
+ */
+public final class BoardQueue {
+
+	// Boards kept ready for each preset
+	static final int CAPACITY = 3;
+	// Time allowed for generating one board before the refill gives up
+	private static final long GENERATION_TIMEOUT_MILLIS = 30_000;
+
+	private final NoGuessGenerator generator;
+	private final Map<Difficulty, BlockingQueue<BoardModel>> ready = new EnumMap<>(Difficulty.class);
+	private final Set<Difficulty> refilling = ConcurrentHashMap.newKeySet();
+	private final ExecutorService refiller = Executors.newSingleThreadExecutor(new DaemonThreadFactory("board-queue"));
+
+	/**
+	 * Creates an empty queue for each preset. Nothing is generated until a
+	 * preset is refilled or taken from.
+	 *
+	 * @param generator the generator of the boards
+	 */
+	public BoardQueue(NoGuessGenerator generator) {
+		this.generator = generator;
+		for (Difficulty difficulty : Difficulty.values())
+			ready.put(difficulty, new ArrayBlockingQueue<>(CAPACITY));
+	}
+
+	/**
+	 * Takes a ready board for the preset without waiting, and starts refilling
+	 * the queue.
+	 *
+	 * @param difficulty the preset
+	 * @return a no-guess board with its center cell revealed, or null if none
+	 *         is ready yet
+	 */
+	public BoardModel take(Difficulty difficulty) {
+		BoardModel board = ready.get(difficulty).poll();
+		refill(difficulty);
+		return board;
+	}
+
+	/**
+	 * Returns the number of boards ready for the preset.
+	 *
+	 * @param difficulty the preset
+	 * @return the number of ready boards
+	 */
+	public int available(Difficulty difficulty) {
+		return ready.get(difficulty).size();
+	}
+
+	/**
+	 * Starts filling the queue of the preset in the background, unless it is
+	 * already being filled.
+	 *
+	 * @param difficulty the preset
+	 */
+	public void refill(Difficulty difficulty) {
+		if (!refilling.add(difficulty))
+			return;
+		refiller.execute(new Runnable() {
+			public void run() {
+				BlockingQueue<BoardModel> queue = ready.get(difficulty);
+				try {
+					while (queue.remainingCapacity() > 0) {
+						BoardModel board = generator.generate(difficulty.getWidth(), difficulty.getHeight(),
+								difficulty.getNumMines(), GENERATION_TIMEOUT_MILLIS);
+						if (board == null)
+							return; // Try again when the next board is taken
+						queue.offer(board);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					refilling.remove(difficulty);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops refilling the queues and stops the generator.
+	 */
+	public void shutdown() {
+		refiller.shutdownNow();
+		generator.shutdown();
+	}
+
+}
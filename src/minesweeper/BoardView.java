@@ -0,0 +1,59 @@
+package minesweeper;
+
+import javax.swing.JComponent;
+
+/**
+ * Displays the cells of a {@link BoardModel} and forwards clicks on them to the
+ * {@link Board}.
+ *
+ * @author laurencousin
+ *
+ */
+public interface BoardView {
+
+	/**
+	 * Returns the component to add to the board's content pane.
+	 *
+	 * @return the view's component
+	 */
+	JComponent getComponent();
+
+	/**
+	 * Displays the given model, redrawing every cell.
+	 *
+	 * @param model the board model to display
+	 */
+	void setModel(BoardModel model);
+
+	/**
+	 * Redraws the cells changed by the last move.
+	 *
+	 * @param delta the changed cells
+	 */
+	void update(CellDelta delta);
+
+	/**
+	 * Shows the end of the game: on a loss, every mine and wrongly placed flag is
+	 * revealed; on a win, remaining mines are flagged and the board turns green.
+	 *
+	 * @param status the final status of the game
+	 */
+	void showEnd(Status status);
+
+	/**
+	 * Highlights a cell suggested by the solver until the cell next changes.
+	 *
+	 * @param i    the index of the cell
+	 * @param mine true if the cell holds a mine, false if it is safe to reveal
+	 */
+	void showHint(int i, boolean mine);
+
+	/**
+	 * Labels every unrevealed, unflagged cell with the chance that it holds a
+	 * mine, until the cell next changes.
+	 *
+	 * @param probabilities the probabilities to show, or null to remove the labels
+	 */
+	void showProbabilities(Probabilities probabilities);
+
+}
@@ -0,0 +1,45 @@
+package minesweeper;
+
+/**
+ * A strategy which plays Minesweeper without a user interface, used by the
+ * {@link Tournament} to compare strategies over many games.
+ * <p>
+ * A bot is told when a game starts, then asked for one move at a time until
+ * the game ends, and is told which cells each move changed. A bot only plays
+ * one game at a time, but may keep state from one game to the next.
+ *
+ * @author laurencousin
+ *
+ */
+public interface Bot {
+
+	/**
+	 * @return the name of the strategy, as reported in tournament results
+	 */
+	String getName();
+
+	/**
+	 * Starts a new game. The board stays valid and up to date until the game
+	 * ends.
+	 *
+	 * @param board the visible state of the new board
+	 */
+	void newGame(VisibleBoard board);
+
+	/**
+	 * Chooses the next move.
+	 *
+	 * @param board the visible state of the board
+	 * @return the move to make
+	 */
+	Move nextMove(VisibleBoard board);
+
+	/**
+	 * Tells the bot which cells its last move changed.
+	 *
+	 * @param move    the move which was made
+	 * @param changed the changed cells, only valid until the next move
+	 */
+	void moveMade(Move move, CellDelta changed);
+
+}
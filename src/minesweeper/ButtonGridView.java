@@ -0,0 +1,193 @@
+package minesweeper;
+
+import java.awt.Dimension;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+/**
+ * Displays the board as a grid of clickable {@link Cell} buttons. This is the
+ * classic look of the game, best suited to small and medium boards.
+ * <p>
+ * Every change to the buttons goes through a {@link ViewUpdater}, so a move
+ * which reveals or ends the game on many cells at once is drawn over several
+ * frames rather than freezing the window.
+ *
+ * @author cameronlentz
+ * @author laurencousin
+ *
+ */
+public class ButtonGridView implements BoardView {
+
+	private final Board board;
+	private final Cell[][] cells;
+	private final JPanel gridContainer;
+	private final ViewUpdater updater;
+	private BoardModel model;
+
+	/**
+	 * Creates the button grid, containing a grid of clickable cells.
+	 *
+	 * @param board  the board which handles clicks on the cells
+	 * @param width  the number of columns in the grid
+	 * @param height the number of rows in the grid
+	 */
+	public ButtonGridView(Board board, int width, int height) {
+		this.board = board;
+
+		/*
+		 * Each element in cells is an array representing a horizontal row, so the first
+		 * number here is the height (number of rows).
+		 */
+		cells = new Cell[height][width];
+
+		JPanel cellGrid = new JPanel();
+		cellGrid.setPreferredSize(new Dimension(Board.CELL_WIDTH * width, Board.CELL_HEIGHT * height));
+		cellGrid.setLayout(new GridLayout(cells.length, cells[0].length, 0, 0));
+
+		for (int x = 0; x < cells.length; x++) {
+			for (int y = 0; y < cells[0].length; y++) {
+				cells[x][y] = new Cell();
+
+				// The action listener requires its local variables to be final
+				final int thisX = x;
+				final int thisY = y;
+
+				cells[x][y].addActionListener(new ActionListener() {
+					public void actionPerformed(ActionEvent e) {
+						board.cellClicked(thisX, thisY);
+					}
+				});
+
+				/*
+				 * Right-click detection. JButton's ActionListener is only triggered by a left
+				 * click, so we use a MouseListener to detect right clicks.
+				 */
+				cells[x][y].addMouseListener(new MouseListener() {
+					/*
+					 * mouseClicked won't detect a click if the mouse is moved at all while the
+					 * button is held, which feels clunky and unresponsive. Instead I use the other
+					 * methods and a tempFlagging boolean for a nicer-feeling result.
+					 */
+					@Override
+					public void mouseClicked(MouseEvent e) {
+					}
+
+					@Override
+					public void mousePressed(MouseEvent e) {
+						if (SwingUtilities.isRightMouseButton(e))
+							board.cellRightPressed();
+					}
+
+					@Override
+					public void mouseReleased(MouseEvent e) {
+						if (SwingUtilities.isRightMouseButton(e))
+							board.cellRightReleased(thisX, thisY);
+					}
+
+					@Override
+					public void mouseEntered(MouseEvent e) {
+					}
+
+					@Override
+					public void mouseExited(MouseEvent e) {
+						// Dragging out of the cell cancels the flag attempt.
+						board.cellExited();
+					}
+				});
+
+				cellGrid.add(cells[x][y]);
+			}
+		}
+
+		/*
+		 * The content pane uses BorderLayout, but we don't want the grid to expand to
+		 * fill the whole center area, so we place the grid in a new JPanel (which uses
+		 * FlowLayout and won't resize its contents).
+		 */
+		gridContainer = new JPanel();
+		gridContainer.add(cellGrid);
+
+		updater = new ViewUpdater(width * height) {
+			@Override
+			void updateCell(int i) {
+				cells[i / width][i % width].update(model, i);
+			}
+
+			@Override
+			void drawEnd(int i, Status status) {
+				ButtonGridView.this.showEnd(cells[i / width][i % width], i, status);
+			}
+		};
+	}
+
+	@Override
+	public JComponent getComponent() {
+		return gridContainer;
+	}
+
+	@Override
+	public void setModel(BoardModel model) {
+		this.model = model;
+		updater.updateAll();
+	}
+
+	@Override
+	public void update(CellDelta delta) {
+		updater.update(delta);
+	}
+
+	@Override
+	public void showHint(int i, boolean mine) {
+		// The hint is drawn over the cell as it is now
+		updater.flush();
+		int width = cells[0].length;
+		cells[i / width][i % width].setBackground(mine ? TileCache.MINE_HINT_COLOR : TileCache.SAFE_HINT_COLOR);
+	}
+
+	@Override
+	public void showProbabilities(Probabilities probabilities) {
+		updater.flush();
+		for (int x = 0; x < cells.length; x++) {
+			for (int y = 0; y < cells[0].length; y++) {
+				int i = model.index(x, y);
+				if (!model.isRevealed(i) && !model.hasFlag(i))
+					cells[x][y].showProbability(probabilities == null ? Double.NaN : probabilities.mineProbability(i));
+			}
+		}
+	}
+
+	@Override
+	public void showEnd(Status status) {
+		updater.showEnd(status);
+	}
+
+	/**
+	 * Draws the end of the game on one cell: on a loss, unflagged mines and
+	 * wrongly placed flags are revealed, and correct flags stay; on a win, remaining mines are flagged and revealed cells
+	 * turn a pale green.
+	 */
+	private void showEnd(Cell cell, int i, Status status) {
+		if (status == Status.LOSE) {
+			if (model.hasMine(i)) {
+				if (!model.hasFlag(i))
+					cell.update(true, false, true, 0);
+			} else if (model.hasFlag(i)) {
+				// Safe cell with a flag
+				cell.setIcon(TileCache.icon(TileCache.MISSED_FLAG));
+			}
+		} else if (status == Status.WIN) {
+			if (model.isRevealed(i))
+				cell.setBackground(TileCache.WIN_COLOR);
+			else if (model.hasMine(i))
+				cell.setIcon(TileCache.icon(TileCache.FLAG));
+		}
+	}
+
+}
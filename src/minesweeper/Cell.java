@@ -1,18 +1,18 @@
 package minesweeper;
 
-import java.awt.Color;
+import java.awt.Font;
+import java.awt.Insets;
 import java.io.Serializable;
 
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
 
 /**
  * Represents a single cell in a Minesweeper game board.
  * <p>
- * The cell may contain a hidden mine, and the user may mark it with a flag or
- * click it to reveal whether it has a mine. If it has a mine, revealing it
- * causes the cell to turn red; otherwise, it displays the number of adjacent
- * cells which have mines.
+ * The cell is only a view: whether it contains a hidden mine, is marked with a
+ * flag or has been revealed is kept in a {@link BoardModel}, and the cell
+ * updates its appearance from that state. A revealed mine turns red; a
+ * revealed safe cell displays the number of adjacent cells which have mines.
  * 
  * @author cameronlentz
  *
@@ -21,128 +21,74 @@ import javax.swing.JButton;
 public class Cell extends JButton implements Serializable {
 
 	private static final long serialVersionUID = 1L;
-	private boolean mine;
-	private boolean flag;
-	private boolean revealed;
-	private int numAdjacentMines;
+	private static final Font PROBABILITY_FONT = new Font("Tahoma", Font.PLAIN, 10);
 
 	/**
-	 * Constructs a fresh cell with no mine and no flag.
+	 * Constructs a fresh, unrevealed cell.
 	 */
 	public Cell() {
-		this(false, false, false);
-	}
-
-	/**
-	 * Constructs a cell based on the parameters.
-	 * 
-	 * @param mine     whether this cell has a mine
-	 * @param flag     whether this cell is marked with a flag
-	 * @param revealed whether this cell has been revealed
-	 */
-	public Cell(boolean mine, boolean flag, boolean revealed) {
 		super();
 
-		setBackground(new Color(200, 200, 200)); // light grey
+		setBackground(TileCache.HIDDEN_COLOR);
 		setOpaque(true);
-
-		if (mine)
-			setMine();
-		if (revealed)
-			reveal();
-		if (flag)
-			toggleFlag();
-
-		numAdjacentMines = 0;
-	}
-
-	/**
-	 * Returns true if and only if there is a mine in this cell.
-	 * 
-	 * @return whether the cell contains a mine
-	 */
-	public boolean hasMine() {
-		return mine;
 	}
 
 	/**
-	 * Places a mine in this cell. This method is used when creating a game board.
-	 */
-	public void setMine() {
-		mine = true;
-	}
-
-	/**
-	 * Tells this cell how many mines are adjacent to it in the board. If this cell
-	 * has a mine, the number does not matter so long as it is not 0.
+	 * Updates the appearance of this cell to match its state in the board model.
+	 * A revealed mine turns red; a revealed safe cell turns a lighter color and
+	 * is marked with the number of adjacent mines (if any). An unrevealed cell
+	 * shows a flag if it has one.
 	 * 
+	 * @param revealed         whether the cell has been revealed
+	 * @param flag             whether the cell is marked with a flag
+	 * @param mine             whether the cell has a mine
 	 * @param numAdjacentMines the number of adjacent mines
 	 */
-	public void setNumAdjacentMines(int numAdjacentMines) {
-		this.numAdjacentMines = numAdjacentMines;
-
-		if (revealed && numAdjacentMines != 0) {
-			setIcon(new ImageIcon(Cell.class.getResource("/resources/" + numAdjacentMines + ".png")));
+	public void update(boolean revealed, boolean flag, boolean mine, int numAdjacentMines) {
+		// Clearing a label which isn't there still unregisters the tooltip
+		if (getText() != null) {
+			setText(null);
+			setToolTipText(null);
 		}
-	}
-
-	/**
-	 * Returns the number of mines adjacent to this one.
-	 * 
-	 * @return the number of adjacent mines
-	 */
-	public int getNumAdjacentMines() {
-		return numAdjacentMines;
-	}
-
-	/**
-	 * Returns true if this cell has been revealed already.
-	 * 
-	 * @return whether the cell is revealed
-	 */
-	public boolean isRevealed() {
-		return revealed;
-	}
-
-	/**
-	 * Toggles whether there is a flag on this cell, unless the cell is already
-	 * revealed.
-	 */
-	public void toggleFlag() {
 		if (!revealed) {
-			flag = !flag;
-			setIcon(flag ? Board.FLAG_ICON : null);
+			setBackground(TileCache.HIDDEN_COLOR);
+			setIcon(flag ? TileCache.icon(TileCache.FLAG) : null);
+		} else if (mine) {
+			setBackground(TileCache.MINE_COLOR);
+			setIcon(null);
+		} else {
+			setBackground(TileCache.REVEALED_COLOR);
+			setIcon(TileCache.numberIcon(numAdjacentMines));
 		}
 	}
 
 	/**
-	 * Returns true if and only if this cell is marked with a flag.
+	 * Updates the appearance of the cell at the given index to match the model.
 	 * 
-	 * @return whether there is a flag on this cell
+	 * @param model the board model
+	 * @param i     the index of this cell in the model
 	 */
-	public boolean hasFlag() {
-		return flag;
+	public void update(BoardModel model, int i) {
+		update(model.isRevealed(i), model.hasFlag(i), model.hasMine(i), model.getNumAdjacentMines(i));
 	}
 
 	/**
-	 * Reveals this cell, unless it is flagged. If the cell is a mine, you lose the
-	 * game; otherwise, the cell turns a lighter color and is marked with the number
-	 * of adjacent mines (if any).
+	 * Labels this unrevealed cell with the chance that it holds a mine, as a
+	 * percentage. The label is removed when the cell is next updated.
+	 * 
+	 * @param probability the probability of a mine, or NaN to remove the label
 	 */
-	public void reveal() {
-		if (flag)
+	public void showProbability(double probability) {
+		if (Double.isNaN(probability)) {
+			setText(null);
+			setToolTipText(null);
 			return;
-
-		revealed = true;
-
-		if (mine) {
-			setBackground(Color.RED);
-		} else {
-			setBackground(Color.WHITE);
-			if (numAdjacentMines != 0) {
-				setIcon(new ImageIcon(Cell.class.getResource("/resources/" + numAdjacentMines + ".png")));
-			}
 		}
 
+		long percent = Math.round(probability * 100);
+		setMargin(new Insets(0, 0, 0, 0));
+		setFont(PROBABILITY_FONT);
+		setText(Long.toString(percent));
+		setToolTipText("Chance of a mine: " + percent + "%");
 	}
 }
@@ -0,0 +1,69 @@
+package minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * A reusable list of the cell indices changed by a single move, in the order
+ * they changed. The board model fills the same instance on every move, so the
+ * contents are only valid until the next call into the model.
+ *
+ * @author laurencousin
+ *
+ */
+public class CellDelta {
+
+	private int[] indices;
+	private int size;
+
+	/**
+	 * Creates an empty delta with room for a few cells.
+	 */
+	public CellDelta() {
+		indices = new int[16];
+	}
+
+	/**
+	 * @return the number of changed cells
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if no cells changed
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the index of the n-th changed cell.
+	 *
+	 * @param n the position in this delta
+	 * @return the cell index
+	 */
+	public int get(int n) {
+		return indices[n];
+	}
+
+	/**
+	 * Returns a copy of the changed cell indices.
+	 *
+	 * @return an array of exactly {@link #size()} indices
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(indices, size);
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	void add(int index) {
+		if (size == indices.length) {
+			indices = Arrays.copyOf(indices, size * 2);
+		}
+		indices[size++] = index;
+	}
+
+}
@@ -0,0 +1,179 @@
+package minesweeper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores the chunks of an {@link EndlessBoard} which have been evicted from
+ * memory. Only what the player has done is stored, since the mines and counts
+ * of a chunk are derived from the world seed: each chunk takes a fixed-size
+ * slot holding its key and one bit plane each for revealed and flagged cells,
+ * 2 bits per cell. A chunk evicted again is rewritten in its slot.
+ * <p>
+ * The file starts with a 16-byte header:
+ *
+ * <pre>
+ * offset size field
+ *      0    4 magic "MSWC"
+ *      4    4 format version
+ *      8    8 world seed
+ * </pre>
+ *
+ * Each slot follows the header in the order the chunks were first evicted, and
+ * reopening a file rebuilds the index of slots by reading their keys. All
+ * values are big-endian.
+ *
+ * @author laurencousin
+ *
+ */
+public class ChunkStore implements Closeable {
+
+	static final int MAGIC = 0x4D535743; // "MSWC"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+
+	private final FileChannel channel;
+	private final int cellsPerChunk;
+	private final int planeBytes;
+	private final int slotSize;
+	private final Map<Long, Integer> slots = new HashMap<>();
+	private final ByteBuffer slot;
+
+	/**
+	 * Opens a store, creating the file if it does not exist.
+	 *
+	 * @param path          the file
+	 * @param seed          the world seed of the board
+	 * @param cellsPerChunk the number of cells in a chunk, a multiple of 8
+	 * @throws IOException if the file cannot be opened or belongs to another
+	 *                     world
+	 */
+	public ChunkStore(Path path, long seed, int cellsPerChunk) throws IOException {
+		this.cellsPerChunk = cellsPerChunk;
+		this.planeBytes = cellsPerChunk / 8;
+		this.slotSize = 8 + 2 * planeBytes;
+		this.slot = ByteBuffer.allocate(slotSize).order(ByteOrder.BIG_ENDIAN);
+
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+			if (channel.size() == 0) {
+				header.putInt(MAGIC).putInt(VERSION).putLong(seed).flip();
+				while (header.hasRemaining())
+					channel.write(header, header.position());
+			} else {
+				readFully(header, 0);
+				header.flip();
+				if (header.getInt() != MAGIC || header.getInt() != VERSION)
+					throw new IOException(path + " is not a chunk store");
+				if (header.getLong() != seed)
+					throw new IOException(path + " belongs to another world");
+				int count = (int) ((channel.size() - HEADER_SIZE) / slotSize);
+				ByteBuffer key = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+				for (int s = 0; s < count; s++) {
+					key.clear();
+					readFully(key, position(s));
+					slots.put(key.flip().getLong(), s);
+				}
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of chunks stored
+	 */
+	public int size() {
+		return slots.size();
+	}
+
+	/**
+	 * Writes the revealed and flag bits of a chunk.
+	 *
+	 * @param key      the key of the chunk
+	 * @param cells    the chunk's cells, packed as in {@link EndlessBoard}
+	 * @param revealed the bit which marks a revealed cell
+	 * @param flag     the bit which marks a flagged cell
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(long key, byte[] cells, int revealed, int flag) throws IOException {
+		Integer s = slots.get(key);
+		if (s == null) {
+			s = slots.size();
+			slots.put(key, s);
+		}
+
+		slot.clear();
+		slot.putLong(key);
+		byte[] planes = slot.array();
+		int offset = slot.position();
+		Arrays.fill(planes, offset, slotSize, (byte) 0);
+		for (int i = 0; i < cellsPerChunk; i++) {
+			if ((cells[i] & revealed) != 0)
+				planes[offset + (i >>> 3)] |= 1 << (i & 7);
+			if ((cells[i] & flag) != 0)
+				planes[offset + planeBytes + (i >>> 3)] |= 1 << (i & 7);
+		}
+		slot.position(slotSize).flip();
+		long position = position(s);
+		while (slot.hasRemaining())
+			position += channel.write(slot, position);
+	}
+
+	/**
+	 * Sets the revealed and flag bits of a chunk's cells from the store, if the
+	 * chunk is stored.
+	 *
+	 * @param key      the key of the chunk
+	 * @param cells    the chunk's cells, with their mines and counts filled in
+	 * @param revealed the bit which marks a revealed cell
+	 * @param flag     the bit which marks a flagged cell
+	 * @return true if the chunk was stored
+	 * @throws IOException if the file cannot be read
+	 */
+	public boolean read(long key, byte[] cells, int revealed, int flag) throws IOException {
+		Integer s = slots.get(key);
+		if (s == null)
+			return false;
+
+		slot.clear();
+		readFully(slot, position(s));
+		byte[] planes = slot.array();
+		for (int i = 0; i < cellsPerChunk; i++) {
+			if ((planes[8 + (i >>> 3)] & (1 << (i & 7))) != 0)
+				cells[i] |= revealed;
+			if ((planes[8 + planeBytes + (i >>> 3)] & (1 << (i & 7))) != 0)
+				cells[i] |= flag;
+		}
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private long position(int s) {
+		return HEADER_SIZE + (long) s * slotSize;
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0)
+				throw new IOException("The chunk store ends unexpectedly");
+			position += read;
+		}
+	}
+
+}
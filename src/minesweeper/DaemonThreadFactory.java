@@ -0,0 +1,32 @@
+package minesweeper;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads for background work, so that work still queued
+ * never keeps the game from exiting.
+ *
+ * @author laurencousin
+ *
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+	private final String name;
+	private final AtomicInteger count = new AtomicInteger();
+
+	/**
+	 * @param name the name of the threads, which is followed by a number
+	 */
+	DaemonThreadFactory(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable task) {
+		Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+}
@@ -0,0 +1,69 @@
+package minesweeper;
+
+/**
+ * The board presets offered in the Settings menu.
+ *
+ * @author laurencousin
+ *
+ */
+public enum Difficulty {
+
+	EASY("Easy", 9, 9, 10), // about 1 in 8 cells
+	MEDIUM("Medium", 15, 15, 45), // 1 in 5 cells
+	HARD("Hard", 20, 20, 130); // about 1 in 3 cells
+
+	private final String label;
+	private final int width, height;
+	private final int numMines;
+
+	private Difficulty(String label, int width, int height, int numMines) {
+		this.label = label;
+		this.width = width;
+		this.height = height;
+		this.numMines = numMines;
+	}
+
+	/**
+	 * @return the number of columns
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the number of mines
+	 */
+	public int getNumMines() {
+		return numMines;
+	}
+
+	/**
+	 * Returns the preset with the given size and number of mines, or null if the
+	 * board is not a preset.
+	 *
+	 * @param width    the number of columns
+	 * @param height   the number of rows
+	 * @param numMines the number of mines
+	 * @return the preset, or null
+	 */
+	public static Difficulty of(int width, int height, int numMines) {
+		for (Difficulty d : values()) {
+			if (d.width == width && d.height == height && d.numMines == numMines)
+				return d;
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return label;
+	}
+
+}
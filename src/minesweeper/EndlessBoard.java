@@ -0,0 +1,454 @@
+package minesweeper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A board without edges, for the endless game. The board is split into square
+ * chunks of {@value #CHUNK_SIZE} by {@value #CHUNK_SIZE} cells, which are only
+ * created when a cell in them is revealed or viewed.
+ * <p>
+ * Whether a cell holds a mine is a hash of the world seed and the cell's
+ * coordinates, so every chunk can be created on its own, counts are correct
+ * across chunk borders without loading the neighboring chunks, and a chunk
+ * evicted from memory only needs to keep what the player did to it. The most
+ * recently used chunks are kept in memory, up to a fixed number; colder ones
+ * are written to a {@link ChunkStore} if the player changed them and read back
+ * when they are needed again, so memory stays bounded however far the player
+ * explores.
+ * <p>
+ * The cells around the origin never hold mines, so the game opens by
+ * revealing the cell at the origin. Cells are addressed by row x and column y,
+ * as on the other boards, and may be negative. The game is lost when a mine is
+ * revealed, and cannot be won; the score is the number of cells revealed.
+ *
+ * @author laurencousin
+ *
+ */
+public class EndlessBoard implements Closeable {
+
+	/** The number of rows and columns in a chunk. */
+	public static final int CHUNK_SIZE = 64;
+	private static final int CHUNK_BITS = 6;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/**
+	 * The most cells a single move reveals. Zeros left unexpanded by a larger
+	 * flood fill are expanded by chording them.
+	 */
+	public static final int MAX_REVEAL = 1 << 20;
+
+	// Bits of a cell, as in BoardModel
+	static final int COUNT_MASK = 0x0F;
+	static final int MINE = 0x10;
+	static final int FLAG = 0x20;
+	static final int REVEALED = 0x40;
+
+	private final long seed;
+	private final long mineThreshold;
+	private final ChunkStore store;
+	private final LinkedHashMap<Long, Chunk> chunks;
+	private final Delta delta = new Delta();
+
+	// The chunk used last, which saves a lookup for neighboring cells
+	private Chunk last;
+
+	private Status status = Status.INPROGRESS;
+	private long revealedCells;
+	private long numFlags;
+	private long created;
+	private long loaded;
+
+	/**
+	 * Creates an endless board.
+	 *
+	 * @param seed      the world seed
+	 * @param density   the fraction of cells which hold mines, from 0.05 to 0.5
+	 * @param maxChunks the most chunks to keep in memory
+	 * @param store     where chunks evicted from memory are kept
+	 */
+	public EndlessBoard(long seed, double density, final int maxChunks, ChunkStore store) {
+		if (!(density >= 0.05 && density <= 0.5))
+			throw new IllegalArgumentException("The mine density must be between 0.05 and 0.5");
+		if (maxChunks < 1)
+			throw new IllegalArgumentException("At least one chunk must fit in memory");
+		this.seed = seed;
+		this.mineThreshold = (long) (density * (1L << 32));
+		this.store = store;
+		this.chunks = new LinkedHashMap<Long, Chunk>(maxChunks * 4 / 3 + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+				if (size() <= maxChunks)
+					return false;
+				evict(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @return the world seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return the status of the game, which is never a win
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the number of cells revealed, which is the player's score
+	 */
+	public long getRevealedCells() {
+		return revealedCells;
+	}
+
+	/**
+	 * @return the number of flags on the board
+	 */
+	public long getNumFlags() {
+		return numFlags;
+	}
+
+	/**
+	 * @return the number of chunks in memory
+	 */
+	public int getChunksInMemory() {
+		return chunks.size();
+	}
+
+	/**
+	 * @return the number of chunks created or read back from the store
+	 */
+	public long getChunksLoaded() {
+		return created + loaded;
+	}
+
+	/**
+	 * Returns whether the cell holds a mine. This is the same for every board
+	 * with the seed and density, and does not create the cell's chunk.
+	 *
+	 * @param x the row
+	 * @param y the column
+	 * @return true if the cell holds a mine
+	 */
+	public boolean hasMine(int x, int y) {
+		if (x >= -1 && x <= 1 && y >= -1 && y <= 1)
+			return false;
+		long h = seed ^ ((long) x << 32 | (y & 0xFFFFFFFFL));
+		h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+		h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return (h >>> 32) < mineThreshold;
+	}
+
+	/**
+	 * @param x the row
+	 * @param y the column
+	 * @return true if the cell has been revealed
+	 */
+	public boolean isRevealed(int x, int y) {
+		return (cell(x, y) & REVEALED) != 0;
+	}
+
+	/**
+	 * @param x the row
+	 * @param y the column
+	 * @return true if the cell has a flag
+	 */
+	public boolean hasFlag(int x, int y) {
+		return (cell(x, y) & FLAG) != 0;
+	}
+
+	/**
+	 * @param x the row
+	 * @param y the column
+	 * @return the number of mines around the cell
+	 */
+	public int getNumAdjacentMines(int x, int y) {
+		return cell(x, y) & COUNT_MASK;
+	}
+
+	/**
+	 * Reveals a cell, and the cells around every "0" uncovered, unless the cell is
+	 * flagged. Revealing a revealed cell chords it.
+	 *
+	 * @param x the row
+	 * @param y the column
+	 * @return the changed cells, valid until the next move
+	 */
+	public Delta reveal(int x, int y) {
+		delta.clear();
+		if (status != Status.INPROGRESS)
+			return delta;
+		if (isRevealed(x, y))
+			return chord(x, y);
+		revealCell(x, y);
+		floodFill();
+		return delta;
+	}
+
+	/**
+	 * Reveals the unflagged cells around a revealed number if as many of them are
+	 * flagged as the number says.
+	 *
+	 * @param x the row
+	 * @param y the column
+	 * @return the changed cells, valid until the next move
+	 */
+	public Delta chord(int x, int y) {
+		delta.clear();
+		int cell = cell(x, y);
+		if (status != Status.INPROGRESS || (cell & (REVEALED | MINE)) != REVEALED)
+			return delta;
+		int flags = 0;
+		for (int nx = x - 1; nx <= x + 1; nx++) {
+			for (int ny = y - 1; ny <= y + 1; ny++) {
+				if ((cell(nx, ny) & FLAG) != 0)
+					flags++;
+			}
+		}
+		if (flags == (cell & COUNT_MASK)) {
+			revealNeighbors(x, y);
+			floodFill();
+		}
+		return delta;
+	}
+
+	/**
+	 * Toggles the flag on a cell, unless it is revealed.
+	 *
+	 * @param x the row
+	 * @param y the column
+	 * @return the changed cell, if any, valid until the next move
+	 */
+	public Delta toggleFlag(int x, int y) {
+		delta.clear();
+		Chunk chunk = chunk(x, y);
+		int i = chunk.index(x, y);
+		if (status != Status.INPROGRESS || (chunk.cells[i] & REVEALED) != 0)
+			return delta;
+		chunk.cells[i] ^= FLAG;
+		chunk.dirty = true;
+		numFlags += (chunk.cells[i] & FLAG) != 0 ? 1 : -1;
+		delta.add(x, y);
+		return delta;
+	}
+
+	/**
+	 * Writes every changed chunk still in memory to the store, and closes it.
+	 */
+	@Override
+	public void close() throws IOException {
+		for (Chunk chunk : chunks.values()) {
+			if (chunk.dirty)
+				store.write(chunk.key, chunk.cells, REVEALED, FLAG);
+		}
+		chunks.clear();
+		last = null;
+		store.close();
+	}
+
+	private void revealCell(int x, int y) {
+		Chunk chunk = chunk(x, y);
+		int i = chunk.index(x, y);
+		byte cell = chunk.cells[i];
+		if ((cell & (REVEALED | FLAG)) != 0)
+			return;
+		chunk.cells[i] = (byte) (cell | REVEALED);
+		chunk.dirty = true;
+		revealedCells++;
+		if ((cell & MINE) != 0)
+			status = Status.LOSE;
+		delta.add(x, y);
+	}
+
+	private void revealNeighbors(int x, int y) {
+		for (int nx = x - 1; nx <= x + 1; nx++) {
+			for (int ny = y - 1; ny <= y + 1; ny++) {
+				if (delta.size < MAX_REVEAL)
+					revealCell(nx, ny);
+			}
+		}
+	}
+
+	/**
+	 * Expands every "0" in the delta, as {@link BoardModel} does, up to
+	 * {@link #MAX_REVEAL} cells.
+	 */
+	private void floodFill() {
+		for (int head = 0; head < delta.size && delta.size < MAX_REVEAL; head++) {
+			int x = delta.xs[head];
+			int y = delta.ys[head];
+			if ((cell(x, y) & (MINE | COUNT_MASK)) == 0)
+				revealNeighbors(x, y);
+		}
+	}
+
+	private byte cell(int x, int y) {
+		Chunk chunk = chunk(x, y);
+		return chunk.cells[chunk.index(x, y)];
+	}
+
+	/**
+	 * Returns the chunk holding the cell, creating it or reading it back from the
+	 * store if it is not in memory.
+	 */
+	private Chunk chunk(int x, int y) {
+		int cx = x >> CHUNK_BITS;
+		int cy = y >> CHUNK_BITS;
+		Chunk chunk = last;
+		if (chunk != null && chunk.cx == cx && chunk.cy == cy && !chunk.evicted)
+			return chunk;
+
+		long key = (long) cx << 32 | (cy & 0xFFFFFFFFL);
+		chunk = chunks.get(key);
+		if (chunk == null) {
+			chunk = createChunk(cx, cy, key);
+			chunks.put(key, chunk);
+		}
+		last = chunk;
+		return chunk;
+	}
+
+	/**
+	 * Places the chunk's mines from the seed and counts them, using a margin of
+	 * one cell from the neighboring chunks, then restores what the player did to
+	 * it from the store.
+	 */
+	private Chunk createChunk(int cx, int cy, long key) {
+		Chunk chunk = new Chunk(cx, cy, key);
+		int side = CHUNK_SIZE + 2;
+		boolean[] mines = new boolean[side * side];
+		int x0 = cx << CHUNK_BITS;
+		int y0 = cy << CHUNK_BITS;
+		for (int dx = 0; dx < side; dx++) {
+			for (int dy = 0; dy < side; dy++)
+				mines[dx * side + dy] = hasMine(x0 + dx - 1, y0 + dy - 1);
+		}
+
+		for (int dx = 0; dx < CHUNK_SIZE; dx++) {
+			for (int dy = 0; dy < CHUNK_SIZE; dy++) {
+				int center = (dx + 1) * side + dy + 1;
+				int count = 0;
+				for (int row = center - side; row <= center + side; row += side) {
+					if (mines[row - 1])
+						count++;
+					if (mines[row])
+						count++;
+					if (mines[row + 1])
+						count++;
+				}
+				boolean mine = mines[center];
+				if (mine)
+					count--;
+				chunk.cells[dx * CHUNK_SIZE + dy] = (byte) ((mine ? MINE : 0) | count);
+			}
+		}
+
+		try {
+			if (store.read(key, chunk.cells, REVEALED, FLAG))
+				loaded++;
+			else
+				created++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return chunk;
+	}
+
+	private void evict(Chunk chunk) {
+		chunk.evicted = true;
+		if (chunk == last)
+			last = null;
+		if (!chunk.dirty)
+			return;
+		try {
+			store.write(chunk.key, chunk.cells, REVEALED, FLAG);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * The cells of a chunk, packed one byte per cell as in {@link BoardModel}.
+	 */
+	private static final class Chunk {
+
+		final int cx, cy;
+		final long key;
+		final byte[] cells = new byte[CHUNK_SIZE * CHUNK_SIZE];
+		boolean dirty;
+		boolean evicted;
+
+		Chunk(int cx, int cy, long key) {
+			this.cx = cx;
+			this.cy = cy;
+			this.key = key;
+		}
+
+		int index(int x, int y) {
+			return (x & CHUNK_MASK) << CHUNK_BITS | (y & CHUNK_MASK);
+		}
+
+	}
+
+	/**
+	 * The cells changed by a move on an endless board, reused by every move.
+	 */
+	public static final class Delta {
+
+		private int[] xs = new int[64];
+		private int[] ys = new int[64];
+		private int size;
+
+		private void clear() {
+			size = 0;
+		}
+
+		private void add(int x, int y) {
+			if (size == xs.length) {
+				xs = Arrays.copyOf(xs, size * 2);
+				ys = Arrays.copyOf(ys, size * 2);
+			}
+			xs[size] = x;
+			ys[size] = y;
+			size++;
+		}
+
+		/**
+		 * @return the number of cells changed
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @param n the position of the change in the delta
+		 * @return the row of the changed cell
+		 */
+		public int getX(int n) {
+			return xs[n];
+		}
+
+		/**
+		 * @param n the position of the change in the delta
+		 * @return the column of the changed cell
+		 */
+		public int getY(int n) {
+			return ys[n];
+		}
+
+	}
+
+}
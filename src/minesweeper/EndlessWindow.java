@@ -0,0 +1,278 @@
+package minesweeper;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
+import javax.swing.border.EmptyBorder;
+
+/**
+ * A window for the endless game, showing a viewport onto an
+ * {@link EndlessBoard}. Only the cells in the viewport are painted, and only
+ * their chunks need to be in memory.
+ * <p>
+ * Clicking a cell reveals it and right-clicking flags it, as on the other
+ * boards. Dragging with any button, or pressing the arrow keys (with Shift to
+ * move faster), moves the viewport.
+ *
+ * @author laurencousin
+ *
+ */
+public class EndlessWindow extends JFrame {
+
+	private static final long serialVersionUID = 1L;
+
+	// The viewport's size in cells
+	private static final int COLUMNS = 40;
+	private static final int ROWS = 25;
+	// Chunks kept in memory: about 1 MB of cells
+	private static final int MAX_CHUNKS = 256;
+	// Pixels the mouse must move before a press becomes a drag
+	private static final int DRAG_THRESHOLD = 4;
+
+	private final EndlessBoard board;
+	private final Path storeFile;
+	private final JLabel lblScore;
+	private final Viewport viewport;
+
+	/**
+	 * Opens a window with a new endless board. Chunks evicted from memory are kept
+	 * in a temporary file, which is deleted when the window closes.
+	 *
+	 * @param seed    the world seed
+	 * @param density the fraction of cells which hold mines
+	 * @throws IOException if the chunk store cannot be created
+	 */
+	public EndlessWindow(long seed, double density) throws IOException {
+		super("Minesweeper - Endless");
+		storeFile = Files.createTempFile("minesweeper-endless", ".chunks");
+		board = new EndlessBoard(seed, density, MAX_CHUNKS,
+				new ChunkStore(storeFile, seed, EndlessBoard.CHUNK_SIZE * EndlessBoard.CHUNK_SIZE));
+
+		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				try {
+					board.close();
+					Files.deleteIfExists(storeFile);
+				} catch (IOException ex) {
+					ex.printStackTrace();
+				}
+			}
+		});
+
+		lblScore = new JLabel();
+		lblScore.setBorder(new EmptyBorder(5, 5, 5, 5));
+		viewport = new Viewport();
+		getContentPane().add(lblScore, BorderLayout.NORTH);
+		getContentPane().add(viewport, BorderLayout.CENTER);
+		pack();
+		setLocationByPlatform(true);
+
+		board.reveal(0, 0);
+		updateScore();
+	}
+
+	private void updateScore() {
+		String score = String.format(Locale.ROOT, "Revealed: %d    Flags: %d    Chunks in memory: %d",
+				board.getRevealedCells(), board.getNumFlags(), board.getChunksInMemory());
+		if (board.getStatus() == Status.LOSE)
+			score = "Boom! " + score;
+		lblScore.setText(score);
+	}
+
+	/**
+	 * The part of the board in view. Its top-left cell is at (top, left).
+	 */
+	private final class Viewport extends JComponent {
+
+		private static final long serialVersionUID = 1L;
+
+		private int top = -ROWS / 2;
+		private int left = -COLUMNS / 2;
+
+		// Where the mouse was pressed and the viewport at the time, for dragging
+		private int pressX, pressY, pressTop, pressLeft;
+		private boolean dragging;
+
+		Viewport() {
+			setOpaque(true);
+			setBackground(TileCache.HIDDEN_COLOR);
+			setPreferredSize(new Dimension(COLUMNS * Board.CELL_WIDTH, ROWS * Board.CELL_HEIGHT));
+			setFocusable(true);
+
+			MouseAdapter mouse = new MouseAdapter() {
+				@Override
+				public void mousePressed(MouseEvent e) {
+					requestFocusInWindow();
+					pressX = e.getX();
+					pressY = e.getY();
+					pressTop = top;
+					pressLeft = left;
+					dragging = false;
+				}
+
+				@Override
+				public void mouseDragged(MouseEvent e) {
+					int dx = e.getX() - pressX;
+					int dy = e.getY() - pressY;
+					if (!dragging && Math.abs(dx) + Math.abs(dy) < DRAG_THRESHOLD)
+						return;
+					dragging = true;
+					moveTo(pressTop - Math.floorDiv(dy, Board.CELL_HEIGHT), pressLeft - Math.floorDiv(dx, Board.CELL_WIDTH));
+				}
+
+				@Override
+				public void mouseReleased(MouseEvent e) {
+					if (dragging)
+						return;
+					int x = top + Math.floorDiv(e.getY(), Board.CELL_HEIGHT);
+					int y = left + Math.floorDiv(e.getX(), Board.CELL_WIDTH);
+					EndlessBoard.Delta delta;
+					if (SwingUtilities.isLeftMouseButton(e))
+						delta = board.reveal(x, y);
+					else if (SwingUtilities.isRightMouseButton(e))
+						delta = board.toggleFlag(x, y);
+					else
+						return;
+					repaintChanged(delta);
+					updateScore();
+				}
+			};
+			addMouseListener(mouse);
+			addMouseMotionListener(mouse);
+
+			addKeyListener(new KeyAdapter() {
+				@Override
+				public void keyPressed(KeyEvent e) {
+					int step = e.isShiftDown() ? 10 : 1;
+					switch (e.getKeyCode()) {
+					case KeyEvent.VK_UP:
+						moveTo(top - step, left);
+						break;
+					case KeyEvent.VK_DOWN:
+						moveTo(top + step, left);
+						break;
+					case KeyEvent.VK_LEFT:
+						moveTo(top, left - step);
+						break;
+					case KeyEvent.VK_RIGHT:
+						moveTo(top, left + step);
+						break;
+					default:
+						break;
+					}
+				}
+			});
+		}
+
+		private void moveTo(int newTop, int newLeft) {
+			if (newTop == top && newLeft == left)
+				return;
+			top = newTop;
+			left = newLeft;
+			repaint();
+			updateScore();
+		}
+
+		/**
+		 * Repaints the changed cells which are in view.
+		 */
+		private void repaintChanged(EndlessBoard.Delta delta) {
+			if (board.getStatus() == Status.LOSE) {
+				// Every mine in view is shown
+				repaint();
+				return;
+			}
+			int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+			int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+			for (int n = 0; n < delta.size(); n++) {
+				int x = Math.max(top, Math.min(top + ROWS, delta.getX(n)));
+				int y = Math.max(left, Math.min(left + COLUMNS, delta.getY(n)));
+				minX = Math.min(minX, x);
+				maxX = Math.max(maxX, x);
+				minY = Math.min(minY, y);
+				maxY = Math.max(maxY, y);
+			}
+			if (delta.size() > 0)
+				repaint((minY - left) * Board.CELL_WIDTH, (minX - top) * Board.CELL_HEIGHT,
+						(maxY - minY + 1) * Board.CELL_WIDTH, (maxX - minX + 1) * Board.CELL_HEIGHT);
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			Rectangle clip = g.getClipBounds();
+			if (clip == null)
+				clip = new Rectangle(0, 0, getWidth(), getHeight());
+
+			int firstRow = clip.y / Board.CELL_HEIGHT;
+			int lastRow = (clip.y + clip.height - 1) / Board.CELL_HEIGHT;
+			int firstColumn = clip.x / Board.CELL_WIDTH;
+			int lastColumn = (clip.x + clip.width - 1) / Board.CELL_WIDTH;
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int column = firstColumn; column <= lastColumn; column++)
+					paintCell(g, top + row, left + column, column * Board.CELL_WIDTH, row * Board.CELL_HEIGHT);
+			}
+		}
+
+		/**
+		 * Paints a cell as {@link BoardCanvas} does.
+		 */
+		private void paintCell(Graphics g, int x, int y, int px, int py) {
+			int w = Board.CELL_WIDTH;
+			int h = Board.CELL_HEIGHT;
+			boolean lost = board.getStatus() == Status.LOSE;
+			boolean mine = lost && board.hasMine(x, y);
+
+			Color background = TileCache.HIDDEN_COLOR;
+			int tile = 0;
+			boolean raised = true;
+			if (board.isRevealed(x, y) || mine) {
+				raised = false;
+				if (mine) {
+					background = TileCache.MINE_COLOR;
+				} else {
+					background = TileCache.REVEALED_COLOR;
+					tile = board.getNumAdjacentMines(x, y);
+				}
+			} else if (board.hasFlag(x, y)) {
+				tile = lost ? TileCache.MISSED_FLAG : TileCache.FLAG;
+			}
+
+			g.setColor(background);
+			g.fillRect(px, py, w, h);
+			if (raised) {
+				g.setColor(Color.WHITE);
+				g.drawLine(px, py, px + w - 2, py);
+				g.drawLine(px, py, px, py + h - 2);
+				g.setColor(TileCache.SHADOW_COLOR);
+				g.drawLine(px + w - 1, py, px + w - 1, py + h - 1);
+				g.drawLine(px, py + h - 1, px + w - 1, py + h - 1);
+			} else {
+				g.setColor(TileCache.GRID_COLOR);
+				g.drawRect(px, py, w - 1, h - 1);
+			}
+			if (tile != 0)
+				TileCache.drawTile(g, tile, px, py, w, 1);
+		}
+
+	}
+
+}
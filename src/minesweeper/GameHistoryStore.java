@@ -0,0 +1,623 @@
+package minesweeper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps every finished game in an append-only file, with indexes in memory
+ * which answer the history and leaderboard queries without scanning the file.
+ * <p>
+ * The file starts with a 16-byte header:
+ *
+ * <pre>
+ * offset size field
+ *      0    4 magic "MSWH"
+ *      4    2 format version
+ *      6    2 reserved
+ *      8    4 record size in bytes
+ *     12    4 reserved
+ * </pre>
+ *
+ * followed by one 48-byte record per game, in the order the games ended:
+ *
+ * <pre>
+ * offset size field
+ *      0    8 when the game ended, in milliseconds since the epoch
+ *      8    8 seed used to place the mines
+ *     16    8 game time in milliseconds
+ *     24    4 width
+ *     28    4 height
+ *     32    4 number of mines
+ *     36    4 number of moves
+ *     40    4 3BV of the board
+ *     44    1 status (1 win, 2 loss)
+ *     45    1 topology (0 square, 1 torus, 2 hexagonal)
+ *     46    2 reserved
+ * </pre>
+ *
+ * Since records have a fixed size, record <i>n</i> is read directly from its
+ * offset. A record which was only partly written before a crash is cut off
+ * when the file is next opened. All values are big-endian.
+ * <p>
+ * For each {@link Category} of board, the store keeps the numbers of its
+ * records in order, so a page of its history is found in constant time, and
+ * the times of its wins in a {@link SortedLongSet}, so its best times are
+ * found in O(log n). The indexes are rebuilt from the file when the store is
+ * opened.
+ * <p>
+ * Recording a game only appends the record to a buffer in memory, so it never
+ * blocks the event dispatch thread on the disk. A single background thread
+ * loads the file, then writes the buffered records and adds them to the
+ * indexes {@link #COMMIT_INTERVAL_MILLIS} milliseconds after the first of them
+ * was recorded, and stays idle while no games are; queries see the games
+ * written so far. Games recorded at a high rate, by the bots of a
+ * {@link Tournament}, share one write per interval. Each write goes right
+ * after the last record indexed, and a write which fails is cut off again, so
+ * a record is always found at its offset.
+ *
+ * @author laurencousin
+ *
+ */
+public class GameHistoryStore implements Closeable {
+
+	/** Longest time a recorded game waits to be written. */
+	public static final long COMMIT_INTERVAL_MILLIS = 100;
+	/** The name of the history file in the game's directory. */
+	public static final String FILE_NAME = "history.msh";
+
+	static final int MAGIC = 0x4D535748; // "MSWH"
+	static final short VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int RECORD_SIZE = 48;
+
+	// Records read from the file at once when loading it
+	private static final int LOAD_BATCH = 16384;
+	// Each status by the code it is stored as
+	private static final Status[] STATUSES = { Status.INPROGRESS, Status.WIN, Status.LOSE };
+
+	private final Path path;
+	private final ScheduledExecutorService writer = Executors
+			.newSingleThreadScheduledExecutor(new DaemonThreadFactory("game-history"));
+
+	// Guarded by this: games recorded since the last commit, and whether a commit is scheduled for them
+	private ByteBuffer pending = newBuffer(RECORD_SIZE * 16);
+	private ByteBuffer committing = newBuffer(RECORD_SIZE * 16);
+	private boolean commitScheduled;
+
+	// Guarded by indexLock: the indexes of the records written so far
+	private final Object indexLock = new Object();
+	private final Map<Category, CategoryIndex> categories = new HashMap<>();
+	private int written;
+
+	// Only used on the writer thread, and by readers once records are indexed
+	private volatile FileChannel channel;
+
+	/**
+	 * Opens the store kept in the given file, creating the file when the first
+	 * game is recorded. The file is loaded in the background.
+	 *
+	 * @param path the history file
+	 */
+	public GameHistoryStore(Path path) {
+		this.path = path;
+		writer.execute(new Runnable() {
+			public void run() {
+				try {
+					open();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				close();
+			}
+		}, "game-history-shutdown"));
+	}
+
+	/**
+	 * Records a finished game. The record is written in the background.
+	 *
+	 * @param record the game
+	 */
+	public synchronized void record(GameRecord record) {
+		if (pending.remaining() < RECORD_SIZE) {
+			ByteBuffer grown = newBuffer(pending.capacity() * 2);
+			pending.flip();
+			grown.put(pending);
+			pending = grown;
+		}
+		pending.putLong(record.getFinishedAt());
+		pending.putLong(record.getSeed());
+		pending.putLong(record.getElapsedTime());
+		pending.putInt(record.getWidth());
+		pending.putInt(record.getHeight());
+		pending.putInt(record.getNumMines());
+		pending.putInt(record.getMoves());
+		pending.putInt(record.getBoardValue());
+		pending.put((byte) code(record.getStatus()));
+		pending.put((byte) record.getTopology().ordinal());
+		pending.putShort((short) 0);
+		if (!commitScheduled) {
+			commitScheduled = true;
+			writer.schedule(new Runnable() {
+				public void run() {
+					commit();
+				}
+			}, COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return the number of games written so far
+	 */
+	public int size() {
+		synchronized (indexLock) {
+			return written;
+		}
+	}
+
+	/**
+	 * @return every kind of board with at least one game, in order
+	 */
+	public List<Category> getCategories() {
+		List<Category> list;
+		synchronized (indexLock) {
+			list = new ArrayList<>(categories.keySet());
+		}
+		list.sort(null);
+		return list;
+	}
+
+	/**
+	 * Returns a page of the history of every game, newest first.
+	 *
+	 * @param from  the number of newer games to skip
+	 * @param count the most games to return
+	 * @return the games
+	 * @throws IOException if the file cannot be read
+	 */
+	public List<GameRecord> getHistory(int from, int count) throws IOException {
+		int[] numbers;
+		synchronized (indexLock) {
+			int last = written - 1 - from;
+			numbers = new int[Math.max(0, Math.min(count, last + 1))];
+			for (int k = 0; k < numbers.length; k++)
+				numbers[k] = last - k;
+		}
+		return read(numbers);
+	}
+
+	/**
+	 * Returns a page of the history of the games on one kind of board, newest
+	 * first.
+	 *
+	 * @param category the kind of board
+	 * @param from     the number of newer games to skip
+	 * @param count    the most games to return
+	 * @return the games
+	 * @throws IOException if the file cannot be read
+	 */
+	public List<GameRecord> getHistory(Category category, int from, int count) throws IOException {
+		int[] numbers;
+		synchronized (indexLock) {
+			CategoryIndex index = categories.get(category);
+			int last = index == null ? -1 : index.games - 1 - from;
+			numbers = new int[Math.max(0, Math.min(count, last + 1))];
+			for (int k = 0; k < numbers.length; k++)
+				numbers[k] = index.numbers[last - k];
+		}
+		return read(numbers);
+	}
+
+	/**
+	 * Returns the number of games played on one kind of board.
+	 *
+	 * @param category the kind of board
+	 * @return the number of games
+	 */
+	public int getGames(Category category) {
+		synchronized (indexLock) {
+			CategoryIndex index = categories.get(category);
+			return index == null ? 0 : index.games;
+		}
+	}
+
+	/**
+	 * Returns the number of games won on one kind of board.
+	 *
+	 * @param category the kind of board
+	 * @return the number of wins
+	 */
+	public int getWins(Category category) {
+		synchronized (indexLock) {
+			CategoryIndex index = categories.get(category);
+			return index == null ? 0 : index.wins.size();
+		}
+	}
+
+	/**
+	 * Returns the fastest wins on one kind of board, fastest first. Wins in the
+	 * same time are ordered by when they were played.
+	 *
+	 * @param category the kind of board
+	 * @param count    the most games to return
+	 * @return the games
+	 * @throws IOException if the file cannot be read
+	 */
+	public List<GameRecord> getBestTimes(Category category, int count) throws IOException {
+		long[] keys;
+		int n = 0;
+		synchronized (indexLock) {
+			CategoryIndex index = categories.get(category);
+			keys = new long[index == null ? 0 : Math.min(count, index.wins.size())];
+			if (index != null)
+				n = index.wins.head(keys);
+		}
+		int[] numbers = new int[n];
+		for (int k = 0; k < n; k++)
+			numbers[k] = (int) keys[k];
+		return read(numbers);
+	}
+
+	/**
+	 * Returns the fastest win on one kind of board.
+	 *
+	 * @param category the kind of board
+	 * @return the game, or null if no game was won
+	 * @throws IOException if the file cannot be read
+	 */
+	public GameRecord getBestTime(Category category) throws IOException {
+		List<GameRecord> best = getBestTimes(category, 1);
+		return best.isEmpty() ? null : best.get(0);
+	}
+
+	/**
+	 * Writes the games recorded so far and waits for the file to be written, for
+	 * at most a second.
+	 */
+	@Override
+	public void close() {
+		try {
+			writer.submit(new Runnable() {
+				public void run() {
+					commit();
+				}
+			}).get(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException | RejectedExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Opens the file, cutting off a torn last record, and indexes every record
+	 * in it.
+	 */
+	private void open() throws IOException {
+		if (Files.notExists(path))
+			return;
+		FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = newBuffer(HEADER_SIZE);
+			readFully(file, header, 0);
+			header.flip();
+			if (header.getInt() != MAGIC)
+				throw new StreamCorruptedException("Not a game history: " + path);
+			short version = header.getShort();
+			if (version > VERSION)
+				throw new IOException("Game history uses format version " + version
+						+ ", but only versions up to " + VERSION + " are supported");
+			header.getShort();
+			if (header.getInt() != RECORD_SIZE)
+				throw new StreamCorruptedException("Corrupt game history header");
+
+			long records = (file.size() - HEADER_SIZE) / RECORD_SIZE;
+			if (records > Integer.MAX_VALUE)
+				throw new IOException("Game history holds too many games");
+			file.truncate(HEADER_SIZE + records * RECORD_SIZE);
+
+			ByteBuffer batch = newBuffer(RECORD_SIZE * LOAD_BATCH);
+			for (long n = 0; n < records; n += LOAD_BATCH) {
+				batch.clear().limit((int) Math.min(LOAD_BATCH, records - n) * RECORD_SIZE);
+				readFully(file, batch, HEADER_SIZE + n * RECORD_SIZE);
+				batch.flip();
+				index(batch);
+			}
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		channel = file;
+	}
+
+	/**
+	 * Appends the games recorded since the last commit to the file, then adds
+	 * them to the indexes. The records are written right after the records
+	 * indexed so far; if the write fails, whatever part of it reached the file
+	 * is cut off again, so the next commit does not land after torn bytes.
+	 */
+	private void commit() {
+		synchronized (this) {
+			commitScheduled = false;
+			if (pending.position() == 0)
+				return;
+			ByteBuffer swap = committing;
+			committing = pending;
+			pending = swap;
+			pending.clear();
+		}
+		committing.flip();
+		FileChannel file = channel;
+		long end;
+		synchronized (indexLock) {
+			end = HEADER_SIZE + (long) written * RECORD_SIZE;
+		}
+		try {
+			if (file == null)
+				file = create();
+			long position = end;
+			while (committing.hasRemaining())
+				position += file.write(committing, position);
+			committing.rewind();
+			index(committing);
+		} catch (IOException e) {
+			// Keep playing; these games are lost, but the file stays whole
+			e.printStackTrace();
+			if (file != null) {
+				try {
+					file.truncate(end);
+				} catch (IOException truncateFailed) {
+					e.addSuppressed(truncateFailed);
+				}
+			}
+		}
+		committing.clear();
+	}
+
+	/**
+	 * Creates the file with its header, when the first game is recorded. A file
+	 * whose header could not be written is deleted, so the next commit tries
+	 * again.
+	 */
+	private FileChannel create() throws IOException {
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = newBuffer(HEADER_SIZE);
+			header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(RECORD_SIZE).putInt(0).flip();
+			while (header.hasRemaining())
+				file.write(header);
+		} catch (IOException e) {
+			file.close();
+			Files.deleteIfExists(path);
+			throw e;
+		}
+		channel = file;
+		return file;
+	}
+
+	/**
+	 * Adds the records remaining in the buffer, which follow the records written
+	 * so far in the file, to the indexes.
+	 */
+	private void index(ByteBuffer records) {
+		synchronized (indexLock) {
+			CategoryIndex index = null;
+			while (records.remaining() >= RECORD_SIZE) {
+				int start = records.position();
+				long elapsedTime = records.getLong(start + 16);
+				int width = records.getInt(start + 24);
+				int height = records.getInt(start + 28);
+				int numMines = records.getInt(start + 32);
+				int status = records.get(start + 44);
+				if (status < 0 || status >= STATUSES.length)
+					status = 0;
+				int topology = records.get(start + 45);
+				records.position(start + RECORD_SIZE);
+
+				// Consecutive games are usually on the same kind of board
+				if (index == null || !index.category.is(width, height, numMines, topology)) {
+					Category category = new Category(width, height, numMines, Topology.of(topology));
+					index = categories.get(category);
+					if (index == null) {
+						index = new CategoryIndex(category);
+						categories.put(category, index);
+					}
+				}
+				index.add(written, STATUSES[status] == Status.WIN, elapsedTime);
+				written++;
+			}
+		}
+	}
+
+	/**
+	 * Reads the records with the given numbers, which must have been indexed.
+	 */
+	private List<GameRecord> read(int[] numbers) throws IOException {
+		List<GameRecord> records = new ArrayList<>(numbers.length);
+		if (numbers.length == 0)
+			return records;
+		FileChannel file = channel;
+		ByteBuffer buffer = newBuffer(RECORD_SIZE);
+		for (int number : numbers) {
+			buffer.clear();
+			readFully(file, buffer, HEADER_SIZE + (long) number * RECORD_SIZE);
+			buffer.flip();
+			long finishedAt = buffer.getLong();
+			long seed = buffer.getLong();
+			long elapsedTime = buffer.getLong();
+			int width = buffer.getInt();
+			int height = buffer.getInt();
+			int numMines = buffer.getInt();
+			int moves = buffer.getInt();
+			int boardValue = buffer.getInt();
+			int status = buffer.get();
+			int topology = buffer.get();
+			if (status < 0 || status >= STATUSES.length)
+				throw new StreamCorruptedException("Corrupt game " + number + " in game history");
+			records.add(new GameRecord(finishedAt, width, height, numMines, Topology.of(topology), seed,
+					STATUSES[status], elapsedTime, moves, boardValue));
+		}
+		return records;
+	}
+
+	private static int code(Status status) {
+		int c = 0;
+		while (STATUSES[c] != status)
+			c++;
+		return c;
+	}
+
+	private static void readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = file.read(buffer, position);
+			if (read < 0)
+				throw new StreamCorruptedException("Game history is truncated");
+			position += read;
+		}
+	}
+
+	private static ByteBuffer newBuffer(int capacity) {
+		return ByteBuffer.allocate(capacity).order(ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * A kind of board: games are only ranked against games on the same kind.
+	 * Categories sort by topology, then by number of cells, then by number of
+	 * mines, so the presets come first, from Easy to Hard.
+	 */
+	public static final class Category implements Comparable<Category> {
+
+		private final int width, height, numMines;
+		private final Topology topology;
+
+		/**
+		 * Creates a category.
+		 *
+		 * @param width    the number of columns
+		 * @param height   the number of rows
+		 * @param numMines the number of mines
+		 * @param topology how the cells are connected
+		 */
+		public Category(int width, int height, int numMines, Topology topology) {
+			this.width = width;
+			this.height = height;
+			this.numMines = numMines;
+			this.topology = topology;
+		}
+
+		/**
+		 * @return the number of columns
+		 */
+		public int getWidth() {
+			return width;
+		}
+
+		/**
+		 * @return the number of rows
+		 */
+		public int getHeight() {
+			return height;
+		}
+
+		/**
+		 * @return the number of mines
+		 */
+		public int getNumMines() {
+			return numMines;
+		}
+
+		/**
+		 * @return how the cells are connected
+		 */
+		public Topology getTopology() {
+			return topology;
+		}
+
+		private boolean is(int width, int height, int numMines, int topology) {
+			return this.width == width && this.height == height && this.numMines == numMines
+					&& this.topology.ordinal() == topology;
+		}
+
+		@Override
+		public int compareTo(Category other) {
+			int c = topology.compareTo(other.topology);
+			if (c == 0)
+				c = Long.compare((long) width * height, (long) other.width * other.height);
+			if (c == 0)
+				c = Integer.compare(numMines, other.numMines);
+			if (c == 0)
+				c = Integer.compare(width, other.width);
+			return c;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Category))
+				return false;
+			Category other = (Category) o;
+			return width == other.width && height == other.height && numMines == other.numMines
+					&& topology == other.topology;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((width * 31 + height) * 31 + numMines) * 31 + topology.ordinal();
+		}
+
+		@Override
+		public String toString() {
+			Difficulty preset = Difficulty.of(width, height, numMines);
+			String board = (preset != null ? preset + " " : "") + width + "x" + height + ", " + numMines + " mines";
+			return topology == Topology.SQUARE ? board : board + " (" + topology + ")";
+		}
+	}
+
+	/**
+	 * The indexes of one category: the numbers of its records in order, and its
+	 * wins sorted by time, each as the time in the high half of a long and the
+	 * record number in the low half.
+	 */
+	private static final class CategoryIndex {
+
+		private final Category category;
+		private int[] numbers = new int[16];
+		private int games;
+		private final SortedLongSet wins = new SortedLongSet();
+
+		CategoryIndex(Category category) {
+			this.category = category;
+		}
+
+		void add(int number, boolean win, long elapsedTime) {
+			if (games == numbers.length)
+				numbers = Arrays.copyOf(numbers, games * 2);
+			numbers[games++] = number;
+			if (win)
+				wins.add(Math.min(Math.max(elapsedTime, 0), Integer.MAX_VALUE) << 32 | number);
+		}
+	}
+
+}
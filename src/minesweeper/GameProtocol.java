@@ -0,0 +1,114 @@
+package minesweeper;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+
+/**
+ * The binary request/response protocol spoken by {@link GameServer}. All
+ * values are big-endian.
+ * <p>
+ * A request is an opcode byte followed by a fixed-size body:
+ *
+ * <pre>
+ * opcode        body
+ * NEW_GAME 0x01 width (4), height (4), mines (4), seed (8, 0 for a random board)
+ * REVEAL   0x02 cell (4)
+ * FLAG     0x03 cell (4)
+ * CHORD    0x04 cell (4)
+ * STATE    0x05
+ * SAVE     0x06
+ * JOIN     0x07 board id (8), width (4), height (4), mines (4)
+ * POLL     0x08
+ * </pre>
+ *
+ * Cells are numbered <code>i = x * width + y</code>, as in {@link BoardModel}.
+ * Every request gets a response, in order, so requests can be pipelined. A
+ * response starts with {@link #OK} or {@link #ERROR}. An error is followed by
+ * its message, as written by <code>DataOutput.writeUTF</code>; unknown opcodes
+ * also close the connection. Successful responses continue with:
+ *
+ * <pre>
+ * NEW_GAME          nothing
+ * REVEAL/FLAG/CHORD status (1), changed cells n (4), then n times: cell (4), value (1)
+ * STATE             status (1), width (4), height (4), mines (4), flags (4),
+ *                   elapsed milliseconds (8), then width * height values (1 each)
+ * SAVE              length (4), then a save file as written by {@link SaveFormat}
+ * JOIN              player (4), snapshot
+ * POLL              status (1), then either 0 (1), deltas n (4), then n times:
+ *                       sequence (8), player (4), cells m (4), then m times:
+ *                       cell (4), value (1), version (4)
+ *                   or 1 (1) and a snapshot, if the connection fell too far behind
+ * </pre>
+ *
+ * A snapshot is the sequence number of the first delta it may not reflect (8),
+ * width (4), height (4), mines (4), then width * height times: value (1),
+ * version (4).
+ * <p>
+ * JOIN joins the {@link SharedBoard} with the given id, creating it with the
+ * given size if no connection is playing on it, and leaves any shared board
+ * joined before; NEW_GAME leaves it too. While a connection is on a shared
+ * board, its moves, STATE and SAVE apply to that board, and POLL returns the
+ * changes made by every player since the last poll. Deltas arrive in sequence
+ * order, but a client should only apply a cell's new value if its version is
+ * newer than the one it holds, as {@link SharedBoard#isNewer} decides.
+ * <p>
+ * A status is the ordinal of {@link Status}. A value is what the player sees of
+ * a cell: 0 to 8 for a revealed number, or {@link #HIDDEN}, {@link #FLAGGED} or
+ * {@link #MINE}.
+ *
+ * @author laurencousin
+ *
+ */
+public final class GameProtocol {
+
+	public static final int NEW_GAME = 0x01;
+	public static final int REVEAL = 0x02;
+	public static final int FLAG = 0x03;
+	public static final int CHORD = 0x04;
+	public static final int STATE = 0x05;
+	public static final int SAVE = 0x06;
+	public static final int JOIN = 0x07;
+	public static final int POLL = 0x08;
+
+	public static final int OK = 0;
+	public static final int ERROR = 1;
+
+	public static final int HIDDEN = 9;
+	public static final int FLAGGED = 10;
+	public static final int MINE = 11;
+
+	private GameProtocol() {
+	}
+
+	/**
+	 * Returns the value the player sees of a cell.
+	 *
+	 * @param model the board model
+	 * @param i     the cell index
+	 * @return 0 to 8, {@link #HIDDEN}, {@link #FLAGGED} or {@link #MINE}
+	 */
+	public static int visibleValue(BoardModel model, int i) {
+		if (model.isRevealed(i))
+			return model.hasMine(i) ? MINE : model.getNumAdjacentMines(i);
+		return model.hasFlag(i) ? FLAGGED : HIDDEN;
+	}
+
+	/**
+	 * Parses a server address: <code>unix:PATH</code> for a Unix-domain socket,
+	 * <code>HOST:PORT</code>, or just <code>PORT</code> on the loopback address.
+	 *
+	 * @param address the address
+	 * @return the socket address
+	 */
+	public static SocketAddress parseAddress(String address) {
+		if (address.startsWith("unix:"))
+			return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+		int colon = address.lastIndexOf(':');
+		if (colon < 0)
+			return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+		return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+	}
+
+}
@@ -0,0 +1,188 @@
+package minesweeper;
+
+import java.util.BitSet;
+
+/**
+ * A finished game, as kept by a {@link GameHistoryStore}: the board it was
+ * played on, how it ended, and how long and how many moves it took.
+ * <p>
+ * Each record also holds the board's 3BV (Bechtel's Board Benchmark Value):
+ * the least number of clicks which reveal every safe cell, counting one click
+ * per opening of zeros and one per numbered cell that no opening reveals. It
+ * measures how hard the board was, so times on boards of the same size can be
+ * compared, and 3BV per second measures how efficiently the player played.
+ *
+ * @author laurencousin
+ *
+ */
+public final class GameRecord {
+
+	private final long finishedAt;
+	private final int width, height, numMines;
+	private final Topology topology;
+	private final long seed;
+	private final Status status;
+	private final long elapsedTime;
+	private final int moves;
+	private final int boardValue;
+
+	/**
+	 * Creates a record.
+	 *
+	 * @param finishedAt  when the game ended, in milliseconds since the epoch
+	 * @param width       the number of columns
+	 * @param height      the number of rows
+	 * @param numMines    the number of mines
+	 * @param topology    how the cells were connected
+	 * @param seed        the seed the mines were placed from
+	 * @param status      how the game ended
+	 * @param elapsedTime the game time in milliseconds
+	 * @param moves       the number of moves made
+	 * @param boardValue  the board's 3BV
+	 */
+	public GameRecord(long finishedAt, int width, int height, int numMines, Topology topology, long seed,
+			Status status, long elapsedTime, int moves, int boardValue) {
+		this.finishedAt = finishedAt;
+		this.width = width;
+		this.height = height;
+		this.numMines = numMines;
+		this.topology = topology;
+		this.seed = seed;
+		this.status = status;
+		this.elapsedTime = elapsedTime;
+		this.moves = moves;
+		this.boardValue = boardValue;
+	}
+
+	/**
+	 * Creates a record of a game which has just ended.
+	 *
+	 * @param model       the board model, with its mines placed
+	 * @param elapsedTime the game time in milliseconds
+	 * @param moves       the number of moves made
+	 * @return the record
+	 */
+	public static GameRecord of(BoardModel model, long elapsedTime, int moves) {
+		return new GameRecord(System.currentTimeMillis(), model.getWidth(), model.getHeight(), model.getNumMines(),
+				model.getTopology(), model.getSeed(), model.getStatus(), elapsedTime, moves, boardValue(model));
+	}
+
+	/**
+	 * Computes the 3BV of a board: one for each opening, a connected region of
+	 * zeros together with the numbers around it, plus one for each safe cell
+	 * outside every opening.
+	 *
+	 * @param model the board model, with its mines placed
+	 * @return the 3BV
+	 */
+	static int boardValue(BoardModel model) {
+		BitSet covered = new BitSet(model.size());
+		IntQueue queue = new IntQueue();
+		int[] adj = new int[Topology.MAX_NEIGHBORS];
+		int value = 0;
+
+		for (int i = 0; i < model.size(); i++) {
+			if (covered.get(i) || model.hasMine(i) || model.getNumAdjacentMines(i) != 0)
+				continue;
+			// A new opening: every zero reachable through zeros, and their neighbors
+			value++;
+			covered.set(i);
+			queue.add(i);
+			while (!queue.isEmpty()) {
+				int c = queue.poll();
+				int n = model.neighbors(c, adj);
+				for (int k = 0; k < n; k++) {
+					int a = adj[k];
+					if (covered.get(a))
+						continue;
+					covered.set(a);
+					if (model.getNumAdjacentMines(a) == 0 && !model.hasMine(a))
+						queue.add(a);
+				}
+			}
+		}
+		for (int i = 0; i < model.size(); i++) {
+			if (!covered.get(i) && !model.hasMine(i))
+				value++;
+		}
+		return value;
+	}
+
+	/**
+	 * @return when the game ended, in milliseconds since the epoch
+	 */
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+
+	/**
+	 * @return the number of columns
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the number of mines
+	 */
+	public int getNumMines() {
+		return numMines;
+	}
+
+	/**
+	 * @return how the cells were connected
+	 */
+	public Topology getTopology() {
+		return topology;
+	}
+
+	/**
+	 * @return the seed the mines were placed from
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return how the game ended
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the game time in milliseconds
+	 */
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * @return the number of moves made
+	 */
+	public int getMoves() {
+		return moves;
+	}
+
+	/**
+	 * @return the board's 3BV
+	 */
+	public int getBoardValue() {
+		return boardValue;
+	}
+
+	/**
+	 * @return the kind of board the game was played on
+	 */
+	public GameHistoryStore.Category getCategory() {
+		return new GameHistoryStore.Category(width, height, numMines, topology);
+	}
+
+}
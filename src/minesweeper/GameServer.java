@@ -0,0 +1,705 @@
+package minesweeper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Hosts many games at once, without a user interface, for clients speaking
+ * {@link GameProtocol} over a TCP or Unix-domain socket.
+ * <p>
+ * Each connection has its own {@link GameSession}, or joins a
+ * {@link SharedBoard} played by every connection which joined it. Connections
+ * do not have threads of their own: one event loop per processor waits on a
+ * {@link Selector} for the connections handed to it, reads whatever requests
+ * have arrived, answers every complete one and writes the responses in one go.
+ * An idle connection therefore costs only its session and buffers, so tens of
+ * thousands fit on one box. A connection whose client is slow to read its
+ * responses is not read from until they have been sent. Requests are cheap,
+ * but a move which opens up a very large board holds up the other connections
+ * on its loop while it runs. Each loop also closes its connections which have
+ * sent nothing for the idle timeout.
+ * <p>
+ * The main method starts a server and reports its throughput and latency every
+ * ten seconds:
+ *
+ * <pre>
+ * java -cp minesweeper.jar minesweeper.GameServer [port | host:port | unix:path] [idle seconds]
+ * </pre>
+ *
+ * @author laurencousin
+ *
+ */
+public class GameServer implements Closeable {
+
+	// Requests are read in batches of up to this many bytes
+	private static final int BUFFER_SIZE = 4096;
+	// Response buffers grown past this size by a large response are dropped once it is sent
+	private static final int RETAINED_BUFFER_SIZE = 64 * 1024;
+	// How long to wait after a failed accept, doubled while accepts keep failing
+	private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+	private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+	private final SocketAddress address;
+	private final long idleTimeoutNanos;
+	private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+	private final Map<Long, SharedBoard> sharedBoards = new ConcurrentHashMap<>();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder accepted = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	private ServerSocketChannel server;
+	private EventLoop[] loops;
+	private Thread[] loopThreads;
+	private volatile boolean open;
+
+	/**
+	 * Creates a server. It starts listening when {@link #start()} is called.
+	 *
+	 * @param address           the TCP or Unix-domain address to listen on
+	 * @param idleTimeoutMillis how long a connection may send nothing before it is
+	 *                          closed
+	 */
+	public GameServer(SocketAddress address, long idleTimeoutMillis) {
+		if (idleTimeoutMillis <= 0)
+			throw new IllegalArgumentException("The idle timeout must be positive");
+		this.address = address;
+		this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+	}
+
+	/**
+	 * Starts a server and prints a report of its traffic every ten seconds until
+	 * the process is stopped.
+	 *
+	 * @param args the address to listen on (port 7878 on the loopback address if
+	 *             absent) and the idle timeout in seconds (300 if absent)
+	 * @throws IOException          if the server cannot listen on the address
+	 * @throws InterruptedException if interrupted
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		SocketAddress address = GameProtocol.parseAddress(args.length > 0 ? args[0] : "7878");
+		long idleSeconds = args.length > 1 ? Long.parseLong(args[1]) : 300;
+
+		try (GameServer server = new GameServer(address, TimeUnit.SECONDS.toMillis(idleSeconds))) {
+			server.start();
+			System.out.println("Listening on " + server.getAddress());
+			long lastRequests = 0;
+			while (true) {
+				Thread.sleep(10_000);
+				long total = server.getRequests();
+				System.out.println(server.report(total - lastRequests, 10));
+				lastRequests = total;
+			}
+		}
+	}
+
+	/**
+	 * Starts listening and accepting connections.
+	 *
+	 * @throws IOException if the server cannot listen on its address
+	 */
+	public synchronized void start() throws IOException {
+		if (server != null)
+			throw new IllegalStateException("The server has already been started");
+
+		if (address instanceof UnixDomainSocketAddress) {
+			// A socket file left behind by a server which did not exit cleanly
+			Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		} else {
+			server = ServerSocketChannel.open();
+		}
+		server.bind(address, 1024);
+		open = true;
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		DaemonThreadFactory factory = new DaemonThreadFactory("game-session");
+		loops = new EventLoop[threads];
+		loopThreads = new Thread[threads];
+		for (int n = 0; n < threads; n++) {
+			loops[n] = new EventLoop(Selector.open());
+			loopThreads[n] = factory.newThread(loops[n]);
+			loopThreads[n].start();
+		}
+
+		Thread acceptor = new DaemonThreadFactory("game-server").newThread(new Runnable() {
+			public void run() {
+				acceptConnections();
+			}
+		});
+		acceptor.start();
+	}
+
+	/**
+	 * @return the address the server is listening on, with the actual port if it
+	 *         was given as 0
+	 * @throws IOException if the address cannot be read
+	 */
+	public SocketAddress getAddress() throws IOException {
+		return server == null ? address : server.getLocalAddress();
+	}
+
+	/**
+	 * @return the number of open connections, each with its own session
+	 */
+	public int getSessions() {
+		return connections.size();
+	}
+
+	/**
+	 * @return the number of shared boards with at least one player
+	 */
+	public int getSharedBoards() {
+		return sharedBoards.size();
+	}
+
+	/**
+	 * @return the number of requests answered since the server started
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * @return the time taken to answer each request, in nanoseconds
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Formats a line reporting the server's traffic.
+	 *
+	 * @param requests the number of requests answered in the period reported
+	 * @param seconds  the length of the period
+	 * @return the report
+	 */
+	public String report(long requests, double seconds) {
+		LatencyHistogram.Snapshot snapshot = latency.snapshot();
+		return String.format(Locale.ROOT,
+				"%d sessions (%d accepted), %.0f requests/s, latency us: p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+				getSessions(), accepted.sum(), requests / seconds, snapshot.getPercentile(0.5) / 1e3,
+				snapshot.getPercentile(0.99) / 1e3, snapshot.getPercentile(0.999) / 1e3, snapshot.getMax() / 1e3);
+	}
+
+	/**
+	 * Stops listening and closes every connection.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (server == null || !open)
+			return;
+		open = false;
+		server.close();
+		for (EventLoop loop : loops)
+			loop.selector.wakeup();
+		try {
+			for (Thread thread : loopThreads)
+				thread.join(TimeUnit.SECONDS.toMillis(1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (address instanceof UnixDomainSocketAddress)
+			Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+	}
+
+	private void acceptConnections() {
+		long backoff = 0;
+		int next = 0;
+		while (open) {
+			SocketChannel channel;
+			try {
+				channel = server.accept();
+			} catch (IOException e) {
+				if (!open)
+					return;
+				/*
+				 * Usually out of file descriptors, which only closing connections cures, so
+				 * wait rather than spin, and report it once rather than on every attempt.
+				 */
+				if (backoff == 0)
+					System.err.println("Cannot accept connections, retrying until a connection closes: " + e);
+				backoff = Math.min(Math.max(backoff * 2, MIN_ACCEPT_BACKOFF_MILLIS), MAX_ACCEPT_BACKOFF_MILLIS);
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException interrupted) {
+					return;
+				}
+				continue;
+			}
+			if (backoff != 0) {
+				System.err.println("Accepting connections again");
+				backoff = 0;
+			}
+
+			try {
+				if (!(address instanceof UnixDomainSocketAddress))
+					channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				channel.configureBlocking(false);
+			} catch (IOException e) {
+				// Closed by the client before it could be set up
+				closeQuietly(channel);
+				continue;
+			}
+			Connection connection = new Connection(channel);
+			connections.add(connection);
+			accepted.increment();
+			loops[next].add(connection);
+			next = (next + 1) % loops.length;
+		}
+	}
+
+	private static void closeQuietly(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Nothing more can be done with it
+		}
+	}
+
+	/**
+	 * Returns the size of the body of a request, which follows its opcode.
+	 *
+	 * @param opcode the opcode of the request
+	 * @return the size of the body in bytes, which is 0 for an unknown opcode
+	 */
+	private static int bodySize(int opcode) {
+		switch (opcode) {
+		case GameProtocol.NEW_GAME:
+			return 20;
+		case GameProtocol.REVEAL:
+		case GameProtocol.FLAG:
+		case GameProtocol.CHORD:
+			return 4;
+		case GameProtocol.JOIN:
+			return 20;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Serves the connections handed to it on one thread, waiting for any of them
+	 * to become readable or writable.
+	 */
+	private final class EventLoop implements Runnable {
+
+		private final Selector selector;
+		// Accepted connections waiting to be registered by the loop's thread
+		private final Queue<Connection> added = new ConcurrentLinkedQueue<>();
+
+		EventLoop(Selector selector) {
+			this.selector = selector;
+		}
+
+		void add(Connection connection) {
+			added.add(connection);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			long sweepNanos = Math.max(idleTimeoutNanos / 4, TimeUnit.SECONDS.toNanos(1));
+			long nextSweep = System.nanoTime() + sweepNanos;
+			try {
+				while (open) {
+					selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextSweep - System.nanoTime())));
+					Connection connection;
+					while ((connection = added.poll()) != null)
+						connection.register(selector);
+					for (SelectionKey key : selector.selectedKeys())
+						((Connection) key.attachment()).ready(key);
+					selector.selectedKeys().clear();
+
+					long now = System.nanoTime();
+					if (now - nextSweep >= 0) {
+						evictIdle(now);
+						nextSweep = now + sweepNanos;
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				for (SelectionKey key : new ArrayList<>(selector.keys()))
+					((Connection) key.attachment()).close();
+				Connection connection;
+				while ((connection = added.poll()) != null)
+					connection.close();
+				try {
+					selector.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		private void evictIdle(long now) {
+			for (SelectionKey key : new ArrayList<>(selector.keys())) {
+				Connection connection = (Connection) key.attachment();
+				if (now - connection.lastActive > idleTimeoutNanos)
+					connection.close();
+			}
+		}
+
+	}
+
+	/**
+	 * A growable buffer for responses, whose bytes are written to the channel
+	 * without copying them.
+	 */
+	private static final class ResponseBuffer extends ByteArrayOutputStream {
+
+		ResponseBuffer() {
+			super(BUFFER_SIZE);
+		}
+
+		ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+
+		int capacity() {
+			return buf.length;
+		}
+
+	}
+
+	/**
+	 * A client connection and its game session. Only the thread of the event
+	 * loop serving it touches it.
+	 */
+	private final class Connection {
+
+		private final SocketChannel channel;
+		private final GameSession session = new GameSession();
+		private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+		private ResponseBuffer responses = new ResponseBuffer();
+		private DataOutputStream out = new DataOutputStream(responses);
+		// The responses being written to the channel, or null if none are
+		private ByteBuffer sending;
+		// Whether to close the connection once the responses have been sent
+		private boolean closing;
+		private SelectionKey key;
+		private long lastActive = System.nanoTime();
+
+		// The shared board joined, if any, and the next delta to send from its log
+		private SharedBoard shared;
+		private long sharedId;
+		private int player;
+		private long nextDelta;
+		private final List<SharedBoard.Delta> deltas = new ArrayList<>();
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void register(Selector selector) {
+			try {
+				key = channel.register(selector, SelectionKey.OP_READ, this);
+			} catch (IOException e) {
+				close();
+			}
+		}
+
+		/**
+		 * Sends the rest of the responses if the channel can take them, then reads
+		 * and answers the requests which have arrived.
+		 */
+		void ready(SelectionKey key) {
+			try {
+				if (key.isValid() && key.isWritable())
+					send();
+				if (key.isValid() && key.isReadable())
+					receive();
+			} catch (IOException e) {
+				// Closed by the client
+				close();
+			}
+		}
+
+		private void receive() throws IOException {
+			if (channel.read(in) < 0) {
+				close();
+				return;
+			}
+			lastActive = System.nanoTime();
+			in.flip();
+			while (!closing && in.hasRemaining()) {
+				int opcode = in.get(in.position()) & 0xFF;
+				if (in.remaining() < 1 + bodySize(opcode))
+					break;
+				in.get();
+				long start = System.nanoTime();
+				if (!answer(opcode))
+					closing = true;
+				latency.record(System.nanoTime() - start);
+				requests.increment();
+			}
+			in.compact();
+			// Answer every request already received before waking the client
+			send();
+		}
+
+		/**
+		 * Writes as much of the responses as the channel takes, and waits for it to
+		 * take the rest before reading more requests.
+		 */
+		private void send() throws IOException {
+			if (sending == null) {
+				if (responses.size() == 0)
+					return;
+				sending = responses.toByteBuffer();
+			}
+			channel.write(sending);
+			if (sending.hasRemaining()) {
+				key.interestOps(SelectionKey.OP_WRITE);
+				return;
+			}
+			sending = null;
+			if (responses.capacity() > RETAINED_BUFFER_SIZE) {
+				responses = new ResponseBuffer();
+				out = new DataOutputStream(responses);
+			} else {
+				responses.reset();
+			}
+			if (closing)
+				close();
+			else
+				key.interestOps(SelectionKey.OP_READ);
+		}
+
+		/**
+		 * Reads the body of a request and writes the response.
+		 *
+		 * @return false if the opcode is unknown and the connection should close
+		 */
+		private boolean answer(int opcode) throws IOException {
+			try {
+				switch (opcode) {
+				case GameProtocol.NEW_GAME:
+					newGame();
+					return true;
+				case GameProtocol.REVEAL:
+					play(Move.Kind.REVEAL, in.getInt());
+					return true;
+				case GameProtocol.FLAG:
+					play(Move.Kind.FLAG, in.getInt());
+					return true;
+				case GameProtocol.CHORD:
+					play(Move.Kind.CHORD, in.getInt());
+					return true;
+				case GameProtocol.STATE:
+					state();
+					return true;
+				case GameProtocol.SAVE:
+					save();
+					return true;
+				case GameProtocol.JOIN:
+					join();
+					return true;
+				case GameProtocol.POLL:
+					poll();
+					return true;
+				default:
+					error("Unknown opcode " + opcode);
+					return false;
+				}
+			} catch (IllegalArgumentException | IllegalStateException e) {
+				error(e.getMessage());
+				return true;
+			}
+		}
+
+		private void newGame() throws IOException {
+			int width = in.getInt();
+			int height = in.getInt();
+			int mines = in.getInt();
+			long seed = in.getLong();
+			session.newGame(width, height, mines, seed);
+			leaveShared();
+			out.writeByte(GameProtocol.OK);
+		}
+
+		private void play(Move.Kind kind, int cell) throws IOException {
+			if (shared != null) {
+				SharedBoard.Delta delta = shared.play(player, kind, cell);
+				out.writeByte(GameProtocol.OK);
+				out.writeByte(shared.getStatus().ordinal());
+				out.writeInt(delta.size());
+				for (int n = 0; n < delta.size(); n++) {
+					out.writeInt(delta.getCell(n));
+					out.writeByte(SharedBoard.visibleValue(delta.getWord(n)));
+				}
+				return;
+			}
+			CellDelta delta = session.play(kind, cell);
+			BoardModel model = session.getModel();
+			out.writeByte(GameProtocol.OK);
+			out.writeByte(model.getStatus().ordinal());
+			out.writeInt(delta.size());
+			for (int n = 0; n < delta.size(); n++) {
+				int i = delta.get(n);
+				out.writeInt(i);
+				out.writeByte(GameProtocol.visibleValue(model, i));
+			}
+		}
+
+		private void state() throws IOException {
+			if (shared != null) {
+				out.writeByte(GameProtocol.OK);
+				out.writeByte(shared.getStatus().ordinal());
+				out.writeInt(shared.getWidth());
+				out.writeInt(shared.getHeight());
+				out.writeInt(shared.getNumMines());
+				out.writeInt(shared.getNumFlags());
+				out.writeLong(shared.getElapsedTime());
+				for (int i = 0; i < shared.size(); i++)
+					out.writeByte(SharedBoard.visibleValue(shared.getWord(i)));
+				return;
+			}
+			BoardModel model = session.getModel();
+			out.writeByte(GameProtocol.OK);
+			out.writeByte(model.getStatus().ordinal());
+			out.writeInt(model.getWidth());
+			out.writeInt(model.getHeight());
+			out.writeInt(model.getNumMines());
+			out.writeInt(model.getNumFlags());
+			out.writeLong(session.getElapsedTime());
+			for (int i = 0; i < model.size(); i++)
+				out.writeByte(GameProtocol.visibleValue(model, i));
+		}
+
+		private void save() throws IOException {
+			byte[] file = SaveFormat.encode(shared != null ? shared.getState() : session.getState(), true);
+			out.writeByte(GameProtocol.OK);
+			out.writeInt(file.length);
+			out.write(file);
+		}
+
+		private void join() throws IOException {
+			final long id = in.getLong();
+			final int width = in.getInt();
+			final int height = in.getInt();
+			final int mines = in.getInt();
+			if (width < 1 || height < 1 || (long) width * height > GameSession.MAX_CELLS)
+				throw new IllegalArgumentException("Boards must have between 1 and " + GameSession.MAX_CELLS + " cells");
+			// Checked before leaving the current board, so a bad request keeps the player's seat
+			if (mines < 0 || mines > width * height)
+				throw new IllegalArgumentException("Cannot place " + mines + " mines in a " + width + "*" + height
+						+ " board");
+			if (shared != null && sharedId == id)
+				throw new IllegalStateException("Already playing on board " + id);
+			leaveShared();
+
+			final int[] joined = new int[1];
+			// Joining inside compute() keeps the last player leaving from removing the board
+			SharedBoard board = sharedBoards.compute(id, new BiFunction<Long, SharedBoard, SharedBoard>() {
+				public SharedBoard apply(Long key, SharedBoard board) {
+					if (board == null)
+						board = new SharedBoard(width, height, mines, MinePlacer.newSeed());
+					joined[0] = board.join();
+					return board;
+				}
+			});
+			shared = board;
+			sharedId = id;
+			player = joined[0];
+
+			out.writeByte(GameProtocol.OK);
+			out.writeInt(player);
+			snapshot();
+		}
+
+		private void poll() throws IOException {
+			if (shared == null)
+				throw new IllegalStateException("Not playing on a shared board");
+			out.writeByte(GameProtocol.OK);
+			out.writeByte(shared.getStatus().ordinal());
+			deltas.clear();
+			if (!shared.read(nextDelta, deltas)) {
+				// Too far behind for the log: start again from the whole board
+				out.writeByte(1);
+				snapshot();
+				return;
+			}
+			out.writeByte(0);
+			out.writeInt(deltas.size());
+			for (SharedBoard.Delta delta : deltas) {
+				out.writeLong(delta.getSequence());
+				out.writeInt(delta.getPlayer());
+				out.writeInt(delta.size());
+				for (int n = 0; n < delta.size(); n++) {
+					int word = delta.getWord(n);
+					out.writeInt(delta.getCell(n));
+					out.writeByte(SharedBoard.visibleValue(word));
+					out.writeInt(SharedBoard.version(word));
+				}
+				nextDelta = delta.getSequence() + 1;
+			}
+			deltas.clear();
+		}
+
+		private void snapshot() throws IOException {
+			int[] words = new int[shared.size()];
+			nextDelta = shared.snapshot(words);
+			out.writeLong(nextDelta);
+			out.writeInt(shared.getWidth());
+			out.writeInt(shared.getHeight());
+			out.writeInt(shared.getNumMines());
+			for (int word : words) {
+				out.writeByte(SharedBoard.visibleValue(word));
+				out.writeInt(SharedBoard.version(word));
+			}
+		}
+
+		private void leaveShared() {
+			if (shared == null)
+				return;
+			final SharedBoard left = shared;
+			shared = null;
+			sharedBoards.computeIfPresent(sharedId, new BiFunction<Long, SharedBoard, SharedBoard>() {
+				public SharedBoard apply(Long key, SharedBoard board) {
+					if (board != left)
+						return board;
+					return board.leave() == 0 ? null : board;
+				}
+			});
+		}
+
+		private void error(String message) throws IOException {
+			out.writeByte(GameProtocol.ERROR);
+			out.writeUTF(message == null ? "" : message);
+		}
+
+		void close() {
+			if (connections.remove(this)) {
+				// Only the loop's thread touches the session, even when evicted
+				leaveShared();
+				closeQuietly(channel);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,248 @@
+package minesweeper;
+
+/**
+ * One player's game and the rules for playing it, without a user interface.
+ * The board window drives a session for its game, and a {@link GameServer}
+ * hosts one for each connection.
+ * <p>
+ * Moves are only accepted while the game is in progress. Revealing a cell
+ * which is already revealed chords it instead. Every move is kept in a
+ * {@link MoveHistory}, so it can be undone, including the move which ended the
+ * game. The clock starts with the first move and stops when the game is won
+ * or lost; undoing the move which ended the game starts it again, without
+ * counting the time it was stopped. A session is used by one thread at a time.
+ *
+ * @author laurencousin
+ *
+ */
+public class GameSession {
+
+	/** The largest board a session will create, in cells. */
+	public static final int MAX_CELLS = 1 << 20;
+
+	/**
+	 * Is told of every move made in a session, for recording the game.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called after a move has been made.
+		 *
+		 * @param kind the kind of move as it was made, so a reveal of a revealed
+		 *             cell is a chord, and an undo or redo is
+		 *             {@link Move.Kind#UNDO} or {@link Move.Kind#REDO}
+		 * @param cell the index of the cell the move was made on
+		 */
+		void played(Move.Kind kind, int cell);
+
+	}
+
+	private BoardModel model;
+	private MoveHistory history;
+	private Listener listener;
+
+	private boolean running;
+	private long startNanos;
+	// The time played up to when the clock was last started or stopped
+	private long elapsedMillis;
+
+	/**
+	 * Returns the move a player's move is made as: revealing a cell which is
+	 * already revealed chords it. Every kind of board applies this rule.
+	 *
+	 * @param kind     the kind of move the player made
+	 * @param revealed whether the cell is revealed
+	 * @return the kind of move to make
+	 * @throws IllegalArgumentException if the move cannot be made by a player
+	 */
+	static Move.Kind resolve(Move.Kind kind, boolean revealed) {
+		switch (kind) {
+		case REVEAL:
+			return revealed ? Move.Kind.CHORD : Move.Kind.REVEAL;
+		case FLAG:
+		case CHORD:
+			return kind;
+		default:
+			throw new IllegalArgumentException(kind + " cannot be made by a player");
+		}
+	}
+
+	/**
+	 * @param listener told of every move made from now on, or null
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts a new game, replacing the current one.
+	 *
+	 * @param width    the number of columns
+	 * @param height   the number of rows
+	 * @param numMines the number of mines
+	 * @param seed     the seed used to place the mines, or 0 for a random board
+	 */
+	public void newGame(int width, int height, int numMines, long seed) {
+		if (width < 1 || height < 1 || (long) width * height > MAX_CELLS)
+			throw new IllegalArgumentException("Boards must have between 1 and " + MAX_CELLS + " cells");
+		newGame(seed == 0 ? new BoardModel(width, height, numMines) : new BoardModel(width, height, numMines, seed));
+	}
+
+	/**
+	 * Starts a new game on a board, replacing the current one. The board may
+	 * already have cells revealed, as a no-guess board does.
+	 *
+	 * @param model the board model
+	 */
+	public void newGame(BoardModel model) {
+		resume(new MoveHistory(model), 0);
+	}
+
+	/**
+	 * Carries on a game which was saved, recovered or replayed, replacing the
+	 * current one. The clock runs on from the time already played, or starts
+	 * with the next move if none was.
+	 *
+	 * @param history     the board model and the moves which can be undone on it
+	 * @param elapsedTime the time already played in milliseconds
+	 */
+	public void resume(MoveHistory history, long elapsedTime) {
+		this.history = history;
+		this.model = history.getModel();
+		elapsedMillis = elapsedTime;
+		running = false;
+		if (elapsedTime > 0 && model.getStatus() == Status.INPROGRESS)
+			startClock();
+	}
+
+	/**
+	 * Makes a move.
+	 *
+	 * @param kind the kind of move, {@link Move.Kind#REVEAL},
+	 *             {@link Move.Kind#FLAG} or {@link Move.Kind#CHORD}
+	 * @param cell the index of the cell the move is made on
+	 * @return the cells changed by the move, valid until the next move
+	 * @throws IllegalStateException    if there is no game in progress
+	 * @throws IllegalArgumentException if the cell is not on the board or the
+	 *                                  move cannot be made by a player
+	 */
+	public CellDelta play(Move.Kind kind, int cell) {
+		BoardModel model = getModel();
+		if (model.getStatus() != Status.INPROGRESS)
+			throw new IllegalStateException("The game is over");
+		if (cell < 0 || cell >= model.size())
+			throw new IllegalArgumentException("No cell " + cell + " on the board");
+
+		kind = resolve(kind, model.isRevealed(cell));
+		if (!running)
+			startClock();
+		CellDelta delta = history.play(kind, cell);
+		afterMove(kind, cell);
+		return delta;
+	}
+
+	/**
+	 * @return true if there is a move to undo
+	 */
+	public boolean canUndo() {
+		return history != null && history.canUndo();
+	}
+
+	/**
+	 * @return true if there is an undone move to redo
+	 */
+	public boolean canRedo() {
+		return history != null && history.canRedo();
+	}
+
+	/**
+	 * Takes back the last move, including the move which ended the game.
+	 *
+	 * @return the cells changed back, valid until the next move
+	 * @throws IllegalStateException if there is no move to undo
+	 */
+	public CellDelta undo() {
+		if (!canUndo())
+			throw new IllegalStateException("No move to undo");
+		boolean wasOver = model.getStatus() != Status.INPROGRESS;
+		int cell = history.undoCell();
+		CellDelta delta = history.undo();
+		if (wasOver && model.getStatus() == Status.INPROGRESS)
+			startClock();
+		afterMove(Move.Kind.UNDO, cell);
+		return delta;
+	}
+
+	/**
+	 * Makes the last undone move again.
+	 *
+	 * @return the cells changed by the move, valid until the next move
+	 * @throws IllegalStateException if there is no move to redo
+	 */
+	public CellDelta redo() {
+		if (!canRedo())
+			throw new IllegalStateException("No move to redo");
+		int cell = history.redoCell();
+		CellDelta delta = history.redo();
+		afterMove(Move.Kind.REDO, cell);
+		return delta;
+	}
+
+	private void afterMove(Move.Kind kind, int cell) {
+		if (running && model.getStatus() != Status.INPROGRESS) {
+			elapsedMillis = getElapsedTime();
+			running = false;
+		}
+		if (listener != null)
+			listener.played(kind, cell);
+	}
+
+	private void startClock() {
+		running = true;
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * @return the board model of the current game
+	 * @throws IllegalStateException if no game has been started
+	 */
+	public BoardModel getModel() {
+		if (model == null)
+			throw new IllegalStateException("No game has been started");
+		return model;
+	}
+
+	/**
+	 * @return the moves made in the current game, which can be undone
+	 * @throws IllegalStateException if no game has been started
+	 */
+	public MoveHistory getHistory() {
+		getModel();
+		return history;
+	}
+
+	/**
+	 * @return the status of the current game
+	 */
+	public Status getStatus() {
+		return getModel().getStatus();
+	}
+
+	/**
+	 * @return the time played so far in milliseconds, or 0 if no game has been
+	 *         started
+	 */
+	public long getElapsedTime() {
+		if (!running)
+			return elapsedMillis;
+		return elapsedMillis + (System.nanoTime() - startNanos) / 1_000_000;
+	}
+
+	/**
+	 * @return the state of the current game, which can be written to a save file
+	 */
+	public GameState getState() {
+		return new GameState(getModel(), getElapsedTime());
+	}
+
+}
@@ -1,7 +1,9 @@
 package minesweeper;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.HashSet;
+import java.util.BitSet;
 import java.util.Set;
 
 /**
@@ -20,70 +22,142 @@ public class GameState implements Serializable {
 	private int height;
 
 	/*
-	 * Each int[] in these sets is an array of two numbers, an x-coordinate and a
-	 * y-coordinate. Thus, the sets track all the coordinate pairs where the cell
-	 * has the respective property.
+	 * Bit i of each set is the cell at index i = x * width + y, so each set uses
+	 * about one bit per cell and answers membership in constant time.
 	 */
-	private Set<int[]> mineLocations;
-	private Set<int[]> flagLocations;
-	private Set<int[]> clickedCells;
+	private BitSet mines;
+	private BitSet flags;
+	private BitSet revealed;
 
 	private long currentTime;
+	private long seed;
+	// Null in games saved before topologies existed, which were all square
+	private Topology topology;
 
 	/**
-	 * Generates a game state from a grid of cells and a timer.
+	 * Generates a game state from a board model and a timer.
 	 *
-	 * @param cells the cells in the board
+	 * @param model the board model
 	 * @param timer the game's timer
 	 */
-	public GameState(Cell[][] cells, GameTimer timer) {
-		height = cells.length;
-		width = cells[0].length;
-
-		mineLocations = new HashSet<>();
-		flagLocations = new HashSet<>();
-		clickedCells = new HashSet<>();
-
-		for (int x = 0; x < cells.length; x++) {
-			for (int y = 0; y < cells[0].length; y++) {
-				if (cells[x][y].hasMine()) {
-					mineLocations.add(new int[] { x, y });
-				}
-				if (cells[x][y].hasFlag()) {
-					flagLocations.add(new int[] { x, y });
-				}
-				if (cells[x][y].isRevealed()) {
-					clickedCells.add(new int[] { x, y });
-				}
+	public GameState(BoardModel model, GameTimer timer) {
+		this(model, timer.getTime());
+	}
+
+	/**
+	 * Generates a game state from a board model and the time played so far, for
+	 * games played without a timer.
+	 *
+	 * @param model       the board model
+	 * @param currentTime the current game time in milliseconds
+	 */
+	public GameState(BoardModel model, long currentTime) {
+		height = model.getHeight();
+		width = model.getWidth();
+
+		int size = model.size();
+		mines = new BitSet(size);
+		flags = new BitSet(size);
+		revealed = new BitSet(size);
+
+		for (int i = 0; i < size; i++) {
+			if (model.hasMine(i)) {
+				mines.set(i);
+			}
+			if (model.hasFlag(i)) {
+				flags.set(i);
+			}
+			if (model.isRevealed(i)) {
+				revealed.set(i);
 			}
 		}
 
-		currentTime = timer.getTime();
+		this.currentTime = currentTime;
+		seed = model.getSeed();
+		topology = model.getTopology();
 	}
 
 	/**
 	 * Constructs a GameState from the width, height, mine and flag locations,
-	 * clicked cells, and current time. This can be used to initialize a GameState
-	 * after reading these values from a file.
+	 * revealed cells, current time, and the seed used to place the mines. This
+	 * can be used to initialize a GameState after reading these values from a
+	 * file.
 	 *
-	 * @param width         the board width
-	 * @param height        the board height
-	 * @param mineLocations the coordinate pairs (arrays of two integers) where
-	 *                      mines are located
-	 * @param flagLocations the coordinate pairs (arrays of two integers) where
-	 *                      flags have been placed
-	 * @param clickedCells  the coordinate pairs (arrays of two integers) where the
-	 *                      user has clicked
-	 * @param currentTime   the current game time in milliseconds
+	 * @param width       the board width
+	 * @param height      the board height
+	 * @param mines       the indices of the cells with mines
+	 * @param flags       the indices of the cells with flags
+	 * @param revealed    the indices of the cells which have been revealed
+	 * @param currentTime the current game time in milliseconds
+	 * @param seed        the seed used to place the mines, or 0 if unknown
 	 */
-	public GameState(int width, int height, Set<int[]> mineLocations, Set<int[]> flagLocations, Set<int[]> clickedCells,
-			long currentTime) {
+	public GameState(int width, int height, BitSet mines, BitSet flags, BitSet revealed, long currentTime,
+			long seed) {
+		this(width, height, mines, flags, revealed, currentTime, seed, Topology.SQUARE);
+	}
+
+	/**
+	 * Constructs a GameState as above, for a board whose cells are connected as
+	 * the given topology describes.
+	 *
+	 * @param width       the board width
+	 * @param height      the board height
+	 * @param mines       the indices of the cells with mines
+	 * @param flags       the indices of the cells with flags
+	 * @param revealed    the indices of the cells which have been revealed
+	 * @param currentTime the current game time in milliseconds
+	 * @param seed        the seed used to place the mines, or 0 if unknown
+	 * @param topology    how the cells are connected
+	 */
+	public GameState(int width, int height, BitSet mines, BitSet flags, BitSet revealed, long currentTime,
+			long seed, Topology topology) {
+		this.topology = topology;
 		this.width = width;
 		this.height = height;
-		this.mineLocations = mineLocations;
-		this.flagLocations = flagLocations;
-		this.clickedCells = clickedCells;
+		this.mines = mines;
+		this.flags = flags;
+		this.revealed = revealed;
 		this.currentTime = currentTime;
+		this.seed = seed;
+	}
+
+	/**
+	 * Reads a game state saved with Java serialization. Older versions of the game
+	 * stored coordinates as sets of two-element int arrays, which are converted to
+	 * bit sets here.
+	 *
+	 * @param in the stream to read from
+	 * @throws IOException            if the stream cannot be read
+	 * @throws ClassNotFoundException if a class in the stream cannot be found
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		width = fields.get("width", 0);
+		height = fields.get("height", 0);
+		currentTime = fields.get("currentTime", 0L);
+		seed = fields.get("seed", 0L);
+		topology = (Topology) fields.get("topology", null);
+		mines = (BitSet) fields.get("mines", null);
+		flags = (BitSet) fields.get("flags", null);
+		revealed = (BitSet) fields.get("revealed", null);
+
+		if (mines == null) {
+			mines = readLegacySet(fields, "mineLocations");
+			flags = readLegacySet(fields, "flagLocations");
+			revealed = readLegacySet(fields, "clickedCells");
+		}
+	}
+
+	private BitSet readLegacySet(ObjectInputStream.GetField fields, String name) throws IOException {
+		BitSet bits = new BitSet(width * height);
+		Object set = fields.get(name, null);
+		if (set instanceof Set) {
+			for (Object coords : (Set<?>) set) {
+				if (coords instanceof int[] && ((int[]) coords).length == 2)
+					bits.set(((int[]) coords)[0] * width + ((int[]) coords)[1]);
+			}
+		}
+		return bits;
 	}
 
 	/**
@@ -101,24 +175,24 @@ public class GameState implements Serializable {
 	}
 
 	/**
-	 * @return the mineLocations
+	 * @return the indices of the cells with mines
 	 */
-	public Set<int[]> getMineLocations() {
-		return mineLocations;
+	public BitSet getMines() {
+		return mines;
 	}
 
 	/**
-	 * @return the flagLocations
+	 * @return the indices of the cells with flags
 	 */
-	public Set<int[]> getFlagLocations() {
-		return flagLocations;
+	public BitSet getFlags() {
+		return flags;
 	}
 
 	/**
-	 * @return the clickedCells
+	 * @return the indices of the cells which have been revealed
 	 */
-	public Set<int[]> getClickedCells() {
-		return clickedCells;
+	public BitSet getRevealed() {
+		return revealed;
 	}
 
 	/**
@@ -128,4 +202,32 @@ public class GameState implements Serializable {
 		return currentTime;
 	}
 
+	/**
+	 * @return the seed used to place the mines, or 0 if unknown
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return how the cells are connected
+	 */
+	public Topology getTopology() {
+		return topology != null ? topology : Topology.SQUARE;
+	}
+
+	/**
+	 * Builds a board model from this game state in a single pass over the cells.
+	 *
+	 * @return the restored board model
+	 */
+	public BoardModel createModel() {
+		BoardModel restored = new BoardModel(width, height, mines.cardinality(), seed, getTopology());
+		for (int i = 0; i < restored.size(); i++) {
+			restored.restoreCell(i, mines.get(i), flags.get(i), revealed.get(i));
+		}
+		restored.calculateNumAdjacentMines();
+		return restored;
+	}
+
 }
@@ -9,7 +9,9 @@ import javax.swing.SwingConstants;
 import javax.swing.Timer;
 
 /**
- * Represents a timer that keeps track of the current game duration in seconds.
+ * Displays the duration of a game in seconds. The time is kept by the
+ * {@link GameSession}, which decides when the clock runs; the timer only
+ * refreshes its label from it every second.
  *
  * @author laurencousin
  *
@@ -21,33 +23,22 @@ public class GameTimer implements Serializable {
 	private Timer timer;
 	public JLabel lblTimer;
 
-	private long startTime;
+	private final transient GameSession session;
 
 	/**
-	 * Initializes the timer to be refreshed every 1 second.
-	 */
-	public GameTimer() {
-		this(0);
-	}
-	
-	/**
-	 * Initializes the timer to be refreshed every 1 second, and sets the amount
-	 * of time already on the timer to <code>initialTime</code>.
+	 * Initializes the timer to show the time of the session's game, refreshed
+	 * every 1 second.
 	 *
-	 * @param initialTime the time in milliseconds
+	 * @param session the session whose clock is shown
 	 */
-	public GameTimer(long initialTime) {
+	public GameTimer(GameSession session) {
+		this.session = session;
 		timer = new Timer(1000, new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				setLblText();
 			};
 		});
-		
-		if(initialTime > 0) {
-			start();
-			startTime -= initialTime; // pretend we started however long ago
-		}
 	}
 
 	/**
@@ -59,22 +50,21 @@ public class GameTimer implements Serializable {
 	public JLabel createLblTimer() {
 		lblTimer = new JLabel();
 		lblTimer.setOpaque(true);
-		lblTimer.setIcon(Board.TIMER_ICON);
+		lblTimer.setIcon(TileCache.timerIcon());
 		lblTimer.setText(time);
 		lblTimer.setHorizontalAlignment(SwingConstants.CENTER);
 		return lblTimer;
 	}
 
 	/**
-	 * Starts the timer after a 1-second delay.
+	 * Starts refreshing the label after a 1-second delay.
 	 */
 	public void start() {
-		startTime = System.currentTimeMillis();
 		timer.start();
 	}
 
 	/**
-	 * Stops the timer.
+	 * Stops refreshing the label.
 	 */
 	public void stop() {
 		timer.stop();
@@ -84,6 +74,8 @@ public class GameTimer implements Serializable {
 	 * Gets the elapsed time and updates the timer label with that time in seconds.
 	 */
 	public void setLblText() {
+		if (lblTimer == null)
+			return;
 		long elapsedSeconds = getTime() / 1000;
 
 		if (elapsedSeconds < 10) {
@@ -94,12 +86,12 @@ public class GameTimer implements Serializable {
 	}
 
 	/**
-	 * Returns the amount of time in milliseconds since the timer started.
+	 * Returns the amount of time in milliseconds the game has been played.
 	 *
 	 * @return the time in milliseconds
 	 */
 	public long getTime() {
-		return System.currentTimeMillis() - startTime;
+		return session.getElapsedTime();
 	}
 
 }
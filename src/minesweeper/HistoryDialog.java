@@ -0,0 +1,175 @@
+package minesweeper;
+
+import java.awt.BorderLayout;
+import java.awt.Frame;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Shows the games kept by a {@link GameHistoryStore}: the best times on each
+ * kind of board, the player's record on every kind, and the history of every
+ * game a page at a time. Each page only reads its own records from the store.
+ *
+ * @author laurencousin
+ *
+ */
+public class HistoryDialog extends JDialog {
+
+	private static final long serialVersionUID = 1L;
+
+	// Rows in the best times and on a page of the history
+	private static final int BEST_TIMES = 10;
+	private static final int PAGE_SIZE = 25;
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm", Locale.ROOT)
+			.withZone(ZoneId.systemDefault());
+
+	private final GameHistoryStore store;
+	private final JComboBox<GameHistoryStore.Category> category;
+	private final DefaultTableModel bestTimes = newTable("#", "Time", "3BV", "3BV/s", "Moves", "Date");
+	private final DefaultTableModel records = newTable("Board", "Games", "Wins", "Win rate", "Best time");
+	private final DefaultTableModel history = newTable("Date", "Board", "Result", "Time", "3BV", "Moves");
+	private final JLabel lblPage = new JLabel();
+	private final JButton btnNewer = new JButton("Newer");
+	private final JButton btnOlder = new JButton("Older");
+	private int page;
+
+	/**
+	 * Creates the dialog, showing the games written to the store so far.
+	 *
+	 * @param owner the frame which owns the dialog
+	 * @param store the game history
+	 */
+	public HistoryDialog(Frame owner, GameHistoryStore store) {
+		super(owner, "Game History", true);
+		this.store = store;
+
+		List<GameHistoryStore.Category> categories = store.getCategories();
+		category = new JComboBox<>(categories.toArray(new GameHistoryStore.Category[0]));
+		category.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showBestTimes();
+			}
+		});
+		JPanel bestPanel = new JPanel(new BorderLayout(0, 5));
+		bestPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
+		bestPanel.add(category, BorderLayout.NORTH);
+		bestPanel.add(new JScrollPane(new JTable(bestTimes)), BorderLayout.CENTER);
+
+		btnNewer.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showHistory(page - 1);
+			}
+		});
+		btnOlder.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showHistory(page + 1);
+			}
+		});
+		JPanel pager = new JPanel();
+		pager.add(btnNewer);
+		pager.add(lblPage);
+		pager.add(btnOlder);
+		JPanel historyPanel = new JPanel(new BorderLayout());
+		historyPanel.add(new JScrollPane(new JTable(history)), BorderLayout.CENTER);
+		historyPanel.add(pager, BorderLayout.SOUTH);
+
+		JTabbedPane tabs = new JTabbedPane();
+		tabs.addTab("Best Times", bestPanel);
+		tabs.addTab("Records", new JScrollPane(new JTable(records)));
+		tabs.addTab("History", historyPanel);
+		getContentPane().add(tabs, BorderLayout.CENTER);
+
+		try {
+			for (GameHistoryStore.Category c : categories) {
+				int games = store.getGames(c);
+				int wins = store.getWins(c);
+				GameRecord best = store.getBestTime(c);
+				records.addRow(new Object[] { c, games, wins,
+						String.format(Locale.ROOT, "%.1f%%", 100.0 * wins / games),
+						best == null ? "" : formatTime(best.getElapsedTime()) });
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		showBestTimes();
+		showHistory(0);
+
+		setSize(560, 420);
+		setLocationRelativeTo(owner);
+	}
+
+	private void showBestTimes() {
+		bestTimes.setRowCount(0);
+		GameHistoryStore.Category selected = (GameHistoryStore.Category) category.getSelectedItem();
+		if (selected == null)
+			return;
+		try {
+			List<GameRecord> best = store.getBestTimes(selected, BEST_TIMES);
+			for (int n = 0; n < best.size(); n++) {
+				GameRecord game = best.get(n);
+				double seconds = Math.max(game.getElapsedTime(), 1) / 1000.0;
+				bestTimes.addRow(new Object[] { n + 1, formatTime(game.getElapsedTime()), game.getBoardValue(),
+						String.format(Locale.ROOT, "%.2f", game.getBoardValue() / seconds), game.getMoves(),
+						DATE_FORMAT.format(Instant.ofEpochMilli(game.getFinishedAt())) });
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			JOptionPane.showMessageDialog(this, "Could not read the game history:\n" + e.getMessage(),
+					"Game History", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	private void showHistory(int newPage) {
+		int pages = Math.max(1, (store.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+		page = Math.max(0, Math.min(newPage, pages - 1));
+		history.setRowCount(0);
+		try {
+			for (GameRecord game : store.getHistory(page * PAGE_SIZE, PAGE_SIZE)) {
+				history.addRow(new Object[] { DATE_FORMAT.format(Instant.ofEpochMilli(game.getFinishedAt())),
+						game.getCategory(), game.getStatus() == Status.WIN ? "Won" : "Lost",
+						formatTime(game.getElapsedTime()), game.getBoardValue(), game.getMoves() });
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			JOptionPane.showMessageDialog(this, "Could not read the game history:\n" + e.getMessage(),
+					"Game History", JOptionPane.ERROR_MESSAGE);
+		}
+		lblPage.setText("Page " + (page + 1) + " of " + pages);
+		btnNewer.setEnabled(page > 0);
+		btnOlder.setEnabled(page < pages - 1);
+	}
+
+	private static String formatTime(long millis) {
+		return String.format(Locale.ROOT, "%.3f s", millis / 1000.0);
+	}
+
+	private static DefaultTableModel newTable(String... columns) {
+		return new DefaultTableModel(columns, 0) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean isCellEditable(int row, int column) {
+				return false;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,61 @@
+package minesweeper;
+
+/**
+ * A first-in, first-out queue of ints backed by a growable circular array, used
+ * as a work list by the solvers without boxing.
+ *
+ * @author laurencousin
+ *
+ */
+class IntQueue {
+
+	private int[] elements;
+	private int head;
+	private int size;
+
+	IntQueue() {
+		elements = new int[16];
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	void add(int value) {
+		if (size == elements.length) {
+			int[] grown = new int[elements.length * 2];
+			int firstPart = elements.length - head;
+			System.arraycopy(elements, head, grown, 0, firstPart);
+			System.arraycopy(elements, 0, grown, firstPart, head);
+			elements = grown;
+			head = 0;
+		}
+		elements[(head + size) % elements.length] = value;
+		size++;
+	}
+
+	int poll() {
+		if (size == 0)
+			throw new IllegalStateException("Queue is empty");
+		int value = elements[head];
+		head = (head + 1) % elements.length;
+		size--;
+		return value;
+	}
+
+	int peek() {
+		if (size == 0)
+			throw new IllegalStateException("Queue is empty");
+		return elements[head];
+	}
+
+}
@@ -0,0 +1,163 @@
+package minesweeper;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values, such as latencies in nanoseconds, which
+ * can be recorded from any thread at the cost of a few atomic increments.
+ * <p>
+ * Every bucket, the total and the maximum are striped: a {@link LongAdder} or
+ * {@link LongAccumulator} is a single counter until threads on different cores
+ * update it at once, and then gives each of them a cell of its own, which a
+ * snapshot adds up. Tournament workers, server sessions and the bands of a
+ * parallel board generation therefore never bounce one cache line between
+ * them, while a histogram only ever touched by one thread stays as small as an
+ * array of counters.
+ * <p>
+ * Buckets are log-linear: values below 8 have a bucket each, and every power of
+ * two above that is split into 8 equal buckets, so any value is known to within
+ * 12.5% using fewer than 500 buckets for the whole range of <code>long</code>.
+ *
+ * @author laurencousin
+ *
+ */
+public final class LatencyHistogram {
+
+	// Sub-buckets per power of two, as a power of two
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (62 - SUB_BITS + 2) * SUB_BUCKETS;
+
+	private final LongAdder[] counts = new LongAdder[BUCKETS];
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Creates an empty histogram.
+	 */
+	public LatencyHistogram() {
+		for (int b = 0; b < BUCKETS; b++)
+			counts[b] = new LongAdder();
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 *
+	 * @param value the value
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		counts[bucket(value)].increment();
+		total.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * Forgets every recorded value.
+	 */
+	public void reset() {
+		for (int b = 0; b < BUCKETS; b++)
+			counts[b].reset();
+		total.reset();
+		max.reset();
+	}
+
+	/**
+	 * Returns a copy of the histogram as it is now. Values recorded while the
+	 * copy is taken may or may not be included.
+	 *
+	 * @return the snapshot
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		long count = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			copy[b] = counts[b].sum();
+			count += copy[b];
+		}
+		return new Snapshot(copy, count, total.sum(), max.get());
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the largest value which falls into the bucket.
+	 */
+	static long highestValue(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+		return lowest + (1L << (exponent - SUB_BITS)) - 1;
+	}
+
+	/**
+	 * The values recorded in a histogram up to some point in time.
+	 */
+	public static final class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long total;
+		private final long max;
+
+		Snapshot(long[] counts, long count, long total, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.total = total;
+			this.max = max;
+		}
+
+		/**
+		 * @return the number of values recorded
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the mean of the values, or 0 if there are none
+		 */
+		public double getMean() {
+			return count == 0 ? 0 : (double) total / count;
+		}
+
+		/**
+		 * @return the largest value recorded
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Returns a value which the given fraction of the recorded values do not
+		 * exceed, to within the precision of the buckets.
+		 *
+		 * @param fraction the fraction, from 0 to 1, such as 0.99 for the 99th
+		 *                 percentile
+		 * @return the value, or 0 if there are none
+		 */
+		public long getPercentile(double fraction) {
+			if (count == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(fraction * count));
+			long seen = 0;
+			for (int b = 0; b < counts.length; b++) {
+				seen += counts[b];
+				if (seen >= rank)
+					return Math.min(highestValue(b), max);
+			}
+			return max;
+		}
+
+	}
+
+}
@@ -0,0 +1,219 @@
+package minesweeper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads a {@link GameServer} with many simultaneous clients, each playing games
+ * on its own connection, and reports the throughput and the latency the
+ * clients saw.
+ * <p>
+ * Each client starts a game on a preset, then reveals random hidden cells until
+ * the game is over, asking for the state of the board at the end of each game
+ * and for a save file at the end of every tenth. Without an address, a server
+ * is started in the same process on a free loopback port:
+ *
+ * <pre>
+ * java -cp minesweeper.jar minesweeper.LoadGenerator [clients] [seconds] [easy|medium|hard] [address]
+ * </pre>
+ *
+ * @author laurencousin
+ *
+ */
+public class LoadGenerator {
+
+	private final SocketAddress address;
+	private final Difficulty difficulty;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder games = new LongAdder();
+
+	/**
+	 * @param address    the address of the server
+	 * @param difficulty the preset every game is played on
+	 */
+	public LoadGenerator(SocketAddress address, Difficulty difficulty) {
+		this.address = address;
+		this.difficulty = difficulty;
+	}
+
+	/**
+	 * Runs the load generator and prints its report.
+	 *
+	 * @param args the number of clients (1000 if absent), the length of the run
+	 *             in seconds (10 if absent), the preset (easy if absent) and the
+	 *             server's address (a server in this process if absent)
+	 * @throws IOException          if the server cannot be reached or started
+	 * @throws InterruptedException if interrupted while the clients run
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+		Difficulty difficulty = args.length > 2 ? Difficulty.valueOf(args[2].toUpperCase(Locale.ROOT))
+				: Difficulty.EASY;
+
+		GameServer server = null;
+		SocketAddress address;
+		if (args.length > 3) {
+			address = GameProtocol.parseAddress(args[3]);
+		} else {
+			server = new GameServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+					TimeUnit.SECONDS.toMillis(60));
+			server.start();
+			address = server.getAddress();
+		}
+
+		try {
+			LoadGenerator generator = new LoadGenerator(address, difficulty);
+			long elapsed = generator.run(clients, TimeUnit.SECONDS.toNanos(seconds));
+			System.out.println(generator.report(clients, elapsed));
+			if (server != null)
+				System.out.println("Server: " + server.report(server.getRequests(), elapsed / 1e9));
+		} finally {
+			if (server != null)
+				server.close();
+		}
+	}
+
+	/**
+	 * Connects the clients and lets them play until the time is up.
+	 *
+	 * @param clients       the number of simultaneous clients
+	 * @param durationNanos how long the clients play for
+	 * @return the time the run took in nanoseconds
+	 * @throws IOException          if a client fails
+	 * @throws InterruptedException if interrupted while the clients run
+	 */
+	public long run(int clients, long durationNanos) throws IOException, InterruptedException {
+		ExecutorService threads = Executors.newCachedThreadPool(new DaemonThreadFactory("load-client"));
+		long start = System.nanoTime();
+		final long deadline = start + durationNanos;
+		List<Future<?>> tasks = new ArrayList<>();
+		for (int c = 0; c < clients; c++) {
+			final long seed = c + 1;
+			tasks.add(threads.submit(new Callable<Void>() {
+				public Void call() throws IOException {
+					play(seed, deadline);
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<?> task : tasks)
+				task.get();
+		} catch (ExecutionException e) {
+			throw new IOException("A client failed", e.getCause());
+		} finally {
+			threads.shutdownNow();
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Formats the report of a run.
+	 *
+	 * @param clients      the number of clients in the run
+	 * @param elapsedNanos the time the run took
+	 * @return the report
+	 */
+	public String report(int clients, long elapsedNanos) {
+		double seconds = elapsedNanos / 1e9;
+		LatencyHistogram.Snapshot snapshot = latency.snapshot();
+		return String.format(Locale.ROOT,
+				"%d clients on %s: %.0f requests/s, %.0f games/s, round trip us: p50 %.1f, p99 %.1f, p99.9 %.1f, "
+						+ "max %.1f",
+				clients, difficulty, requests.sum() / seconds, games.sum() / seconds, snapshot.getPercentile(0.5) / 1e3,
+				snapshot.getPercentile(0.99) / 1e3, snapshot.getPercentile(0.999) / 1e3, snapshot.getMax() / 1e3);
+	}
+
+	private void play(long seed, long deadline) throws IOException {
+		SplittableRandom random = new SplittableRandom(seed);
+		int size = difficulty.getWidth() * difficulty.getHeight();
+		boolean[] revealed = new boolean[size];
+
+		try (SocketChannel channel = SocketChannel.open(address)) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			for (long game = 1; System.nanoTime() < deadline; game++) {
+				long start = System.nanoTime();
+				out.writeByte(GameProtocol.NEW_GAME);
+				out.writeInt(difficulty.getWidth());
+				out.writeInt(difficulty.getHeight());
+				out.writeInt(difficulty.getNumMines());
+				out.writeLong(random.nextLong() | 1);
+				out.flush();
+				readStatus(in);
+				record(start);
+
+				Arrays.fill(revealed, false);
+				int status = Status.INPROGRESS.ordinal();
+				while (status == Status.INPROGRESS.ordinal()) {
+					int cell = random.nextInt(size);
+					while (revealed[cell])
+						cell = (cell + 1) % size;
+
+					start = System.nanoTime();
+					out.writeByte(GameProtocol.REVEAL);
+					out.writeInt(cell);
+					out.flush();
+					readStatus(in);
+					status = in.readUnsignedByte();
+					int changed = in.readInt();
+					for (int n = 0; n < changed; n++) {
+						revealed[in.readInt()] = true;
+						in.readUnsignedByte();
+					}
+					record(start);
+				}
+
+				start = System.nanoTime();
+				out.writeByte(GameProtocol.STATE);
+				out.flush();
+				readStatus(in);
+				in.skipNBytes(1 + 4 * 4 + 8 + size);
+				record(start);
+
+				if (game % 10 == 0) {
+					start = System.nanoTime();
+					out.writeByte(GameProtocol.SAVE);
+					out.flush();
+					readStatus(in);
+					in.skipNBytes(in.readInt());
+					record(start);
+				}
+				games.increment();
+			}
+		}
+	}
+
+	private static void readStatus(DataInputStream in) throws IOException {
+		if (in.readUnsignedByte() != GameProtocol.OK)
+			throw new IOException("The server answered: " + in.readUTF());
+	}
+
+	private void record(long start) {
+		latency.record(System.nanoTime() - start);
+		requests.increment();
+	}
+
+}
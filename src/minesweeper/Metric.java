@@ -0,0 +1,62 @@
+package minesweeper;
+
+/**
+ * The operations on the game's hot paths which {@link Metrics} measures. Each
+ * keeps a histogram of how long the operation took and one of how many cells
+ * it touched.
+ *
+ * @author laurencousin
+ *
+ */
+public enum Metric {
+
+	/** From a click on a cell until the model has been updated. */
+	CLICK("click", "Click to model update"),
+	/** Revealing the cells around every "0" uncovered by a move. */
+	FLOOD_FILL("floodFill", "Flood fill"),
+	/** Checking the status of the game, including the end-of-game sweep. */
+	STATUS_CHECK("statusCheck", "Status check"),
+	/** Counting the mines adjacent to every cell of a new board. */
+	COUNT_ADJACENT_MINES("countAdjacentMines", "Counting adjacent mines"),
+	/** Placing the mines of a new board. */
+	PLACE_MINES("placeMines", "Placing mines"),
+	/** From the model update of a click until the board has been painted. */
+	PAINT("paint", "Model update to paint");
+
+	private final String key;
+	private final String label;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram cells = new LatencyHistogram();
+
+	private Metric(String key, String label) {
+		this.key = key;
+		this.label = label;
+	}
+
+	/**
+	 * @return the name of the metric in JSON output and JFR events
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the histogram of the time taken, in nanoseconds
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return the histogram of the number of cells touched
+	 */
+	public LatencyHistogram getCells() {
+		return cells;
+	}
+
+	@Override
+	public String toString() {
+		return label;
+	}
+
+}
@@ -0,0 +1,212 @@
+package minesweeper;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.EventType;
+
+/**
+ * Measures the operations on the game's hot paths, listed in {@link Metric},
+ * into histograms which can be read at any time, and emits an
+ * {@link OperationEvent} for each when a Flight Recorder recording enables it.
+ * An operation is measured as
+ *
+ * <pre>
+ * long start = Metrics.start();
+ * OperationEvent event = Metrics.begin();
+ * // the operation
+ * Metrics.record(Metric.CLICK, start, event, cells);
+ * </pre>
+ *
+ * so the event spans the operation and has its duration.
+ * <p>
+ * Measuring costs two calls to {@link System#nanoTime()} and a few striped
+ * increments per operation (see {@link LatencyHistogram}), which stay local to
+ * each core when many threads measure at once. It can be turned off by
+ * starting the game with
+ * <code>-Dminesweeper.metrics=false</code>. Starting it with
+ * <code>-Dminesweeper.metrics.dump=FILE</code> appends a JSON snapshot of every
+ * metric to the file once a minute (or every
+ * <code>minesweeper.metrics.interval</code> seconds), one line per snapshot;
+ * a file of <code>-</code> prints a table to standard output instead.
+ *
+ * @author laurencousin
+ *
+ */
+public final class Metrics {
+
+	private static final boolean ENABLED = !"false".equals(System.getProperty("minesweeper.metrics"));
+	private static final EventType EVENT_TYPE = EventType.getEventType(OperationEvent.class);
+
+	private static ScheduledExecutorService dumper;
+
+	private Metrics() {
+	}
+
+	/**
+	 * Returns the start time of an operation, to pass to {@link #record} when it
+	 * ends.
+	 *
+	 * @return the current time in nanoseconds, or 0 if metrics are turned off
+	 */
+	public static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Begins the Flight Recorder event of an operation which starts now, to pass
+	 * to {@link #record} when it ends.
+	 *
+	 * @return the event, or null if metrics are turned off or no recording
+	 *         enables the event
+	 */
+	public static OperationEvent begin() {
+		if (!ENABLED || !EVENT_TYPE.isEnabled())
+			return null;
+		OperationEvent event = new OperationEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Records an operation which started at the given time and has just ended,
+	 * and commits its event.
+	 *
+	 * @param metric the operation
+	 * @param start  the time returned by {@link #start()}
+	 * @param event  the event returned by {@link #begin()}, or null
+	 * @param cells  the number of cells the operation touched
+	 */
+	public static void record(Metric metric, long start, OperationEvent event, int cells) {
+		if (!ENABLED)
+			return;
+		metric.getLatency().record(System.nanoTime() - start);
+		metric.getCells().record(cells);
+		if (event != null) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.operation = metric.getKey();
+				event.cells = cells;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the latency histogram of every metric.
+	 *
+	 * @return the snapshots, in the order of {@link Metric}
+	 */
+	public static Map<Metric, LatencyHistogram.Snapshot> snapshot() {
+		Map<Metric, LatencyHistogram.Snapshot> snapshots = new EnumMap<>(Metric.class);
+		for (Metric metric : Metric.values())
+			snapshots.put(metric, metric.getLatency().snapshot());
+		return snapshots;
+	}
+
+	/**
+	 * Forgets every recorded operation.
+	 */
+	public static void reset() {
+		for (Metric metric : Metric.values()) {
+			metric.getLatency().reset();
+			metric.getCells().reset();
+		}
+	}
+
+	/**
+	 * Formats every metric as a table: the count, then the mean, median, 99th
+	 * percentile, 99.9th percentile and maximum latency in microseconds, then the
+	 * mean and maximum number of cells.
+	 *
+	 * @return the table
+	 */
+	public static String toText() {
+		StringBuilder text = new StringBuilder(String.format(Locale.ROOT, "%-24s %9s %9s %9s %9s %9s %9s %9s %9s%n",
+				"operation (us)", "count", "mean", "p50", "p99", "p99.9", "max", "cells", "max cells"));
+		for (Metric metric : Metric.values()) {
+			LatencyHistogram.Snapshot latency = metric.getLatency().snapshot();
+			LatencyHistogram.Snapshot cells = metric.getCells().snapshot();
+			text.append(String.format(Locale.ROOT, "%-24s %9d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f %9d%n", metric,
+					latency.getCount(), latency.getMean() / 1e3, latency.getPercentile(0.5) / 1e3,
+					latency.getPercentile(0.99) / 1e3, latency.getPercentile(0.999) / 1e3, latency.getMax() / 1e3,
+					cells.getMean(), cells.getMax()));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Formats every metric as a single line of JSON, with latencies in
+	 * nanoseconds.
+	 *
+	 * @return the JSON object
+	 */
+	public static String toJson() {
+		StringBuilder json = new StringBuilder("{\"timestamp\":").append(System.currentTimeMillis());
+		String version = Metrics.class.getPackage().getImplementationVersion();
+		json.append(",\"version\":\"").append(version == null ? "dev" : version).append('"');
+		for (Metric metric : Metric.values()) {
+			LatencyHistogram.Snapshot latency = metric.getLatency().snapshot();
+			LatencyHistogram.Snapshot cells = metric.getCells().snapshot();
+			json.append(String.format(Locale.ROOT,
+					",\"%s\":{\"count\":%d,\"mean\":%.1f,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d,"
+							+ "\"meanCells\":%.1f,\"maxCells\":%d}",
+					metric.getKey(), latency.getCount(), latency.getMean(), latency.getPercentile(0.5),
+					latency.getPercentile(0.9), latency.getPercentile(0.99), latency.getPercentile(0.999),
+					latency.getMax(), cells.getMean(), cells.getMax()));
+		}
+		return json.append('}').toString();
+	}
+
+	/**
+	 * Starts dumping the metrics periodically if the
+	 * <code>minesweeper.metrics.dump</code> system property is set.
+	 */
+	public static synchronized void startDumpFromProperties() {
+		String file = System.getProperty("minesweeper.metrics.dump");
+		if (file == null || dumper != null)
+			return;
+		long interval = Long.getLong("minesweeper.metrics.interval", 60);
+		Path path = file.equals("-") ? null : Path.of(file);
+
+		dumper = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("metrics-dump"));
+		dumper.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try {
+					dump(path);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Appends a JSON snapshot to the file, or prints a table to standard output.
+	 *
+	 * @param path the file, or null for standard output
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void dump(Path path) throws IOException {
+		if (path == null) {
+			System.out.print(toText());
+			return;
+		}
+		try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND)) {
+			out.write(toJson());
+			out.write(System.lineSeparator());
+		}
+	}
+
+}
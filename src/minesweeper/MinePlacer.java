@@ -0,0 +1,122 @@
+package minesweeper;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Places mines in a board in time proportional to the number of mines, using
+ * Robert Floyd's sampling algorithm over the cell indices. Unlike drawing
+ * random cells until an empty one is found, this never slows down as the
+ * board fills up.
+ * <p>
+ * Large boards are split into bands which are placed in parallel by
+ * {@link BoardGenerator}. Every board is placed from its own seed, so boards do
+ * not share a random number generator and any board can be reproduced from its
+ * size, mine count, seed and safe cell.
+ *
+ * @author laurencousin
+ *
+ */
+public final class MinePlacer {
+
+	// Root generator which hands out a seed for every new game
+	private static final SplittableRandom SEEDS = new SplittableRandom();
+
+	private MinePlacer() {
+	}
+
+	/**
+	 * Returns a fresh seed for a new game.
+	 *
+	 * @return the seed
+	 */
+	public static long newSeed() {
+		synchronized (SEEDS) {
+			return SEEDS.split().nextLong();
+		}
+	}
+
+	/**
+	 * Places <code>count</code> mines among the cells of the model, never in the
+	 * safe cell or its neighbors. If the board is too small to keep all of those
+	 * cells clear, only the safe cell itself is kept clear.
+	 *
+	 * @param model    the board model, which must not have any mines yet
+	 * @param count    the number of mines to place
+	 * @param seed     the seed for this board
+	 * @param safeCell the index of the cell the player clicked first, or -1 to
+	 *                 allow mines anywhere
+	 */
+	public static void place(BoardModel model, int count, long seed, int safeCell) {
+		BoardGenerator.placeMines(model, count, seed, safeZone(model, count, safeCell));
+	}
+
+	/**
+	 * Returns the sorted indices of the cells to keep clear of mines.
+	 */
+	static int[] safeZone(BoardModel model, int count, int safeCell) {
+		if (safeCell < 0)
+			return new int[0];
+
+		int[] zone = new int[9];
+		int n = model.neighbors(safeCell, zone);
+		zone[n++] = safeCell;
+		if (model.size() - n < count) {
+			// Not enough room to clear the neighbors as well
+			zone[0] = safeCell;
+			n = model.size() - 1 < count ? 0 : 1;
+		}
+
+		int[] excluded = Arrays.copyOf(zone, n);
+		Arrays.sort(excluded);
+		return excluded;
+	}
+
+	/**
+	 * Places mines in the cells with indices from <code>from</code> (inclusive) to
+	 * <code>to</code> (exclusive), skipping the excluded cells. Floyd's algorithm
+	 * picks each of the <code>count</code> mines with a single random number, and
+	 * the mine bits of the model serve as the set of cells already chosen.
+	 *
+	 * @param model    the board model
+	 * @param from     the first cell of the range
+	 * @param to       the end of the range
+	 * @param count    the number of mines to place in the range
+	 * @param excluded sorted indices of cells which must not get a mine
+	 * @param random   the random number generator
+	 */
+	static void placeInRange(BoardModel model, int from, int to, int count, int[] excluded,
+			SplittableRandom random) {
+		int candidates = to - from;
+		for (int e : excluded) {
+			if (e >= from && e < to)
+				candidates--;
+		}
+		if (count > candidates)
+			throw new IllegalArgumentException("Cannot place " + count + " mines in " + candidates + " cells");
+
+		for (int j = candidates - count; j < candidates; j++) {
+			int cell = cellAt(from, to, excluded, random.nextInt(j + 1));
+			if (model.hasMine(cell))
+				cell = cellAt(from, to, excluded, j);
+			model.setMine(cell);
+		}
+	}
+
+	/**
+	 * Returns the index of the <code>rank</code>-th cell in the range which is not
+	 * excluded.
+	 */
+	private static int cellAt(int from, int to, int[] excluded, int rank) {
+		int cell = from + rank;
+		for (int e : excluded) {
+			if (e < from)
+				continue;
+			if (e > cell || e >= to)
+				break;
+			cell++;
+		}
+		return cell;
+	}
+
+}
@@ -1,12 +1,9 @@
 package minesweeper;
 
 import java.awt.EventQueue;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.file.Paths;
 
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
@@ -27,10 +24,23 @@ public class Minesweeper implements Serializable {
 	 * @param args
 	 */
 	public static void main(String[] args) {
+		Metrics.startDumpFromProperties();
+		MoveJournal.Recovery recovery = null;
+		try {
+			recovery = MoveJournal.recover(MoveJournal.defaultDirectory());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		final MoveJournal.Recovery unfinished = recovery != null && recovery.isUnfinished() ? recovery : null;
+
 		EventQueue.invokeLater(new Runnable() {
 			public void run() {
 				try {
 					Board frame = new Board();
+					if (unfinished != null && JOptionPane.showConfirmDialog(null,
+							"The last game did not finish. Do you want to recover it?", "Recover game",
+							JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION)
+						frame.resumeGame(unfinished.getHistory(), unfinished.getElapsedTime());
 					frame.setVisible(true);
 				} catch (Exception e) {
 					e.printStackTrace();
@@ -71,14 +81,10 @@ public class Minesweeper implements Serializable {
 		if (response == JFileChooser.APPROVE_OPTION) {
 			try {
 				String path = saveToFile.getSelectedFile().getAbsolutePath();
-				String fileName = path + ".ser";
-
-				FileOutputStream saveFile = new FileOutputStream(fileName);
-				ObjectOutputStream output = new ObjectOutputStream(saveFile);
+				if (!path.endsWith(SaveFormat.EXTENSION))
+					path += SaveFormat.EXTENSION;
 
-				output.writeObject(gameState);
-				output.flush();
-				output.close();
+				SaveFormat.write(gameState, Paths.get(path), true);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -89,7 +95,8 @@ public class Minesweeper implements Serializable {
 	}
 
 	/**
-	 * Returns the game state loaded from a file.
+	 * Returns the game state loaded from a file. Games saved with Java
+	 * serialization by older versions are converted as they are read.
 	 *
 	 * @return the game state
 	 */
@@ -103,12 +110,10 @@ public class Minesweeper implements Serializable {
 			try {
 				String path = loadFromFile.getSelectedFile().getAbsolutePath();
 	
-				ObjectInputStream input = new ObjectInputStream(new FileInputStream(path));
-				savedGameState = (GameState) input.readObject();
-				input.close();
+				savedGameState = SaveFormat.read(Paths.get(path));
 				return savedGameState;
 
-			} catch (IOException | ClassNotFoundException e) {
+			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
@@ -118,6 +123,47 @@ public class Minesweeper implements Serializable {
 		return null;
 	}
 
+	/**
+	 * Saves a replay to a file.
+	 *
+	 * @param replay the replay to save
+	 */
+	public void saveReplay(Replay replay) {
+		JFileChooser saveToFile = new JFileChooser();
+		int response = saveToFile.showSaveDialog(null);
+
+		if (response == JFileChooser.APPROVE_OPTION) {
+			try {
+				String path = saveToFile.getSelectedFile().getAbsolutePath();
+				if (!path.endsWith(Replay.EXTENSION))
+					path += Replay.EXTENSION;
+
+				replay.write(Paths.get(path));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Returns the replay loaded from a file.
+	 *
+	 * @return the replay, or null if none was loaded
+	 */
+	public Replay loadReplay() {
+		JFileChooser loadFromFile = new JFileChooser();
+		int response = loadFromFile.showOpenDialog(null);
+
+		if (response == JFileChooser.APPROVE_OPTION) {
+			try {
+				return Replay.read(loadFromFile.getSelectedFile().toPath());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Terminates the currently running Minesweeper application.
 	 */
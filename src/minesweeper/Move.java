@@ -0,0 +1,145 @@
+package minesweeper;
+
+/**
+ * A move chosen by a {@link Bot}: revealing a cell, toggling the flag on a
+ * cell, or chording on a revealed number to reveal its unflagged neighbors.
+ * Recorded games may also contain undo and redo moves, which are made through
+ * a {@link MoveHistory}.
+ *
+ * @author laurencousin
+ *
+ */
+public final class Move {
+
+	/**
+	 * The kinds of move a bot can make.
+	 */
+	public enum Kind {
+		REVEAL, FLAG, CHORD, UNDO, REDO
+	}
+
+	// Bits of a packed move holding its kind; the cell index is in the rest
+	static final int KIND_BITS = 3;
+	private static final Kind[] KINDS = Kind.values();
+
+	private final Kind kind;
+	private final int cell;
+
+	private Move(Kind kind, int cell) {
+		this.kind = kind;
+		this.cell = cell;
+	}
+
+	/**
+	 * Returns a move revealing the cell. The first reveal of a game is always
+	 * safe.
+	 *
+	 * @param cell the cell index
+	 * @return the move
+	 */
+	public static Move reveal(int cell) {
+		return new Move(Kind.REVEAL, cell);
+	}
+
+	/**
+	 * Returns a move placing a flag on the cell, or removing one.
+	 *
+	 * @param cell the cell index
+	 * @return the move
+	 */
+	public static Move flag(int cell) {
+		return new Move(Kind.FLAG, cell);
+	}
+
+	/**
+	 * Returns a move revealing the unflagged neighbors of a revealed number which
+	 * has as many flags around it as it shows.
+	 *
+	 * @param cell the cell index
+	 * @return the move
+	 */
+	public static Move chord(int cell) {
+		return new Move(Kind.CHORD, cell);
+	}
+
+	/**
+	 * @return the kind of move
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the index of the cell the move is made on
+	 */
+	public int getCell() {
+		return cell;
+	}
+
+	/**
+	 * Makes the move on the board.
+	 *
+	 * @param model the board model
+	 * @return the cells changed by the move
+	 */
+	CellDelta apply(BoardModel model) {
+		return apply(model, kind, cell);
+	}
+
+	/**
+	 * Makes a move on the board without creating a move object.
+	 *
+	 * @param model the board model
+	 * @param kind  the kind of move
+	 * @param cell  the index of the cell the move is made on
+	 * @return the cells changed by the move
+	 */
+	static CellDelta apply(BoardModel model, Kind kind, int cell) {
+		int x = cell / model.getWidth();
+		int y = cell % model.getWidth();
+		switch (kind) {
+		case REVEAL:
+			return model.click(x, y);
+		case FLAG:
+			return model.toggleFlag(cell);
+		case CHORD:
+			return model.tryQuickReveal(x, y);
+		default:
+			throw new IllegalArgumentException(kind + " can only be made through a MoveHistory");
+		}
+	}
+
+	/**
+	 * Packs a move into an int, for the recorders which store moves without
+	 * creating move objects.
+	 *
+	 * @param kind the kind of move
+	 * @param cell the index of the cell the move is made on
+	 * @return the packed move
+	 */
+	static int pack(Kind kind, int cell) {
+		return cell << KIND_BITS | kind.ordinal();
+	}
+
+	/**
+	 * @param packed a move packed by {@link #pack}
+	 * @return the kind of the move
+	 */
+	static Kind kindOf(int packed) {
+		return KINDS[packed & ((1 << KIND_BITS) - 1)];
+	}
+
+	/**
+	 * @param packed a move packed by {@link #pack}
+	 * @return the index of the cell the move is made on
+	 */
+	static int cellOf(int packed) {
+		return packed >>> KIND_BITS;
+	}
+
+	@Override
+	public String toString() {
+		return kind + " " + cell;
+	}
+
+}
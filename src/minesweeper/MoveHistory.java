@@ -0,0 +1,253 @@
+package minesweeper;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Makes moves on a board and remembers them, so they can be undone and redone.
+ * <p>
+ * Rather than snapshots of the board, the history keeps each move as a
+ * reversible delta: the move itself, and the cells it revealed. A flag is
+ * undone by toggling it again, and a reveal by hiding the cells it revealed,
+ * so undoing a move costs about as much as making it, even for a move which
+ * opened up a large empty area. A redo makes the move again. Undoing the first
+ * click also removes the mines, which the click placed; redoing it places the
+ * same mines again from the seed.
+ * <p>
+ * The board can be taken back to any earlier position and played on from
+ * there; making a new move forgets the moves which were undone.
+ *
+ * @author laurencousin
+ *
+ */
+public class MoveHistory {
+
+	private final BoardModel model;
+
+	// The moves made, packed by Move.pack, followed by the moves undone
+	private int[] moves = new int[64];
+	// Where each move's revealed cells start in the log, and whether it placed the mines
+	private int[] starts = new int[64];
+	private boolean[] placedMines = new boolean[64];
+	private int made;
+	private int redoable;
+
+	// The cells revealed by the moves made, one move after another
+	private int[] log = new int[256];
+	private int logSize;
+
+	/**
+	 * Creates an empty history for the board.
+	 *
+	 * @param model the board model
+	 */
+	public MoveHistory(BoardModel model) {
+		this.model = model;
+	}
+
+	/**
+	 * @return the board model the moves are made on
+	 */
+	public BoardModel getModel() {
+		return model;
+	}
+
+	/**
+	 * @return true if there is a move to undo
+	 */
+	public boolean canUndo() {
+		return made > 0;
+	}
+
+	/**
+	 * @return the number of moves which can be undone
+	 */
+	public int getUndoableMoves() {
+		return made;
+	}
+
+	/**
+	 * @return true if there is an undone move to redo
+	 */
+	public boolean canRedo() {
+		return redoable > 0;
+	}
+
+	/**
+	 * Returns the cell of the move the next undo would take back, for recording
+	 * the undo.
+	 *
+	 * @return the cell index, or -1 if there is nothing to undo
+	 */
+	public int undoCell() {
+		return made > 0 ? Move.cellOf(moves[made - 1]) : -1;
+	}
+
+	/**
+	 * Returns the cell of the move the next redo would make again.
+	 *
+	 * @return the cell index, or -1 if there is nothing to redo
+	 */
+	public int redoCell() {
+		return redoable > 0 ? Move.cellOf(moves[made]) : -1;
+	}
+
+	/**
+	 * Makes a move, forgetting any moves which were undone. Undo and redo moves
+	 * are passed on to {@link #undo()} and {@link #redo()}.
+	 *
+	 * @param kind the kind of move
+	 * @param cell the index of the cell the move is made on
+	 * @return the cells changed by the move
+	 */
+	public CellDelta play(Move.Kind kind, int cell) {
+		if (kind == Move.Kind.UNDO)
+			return undo();
+		if (kind == Move.Kind.REDO)
+			return redo();
+		redoable = 0;
+		return make(Move.pack(kind, cell));
+	}
+
+	/**
+	 * Takes back the last move made.
+	 *
+	 * @return the cells changed back
+	 * @throws IllegalStateException if there is no move to undo
+	 */
+	public CellDelta undo() {
+		if (made == 0)
+			throw new IllegalStateException("No move to undo");
+		made--;
+		redoable++;
+		int packed = moves[made];
+		int start = starts[made];
+
+		CellDelta changed;
+		if (Move.kindOf(packed) == Move.Kind.FLAG) {
+			changed = model.toggleFlag(Move.cellOf(packed));
+		} else {
+			changed = model.hide(log, start, logSize);
+			if (placedMines[made])
+				model.removeMines();
+		}
+		logSize = start;
+		return changed;
+	}
+
+	/**
+	 * Makes the last undone move again.
+	 *
+	 * @return the cells changed by the move
+	 * @throws IllegalStateException if there is no move to redo
+	 */
+	public CellDelta redo() {
+		if (redoable == 0)
+			throw new IllegalStateException("No move to redo");
+		redoable--;
+		return make(moves[made]);
+	}
+
+	/**
+	 * Writes the history, so it can be kept with a copy of the board and
+	 * restored by {@link #decode}. The layout is three ints, the moves made and
+	 * undone, the moves made, and the length of the log of revealed cells,
+	 * followed by each move packed by {@link Move#pack}, the log position and
+	 * first-click byte of each move made, and the log. All values are big-endian.
+	 *
+	 * @return the encoded history
+	 */
+	byte[] encode() {
+		int count = made + redoable;
+		ByteBuffer buffer = ByteBuffer.allocate(12 + count * 4 + made * 5 + logSize * 4)
+				.order(ByteOrder.BIG_ENDIAN);
+		buffer.putInt(count);
+		buffer.putInt(made);
+		buffer.putInt(logSize);
+		for (int n = 0; n < count; n++)
+			buffer.putInt(moves[n]);
+		for (int n = 0; n < made; n++)
+			buffer.putInt(starts[n]);
+		for (int n = 0; n < made; n++)
+			buffer.put((byte) (placedMines[n] ? 1 : 0));
+		for (int n = 0; n < logSize; n++)
+			buffer.putInt(log[n]);
+		return buffer.array();
+	}
+
+	/**
+	 * Restores a history written by {@link #encode} for a board in the position
+	 * it was in when the history was encoded.
+	 *
+	 * @param model  the board model
+	 * @param buffer the encoded history
+	 * @return the history
+	 * @throws StreamCorruptedException if the history does not fit the board
+	 */
+	static MoveHistory decode(BoardModel model, ByteBuffer buffer) throws StreamCorruptedException {
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		if (buffer.remaining() < 12)
+			throw new StreamCorruptedException("Corrupt move history");
+		int count = buffer.getInt();
+		int made = buffer.getInt();
+		int logSize = buffer.getInt();
+		if (count < 0 || made < 0 || made > count || logSize < 0
+				|| buffer.remaining() != (long) count * 4 + (long) made * 5 + (long) logSize * 4)
+			throw new StreamCorruptedException("Corrupt move history");
+
+		MoveHistory history = new MoveHistory(model);
+		int capacity = Math.max(count, 64);
+		history.moves = new int[capacity];
+		history.starts = new int[capacity];
+		history.placedMines = new boolean[capacity];
+		history.log = new int[Math.max(logSize, 256)];
+		for (int n = 0; n < count; n++) {
+			history.moves[n] = buffer.getInt();
+			// Only reveals, flags and chords are kept as moves
+			int kind = history.moves[n] & ((1 << Move.KIND_BITS) - 1);
+			if (kind > Move.Kind.CHORD.ordinal() || Move.cellOf(history.moves[n]) >= model.size())
+				throw new StreamCorruptedException("Corrupt move history");
+		}
+		for (int n = 0; n < made; n++) {
+			history.starts[n] = buffer.getInt();
+			if (history.starts[n] < (n == 0 ? 0 : history.starts[n - 1]) || history.starts[n] > logSize)
+				throw new StreamCorruptedException("Corrupt move history");
+		}
+		for (int n = 0; n < made; n++)
+			history.placedMines[n] = buffer.get() != 0;
+		for (int n = 0; n < logSize; n++) {
+			history.log[n] = buffer.getInt();
+			if (history.log[n] < 0 || history.log[n] >= model.size())
+				throw new StreamCorruptedException("Corrupt move history");
+		}
+		history.made = made;
+		history.redoable = count - made;
+		history.logSize = logSize;
+		return history;
+	}
+
+	private CellDelta make(int packed) {
+		if (made == moves.length) {
+			moves = Arrays.copyOf(moves, made * 2);
+			starts = Arrays.copyOf(starts, made * 2);
+			placedMines = Arrays.copyOf(placedMines, made * 2);
+		}
+		boolean hadMines = model.hasMinesPlaced();
+		CellDelta changed = Move.apply(model, Move.kindOf(packed), Move.cellOf(packed));
+
+		moves[made] = packed;
+		starts[made] = logSize;
+		placedMines[made] = !hadMines && model.hasMinesPlaced();
+		made++;
+		if (Move.kindOf(packed) != Move.Kind.FLAG) {
+			if (logSize + changed.size() > log.length)
+				log = Arrays.copyOf(log, Math.max(log.length * 2, logSize + changed.size()));
+			for (int n = 0; n < changed.size(); n++)
+				log[logSize++] = changed.get(n);
+		}
+		return changed;
+	}
+
+}
@@ -0,0 +1,490 @@
+package minesweeper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Autosaves the game in progress as a write-ahead journal of its moves, so a
+ * game survives a crash and can be recovered when the game next starts.
+ * <p>
+ * The journal is a log file which starts with a 40-byte header:
+ *
+ * <pre>
+ * offset size field
+ *      0    4 magic "MSWJ"
+ *      4    2 format version
+ *      6    2 topology (0 square, 1 torus, 2 hexagonal)
+ *      8    4 width
+ *     12    4 height
+ *     16    4 number of mines
+ *     20    8 seed used to place the mines
+ *     28    8 checkpoint number, or 0 if the game starts from the seed
+ *     36    4 flags (bit 0: the board starts from the seed although the
+ *               checkpoint number is not 0; bit 1: the checkpoint holds an
+ *               undo history)
+ * </pre>
+ *
+ * followed by one 12-byte record per move: the move packed by
+ * {@link Move#pack}, the game time in milliseconds, and a check value mixing
+ * both with the record's position. A record which was only partly written
+ * before a crash fails its check, and recovery stops there. All values are
+ * big-endian.
+ * <p>
+ * Recording a move only appends the record to a buffer in memory. A single
+ * background thread writes the buffer to the log and forces it to disk
+ * {@link #COMMIT_INTERVAL_MILLIS} milliseconds after the first move recorded
+ * since the last commit, so all the moves of that interval share one fsync and
+ * at most that much play is lost in a crash. Nothing runs while no moves are
+ * made. Every {@link #CHECKPOINT_MOVES} moves the log is compacted: the board
+ * is saved in {@link SaveFormat} as <code>checkpoint-N.msw</code>, its undo
+ * history as <code>checkpoint-N.undo</code> in the layout of
+ * {@link MoveHistory#encode}, and a new, empty log naming that checkpoint
+ * replaces the old one, so compaction never limits how far the game can be
+ * undone. Files are replaced by atomic renames, so a crash at any point leaves
+ * a log and the checkpoint it names.
+ *
+ * @author laurencousin
+ *
+ */
+public class MoveJournal implements Closeable {
+
+	/** Time between two commits of the recorded moves to disk. */
+	public static final long COMMIT_INTERVAL_MILLIS = 20;
+	/** Number of moves after which the log is compacted into a checkpoint. */
+	public static final int CHECKPOINT_MOVES = 4096;
+
+	static final int MAGIC = 0x4D53574A; // "MSWJ"
+	static final short VERSION = 1;
+	static final int HEADER_SIZE = 40;
+	static final int RECORD_SIZE = 12;
+	static final int FLAG_FROM_SEED = 0x1;
+	static final int FLAG_UNDO_HISTORY = 0x2;
+
+	private static final String LOG_FILE = "journal.log";
+	private static final String CHECKPOINT_PREFIX = "checkpoint-";
+	private static final String UNDO_EXTENSION = ".undo";
+
+	private final Path directory;
+	private final ScheduledExecutorService writer = Executors
+			.newSingleThreadScheduledExecutor(new DaemonThreadFactory("move-journal"));
+
+	// Guarded by this: moves recorded since the last commit, and where they go
+	private ByteBuffer pending = newBuffer(256);
+	private ByteBuffer committing = newBuffer(256);
+	private int epoch;
+	private int sequence;
+	private int sinceCheckpoint;
+	private long checkpoint;
+	private boolean active;
+	private boolean commitScheduled;
+
+	// Only used on the writer thread: the open log, and the epoch it belongs to
+	private FileChannel log;
+	private int logEpoch = -1;
+
+	/**
+	 * Creates a journal which keeps its files in the given directory. Nothing is
+	 * written until a game is started.
+	 *
+	 * @param directory the directory of the journal
+	 */
+	public MoveJournal(Path directory) {
+		this.directory = directory;
+		// Checkpoint numbers only need to differ from those of earlier runs
+		this.checkpoint = System.currentTimeMillis();
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				close();
+			}
+		}, "move-journal-shutdown"));
+	}
+
+	/**
+	 * @return the directory the game keeps its journal in
+	 */
+	public static Path defaultDirectory() {
+		return Paths.get(System.getProperty("user.home"), ".minesweeper");
+	}
+
+	/**
+	 * Starts journaling a new game, replacing the journal of the previous one. A
+	 * board without mines is recorded by its seed; any other board is saved as a
+	 * checkpoint first, and so is the history of a game which can already be
+	 * undone.
+	 *
+	 * @param session the game, with the moves made before the first journaled
+	 *                move
+	 */
+	public synchronized void start(GameSession session) {
+		MoveHistory history = session.getHistory();
+		BoardModel model = history.getModel();
+		GameState state = model.hasMinesPlaced() ? session.getState() : null;
+		byte[] undo = history.canUndo() || history.canRedo() ? history.encode() : null;
+		switchLog(model.getWidth(), model.getHeight(), model.getNumMines(), model.getSeed(), model.getTopology(),
+				state, undo);
+	}
+
+	/**
+	 * Records a move which has just been made. This only appends the move to a
+	 * buffer; it is written to disk by the next commit.
+	 *
+	 * @param kind        the kind of move
+	 * @param cell        the index of the cell the move was made on
+	 * @param elapsedTime the game time in milliseconds
+	 */
+	public synchronized void record(Move.Kind kind, int cell, long elapsedTime) {
+		if (!active)
+			return;
+		if (pending.remaining() < RECORD_SIZE) {
+			ByteBuffer grown = newBuffer(pending.capacity() * 2);
+			pending.flip();
+			grown.put(pending);
+			pending = grown;
+		}
+		int packed = Move.pack(kind, cell);
+		int time = (int) Math.min(elapsedTime, Integer.MAX_VALUE);
+		pending.putInt(packed);
+		pending.putInt(time);
+		pending.putInt(check(sequence++, packed, time));
+		sinceCheckpoint++;
+		if (!commitScheduled) {
+			commitScheduled = true;
+			writer.schedule(new Runnable() {
+				public void run() {
+					commit();
+				}
+			}, COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return true once enough moves have been recorded since the last
+	 *         checkpoint that the log should be compacted
+	 */
+	public synchronized boolean needsCheckpoint() {
+		return active && sinceCheckpoint >= CHECKPOINT_MOVES;
+	}
+
+	/**
+	 * Compacts the log: saves the board as it is now, including every move
+	 * recorded so far, with its undo history, and starts an empty log after it.
+	 * The board and history are copied on the calling thread and written in the
+	 * background.
+	 *
+	 * @param session the game
+	 */
+	public synchronized void checkpoint(GameSession session) {
+		if (!active)
+			return;
+		MoveHistory history = session.getHistory();
+		BoardModel model = history.getModel();
+		GameState state = model.hasMinesPlaced() ? session.getState() : null;
+		switchLog(model.getWidth(), model.getHeight(), model.getNumMines(), model.getSeed(), model.getTopology(),
+				state, history.encode());
+	}
+
+	/**
+	 * Starts a new log, dropping the moves not committed to the old one. The
+	 * files are written on the writer thread, before any move recorded after
+	 * this call.
+	 */
+	private void switchLog(int width, int height, int numMines, long seed, Topology topology, GameState state,
+			byte[] undo) {
+		pending.clear();
+		epoch++;
+		sequence = 0;
+		sinceCheckpoint = 0;
+		active = true;
+		long number = state == null && undo == null ? 0 : ++checkpoint;
+		int switchEpoch = epoch;
+
+		writer.execute(new Runnable() {
+			public void run() {
+				try {
+					openLog(width, height, numMines, seed, topology, number, state, undo, switchEpoch);
+				} catch (IOException e) {
+					e.printStackTrace();
+					// Stop journaling this game rather than buffer its moves forever
+					synchronized (MoveJournal.this) {
+						if (epoch == switchEpoch) {
+							active = false;
+							pending.clear();
+						}
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes the checkpoint, if any, then a log naming it, then deletes the
+	 * files they replace.
+	 */
+	private void openLog(int width, int height, int numMines, long seed, Topology topology, long number,
+			GameState state, byte[] undo, int switchEpoch) throws IOException {
+		closeLog();
+		Files.createDirectories(directory);
+		if (state != null) {
+			Path temporary = directory.resolve(CHECKPOINT_PREFIX + number + ".tmp");
+			SaveFormat.write(state, temporary, false);
+			force(temporary);
+			Files.move(temporary, checkpointFile(number), StandardCopyOption.ATOMIC_MOVE);
+		}
+		if (undo != null) {
+			Path temporary = directory.resolve(CHECKPOINT_PREFIX + number + UNDO_EXTENSION + ".tmp");
+			Files.write(temporary, undo);
+			force(temporary);
+			Files.move(temporary, undoFile(number), StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+		header.putInt(MAGIC);
+		header.putShort(VERSION);
+		header.putShort((short) topology.ordinal());
+		header.putInt(width);
+		header.putInt(height);
+		header.putInt(numMines);
+		header.putLong(seed);
+		header.putLong(number);
+		header.putInt((state == null ? FLAG_FROM_SEED : 0) | (undo != null ? FLAG_UNDO_HISTORY : 0));
+		header.flip();
+
+		Path temporary = directory.resolve(LOG_FILE + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (header.hasRemaining())
+				channel.write(header);
+			channel.force(true);
+		}
+		Files.move(temporary, directory.resolve(LOG_FILE), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		logEpoch = switchEpoch;
+
+		// Only now is no log left which names an older checkpoint
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, CHECKPOINT_PREFIX + "*")) {
+			for (Path file : files) {
+				if (!file.equals(checkpointFile(number)) && !file.equals(undoFile(number)))
+					Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	/**
+	 * Writes the moves recorded since the last commit to the log and forces them
+	 * to disk. Runs on the writer thread.
+	 */
+	private void commit() {
+		synchronized (this) {
+			commitScheduled = false;
+			// Moves recorded after a new log was started wait until it is open
+			if (logEpoch != epoch || pending.position() == 0)
+				return;
+			ByteBuffer full = pending;
+			pending = committing;
+			committing = full;
+		}
+		committing.flip();
+		try {
+			while (committing.hasRemaining())
+				log.write(committing);
+			log.force(false);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			committing.clear();
+		}
+	}
+
+	/**
+	 * Commits every recorded move and waits for it to reach the disk, for at
+	 * most a second.
+	 */
+	@Override
+	public void close() {
+		try {
+			writer.submit(new Runnable() {
+				public void run() {
+					commit();
+				}
+			}).get(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException | RejectedExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void closeLog() throws IOException {
+		if (log != null) {
+			log.close();
+			log = null;
+		}
+	}
+
+	private Path checkpointFile(long number) {
+		return directory.resolve(CHECKPOINT_PREFIX + number + SaveFormat.EXTENSION);
+	}
+
+	private Path undoFile(long number) {
+		return directory.resolve(CHECKPOINT_PREFIX + number + UNDO_EXTENSION);
+	}
+
+	private static void force(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+	}
+
+	private static ByteBuffer newBuffer(int capacity) {
+		return ByteBuffer.allocate(capacity).order(ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * Mixes a record's position and contents into a check value, with the final
+	 * step of MurmurHash3 so that any torn or stale record fails the check.
+	 */
+	static int check(int sequence, int packed, int time) {
+		int h = sequence * 0x9E3779B9 ^ packed ^ Integer.rotateLeft(time, 16) ^ MAGIC;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Rebuilds the game journaled in the given directory: the board from its seed
+	 * or checkpoint, with the undo history kept in the checkpoint, then every
+	 * complete move in the log. Undo and redo moves are replayed through that
+	 * {@link MoveHistory}.
+	 *
+	 * @param directory the directory of the journal
+	 * @return the recovered game, or null if there is no journal
+	 * @throws IOException if the journal cannot be read
+	 */
+	public static Recovery recover(Path directory) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+				throw new StreamCorruptedException("Corrupt journal");
+			buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+			buffer.flip();
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+
+		if (buffer.getInt() != MAGIC)
+			throw new StreamCorruptedException("Not a journal");
+		short version = buffer.getShort();
+		if (version > VERSION)
+			throw new IOException("Journal uses format version " + version + ", but only versions up to " + VERSION
+					+ " are supported");
+		short topology = buffer.getShort();
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		int numMines = buffer.getInt();
+		long seed = buffer.getLong();
+		long number = buffer.getLong();
+		int flags = number == 0 ? FLAG_FROM_SEED : buffer.getInt();
+		buffer.position(HEADER_SIZE);
+		if (topology < 0 || topology >= Topology.values().length || width < 1 || height < 1
+				|| (long) width * height > GameSession.MAX_CELLS || numMines < 0 || numMines > width * height)
+			throw new StreamCorruptedException("Corrupt journal header");
+
+		BoardModel model;
+		long elapsedTime = 0;
+		if ((flags & FLAG_FROM_SEED) != 0) {
+			model = new BoardModel(width, height, numMines, seed, Topology.of(topology));
+		} else {
+			GameState state = SaveFormat.read(directory.resolve(CHECKPOINT_PREFIX + number + SaveFormat.EXTENSION));
+			model = state.createModel();
+			elapsedTime = state.getCurrentTime();
+		}
+
+		MoveHistory history = new MoveHistory(model);
+		if ((flags & FLAG_UNDO_HISTORY) != 0) {
+			Path undo = directory.resolve(CHECKPOINT_PREFIX + number + UNDO_EXTENSION);
+			history = MoveHistory.decode(model, ByteBuffer.wrap(Files.readAllBytes(undo)));
+		}
+		for (int sequence = 0; buffer.remaining() >= RECORD_SIZE; sequence++) {
+			int packed = buffer.getInt();
+			int time = buffer.getInt();
+			if (buffer.getInt() != check(sequence, packed, time))
+				break; // A torn write at the end of the log
+			Move.Kind kind = Move.kindOf(packed);
+			if (Move.cellOf(packed) >= model.size() || (kind == Move.Kind.UNDO && !history.canUndo())
+					|| (kind == Move.Kind.REDO && !history.canRedo()))
+				throw new StreamCorruptedException("Corrupt move " + sequence + " in journal");
+			history.play(kind, Move.cellOf(packed));
+			elapsedTime = time;
+		}
+		return new Recovery(history, elapsedTime);
+	}
+
+	/**
+	 * A game rebuilt from a journal.
+	 */
+	public static final class Recovery {
+
+		private final MoveHistory history;
+		private final BoardModel model;
+		private final long elapsedTime;
+
+		Recovery(MoveHistory history, long elapsedTime) {
+			this.history = history;
+			this.model = history.getModel();
+			this.elapsedTime = elapsedTime;
+		}
+
+		/**
+		 * @return the board as it was after the last committed move
+		 */
+		public BoardModel getModel() {
+			return model;
+		}
+
+		/**
+		 * @return the moves which can be undone and redone on the board
+		 */
+		public MoveHistory getHistory() {
+			return history;
+		}
+
+		/**
+		 * @return true if the game was still in progress, past its first click
+		 */
+		public boolean isUnfinished() {
+			return model.hasMinesPlaced() && model.getStatus() == Status.INPROGRESS;
+		}
+
+		/**
+		 * @return the game time in milliseconds
+		 */
+		public long getElapsedTime() {
+			return elapsedTime;
+		}
+
+	}
+
+}
@@ -0,0 +1,179 @@
+package minesweeper;
+
+import java.util.BitSet;
+
+/**
+ * Records the moves of a game, each with a timestamp, so the game can be saved
+ * as a {@link Replay}.
+ * <p>
+ * Moves are stored in preallocated arrays used as a ring buffer: one
+ * <code>long</code> for the time since recording started, from
+ * {@link System#nanoTime()}, and one <code>int</code> packing the cell index
+ * and the kind of move. Recording a move never allocates, so it costs the game
+ * next to nothing. If more moves are made than the buffer holds, the oldest
+ * are overwritten; the most recent moves are still there to look at, but the
+ * game can no longer be replayed from its start.
+ *
+ * @author laurencousin
+ *
+ */
+public class MoveRecorder {
+
+	/** The number of moves held by a recorder created with no capacity. */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private final long[] times;
+	private final int[] events;
+	private final int mask;
+	private long recorded;
+	private long startNanos;
+
+	// The board as it was when recording started
+	private int width, height, numMines;
+	private long seed;
+	private Topology topology;
+	private BitSet mines, flags, revealed;
+
+	/**
+	 * Creates a recorder holding the last {@link #DEFAULT_CAPACITY} moves.
+	 */
+	public MoveRecorder() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a recorder holding at least the given number of most recent moves.
+	 *
+	 * @param capacity the number of moves to hold, rounded up to a power of two
+	 */
+	public MoveRecorder(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30)
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		times = new long[size];
+		events = new int[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Forgets every recorded move and starts recording a game on the given
+	 * board. A board without mines is replayed from its seed; otherwise its
+	 * current cells are kept, since they may not come from the seed alone.
+	 *
+	 * @param model the board model, as it is before the first recorded move
+	 */
+	public void start(BoardModel model) {
+		width = model.getWidth();
+		height = model.getHeight();
+		numMines = model.getNumMines();
+		seed = model.getSeed();
+		topology = model.getTopology();
+		if (model.hasMinesPlaced()) {
+			mines = new BitSet(model.size());
+			flags = new BitSet(model.size());
+			revealed = new BitSet(model.size());
+			for (int i = 0; i < model.size(); i++) {
+				mines.set(i, model.hasMine(i));
+				flags.set(i, model.hasFlag(i));
+				revealed.set(i, model.isRevealed(i));
+			}
+		} else {
+			mines = flags = revealed = null;
+		}
+		recorded = 0;
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Records a move made now.
+	 *
+	 * @param kind the kind of move
+	 * @param cell the index of the cell the move was made on
+	 */
+	public void record(Move.Kind kind, int cell) {
+		int slot = (int) recorded & mask;
+		times[slot] = System.nanoTime() - startNanos;
+		events[slot] = Move.pack(kind, cell);
+		recorded++;
+	}
+
+	/**
+	 * @return the number of moves recorded since the game started
+	 */
+	public long getRecorded() {
+		return recorded;
+	}
+
+	/**
+	 * @return the number of moves held, at most the capacity
+	 */
+	public int size() {
+		return (int) Math.min(recorded, times.length);
+	}
+
+	/**
+	 * @return true if every move since the game started is still held
+	 */
+	public boolean isComplete() {
+		return recorded <= times.length;
+	}
+
+	/**
+	 * Returns the time of a held move, in nanoseconds since recording started.
+	 *
+	 * @param n the position of the move among the held moves, oldest first
+	 * @return the time of the move
+	 */
+	public long getTime(int n) {
+		return times[slot(n)];
+	}
+
+	/**
+	 * @param n the position of the move among the held moves, oldest first
+	 * @return the kind of the move
+	 */
+	public Move.Kind getKind(int n) {
+		return Move.kindOf(events[slot(n)]);
+	}
+
+	/**
+	 * @param n the position of the move among the held moves, oldest first
+	 * @return the index of the cell the move was made on
+	 */
+	public int getCell(int n) {
+		return Move.cellOf(events[slot(n)]);
+	}
+
+	private int slot(int n) {
+		if (n < 0 || n >= size())
+			throw new IndexOutOfBoundsException("Move " + n + " of " + size());
+		return (int) (recorded - size() + n) & mask;
+	}
+
+	/**
+	 * Returns a replay of the recorded game.
+	 *
+	 * @return the replay
+	 * @throws IllegalStateException if nothing was recorded yet, or the oldest
+	 *                               moves have been overwritten
+	 */
+	public Replay toReplay() {
+		if (width == 0)
+			throw new IllegalStateException("No game has been recorded");
+		if (!isComplete())
+			throw new IllegalStateException(
+					"The game has more than " + times.length + " moves; the first ones were overwritten");
+
+		long[] replayTimes = new long[size()];
+		int[] replayEvents = new int[size()];
+		for (int n = 0; n < size(); n++) {
+			replayTimes[n] = getTime(n);
+			replayEvents[n] = events[slot(n)];
+		}
+		return new Replay(width, height, numMines, seed, topology, mines, flags, revealed, replayTimes,
+				replayEvents);
+	}
+
+}
@@ -0,0 +1,80 @@
+package minesweeper;
+
+/**
+ * Precomputed neighbors of every cell of a board of one size and
+ * {@link Topology}.
+ * <p>
+ * Cells whose neighbors lie at the same index offsets from them form a class:
+ * whether the cell is in the first row, the last row, both or neither, the
+ * same for columns, and for hexagonal boards whether its row is odd. There are
+ * at most 32 classes, whatever the size of the board. The table stores one
+ * byte per cell naming its class and, for each class, its offsets, so a lookup
+ * is an array read followed by a fixed loop of additions, without bounds
+ * checks or branches per neighbor.
+ *
+ * @author laurencousin
+ *
+ */
+public final class NeighborTable {
+
+	private final byte[] classes;
+	private final int[][] offsets;
+
+	/**
+	 * Builds the table, computing the neighbors of one cell of each class from
+	 * coordinates.
+	 *
+	 * @param topology the topology
+	 * @param width    the number of columns
+	 * @param height   the number of rows
+	 */
+	NeighborTable(Topology topology, int width, int height) {
+		classes = new byte[width * height];
+		offsets = new int[32][];
+		int[] neighbors = new int[Topology.MAX_NEIGHBORS];
+
+		for (int x = 0; x < height; x++) {
+			int rowClass = ((x == 0 ? 1 : 0) | (x == height - 1 ? 2 : 0)) << 3
+					| (topology == Topology.HEX ? (x & 1) << 2 : 0);
+			for (int y = 0; y < width; y++) {
+				int c = rowClass | (y == 0 ? 1 : 0) | (y == width - 1 ? 2 : 0);
+				int i = x * width + y;
+				classes[i] = (byte) c;
+				if (offsets[c] == null) {
+					int count = topology.neighbors(x, y, width, height, neighbors);
+					int[] classOffsets = new int[count];
+					for (int n = 0; n < count; n++)
+						classOffsets[n] = neighbors[n] - i;
+					offsets[c] = classOffsets;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the indices of the cells adjacent to the given cell into
+	 * <code>out</code>.
+	 *
+	 * @param i   the cell index
+	 * @param out an array with room for at least {@link Topology#MAX_NEIGHBORS}
+	 *            indices
+	 * @return the number of neighbors written
+	 */
+	public int neighbors(int i, int[] out) {
+		int[] cellOffsets = offsets[classes[i]];
+		for (int n = 0; n < cellOffsets.length; n++)
+			out[n] = i + cellOffsets[n];
+		return cellOffsets.length;
+	}
+
+	/**
+	 * Returns the number of neighbors of the given cell.
+	 *
+	 * @param i the cell index
+	 * @return the number of neighbors
+	 */
+	public int count(int i) {
+		return offsets[classes[i]].length;
+	}
+
+}
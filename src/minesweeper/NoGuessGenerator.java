@@ -0,0 +1,262 @@
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates boards which can be finished from the first click without ever
+ * guessing. The first click is always the center cell, which is revealed on
+ * the boards handed out.
+ * <p>
+ * A candidate board is played from the center by the {@link Solver}, and
+ * whenever the solver is stuck, by the {@link ProbabilityEngine}, which finds
+ * every cell that is certainly safe. A board is accepted if this wins the
+ * game. Dense boards almost never pass as drawn, so when a candidate gets stuck
+ * one of the mines next to the revealed area is moved to a random cell far
+ * from it, and play carries on. A board whose mines were moved is handed out
+ * with a seed of 0, since its seed no longer reproduces it.
+ * <p>
+ * On one core, a Hard board takes about 20 milliseconds on average and rarely
+ * more than half a second.
+ * <p>
+ * Every worker thread tests its own candidates. As soon as one is accepted,
+ * the others are told to stop, and they give up their candidates at the next
+ * move.
+ *
+ * @author laurencousin
+ *
+ */
+public final class NoGuessGenerator {
+
+	// Time allowed for one probability analysis while playing a candidate
+	private static final long ANALYSIS_BUDGET_MILLIS = 1000;
+
+	private final int threads;
+	private final ExecutorService workers;
+	private final ProbabilityEngine engine = new ProbabilityEngine();
+
+	/**
+	 * Creates a generator with a worker thread for each processor.
+	 */
+	public NoGuessGenerator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a generator with the given number of worker threads.
+	 *
+	 * @param threads the number of candidates to test at once
+	 */
+	public NoGuessGenerator(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one worker thread is needed");
+		this.threads = threads;
+		this.workers = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("no-guess-generator"));
+	}
+
+	/**
+	 * Returns the index of the cell clicked first on a generated board.
+	 *
+	 * @param width  the number of columns
+	 * @param height the number of rows
+	 * @return the index of the center cell
+	 */
+	public static int startCell(int width, int height) {
+		return (height / 2) * width + width / 2;
+	}
+
+	/**
+	 * Generates a board which can be finished without guessing, with its center
+	 * cell already revealed.
+	 *
+	 * @param width         the number of columns
+	 * @param height        the number of rows
+	 * @param numMines      the number of mines
+	 * @param timeoutMillis the time allowed, in milliseconds
+	 * @return the board, or null if none was found in time
+	 * @throws InterruptedException if the calling thread is interrupted while
+	 *                              waiting
+	 */
+	public BoardModel generate(int width, int height, int numMines, long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicReference<BoardModel> found = new AtomicReference<>();
+
+		List<Future<?>> tasks = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			tasks.add(workers.submit(new Runnable() {
+				public void run() {
+					while (!stopped(stop, deadline)) {
+						BoardModel board = attempt(width, height, numMines, MinePlacer.newSeed(), stop, deadline);
+						if (board != null && found.compareAndSet(null, board))
+							stop.set(true);
+					}
+				}
+			}));
+		}
+
+		try {
+			for (Future<?> task : tasks)
+				task.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Board generation failed", e.getCause());
+		} finally {
+			stop.set(true);
+		}
+		return found.get();
+	}
+
+	/**
+	 * Stops the worker threads. Generations still running return null.
+	 */
+	public void shutdown() {
+		workers.shutdownNow();
+	}
+
+	private static boolean stopped(AtomicBoolean stop, long deadline) {
+		return stop.get() || System.nanoTime() - deadline > 0;
+	}
+
+	/**
+	 * Tests a candidate board drawn from the given seed, moving mines away from
+	 * the revealed area whenever it gets stuck.
+	 * <p>
+	 * While mines are being moved, the candidate is only played by the
+	 * {@link Solver}, and after each move play carries on from the cells already
+	 * revealed rather than from the start, since they are still safe. Those cells
+	 * were found with the old numbers, though, so a candidate which wins this way
+	 * is played once more from the start, with the {@link ProbabilityEngine}
+	 * when the solver is stuck, before it is accepted; if that replay gets stuck,
+	 * mines are moved on from there.
+	 *
+	 * @return the accepted board with its start cell revealed, or null
+	 */
+	BoardModel attempt(int width, int height, int numMines, long seed, AtomicBoolean stop, long deadline) {
+		int start = startCell(width, height);
+		BoardModel drawn = new BoardModel(width, height, numMines, seed);
+		drawn.placeMines(start);
+		BitSet mines = new BitSet(drawn.size());
+		for (int i = 0; i < drawn.size(); i++) {
+			if (drawn.hasMine(i))
+				mines.set(i);
+		}
+
+		SplittableRandom random = new SplittableRandom(seed);
+		int[] adj = new int[8];
+		int maxMoves = drawn.size() / 2;
+		boolean moved = false;
+		BoardModel board = build(width, height, mines, seed);
+		Solver solver = new Solver(board);
+		solver.update(board.click(start / width, start % width));
+		for (int move = 0; move <= maxMoves; move++) {
+			if (play(board, solver, false, stop, deadline)) {
+				BoardModel stuck = moved ? replay(width, height, mines, start, stop, deadline) : null;
+				if (stuck == null) {
+					// The seed only reproduces the board if no mine was moved
+					BoardModel accepted = build(width, height, mines, moved ? 0 : seed);
+					accepted.click(start / width, start % width);
+					return accepted;
+				}
+				board = stuck;
+			}
+			if (stopped(stop, deadline))
+				return null;
+
+			/*
+			 * Move a mine next to the revealed area to a cell away from it. Late in a
+			 * dense board every cell away from it may hold a mine, so it then goes to
+			 * another safe cell next to the revealed area.
+			 */
+			int from = -1, to = -1, nearTo = -1;
+			int fromSeen = 0, toSeen = 0, nearSeen = 0;
+			for (int i = 0; i < board.size(); i++) {
+				if (board.isRevealed(i))
+					continue;
+				boolean frontier = false;
+				int count = board.neighbors(i, adj);
+				for (int k = 0; k < count && !frontier; k++)
+					frontier = board.isRevealed(adj[k]);
+
+				// Pick uniformly among the candidates seen so far
+				if (frontier && mines.get(i) && random.nextInt(++fromSeen) == 0)
+					from = i;
+				else if (!frontier && !mines.get(i) && random.nextInt(++toSeen) == 0)
+					to = i;
+				else if (frontier && !mines.get(i) && random.nextInt(++nearSeen) == 0)
+					nearTo = i;
+			}
+			if (to < 0)
+				to = nearTo;
+			if (from < 0 || to < 0)
+				return null;
+			mines.clear(from);
+			mines.set(to);
+			moved = true;
+
+			// Keep the revealed cells, which the moved mine never held
+			BoardModel next = build(width, height, mines, seed);
+			for (int i = 0; i < board.size(); i++) {
+				if (board.isRevealed(i))
+					next.restoreCell(i, false, false, true);
+			}
+			board = next;
+			solver = new Solver(board);
+		}
+		return null;
+	}
+
+	private static BoardModel build(int width, int height, BitSet mines, long seed) {
+		BoardModel board = new BoardModel(width, height, mines.cardinality(), seed);
+		for (int i = mines.nextSetBit(0); i >= 0; i = mines.nextSetBit(i + 1))
+			board.restoreCell(i, true, false, false);
+		board.calculateNumAdjacentMines();
+		return board;
+	}
+
+	/**
+	 * Plays the board from the start cell, and returns null if that wins the
+	 * game, or the board where it got stuck.
+	 */
+	private BoardModel replay(int width, int height, BitSet mines, int start, AtomicBoolean stop, long deadline) {
+		BoardModel board = build(width, height, mines, 0);
+		Solver solver = new Solver(board);
+		solver.update(board.click(start / width, start % width));
+		return play(board, solver, true, stop, deadline) ? null : board;
+	}
+
+	/**
+	 * Plays the board on from its revealed cells, only ever revealing cells which
+	 * are certainly safe, and returns true if that wins the game. Unless
+	 * <code>analyze</code> is set, play stops as soon as the solver is stuck.
+	 */
+	private boolean play(BoardModel board, Solver solver, boolean analyze, AtomicBoolean stop, long deadline) {
+		int width = board.getWidth();
+		while (board.getStatus() == Status.INPROGRESS) {
+			if (stopped(stop, deadline))
+				return false;
+
+			int i = solver.findSafeCell();
+			if (i < 0) {
+				if (!analyze)
+					return false;
+				Probabilities probabilities = engine.solve(ProbabilityEngine.capture(board), ANALYSIS_BUDGET_MILLIS,
+						stop);
+				i = probabilities.safestCell();
+				if (i < 0 || probabilities.mineProbability(i) != 0)
+					return false; // Only a guess would get further
+			}
+			solver.update(board.click(i / width, i % width));
+		}
+		return board.getStatus() == Status.WIN;
+	}
+
+}
@@ -0,0 +1,34 @@
+package minesweeper;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event for one measured operation, emitted by
+ * {@link Metrics} when the event is enabled in a recording. The event begins
+ * when the operation starts and is committed when it ends, so its duration is
+ * the operation's latency, and recordings can filter it with a duration
+ * threshold and show it on a timeline.
+ *
+ * @author laurencousin
+ *
+ */
+@Name("minesweeper.Operation")
+@Label("Minesweeper Operation")
+@Category("Minesweeper")
+@Description("An operation on the game's hot paths, such as a click, a flood fill or a paint")
+@StackTrace(false)
+public class OperationEvent extends Event {
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Cells")
+	@Description("The number of cells the operation touched")
+	long cells;
+
+}
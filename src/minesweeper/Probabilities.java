@@ -0,0 +1,62 @@
+package minesweeper;
+
+/**
+ * The chance that each cell of a board holds a mine, as computed by a
+ * {@link ProbabilityEngine}. Revealed cells have probability 0. If the
+ * analysis ran out of time or was cancelled, no probabilities are known and
+ * every cell reports {@link Double#NaN}.
+ *
+ * @author laurencousin
+ *
+ */
+public final class Probabilities {
+
+	// Revealed cells are stored as -1 so they are never the safest cell
+	private final double[] probabilities;
+	private final boolean complete;
+
+	Probabilities(double[] probabilities, boolean complete) {
+		this.probabilities = probabilities;
+		this.complete = complete;
+	}
+
+	/**
+	 * @return true if the analysis finished and the probabilities are exact
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Returns the probability that the cell holds a mine.
+	 *
+	 * @param i the cell index
+	 * @return the probability, or {@link Double#NaN} if the analysis did not
+	 *         finish
+	 */
+	public double mineProbability(int i) {
+		if (!complete)
+			return Double.NaN;
+		return Math.max(0, probabilities[i]);
+	}
+
+	/**
+	 * Returns the unrevealed cell least likely to hold a mine, or -1 if there is
+	 * none or the analysis did not finish. Of equally safe cells, the one with the
+	 * lowest index is returned.
+	 *
+	 * @return the cell index, or -1
+	 */
+	public int safestCell() {
+		if (!complete)
+			return -1;
+
+		int best = -1;
+		for (int i = 0; i < probabilities.length; i++) {
+			if (probabilities[i] >= 0 && (best < 0 || probabilities[i] < probabilities[best]))
+				best = i;
+		}
+		return best;
+	}
+
+}
@@ -0,0 +1,1060 @@
+package minesweeper;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * Computes the exact probability that each unrevealed cell holds a mine, from
+ * the revealed numbers and the number of mines left. Like {@link Solver}, it
+ * ignores the player's flags.
+ * <p>
+ * The unrevealed cells next to a revealed number form the frontier. Cells
+ * which a single number already decides are settled first; the rest of the
+ * frontier splits into components which share no number, so each component's
+ * mine arrangements can be counted on its own. Small components are searched
+ * by backtracking, cutting off any branch which breaks a number; larger ones
+ * are swept cell by cell, merging the branches which leave the numbers in the
+ * same state. For each component this gives how many arrangements have
+ * <i>k</i> mines, and how often each cell holds a mine. The components are
+ * then combined exactly, weighting every total number of frontier mines by the
+ * number of ways to place the remaining mines in the interior cells, away from
+ * every number.
+ * <p>
+ * Components are counted in parallel on a fork-join pool. Their counts only
+ * depend on their shape, so they are cached between analyses: after a move,
+ * only the components the move changed are counted again. Every analysis has a
+ * time budget and can be cancelled, in which case it returns incomplete
+ * {@link Probabilities} instead of blocking.
+ *
+ * @author laurencousin
+ *
+ */
+public final class ProbabilityEngine {
+
+	// Frontiers with fewer cells than this are counted on the calling thread
+	private static final int PARALLEL_THRESHOLD = 64;
+	// Components with more cells than this are swept rather than searched
+	private static final int SEARCH_MAX_CELLS = 20;
+	// How many search steps pass between checks of the budget and cancellation
+	private static final int CHECK_INTERVAL = 1 << 12;
+	// Counts are cached for this many component shapes of up to this many cells
+	private static final int CACHE_SIZE = 512;
+	private static final int CACHE_MAX_CELLS = 256;
+
+	private final ForkJoinPool pool;
+	private final Map<Shape, Counts> cache = Collections.synchronizedMap(new LinkedHashMap<Shape, Counts>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Shape, Counts> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	});
+
+	/**
+	 * Creates an engine which counts components on the common fork-join pool.
+	 */
+	public ProbabilityEngine() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates an engine which counts components on the given pool.
+	 *
+	 * @param pool the pool to count components on
+	 */
+	public ProbabilityEngine(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Computes the mine probabilities of the board's cells.
+	 *
+	 * @param model        the board model
+	 * @param budgetMillis the time allowed, in milliseconds
+	 * @return the probabilities, which are incomplete if the budget ran out
+	 */
+	public Probabilities analyze(BoardModel model, long budgetMillis) {
+		return solve(capture(model), budgetMillis, new AtomicBoolean());
+	}
+
+	/**
+	 * Takes a snapshot of what the player can see of the board: the revealed
+	 * numbers, the frontier components and the number of mines left. The
+	 * snapshot can be solved on another thread while the board changes.
+	 *
+	 * @param model the board model
+	 * @return the problem to solve
+	 */
+	public static Problem capture(BoardModel model) {
+		int size = model.size();
+		int[] adj = new int[8];
+		int[] around = new int[8];
+		BitSet revealed = new BitSet(size);
+		int remainingMines = model.getNumMines();
+
+		// Find the revealed numbers which touch an unrevealed cell
+		int[] numberOf = new int[size];
+		Arrays.fill(numberOf, -1);
+		int[] numbers = new int[16];
+		int[] targets = new int[16];
+		int[] unknown = new int[16];
+		int numberCount = 0;
+		for (int i = 0; i < size; i++) {
+			if (!model.isRevealed(i))
+				continue;
+			revealed.set(i);
+			if (model.hasMine(i)) {
+				remainingMines--;
+				continue;
+			}
+
+			int target = model.getNumAdjacentMines(i);
+			int hidden = 0;
+			int count = model.neighbors(i, adj);
+			for (int k = 0; k < count; k++) {
+				if (!model.isRevealed(adj[k]))
+					hidden++;
+				else if (model.hasMine(adj[k]))
+					target--;
+			}
+			if (hidden > 0) {
+				if (numberCount == numbers.length) {
+					numbers = Arrays.copyOf(numbers, numberCount * 2);
+					targets = Arrays.copyOf(targets, numberCount * 2);
+					unknown = Arrays.copyOf(unknown, numberCount * 2);
+				}
+				numberOf[i] = numberCount;
+				numbers[numberCount] = i;
+				targets[numberCount] = target;
+				unknown[numberCount++] = hidden;
+			}
+		}
+
+		/*
+		 * Settle the cells which a single number decides: a number with all its
+		 * mines found makes its other cells safe, and one with as many cells as
+		 * mines left makes them all mines. These cells are certain, so taking them
+		 * out of the frontier before counting splits and narrows the components.
+		 */
+		BitSet knownMines = new BitSet(size);
+		BitSet knownSafe = new BitSet(size);
+		IntQueue work = new IntQueue();
+		for (int n = 0; n < numberCount; n++)
+			work.add(n);
+		while (!work.isEmpty()) {
+			int n = work.poll();
+			if (unknown[n] == 0 || (targets[n] != 0 && targets[n] != unknown[n]))
+				continue;
+
+			boolean mine = targets[n] != 0;
+			int count = model.neighbors(numbers[n], adj);
+			for (int k = 0; k < count; k++) {
+				int c = adj[k];
+				if (model.isRevealed(c) || knownMines.get(c) || knownSafe.get(c))
+					continue;
+				if (mine) {
+					knownMines.set(c);
+					remainingMines--;
+				} else {
+					knownSafe.set(c);
+				}
+
+				// The numbers around the settled cell have one unknown cell fewer
+				int aroundCount = model.neighbors(c, around);
+				for (int m = 0; m < aroundCount; m++) {
+					int other = numberOf[around[m]];
+					if (other < 0)
+						continue;
+					unknown[other]--;
+					if (mine)
+						targets[other]--;
+					work.add(other);
+				}
+			}
+		}
+
+		// Number the unsettled cells next to a number in index order
+		int[] frontierId = numberOf; // Reused: only revealed cells had a number
+		Arrays.fill(frontierId, -1);
+		int frontierCount = 0;
+		for (int n = 0; n < numberCount; n++) {
+			if (unknown[n] == 0)
+				continue;
+			int count = model.neighbors(numbers[n], adj);
+			for (int k = 0; k < count; k++) {
+				int c = adj[k];
+				if (!model.isRevealed(c) && !knownMines.get(c) && !knownSafe.get(c))
+					frontierId[c] = -2;
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			if (frontierId[i] == -2)
+				frontierCount++;
+		}
+		int[] frontier = new int[frontierCount];
+		for (int i = 0, f = 0; i < size; i++) {
+			if (frontierId[i] == -2) {
+				frontierId[i] = f;
+				frontier[f++] = i;
+			}
+		}
+
+		// Join the cells around each number into components
+		int[] parent = new int[frontierCount];
+		for (int f = 0; f < frontierCount; f++)
+			parent[f] = f;
+		for (int n = 0; n < numberCount; n++) {
+			int first = -1;
+			int count = model.neighbors(numbers[n], adj);
+			for (int k = 0; k < count; k++) {
+				int f = frontierId[adj[k]];
+				if (f < 0)
+					continue;
+				if (first < 0)
+					first = f;
+				else
+					parent[find(parent, f)] = find(parent, first);
+			}
+		}
+
+		// Give each component its cells, in index order
+		int[] componentOf = new int[frontierCount];
+		int[] localId = new int[frontierCount];
+		int[] cellCounts = new int[frontierCount];
+		int[] componentOfRoot = new int[frontierCount];
+		Arrays.fill(componentOfRoot, -1);
+		int componentCount = 0;
+		for (int f = 0; f < frontierCount; f++) {
+			int root = find(parent, f);
+			if (componentOfRoot[root] < 0)
+				componentOfRoot[root] = componentCount++;
+			int c = componentOfRoot[root];
+			componentOf[f] = c;
+			localId[f] = cellCounts[c]++;
+		}
+
+		int[][] cells = new int[componentCount][];
+		for (int c = 0; c < componentCount; c++)
+			cells[c] = new int[cellCounts[c]];
+		for (int f = 0; f < frontierCount; f++)
+			cells[componentOf[f]][localId[f]] = frontier[f];
+
+		// Give each component the numbers which touch it
+		int[][] vars = new int[numberCount][];
+		int[] numberComponent = new int[numberCount];
+		int[] numberCounts = new int[componentCount];
+		for (int n = 0; n < numberCount; n++) {
+			numberComponent[n] = -1;
+			if (unknown[n] == 0)
+				continue;
+			int[] local = new int[8];
+			int varCount = 0;
+			int count = model.neighbors(numbers[n], adj);
+			for (int k = 0; k < count; k++) {
+				int f = frontierId[adj[k]];
+				if (f >= 0) {
+					local[varCount++] = localId[f];
+					numberComponent[n] = componentOf[f];
+				}
+			}
+			vars[n] = Arrays.copyOf(local, varCount);
+			numberCounts[numberComponent[n]]++;
+		}
+
+		int[][] componentTargets = new int[componentCount][];
+		int[][][] constraints = new int[componentCount][][];
+		for (int c = 0; c < componentCount; c++) {
+			componentTargets[c] = new int[numberCounts[c]];
+			constraints[c] = new int[numberCounts[c]][];
+			numberCounts[c] = 0;
+		}
+		for (int n = 0; n < numberCount; n++) {
+			int c = numberComponent[n];
+			if (c < 0)
+				continue;
+			componentTargets[c][numberCounts[c]] = targets[n];
+			constraints[c][numberCounts[c]++] = vars[n];
+		}
+
+		Shape[] shapes = new Shape[componentCount];
+		for (int c = 0; c < componentCount; c++)
+			shapes[c] = new Shape(cells[c].length, componentTargets[c], constraints[c]);
+
+		int interiorCells = size - revealed.cardinality() - frontierCount - knownMines.cardinality()
+				- knownSafe.cardinality();
+		return new Problem(size, revealed, knownMines, knownSafe, remainingMines, interiorCells, frontierCount, cells, shapes);
+	}
+
+	private static int find(int[] parent, int f) {
+		while (parent[f] != f) {
+			parent[f] = parent[parent[f]];
+			f = parent[f];
+		}
+		return f;
+	}
+
+	/**
+	 * Computes the mine probabilities for a captured problem. The computation
+	 * stops early if the budget runs out or <code>cancelled</code> is set.
+	 *
+	 * @param problem      the problem captured from the board
+	 * @param budgetMillis the time allowed, in milliseconds
+	 * @param cancelled    set from any thread to cancel the computation
+	 * @return the probabilities, which are incomplete if the computation stopped
+	 *         early
+	 */
+	public Probabilities solve(Problem problem, long budgetMillis, AtomicBoolean cancelled) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+		try {
+			return combine(problem, deadline, cancelled);
+		} catch (CancellationException e) {
+			return new Probabilities(new double[problem.size], false);
+		}
+	}
+
+	/**
+	 * Counts every component, then combines the counts with the number of ways
+	 * to place the remaining mines in the interior.
+	 * <p>
+	 * Let <code>all[s]</code> be the number of frontier arrangements with
+	 * <code>s</code> mines, and <code>weight[s]</code> proportional to the number
+	 * of ways to place the other mines in the interior. A component's share of an
+	 * arrangement with <i>k</i> mines is found by dividing its own counts out of
+	 * <code>all</code>, which is exact, and weighting the rest.
+	 */
+	private Probabilities combine(Problem problem, long deadline, AtomicBoolean cancelled) {
+		int componentCount = problem.shapes.length;
+		boolean parallel = problem.frontierCells >= PARALLEL_THRESHOLD && componentCount > 1;
+		Counts[] counts = new Counts[componentCount];
+		forEach(componentCount, parallel, c -> counts[c] = count(problem.shapes[c], deadline, cancelled));
+
+		int remaining = problem.remainingMines;
+		int interior = problem.interiorCells;
+		int maxMines = Math.min(remaining, problem.frontierCells);
+		if (remaining - maxMines > interior)
+			throw new CancellationException("More mines left than cells");
+
+		BigInteger[] all = new BigInteger[maxMines + 1];
+		Arrays.fill(all, BigInteger.ZERO);
+		all[0] = BigInteger.ONE;
+		for (Counts c : counts) {
+			all = convolve(all, c.total);
+			checkStop(deadline, cancelled);
+		}
+
+		BigInteger[] weight = interiorWeights(interior, remaining, maxMines);
+		BigInteger total = BigInteger.ZERO;
+		BigInteger interiorMines = BigInteger.ZERO;
+		for (int s = 0; s <= maxMines; s++) {
+			BigInteger ways = all[s].multiply(weight[s]);
+			total = total.add(ways);
+			interiorMines = interiorMines.add(ways.multiply(BigInteger.valueOf(remaining - s)));
+		}
+		if (total.signum() == 0)
+			throw new CancellationException("No arrangement fits the numbers");
+
+		BigInteger[][] shares = new BigInteger[componentCount][];
+		for (int c = 0; c < componentCount; c++) {
+			shares[c] = share(counts[c].total, all, weight);
+			checkStop(deadline, cancelled);
+		}
+
+		double[] probabilities = new double[problem.size];
+		double interiorProbability = interior == 0 ? 0
+				: ratio(interiorMines, total.multiply(BigInteger.valueOf(interior)));
+		for (int i = 0; i < problem.size; i++)
+			probabilities[i] = problem.revealed.get(i) ? -1 : interiorProbability;
+		for (int i = problem.knownMines.nextSetBit(0); i >= 0; i = problem.knownMines.nextSetBit(i + 1))
+			probabilities[i] = 1;
+		for (int i = problem.knownSafe.nextSetBit(0); i >= 0; i = problem.knownSafe.nextSetBit(i + 1))
+			probabilities[i] = 0;
+
+		BigInteger denominator = total;
+		forEach(componentCount, parallel, c -> {
+			BigInteger[] mines = counts[c].mineWeights(shares[c], deadline, cancelled);
+			int[] cells = problem.cells[c];
+			for (int v = 0; v < cells.length; v++)
+				probabilities[cells[v]] = ratio(mines[v], denominator);
+		});
+		return new Probabilities(probabilities, true);
+	}
+
+	/**
+	 * Returns how much an arrangement of a component with <i>k</i> mines weighs,
+	 * for each <i>k</i>: the number of ways to arrange the other components and
+	 * the interior around it.
+	 */
+	private static BigInteger[] share(BigInteger[] own, BigInteger[] all, BigInteger[] weight) {
+		int maxMines = all.length - 1;
+		int low = 0;
+		while (low < own.length && own[low].signum() == 0)
+			low++;
+		if (low > maxMines)
+			throw new CancellationException("No arrangement fits the numbers");
+
+		// Arrangements of the other components, by their number of mines
+		BigInteger[] others = new BigInteger[maxMines - low + 1];
+		for (int j = 0; j < others.length; j++) {
+			BigInteger rest = all[j + low];
+			for (int i = 1; i <= j && low + i < own.length; i++) {
+				if (own[low + i].signum() != 0)
+					rest = rest.subtract(own[low + i].multiply(others[j - i]));
+			}
+			others[j] = rest.divide(own[low]);
+		}
+
+		BigInteger[] share = new BigInteger[own.length];
+		for (int k = 0; k < own.length; k++) {
+			BigInteger sum = BigInteger.ZERO;
+			for (int j = 0; j < others.length && k + j <= maxMines; j++)
+				sum = sum.add(others[j].multiply(weight[k + j]));
+			share[k] = sum;
+		}
+		return share;
+	}
+
+	/**
+	 * Returns the counts for a component, from the cache if a component of the
+	 * same shape was counted before. Small components are searched; larger ones
+	 * are swept, unless too many of their numbers are open at once.
+	 */
+	private Counts count(Shape shape, long deadline, AtomicBoolean cancelled) {
+		boolean cacheable = shape.cells <= CACHE_MAX_CELLS;
+		if (cacheable) {
+			Counts cached = cache.get(shape);
+			if (cached != null)
+				return cached;
+		}
+
+		Counts counts = null;
+		if (shape.cells > SEARCH_MAX_CELLS)
+			counts = Sweep.create(shape, deadline, cancelled);
+		if (counts == null)
+			counts = new Search(shape, deadline, cancelled).run();
+		if (cacheable)
+			cache.put(shape, counts);
+		return counts;
+	}
+
+	/**
+	 * Runs an action for every index from 0 to <code>count</code>, on the pool if
+	 * <code>parallel</code> is set.
+	 */
+	private void forEach(int count, boolean parallel, IntConsumer action) {
+		if (count == 0)
+			return;
+		if (parallel) {
+			pool.invoke(new RangeTask(0, count, action));
+		} else {
+			for (int c = 0; c < count; c++)
+				action.accept(c);
+		}
+	}
+
+	/**
+	 * Returns the product of two polynomials, truncated to the length of the
+	 * first.
+	 */
+	private static BigInteger[] convolve(BigInteger[] a, BigInteger[] b) {
+		BigInteger[] product = new BigInteger[a.length];
+		Arrays.fill(product, BigInteger.ZERO);
+		for (int i = 0; i < a.length; i++) {
+			if (a[i].signum() == 0)
+				continue;
+			for (int j = 0; j < b.length && i + j < a.length; j++) {
+				if (b[j].signum() != 0)
+					product[i + j] = product[i + j].add(a[i].multiply(b[j]));
+			}
+		}
+		return product;
+	}
+
+	/**
+	 * Returns, for each number <code>s</code> of frontier mines, a value
+	 * proportional to the number of ways to place the other
+	 * <code>remaining - s</code> mines in the interior cells. The common factor
+	 * is chosen so every value is an integer without computing the full binomial
+	 * coefficients, which are huge on large boards.
+	 */
+	private static BigInteger[] interiorWeights(int interior, int remaining, int maxMines) {
+		// weight[s] = C(interior, r) / C(interior, r0) * D, with r = remaining - s,
+		// r0 = remaining - maxMines and D the product of (t + 1) for r0 <= t < remaining
+		int r0 = remaining - maxMines;
+		BigInteger[] rising = new BigInteger[maxMines + 1]; // product of (interior - t) for r0 <= t < r
+		BigInteger[] falling = new BigInteger[maxMines + 1]; // product of (t + 1) for r <= t < remaining
+		rising[0] = BigInteger.ONE;
+		for (int n = 1; n <= maxMines; n++)
+			rising[n] = rising[n - 1].multiply(BigInteger.valueOf(interior - (r0 + n - 1)));
+		falling[maxMines] = BigInteger.ONE;
+		for (int n = maxMines - 1; n >= 0; n--)
+			falling[n] = falling[n + 1].multiply(BigInteger.valueOf(r0 + n + 1));
+
+		BigInteger[] weight = new BigInteger[maxMines + 1];
+		for (int s = 0; s <= maxMines; s++) {
+			int n = maxMines - s; // r - r0
+			weight[s] = rising[n].multiply(falling[n]);
+		}
+		return weight;
+	}
+
+	private static double ratio(BigInteger numerator, BigInteger denominator) {
+		return new BigDecimal(numerator).divide(new BigDecimal(denominator), MathContext.DECIMAL64).doubleValue();
+	}
+
+	private static void checkStop(long deadline, AtomicBoolean cancelled) {
+		if (cancelled.get() || System.nanoTime() - deadline > 0)
+			throw new CancellationException();
+	}
+
+	private static BigInteger[] zeros(int length) {
+		BigInteger[] values = new BigInteger[length];
+		Arrays.fill(values, BigInteger.ZERO);
+		return values;
+	}
+
+	/**
+	 * A snapshot of the visible board, split into frontier components.
+	 */
+	public static final class Problem {
+
+		private final int size;
+		private final BitSet revealed;
+		private final BitSet knownMines;
+		private final BitSet knownSafe;
+		private final int remainingMines;
+		private final int interiorCells;
+		private final int frontierCells;
+		private final int[][] cells;
+		private final Shape[] shapes;
+
+		private Problem(int size, BitSet revealed, BitSet knownMines, BitSet knownSafe, int remainingMines,
+				int interiorCells, int frontierCells, int[][] cells, Shape[] shapes) {
+			this.size = size;
+			this.revealed = revealed;
+			this.knownMines = knownMines;
+			this.knownSafe = knownSafe;
+			this.remainingMines = remainingMines;
+			this.interiorCells = interiorCells;
+			this.frontierCells = frontierCells;
+			this.cells = cells;
+			this.shapes = shapes;
+		}
+
+		/**
+		 * @return the number of independent frontier components
+		 */
+		public int getComponentCount() {
+			return shapes.length;
+		}
+
+		/**
+		 * @return the number of unrevealed cells next to a revealed number
+		 */
+		public int getFrontierCells() {
+			return frontierCells;
+		}
+
+	}
+
+	/**
+	 * The numbers of a component, with its cells numbered from 0 in index order.
+	 * Two components with the same shape have the same counts, wherever they are
+	 * on the board.
+	 */
+	private static final class Shape {
+
+		final int cells;
+		final int[] targets;
+		final int[][] constraints;
+		private final int[] key;
+		private final int hash;
+
+		Shape(int cells, int[] targets, int[][] constraints) {
+			this.cells = cells;
+			this.targets = targets;
+			this.constraints = constraints;
+
+			int length = 1;
+			for (int[] vars : constraints)
+				length += 2 + vars.length;
+			key = new int[length];
+			int n = 0;
+			key[n++] = cells;
+			for (int c = 0; c < constraints.length; c++) {
+				key[n++] = targets[c];
+				key[n++] = constraints[c].length;
+				for (int v : constraints[c])
+					key[n++] = v;
+			}
+			hash = Arrays.hashCode(key);
+		}
+
+		/**
+		 * Returns, for each cell, the numbers which touch it.
+		 */
+		int[][] numbersOf() {
+			int[] perCell = new int[cells];
+			for (int[] vars : constraints) {
+				for (int v : vars)
+					perCell[v]++;
+			}
+			int[][] numbersOf = new int[cells][];
+			for (int v = 0; v < cells; v++)
+				numbersOf[v] = new int[perCell[v]];
+			for (int c = constraints.length - 1; c >= 0; c--) {
+				for (int v : constraints[c])
+					numbersOf[v][--perCell[v]] = c;
+			}
+			return numbersOf;
+		}
+
+		/**
+		 * Returns the cells in the order to decide them. Starting from the first
+		 * cell, the next cell is always one next to the cells already decided which
+		 * opens the fewest new numbers and finishes the most open ones, so that as
+		 * few numbers as possible are open at a time.
+		 */
+		int[] decisionOrder(int[][] numbersOf) {
+			int[] order = new int[cells];
+			boolean[] reached = new boolean[cells];
+			boolean[] opened = new boolean[constraints.length];
+			int[] undecided = new int[constraints.length];
+			for (int c = 0; c < constraints.length; c++)
+				undecided[c] = constraints[c].length;
+
+			// Undecided cells next to a decided cell
+			int[] front = new int[cells];
+			int frontSize = 0;
+			int nextStart = 0;
+			for (int p = 0; p < cells; p++) {
+				if (frontSize == 0) {
+					while (reached[nextStart])
+						nextStart++;
+					reached[nextStart] = true;
+					front[frontSize++] = nextStart;
+				}
+
+				int best = 0;
+				int bestCost = Integer.MAX_VALUE;
+				for (int f = 0; f < frontSize; f++) {
+					int cost = 0;
+					for (int c : numbersOf[front[f]]) {
+						if (opened[c])
+							cost -= undecided[c] == 1 ? 1 : 0;
+						else
+							cost += undecided[c] == 1 ? 0 : 1;
+					}
+					if (cost < bestCost) {
+						best = f;
+						bestCost = cost;
+					}
+				}
+
+				int v = front[best];
+				front[best] = front[--frontSize];
+				order[p] = v;
+				for (int c : numbersOf[v]) {
+					opened[c] = true;
+					undecided[c]--;
+					for (int w : constraints[c]) {
+						if (!reached[w]) {
+							reached[w] = true;
+							front[frontSize++] = w;
+						}
+					}
+				}
+			}
+			return order;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Shape && Arrays.equals(key, ((Shape) o).key);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * The number of arrangements of a component's mines, by number of mines, and
+	 * a way to weigh how often each cell holds a mine.
+	 */
+	private abstract static class Counts {
+
+		final BigInteger[] total;
+
+		Counts(BigInteger[] total) {
+			this.total = total;
+		}
+
+		/**
+		 * Returns, for each cell, the sum over the arrangements with a mine in it of
+		 * <code>share[k]</code>, where <i>k</i> is the arrangement's number of mines.
+		 */
+		abstract BigInteger[] mineWeights(BigInteger[] share, long deadline, AtomicBoolean cancelled);
+	}
+
+	/**
+	 * Counts the arrangements of a small component by backtracking over its cells,
+	 * abandoning a branch as soon as a number has too many mines or too few cells
+	 * left to reach its count. Every arrangement is visited, so this also counts
+	 * how many arrangements with <i>k</i> mines put a mine in each cell.
+	 */
+	private static final class Search extends Counts {
+
+		private final int n;
+		private final int[] targets;
+		private final int[] order;
+		private final int[][] numbersOf;
+		private final int[] mines;
+		private final int[] undecided;
+		private final int[] mineStack;
+		private int mineCount;
+		private final long[] arrangements;
+		private final long[][] cell;
+
+		private final long deadline;
+		private final AtomicBoolean cancelled;
+		private long steps;
+
+		Search(Shape shape, long deadline, AtomicBoolean cancelled) {
+			super(zeros(shape.cells + 1));
+			this.n = shape.cells;
+			this.targets = shape.targets;
+			this.deadline = deadline;
+			this.cancelled = cancelled;
+
+			numbersOf = shape.numbersOf();
+			order = shape.decisionOrder(numbersOf);
+			mines = new int[targets.length];
+			undecided = new int[targets.length];
+			for (int c = 0; c < targets.length; c++)
+				undecided[c] = shape.constraints[c].length;
+			mineStack = new int[n];
+			arrangements = new long[n + 1];
+			cell = new long[n][n + 1];
+		}
+
+		Search run() {
+			search(0);
+			for (int k = 0; k <= n; k++)
+				total[k] = BigInteger.valueOf(arrangements[k]);
+			return this;
+		}
+
+		private void search(int position) {
+			if ((++steps & (CHECK_INTERVAL - 1)) == 0)
+				checkStop(deadline, cancelled);
+
+			if (position == n) {
+				arrangements[mineCount]++;
+				for (int m = 0; m < mineCount; m++)
+					cell[mineStack[m]][mineCount]++;
+				return;
+			}
+
+			int v = order[position];
+			for (int value = 0; value <= 1; value++) {
+				if (assign(v, value)) {
+					if (value == 1)
+						mineStack[mineCount++] = v;
+					search(position + 1);
+					if (value == 1)
+						mineCount--;
+				}
+				unassign(v, value);
+			}
+		}
+
+		/**
+		 * Decides a cell and returns false if that breaks one of its numbers.
+		 */
+		private boolean assign(int v, int value) {
+			boolean valid = true;
+			for (int c : numbersOf[v]) {
+				undecided[c]--;
+				mines[c] += value;
+				if (mines[c] > targets[c] || mines[c] + undecided[c] < targets[c])
+					valid = false;
+			}
+			return valid;
+		}
+
+		private void unassign(int v, int value) {
+			for (int c : numbersOf[v]) {
+				undecided[c]++;
+				mines[c] -= value;
+			}
+		}
+
+		@Override
+		BigInteger[] mineWeights(BigInteger[] share, long deadline, AtomicBoolean cancelled) {
+			BigInteger[] weights = new BigInteger[n];
+			for (int v = 0; v < n; v++) {
+				BigInteger sum = BigInteger.ZERO;
+				for (int k = 0; k <= n; k++) {
+					if (cell[v][k] != 0)
+						sum = sum.add(BigInteger.valueOf(cell[v][k]).multiply(share[k]));
+				}
+				weights[v] = sum;
+			}
+			return weights;
+		}
+	}
+
+	/**
+	 * Counts the arrangements of a large component without visiting them one by
+	 * one. The cells are decided in an order which keeps few numbers open (with
+	 * cells on both sides of the cut), and after deciding the first <i>p</i>
+	 * cells, all that matters for the rest is how many mines each open number
+	 * already has. So the sweep keeps, for each such state, the number of ways to
+	 * reach it with each number of mines, and merges every branch which reaches
+	 * the same state. On a long, thin frontier only a few numbers are open at a
+	 * time, so the work grows with the length of the frontier instead of
+	 * exponentially.
+	 * <p>
+	 * The chance of a mine in each cell needs both the ways to reach a state and
+	 * the weighted ways to finish from it, so a second sweep runs backwards from
+	 * the end. Rather than keep every forward layer, the first sweep keeps one
+	 * layer in every few and the second recomputes the layers in between.
+	 */
+	private static final class Sweep extends Counts {
+
+		// A state packs the mines of each open number into four bits
+		private static final int MAX_OPEN = 16;
+
+		private final int n;
+		private final int[] order;
+		private final int[] targets;
+		private final int[][] numbersOf;
+		private final int[][] remainingAfter;
+		private final int[] firstPosition;
+		private final int[][] open;
+		private final int blockSize;
+		private final List<Map<Long, BigInteger[]>> checkpoints = new ArrayList<>();
+
+		private Sweep(Shape shape, int[][] numbersOf, int[] order, int[] firstPosition, int[][] remainingAfter,
+				int[][] open, long deadline, AtomicBoolean cancelled) {
+			super(zeros(shape.cells + 1));
+			this.n = shape.cells;
+			this.order = order;
+			this.targets = shape.targets;
+			this.numbersOf = numbersOf;
+			this.remainingAfter = remainingAfter;
+			this.firstPosition = firstPosition;
+			this.open = open;
+			this.blockSize = Math.max(1, (int) Math.sqrt(n));
+
+			Map<Long, BigInteger[]> layer = new HashMap<>();
+			layer.put(0L, new BigInteger[] { BigInteger.ONE });
+			for (int p = 0; p < n; p++) {
+				if (p % blockSize == 0)
+					checkpoints.add(layer);
+				layer = forward(p, layer);
+				checkStop(deadline, cancelled);
+			}
+			BigInteger[] last = layer.get(0L);
+			System.arraycopy(last != null ? last : zeros(n + 1), 0, total, 0, n + 1);
+		}
+
+		/**
+		 * Prepares a sweep of the component, or returns null if more numbers are
+		 * open at once than a state can hold.
+		 */
+		static Sweep create(Shape shape, long deadline, AtomicBoolean cancelled) {
+			int n = shape.cells;
+			int[][] numbersOf = shape.numbersOf();
+			int[] order = shape.decisionOrder(numbersOf);
+			int[] position = new int[n];
+			for (int p = 0; p < n; p++)
+				position[order[p]] = p;
+
+			int numberCount = shape.targets.length;
+			int[] firstPosition = new int[numberCount];
+			int[] lastPosition = new int[numberCount];
+			for (int c = 0; c < numberCount; c++) {
+				firstPosition[c] = n;
+				lastPosition[c] = -1;
+				for (int v : shape.constraints[c]) {
+					firstPosition[c] = Math.min(firstPosition[c], position[v]);
+					lastPosition[c] = Math.max(lastPosition[c], position[v]);
+				}
+			}
+
+			int[][] remainingAfter = new int[n][];
+			for (int v = 0; v < n; v++) {
+				remainingAfter[v] = new int[numbersOf[v].length];
+				for (int t = 0; t < numbersOf[v].length; t++) {
+					for (int w : shape.constraints[numbersOf[v][t]]) {
+						if (position[w] > position[v])
+							remainingAfter[v][t]++;
+					}
+				}
+			}
+
+			// The numbers open at each cut, before deciding the cell at that position
+			int[][] open = new int[n + 1][];
+			int[] scratch = new int[numberCount];
+			for (int p = 0; p <= n; p++) {
+				int count = 0;
+				for (int c = 0; c < numberCount; c++) {
+					if (firstPosition[c] < p && lastPosition[c] >= p)
+						scratch[count++] = c;
+				}
+				if (count > MAX_OPEN)
+					return null;
+				open[p] = Arrays.copyOf(scratch, count);
+			}
+			return new Sweep(shape, numbersOf, order, firstPosition, remainingAfter, open, deadline, cancelled);
+		}
+
+		/**
+		 * Returns the state after deciding the cell at position <code>p</code>, or -1
+		 * if the decision breaks a number.
+		 */
+		private long next(int p, long state, int value, int[] mines) {
+			int[] before = open[p];
+			for (int j = 0; j < before.length; j++)
+				mines[before[j]] = (int) (state >>> (4 * j)) & 15;
+
+			int v = order[p];
+			for (int t = 0; t < numbersOf[v].length; t++) {
+				int c = numbersOf[v][t];
+				int m = (firstPosition[c] == p ? 0 : mines[c]) + value;
+				if (m > targets[c] || m + remainingAfter[v][t] < targets[c])
+					return -1;
+				mines[c] = m;
+			}
+
+			int[] after = open[p + 1];
+			long next = 0;
+			for (int j = 0; j < after.length; j++)
+				next |= (long) mines[after[j]] << (4 * j);
+			return next;
+		}
+
+		/**
+		 * Returns the ways to reach each state after position <code>p</code>, by
+		 * number of mines.
+		 */
+		private Map<Long, BigInteger[]> forward(int p, Map<Long, BigInteger[]> layer) {
+			int[] mines = new int[targets.length];
+			Map<Long, BigInteger[]> next = new HashMap<>();
+			for (Map.Entry<Long, BigInteger[]> entry : layer.entrySet()) {
+				BigInteger[] ways = entry.getValue();
+				for (int value = 0; value <= 1; value++) {
+					long state = next(p, entry.getKey(), value, mines);
+					if (state < 0)
+						continue;
+					BigInteger[] sum = next.get(state);
+					if (sum == null) {
+						sum = zeros(p + 2);
+						next.put(state, sum);
+					}
+					for (int a = 0; a < ways.length; a++) {
+						if (ways[a].signum() != 0)
+							sum[a + value] = sum[a + value].add(ways[a]);
+					}
+				}
+			}
+			return next;
+		}
+
+		@Override
+		BigInteger[] mineWeights(BigInteger[] share, long deadline, AtomicBoolean cancelled) {
+			BigInteger[] weights = new BigInteger[n];
+			int[] mines = new int[targets.length];
+
+			// The weighted ways to finish from the end state, by mines so far
+			Map<Long, BigInteger[]> after = new HashMap<>();
+			BigInteger[] end = zeros(n + 1);
+			System.arraycopy(share, 0, end, 0, Math.min(share.length, n + 1));
+			after.put(0L, end);
+
+			for (int block = checkpoints.size() - 1; block >= 0; block--) {
+				int start = block * blockSize;
+				int stop = Math.min(n, start + blockSize);
+				List<Map<Long, BigInteger[]>> layers = new ArrayList<>();
+				layers.add(checkpoints.get(block));
+				for (int p = start; p < stop - 1; p++)
+					layers.add(forward(p, layers.get(layers.size() - 1)));
+
+				for (int p = stop - 1; p >= start; p--) {
+					Map<Long, BigInteger[]> layer = layers.get(p - start);
+					Map<Long, BigInteger[]> before = new HashMap<>();
+					BigInteger weight = BigInteger.ZERO;
+					for (Map.Entry<Long, BigInteger[]> entry : layer.entrySet()) {
+						BigInteger[] ways = entry.getValue();
+						BigInteger[] finish = zeros(p + 1);
+						for (int value = 0; value <= 1; value++) {
+							long state = next(p, entry.getKey(), value, mines);
+							BigInteger[] rest = state < 0 ? null : after.get(state);
+							if (rest == null)
+								continue;
+							for (int a = 0; a <= p; a++) {
+								if (rest[a + value].signum() == 0)
+									continue;
+								finish[a] = finish[a].add(rest[a + value]);
+								if (value == 1 && ways[a].signum() != 0)
+									weight = weight.add(ways[a].multiply(rest[a + 1]));
+							}
+						}
+						before.put(entry.getKey(), finish);
+					}
+					weights[order[p]] = weight;
+					after = before;
+					checkStop(deadline, cancelled);
+				}
+			}
+			return weights;
+		}
+	}
+
+	/**
+	 * Runs an action for a range of indices, splitting the range in two until it
+	 * is a single index.
+	 */
+	private static class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final int from, to;
+		private final IntConsumer action;
+
+		RangeTask(int from, int to, IntConsumer action) {
+			this.from = from;
+			this.to = to;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				action.accept(from);
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new RangeTask(from, middle, action), new RangeTask(middle, to, action));
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+package minesweeper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+/**
+ * A recorded game: the board as it was when recording started and every move
+ * made after that, with its time. Replays are recorded by a
+ * {@link MoveRecorder} and played back by a {@link Replayer}.
+ * <p>
+ * A replay file starts with a 28-byte header:
+ *
+ * <pre>
+ * offset size field
+ *      0    4 magic "MSWR"
+ *      4    2 format version
+ *      6    2 flags (bit 0: the board's cells follow the header; bits 1-2: the
+ *             topology, 0 square, 1 torus, 2 hexagonal)
+ *      8    4 width
+ *     12    4 height
+ *     16    4 number of mines
+ *     20    8 seed used to place the mines
+ * </pre>
+ *
+ * A board recorded before its first click is rebuilt from its seed, which
+ * places the same mines around the same first click. Any other board is
+ * followed by three bit planes, as in a {@link SaveFormat save file}, marking
+ * the cells with mines, flags, and those which have been revealed.
+ * <p>
+ * Then comes the number of moves, as a 4-byte integer, and the moves. Each
+ * move is two unsigned variable-length integers, seven bits per byte with the
+ * high bit set on all but the last byte: the nanoseconds since the previous
+ * move, and the difference from the previous move's cell index (zig-zag
+ * encoded) shifted left by three, plus the kind of move. Moves close in time
+ * and place, which most moves are, take two or three bytes each. Version 1
+ * files, which had no undo or redo moves, shift the cell difference by two.
+ *
+ * @author laurencousin
+ *
+ */
+public final class Replay {
+
+	/** The extension given to replay files. */
+	public static final String EXTENSION = ".mswr";
+
+	static final int MAGIC = 0x4D535752; // "MSWR"
+	static final short VERSION = 2;
+	static final short FLAG_CELLS = 0x1;
+	static final int TOPOLOGY_SHIFT = 1;
+	static final short TOPOLOGY_MASK = 0x6;
+	static final int HEADER_SIZE = 28;
+
+	private final int width, height, numMines;
+	private final long seed;
+	private final Topology topology;
+	private final BitSet mines, flags, revealed;
+	private final long[] times;
+	private final int[] events;
+
+	/**
+	 * Creates a replay. The bit sets are null if the board had no mines yet.
+	 */
+	Replay(int width, int height, int numMines, long seed, Topology topology, BitSet mines, BitSet flags,
+			BitSet revealed, long[] times, int[] events) {
+		this.width = width;
+		this.height = height;
+		this.numMines = numMines;
+		this.seed = seed;
+		this.topology = topology;
+		this.mines = mines;
+		this.flags = flags;
+		this.revealed = revealed;
+		this.times = times;
+		this.events = events;
+	}
+
+	/**
+	 * @return the number of columns
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return how the cells are connected
+	 */
+	public Topology getTopology() {
+		return topology;
+	}
+
+	/**
+	 * @return the number of moves
+	 */
+	public int size() {
+		return times.length;
+	}
+
+	/**
+	 * @param n the position of the move
+	 * @return the time of the move, in nanoseconds since recording started
+	 */
+	public long getTime(int n) {
+		return times[n];
+	}
+
+	/**
+	 * @param n the position of the move
+	 * @return the kind of the move
+	 */
+	public Move.Kind getKind(int n) {
+		return Move.kindOf(events[n]);
+	}
+
+	/**
+	 * @param n the position of the move
+	 * @return the index of the cell the move was made on
+	 */
+	public int getCell(int n) {
+		return Move.cellOf(events[n]);
+	}
+
+	/**
+	 * Creates the board as it was when recording started.
+	 *
+	 * @return a new board model
+	 */
+	public BoardModel createModel() {
+		BoardModel model = new BoardModel(width, height, numMines, seed, topology);
+		if (mines != null) {
+			for (int i = 0; i < model.size(); i++)
+				model.restoreCell(i, mines.get(i), flags.get(i), revealed.get(i));
+			model.calculateNumAdjacentMines();
+		}
+		return model;
+	}
+
+	/**
+	 * Writes the replay to a file, replacing any existing file.
+	 *
+	 * @param path the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(Path path) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeShort((mines != null ? FLAG_CELLS : 0) | topology.ordinal() << TOPOLOGY_SHIFT);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(numMines);
+			out.writeLong(seed);
+			if (mines != null) {
+				int planeBytes = (width * height + 7) / 8;
+				writePlane(out, mines, planeBytes);
+				writePlane(out, flags, planeBytes);
+				writePlane(out, revealed, planeBytes);
+			}
+
+			out.writeInt(times.length);
+			long previousTime = 0;
+			int previousCell = 0;
+			for (int n = 0; n < times.length; n++) {
+				int cell = getCell(n);
+				int cellDelta = cell - previousCell;
+				writeVarint(out, times[n] - previousTime);
+				writeVarint(out, (long) ((cellDelta << 1) ^ (cellDelta >> 31)) << Move.KIND_BITS
+						| getKind(n).ordinal());
+				previousTime = times[n];
+				previousCell = cell;
+			}
+		}
+	}
+
+	/**
+	 * Reads a replay from a file written by {@link #write}.
+	 *
+	 * @param path the file to read
+	 * @return the replay
+	 * @throws IOException if the file cannot be read or is not a replay
+	 */
+	public static Replay read(Path path) throws IOException {
+		long fileSize = Files.size(path);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (in.readInt() != MAGIC)
+				throw new StreamCorruptedException("Not a replay: " + path);
+			short version = in.readShort();
+			if (version > VERSION)
+				throw new IOException("Replay uses format version " + version + ", but only versions up to "
+						+ VERSION + " are supported");
+			short flags = in.readShort();
+			int width = in.readInt();
+			int height = in.readInt();
+			int numMines = in.readInt();
+			long seed = in.readLong();
+			int topology = (flags & TOPOLOGY_MASK) >> TOPOLOGY_SHIFT;
+			if (width < 1 || height < 1 || (long) width * height > GameSession.MAX_CELLS
+					|| numMines < 0 || topology >= Topology.values().length)
+				throw new StreamCorruptedException("Corrupt replay header");
+
+			int size = width * height;
+			long movesStart = HEADER_SIZE + 4;
+			BitSet mines = null, flagPlane = null, revealed = null;
+			if ((flags & FLAG_CELLS) != 0) {
+				int planeBytes = (size + 7) / 8;
+				mines = readPlane(in, planeBytes);
+				flagPlane = readPlane(in, planeBytes);
+				revealed = readPlane(in, planeBytes);
+				movesStart += planeBytes * 3L;
+			}
+
+			// Each move takes at least two bytes, so the file bounds the count
+			int count = in.readInt();
+			if (count < 0 || count > (fileSize - movesStart) / 2)
+				throw new StreamCorruptedException("Corrupt replay header");
+			int kindBits = version < 2 ? 2 : Move.KIND_BITS;
+			Move.Kind[] kinds = Move.Kind.values();
+			long[] times = new long[count];
+			int[] events = new int[count];
+			long time = 0;
+			int cell = 0;
+			for (int n = 0; n < count; n++) {
+				time += readVarint(in);
+				long packed = readVarint(in);
+				int zigzag = (int) (packed >>> kindBits);
+				int kind = (int) (packed & ((1 << kindBits) - 1));
+				cell += (zigzag >>> 1) ^ -(zigzag & 1);
+				if (cell < 0 || cell >= size || kind >= kinds.length)
+					throw new StreamCorruptedException("Corrupt move " + n + " in replay");
+				times[n] = time;
+				events[n] = Move.pack(kinds[kind], cell);
+			}
+			return new Replay(width, height, numMines, seed, Topology.of(topology), mines, flagPlane, revealed, times,
+					events);
+		} catch (EOFException e) {
+			throw new StreamCorruptedException("Replay is truncated");
+		}
+	}
+
+	private static void writePlane(DataOutputStream out, BitSet bits, int planeBytes) throws IOException {
+		byte[] bytes = bits.toByteArray();
+		out.write(bytes);
+		for (int n = bytes.length; n < planeBytes; n++)
+			out.write(0);
+	}
+
+	private static BitSet readPlane(DataInputStream in, int planeBytes) throws IOException {
+		byte[] bytes = new byte[planeBytes];
+		in.readFully(bytes);
+		return BitSet.valueOf(bytes);
+	}
+
+	private static void writeVarint(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static long readVarint(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new StreamCorruptedException("Corrupt number in replay");
+	}
+
+}
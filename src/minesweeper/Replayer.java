@@ -0,0 +1,127 @@
+package minesweeper;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Plays a {@link Replay} back on a new board model, move by move. The caller
+ * decides how fast: the moves can be made as their recorded times come up,
+ * scaled by a speed factor, or all at once to measure how long the game engine
+ * takes for a real game.
+ * <p>
+ * The main method replays a file at full speed and prints the time spent per
+ * move:
+ *
+ * <pre>
+ * java -cp minesweeper.jar minesweeper.Replayer game.mswr [repetitions]
+ * </pre>
+ *
+ * @author laurencousin
+ *
+ */
+public class Replayer {
+
+	private final Replay replay;
+	private final BoardModel model;
+	private final MoveHistory history;
+	private int next;
+
+	/**
+	 * Creates a replayer positioned before the first move.
+	 *
+	 * @param replay the replay to play back
+	 */
+	public Replayer(Replay replay) {
+		this.replay = replay;
+		this.model = replay.createModel();
+		this.history = new MoveHistory(model);
+	}
+
+	/**
+	 * Replays a file at full speed and prints the time spent per move.
+	 *
+	 * @param args the replay file, and optionally how many times to replay it
+	 *             (default 1000)
+	 * @throws IOException if the replay cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1)
+			throw new IllegalArgumentException("Usage: Replayer <replay file> [repetitions]");
+		Replay replay = Replay.read(Paths.get(args[0]));
+		int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+		long nanos = 0;
+		Status status = null;
+		for (int r = 0; r < repetitions; r++) {
+			Replayer replayer = new Replayer(replay);
+			nanos += replayer.runToEnd();
+			status = replayer.getModel().getStatus();
+		}
+		System.out.printf(Locale.ROOT, "%d moves on a %dx%d board, ending %s: %.1f ns per move%n", replay.size(),
+				replay.getWidth(), replay.getHeight(), status,
+				replay.size() == 0 ? 0.0 : (double) nanos / repetitions / replay.size());
+	}
+
+	/**
+	 * @return the board the moves are replayed on
+	 */
+	public BoardModel getModel() {
+		return model;
+	}
+
+	/**
+	 * @return the history of the replayed moves, which can be undone
+	 */
+	public MoveHistory getHistory() {
+		return history;
+	}
+
+	/**
+	 * @return true if there are moves left to replay
+	 */
+	public boolean hasNext() {
+		return next < replay.size();
+	}
+
+	/**
+	 * @return the recorded time of the next move, in nanoseconds since recording
+	 *         started
+	 */
+	public long nextTime() {
+		return replay.getTime(next);
+	}
+
+	/**
+	 * @return the recorded time of the last move, in nanoseconds since recording
+	 *         started
+	 */
+	public long getDuration() {
+		return replay.size() == 0 ? 0 : replay.getTime(replay.size() - 1);
+	}
+
+	/**
+	 * Makes the next move.
+	 *
+	 * @return the cells changed by the move, only valid until the next move
+	 */
+	public CellDelta step() {
+		if (!hasNext())
+			throw new IllegalStateException("No moves left to replay");
+		int n = next++;
+		return history.play(replay.getKind(n), replay.getCell(n));
+	}
+
+	/**
+	 * Makes every remaining move as fast as possible.
+	 *
+	 * @return the time taken, in nanoseconds
+	 */
+	public long runToEnd() {
+		long start = System.nanoTime();
+		while (hasNext())
+			step();
+		return System.nanoTime() - start;
+	}
+
+}
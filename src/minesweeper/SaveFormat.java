@@ -0,0 +1,267 @@
+package minesweeper;
+
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes saved games in a compact, versioned binary format.
+ * <p>
+ * A save file starts with a fixed 48-byte header:
+ *
+ * <pre>
+ * offset size field
+ *      0    4 magic "MSWP"
+ *      4    2 format version
+ *      6    2 flags (bit 0: planes are deflate-compressed)
+ *      8    4 width
+ *     12    4 height
+ *     16    4 number of mines
+ *     20    8 seed used to place the mines (0 if unknown)
+ *     28    8 elapsed game time in milliseconds
+ *     36    4 length of the stored planes in bytes
+ *     40    4 CRC-32 of the uncompressed planes
+ *     44    4 topology (0 square, 1 torus, 2 hexagonal)
+ * </pre>
+ *
+ * It is followed by three bit planes of <code>ceil(width * height / 8)</code>
+ * bytes each, marking the cells with mines, flags, and those which have been
+ * revealed. Bit <code>i % 8</code> of byte <code>i / 8</code> of a plane is
+ * cell <code>i = x * width + y</code>. All values are big-endian.
+ * <p>
+ * Files written by older versions of the game with Java serialization are
+ * recognized by their stream header and converted on read.
+ *
+ * @author laurencousin
+ *
+ */
+public final class SaveFormat {
+
+	/** The extension given to save files. */
+	public static final String EXTENSION = ".msw";
+
+	static final int MAGIC = 0x4D535750; // "MSWP"
+	static final short VERSION = 1;
+	static final short FLAG_COMPRESSED = 0x1;
+	static final int HEADER_SIZE = 48;
+
+	// Files larger than this are memory-mapped rather than read into the heap
+	private static final long MAP_THRESHOLD = 1 << 20;
+	private static final short SERIALIZATION_MAGIC = (short) 0xACED;
+	/*
+	 * The only classes an old save file may hold: the game state, its bit sets or
+	 * the hash sets of int[] coordinates of the oldest versions (which check their
+	 * table as a Map.Entry array), and its topology. Arrays of primitives are
+	 * allowed; anything else in the stream is rejected before it is created.
+	 */
+	private static final ObjectInputFilter SERIALIZATION_FILTER = ObjectInputFilter.Config
+			.createFilter("maxdepth=4;minesweeper.GameState;minesweeper.Topology;java.lang.Enum;"
+					+ "java.util.BitSet;java.util.HashSet;java.util.Map$Entry;!*");
+
+	private SaveFormat() {
+	}
+
+	/**
+	 * Writes a game state to a file, replacing any existing file.
+	 *
+	 * @param gameState the game state to save
+	 * @param path      the file to write
+	 * @param compress  whether to deflate the bit planes
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(GameState gameState, Path path, boolean compress) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer file = ByteBuffer.wrap(encode(gameState, compress));
+			while (file.hasRemaining()) {
+				channel.write(file);
+			}
+		}
+	}
+
+	/**
+	 * Encodes a game state exactly as {@link #write} stores it in a file.
+	 *
+	 * @param gameState the game state to save
+	 * @param compress  whether to deflate the bit planes
+	 * @return the contents of the save file
+	 */
+	static byte[] encode(GameState gameState, boolean compress) {
+		int size = gameState.getWidth() * gameState.getHeight();
+		int planeBytes = (size + 7) / 8;
+		byte[] planes = new byte[planeBytes * 3];
+		setBits(planes, 0, gameState.getMines());
+		setBits(planes, planeBytes, gameState.getFlags());
+		setBits(planes, planeBytes * 2, gameState.getRevealed());
+
+		CRC32 crc = new CRC32();
+		crc.update(planes);
+
+		byte[] stored = planes;
+		int storedLength = planes.length;
+		if (compress) {
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			deflater.setInput(planes);
+			deflater.finish();
+			stored = new byte[planes.length + 64];
+			storedLength = 0;
+			while (!deflater.finished()) {
+				if (storedLength == stored.length)
+					stored = Arrays.copyOf(stored, stored.length * 2);
+				storedLength += deflater.deflate(stored, storedLength, stored.length - storedLength);
+			}
+			deflater.end();
+		}
+
+		ByteBuffer file = ByteBuffer.allocate(HEADER_SIZE + storedLength).order(ByteOrder.BIG_ENDIAN);
+		file.putInt(MAGIC);
+		file.putShort(VERSION);
+		file.putShort(compress ? FLAG_COMPRESSED : 0);
+		file.putInt(gameState.getWidth());
+		file.putInt(gameState.getHeight());
+		file.putInt(gameState.getMines().cardinality());
+		file.putLong(gameState.getSeed());
+		file.putLong(gameState.getCurrentTime());
+		file.putInt(storedLength);
+		file.putInt((int) crc.getValue());
+		file.putInt(gameState.getTopology().ordinal());
+		file.put(stored, 0, storedLength);
+		return file.array();
+	}
+
+	/**
+	 * Reads a game state from a file written by {@link #write}, or from a file
+	 * saved with Java serialization by an older version of the game.
+	 *
+	 * @param path the file to read
+	 * @return the game state
+	 * @throws IOException if the file cannot be read or is not a saved game
+	 */
+	public static GameState read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize >= 2) {
+				ByteBuffer start = ByteBuffer.allocate(2);
+				channel.read(start, 0);
+				if (start.getShort(0) == SERIALIZATION_MAGIC)
+					return readSerialized(channel);
+			}
+			if (fileSize < HEADER_SIZE)
+				throw new StreamCorruptedException("Not a saved game: " + path);
+
+			ByteBuffer buffer;
+			if (fileSize > MAP_THRESHOLD) {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+			} else {
+				buffer = ByteBuffer.allocate((int) fileSize);
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				}
+				buffer.flip();
+			}
+			return decode(buffer.order(ByteOrder.BIG_ENDIAN));
+		}
+	}
+
+	private static GameState decode(ByteBuffer buffer) throws IOException {
+		if (buffer.getInt() != MAGIC)
+			throw new StreamCorruptedException("Not a saved game");
+		short version = buffer.getShort();
+		if (version > VERSION)
+			throw new IOException("Saved game uses format version " + version + ", but only versions up to "
+					+ VERSION + " are supported");
+		short flags = buffer.getShort();
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		buffer.getInt(); // number of mines, also given by the mine plane
+		long seed = buffer.getLong();
+		long currentTime = buffer.getLong();
+		int storedLength = buffer.getInt();
+		int checksum = buffer.getInt();
+		int topology = buffer.getInt();
+		buffer.position(HEADER_SIZE);
+
+		if (width < 1 || height < 1 || (long) width * height > GameSession.MAX_CELLS || storedLength < 0
+				|| storedLength > buffer.remaining() || topology < 0 || topology >= Topology.values().length)
+			throw new StreamCorruptedException("Corrupt saved game header");
+
+		int planeBytes = (int) (((long) width * height + 7) / 8);
+		boolean compressed = (flags & FLAG_COMPRESSED) != 0;
+		// Only allocate the planes once the file is known to hold them
+		if (!compressed && storedLength != planeBytes * 3)
+			throw new StreamCorruptedException("Saved game is truncated");
+		byte[] planes = new byte[planeBytes * 3];
+		ByteBuffer stored = buffer.slice();
+		stored.limit(storedLength);
+		if (compressed) {
+			Inflater inflater = new Inflater();
+			inflater.setInput(stored);
+			try {
+				int n = 0;
+				while (n < planes.length && !inflater.finished()) {
+					int read = inflater.inflate(planes, n, planes.length - n);
+					if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+						break;
+					n += read;
+				}
+				if (n != planes.length)
+					throw new StreamCorruptedException("Saved game is truncated");
+			} catch (DataFormatException e) {
+				throw new StreamCorruptedException("Corrupt saved game: " + e.getMessage());
+			} finally {
+				inflater.end();
+			}
+		} else {
+			stored.get(planes);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(planes);
+		if ((int) crc.getValue() != checksum)
+			throw new StreamCorruptedException("Saved game checksum does not match");
+
+		return new GameState(width, height, getBits(planes, 0, planeBytes), getBits(planes, planeBytes, planeBytes),
+				getBits(planes, planeBytes * 2, planeBytes), currentTime, seed, Topology.of(topology));
+	}
+
+	/**
+	 * Reads a game saved with Java serialization by an older version of the game,
+	 * allowing only the classes a game state is made of.
+	 */
+	private static GameState readSerialized(FileChannel channel) throws IOException {
+		channel.position(0);
+		ObjectInputStream input = new ObjectInputStream(Channels.newInputStream(channel));
+		input.setObjectInputFilter(SERIALIZATION_FILTER);
+		try {
+			return (GameState) input.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new StreamCorruptedException("Not a saved game: " + e.getMessage());
+		}
+	}
+
+	/*
+	 * BitSet's byte layout (bit i % 8 of byte i / 8) is exactly the layout of a
+	 * plane, so planes are copied in and out without visiting each cell.
+	 */
+	private static void setBits(byte[] planes, int offset, BitSet bits) {
+		byte[] bytes = bits.toByteArray();
+		System.arraycopy(bytes, 0, planes, offset, bytes.length);
+	}
+
+	private static BitSet getBits(byte[] planes, int offset, int planeBytes) {
+		return BitSet.valueOf(ByteBuffer.wrap(planes, offset, planeBytes));
+	}
+
+}
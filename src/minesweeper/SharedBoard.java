@@ -0,0 +1,516 @@
+package minesweeper;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A board played by several players at once, from any number of threads,
+ * without locks.
+ * <p>
+ * Each cell is an int word packing its mine, flag, revealed and count bits, as
+ * in {@link BoardModel}, with a version number in the upper bits, and every
+ * change to a cell is a compare-and-set of its word which also increments the
+ * version. Conflicting moves therefore have well-defined outcomes: the first
+ * compare-and-set wins. A cell is revealed exactly once, by exactly one move,
+ * even when two flood fills reach it at the same time, and a cell cannot be
+ * flagged once revealed nor revealed once flagged. A chord checks the flags
+ * around the number as they are when it is made. Moves made after the game is
+ * over are rejected; moves already under way when it ends still complete.
+ * <p>
+ * Every move which changed a cell is published to a sequenced log of
+ * {@link Delta}s, which clients read in order with {@link #read}. Two moves
+ * on the same cell may be sequenced in the opposite order to their
+ * compare-and-sets, so each changed cell carries its version: a client which
+ * only applies a cell's change if its version is newer than the one it holds
+ * always converges on the board's state. The log keeps the most recent
+ * {@value #LOG_CAPACITY} deltas; a client which falls further behind starts
+ * again from a {@link #snapshot}.
+ * <p>
+ * The mines are placed from the seed on the first reveal, keeping the cell
+ * revealed and its neighbors clear. Until then, reveals briefly synchronize on
+ * the board.
+ *
+ * @author laurencousin
+ *
+ */
+public class SharedBoard {
+
+	/** The number of most recent deltas kept in the log. */
+	public static final int LOG_CAPACITY = 4096;
+
+	// Bits of a cell word, as in BoardModel, with the version above them
+	static final int COUNT_MASK = 0x0F;
+	static final int MINE = 0x10;
+	static final int FLAG = 0x20;
+	static final int REVEALED = 0x40;
+	static final int STATE_MASK = 0x7F;
+	static final int VERSION_SHIFT = 7;
+
+	private final int width;
+	private final int height;
+	private final int numMines;
+	private final long seed;
+	private final AtomicIntegerArray cells;
+	private final AtomicInteger unrevealedSafeCells;
+	private final AtomicInteger numFlags = new AtomicInteger();
+	private final AtomicReference<Status> status = new AtomicReference<>(Status.INPROGRESS);
+	private final AtomicInteger players = new AtomicInteger();
+	private final AtomicLong nextSequence = new AtomicLong();
+	private final AtomicReferenceArray<Delta> log = new AtomicReferenceArray<>(LOG_CAPACITY);
+	private volatile boolean minesPlaced;
+	private volatile long startNanos;
+	private volatile long elapsedMillis;
+
+	/**
+	 * Creates a board with no mines placed yet.
+	 *
+	 * @param width    the number of columns
+	 * @param height   the number of rows
+	 * @param numMines the number of mines the board will hold
+	 * @param seed     the seed used to place the mines
+	 */
+	public SharedBoard(int width, int height, int numMines, long seed) {
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("Width and height of board must be positive");
+		if (numMines < 0 || numMines > width * height)
+			throw new IllegalArgumentException(
+					"Cannot place " + numMines + " mines in a " + width + "*" + height + " board");
+		this.width = width;
+		this.height = height;
+		this.numMines = numMines;
+		this.seed = seed;
+		this.cells = new AtomicIntegerArray(width * height);
+		this.unrevealedSafeCells = new AtomicInteger(width * height - numMines);
+	}
+
+	/**
+	 * @return the number of columns
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the number of mines
+	 */
+	public int getNumMines() {
+		return numMines;
+	}
+
+	/**
+	 * @return the number of cells
+	 */
+	public int size() {
+		return cells.length();
+	}
+
+	/**
+	 * @return the status of the game
+	 */
+	public Status getStatus() {
+		return status.get();
+	}
+
+	/**
+	 * @return the number of flags on the board
+	 */
+	public int getNumFlags() {
+		return numFlags.get();
+	}
+
+	/**
+	 * @return the time played so far in milliseconds, counted from the first
+	 *         reveal
+	 */
+	public long getElapsedTime() {
+		if (!minesPlaced || status.get() != Status.INPROGRESS)
+			return elapsedMillis;
+		return (System.nanoTime() - startNanos) / 1_000_000;
+	}
+
+	/**
+	 * Adds a player to the board.
+	 *
+	 * @return the player's number, from 1
+	 */
+	public int join() {
+		return players.incrementAndGet();
+	}
+
+	/**
+	 * Removes a player from the board.
+	 *
+	 * @return the number of players left
+	 */
+	public int leave() {
+		return players.decrementAndGet();
+	}
+
+	/**
+	 * Returns the word of a cell: its state bits and its version.
+	 *
+	 * @param i the cell index
+	 * @return the word
+	 */
+	public int getWord(int i) {
+		return cells.get(i);
+	}
+
+	/**
+	 * Returns what the players see of a cell word, as sent by
+	 * {@link GameProtocol}.
+	 *
+	 * @param word a cell word
+	 * @return 0 to 8, {@link GameProtocol#HIDDEN}, {@link GameProtocol#FLAGGED}
+	 *         or {@link GameProtocol#MINE}
+	 */
+	public static int visibleValue(int word) {
+		if ((word & REVEALED) != 0)
+			return (word & MINE) != 0 ? GameProtocol.MINE : word & COUNT_MASK;
+		return (word & FLAG) != 0 ? GameProtocol.FLAGGED : GameProtocol.HIDDEN;
+	}
+
+	/**
+	 * Returns the version of a cell word, which is incremented by every change
+	 * to the cell and wraps around after 2<sup>25</sup> changes.
+	 *
+	 * @param word a cell word
+	 * @return the version
+	 */
+	public static int version(int word) {
+		return word >>> VERSION_SHIFT;
+	}
+
+	/**
+	 * Returns true if the first version is newer than the second, allowing for
+	 * wrap-around.
+	 *
+	 * @param version a version
+	 * @param than    another version of the same cell
+	 * @return true if <code>version</code> is newer
+	 */
+	public static boolean isNewer(int version, int than) {
+		return ((version - than) << VERSION_SHIFT) > 0;
+	}
+
+	/**
+	 * Makes a move for a player.
+	 *
+	 * @param player the player's number
+	 * @param kind   the kind of move, {@link Move.Kind#REVEAL},
+	 *               {@link Move.Kind#FLAG} or {@link Move.Kind#CHORD}
+	 * @param cell   the index of the cell the move is made on
+	 * @return the cells changed by the move, which is empty if another player's
+	 *         move got there first
+	 * @throws IllegalStateException    if the game is over
+	 * @throws IllegalArgumentException if the cell is not on the board or the
+	 *                                  move cannot be made by a player
+	 */
+	public Delta play(int player, Move.Kind kind, int cell) {
+		if (status.get() != Status.INPROGRESS)
+			throw new IllegalStateException("The game is over");
+		if (cell < 0 || cell >= cells.length())
+			throw new IllegalArgumentException("No cell " + cell + " on the board");
+
+		kind = GameSession.resolve(kind, (cells.get(cell) & REVEALED) != 0);
+		Delta delta = new Delta(player, kind);
+		switch (kind) {
+		case REVEAL:
+			if (!minesPlaced)
+				placeMines(cell);
+			if (tryReveal(cell, delta))
+				floodFill(delta);
+			break;
+		case FLAG:
+			toggleFlag(cell, delta);
+			break;
+		default:
+			chord(cell, delta);
+			break;
+		}
+		return publish(delta);
+	}
+
+	/**
+	 * Adds the deltas published from the given sequence number on, in order,
+	 * stopping at the first which is not yet published.
+	 *
+	 * @param from the sequence number of the first delta wanted
+	 * @param out  the list to add the deltas to
+	 * @return false if deltas from the sequence number on have already left the
+	 *         log, in which case nothing is added and the reader should start
+	 *         again from a {@link #snapshot}
+	 */
+	public boolean read(long from, List<Delta> out) {
+		for (long sequence = from;; sequence++) {
+			Delta delta = log.get((int) (sequence % LOG_CAPACITY));
+			if (delta == null || delta.sequence < sequence)
+				return true;
+			if (delta.sequence > sequence) {
+				if (sequence == from)
+					return false;
+				// Overwritten while reading: the deltas read so far are still in order
+				return true;
+			}
+			out.add(delta);
+		}
+	}
+
+	/**
+	 * Copies the word of every cell into the array, and returns the sequence
+	 * number of the first delta which may not be reflected in it. Reading the log
+	 * from that number and applying only the newer versions brings the copy up to
+	 * date.
+	 *
+	 * @param words an array of at least {@link #size()} ints
+	 * @return the sequence number to read the log from
+	 */
+	public long snapshot(int[] words) {
+		// Deltas are sequenced after their cells change, so read the sequence first
+		long sequence = nextSequence.get();
+		for (int i = 0; i < cells.length(); i++)
+			words[i] = cells.get(i);
+		return sequence;
+	}
+
+	/**
+	 * @return the sequence number the next published delta will have
+	 */
+	public long getSequence() {
+		return nextSequence.get();
+	}
+
+	/**
+	 * @return the state of the game, which can be written to a save file
+	 */
+	public GameState getState() {
+		int size = cells.length();
+		BitSet mines = new BitSet(size);
+		BitSet flags = new BitSet(size);
+		BitSet revealed = new BitSet(size);
+		for (int i = 0; i < size; i++) {
+			int word = cells.get(i);
+			mines.set(i, (word & MINE) != 0);
+			flags.set(i, (word & FLAG) != 0);
+			revealed.set(i, (word & REVEALED) != 0);
+		}
+		return new GameState(width, height, mines, flags, revealed, getElapsedTime(), seed);
+	}
+
+	/**
+	 * Places the mines and counts them with a {@link BoardModel}, merging them
+	 * into the cell words without disturbing flags placed in the meantime.
+	 */
+	private synchronized void placeMines(int safeCell) {
+		if (minesPlaced)
+			return;
+		BoardModel model = new BoardModel(width, height, numMines, seed);
+		model.placeMines(safeCell);
+		model.calculateNumAdjacentMines();
+		for (int i = 0; i < cells.length(); i++) {
+			int bits = (model.hasMine(i) ? MINE : 0) | model.getNumAdjacentMines(i);
+			int word;
+			do {
+				word = cells.get(i);
+			} while (!cells.compareAndSet(i, word, word | bits));
+		}
+		startNanos = System.nanoTime();
+		minesPlaced = true;
+	}
+
+	/**
+	 * Returns the word with new state bits and the next version.
+	 */
+	private static int next(int word, int state) {
+		return (version(word) + 1) << VERSION_SHIFT | state;
+	}
+
+	/**
+	 * Reveals the cell if it is neither revealed nor flagged, adding it to the
+	 * delta and updating the status of the game.
+	 *
+	 * @return true if this move revealed the cell
+	 */
+	private boolean tryReveal(int i, Delta delta) {
+		while (true) {
+			int word = cells.get(i);
+			if ((word & (REVEALED | FLAG)) != 0)
+				return false;
+			int revealed = next(word, (word & STATE_MASK) | REVEALED);
+			if (cells.compareAndSet(i, word, revealed)) {
+				delta.add(i, revealed);
+				if ((word & MINE) != 0)
+					end(Status.LOSE);
+				else if (unrevealedSafeCells.decrementAndGet() == 0)
+					end(Status.WIN);
+				return true;
+			}
+		}
+	}
+
+	private void end(Status result) {
+		if (status.compareAndSet(Status.INPROGRESS, result))
+			elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+	}
+
+	private void toggleFlag(int i, Delta delta) {
+		while (true) {
+			int word = cells.get(i);
+			if ((word & REVEALED) != 0)
+				return;
+			int toggled = next(word, (word & STATE_MASK) ^ FLAG);
+			if (cells.compareAndSet(i, word, toggled)) {
+				numFlags.addAndGet((toggled & FLAG) != 0 ? 1 : -1);
+				delta.add(i, toggled);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reveals the unflagged neighbors of a revealed number if it has as many
+	 * flagged neighbors as adjacent mines.
+	 */
+	private void chord(int i, Delta delta) {
+		int word = cells.get(i);
+		if ((word & (REVEALED | MINE)) != REVEALED)
+			return;
+		int[] neighbors = new int[8];
+		int count = neighbors(i, neighbors);
+		int flags = 0;
+		for (int n = 0; n < count; n++) {
+			if ((cells.get(neighbors[n]) & FLAG) != 0)
+				flags++;
+		}
+		if (flags != (word & COUNT_MASK))
+			return;
+		for (int n = 0; n < count; n++)
+			tryReveal(neighbors[n], delta);
+		floodFill(delta);
+	}
+
+	/**
+	 * Expands every "0" this move revealed. Cells revealed by other moves are
+	 * left for those moves to expand.
+	 */
+	private void floodFill(Delta delta) {
+		int[] neighbors = new int[8];
+		for (int head = 0; head < delta.size; head++) {
+			int word = delta.words[head];
+			if ((word & (MINE | COUNT_MASK)) != 0)
+				continue;
+			int count = neighbors(delta.cells[head], neighbors);
+			for (int n = 0; n < count; n++)
+				tryReveal(neighbors[n], delta);
+		}
+	}
+
+	private int neighbors(int i, int[] out) {
+		int x = i / width;
+		int y = i % width;
+		int count = 0;
+		for (int nx = Math.max(0, x - 1); nx <= Math.min(height - 1, x + 1); nx++) {
+			for (int ny = Math.max(0, y - 1); ny <= Math.min(width - 1, y + 1); ny++) {
+				if (nx != x || ny != y)
+					out[count++] = nx * width + ny;
+			}
+		}
+		return count;
+	}
+
+	private Delta publish(Delta delta) {
+		if (delta.size == 0)
+			return delta;
+		delta.sequence = nextSequence.getAndIncrement();
+		log.set((int) (delta.sequence % LOG_CAPACITY), delta);
+		return delta;
+	}
+
+	/**
+	 * The cells changed by one move on a shared board, with their new words.
+	 */
+	public static final class Delta {
+
+		private long sequence = -1;
+		private final int player;
+		private final Move.Kind kind;
+		private int[] cells = new int[4];
+		private int[] words = new int[4];
+		private int size;
+
+		Delta(int player, Move.Kind kind) {
+			this.player = player;
+			this.kind = kind;
+		}
+
+		private void add(int cell, int word) {
+			if (size == cells.length) {
+				cells = Arrays.copyOf(cells, size * 2);
+				words = Arrays.copyOf(words, size * 2);
+			}
+			cells[size] = cell;
+			words[size] = word;
+			size++;
+		}
+
+		/**
+		 * @return the position of the delta in the board's log, or -1 if the move
+		 *         changed nothing and was not logged
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @return the number of the player who made the move
+		 */
+		public int getPlayer() {
+			return player;
+		}
+
+		/**
+		 * @return the kind of move, which is a chord for a reveal of a revealed cell
+		 */
+		public Move.Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return the number of cells changed
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @param n the position of the change in the delta
+		 * @return the index of the changed cell
+		 */
+		public int getCell(int n) {
+			return cells[n];
+		}
+
+		/**
+		 * @param n the position of the change in the delta
+		 * @return the cell's word after the change
+		 */
+		public int getWord(int n) {
+			return words[n];
+		}
+
+	}
+
+}
@@ -0,0 +1,359 @@
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Checks that a {@link SharedBoard} stays consistent while many players race
+ * on it, and that clients following it converge on its final state.
+ * <p>
+ * Each round starts a small board with more players than processors, so
+ * their moves collide all the time: reveals (which chord revealed cells),
+ * flag toggles and chords, mostly on safe cells so games last a while. At the
+ * same time, readers follow the board as a client of {@link GameServer} does:
+ * from a snapshot, then reading the log and keeping only the newer version of
+ * each cell. Some readers pause at random, so they fall out of the log and
+ * have to start again from a snapshot. Once the players stop, every round
+ * checks that:
+ * <ul>
+ * <li>every reader sees each cell exactly as the board has it, value and
+ * version;</li>
+ * <li>the log is sequenced without gaps, and a version of a cell always has
+ * the same value;</li>
+ * <li>no cell is both flagged and revealed, the flag count matches the flags,
+ * and the status matches the revealed cells;</li>
+ * <li>when the log still holds every delta of the round, each cell was
+ * revealed by exactly one move, and its version counts its changes.</li>
+ * </ul>
+ * The main method runs the rounds and exits with status 1 on the first
+ * failure:
+ *
+ * <pre>
+ * java -cp minesweeper.jar minesweeper.SharedBoardStress [rounds] [players] [readers]
+ * </pre>
+ *
+ * @author laurencousin
+ *
+ */
+public class SharedBoardStress {
+
+	// Small enough that the players keep running into each other
+	private static final int SIDE = 24;
+	private static final int MINES = SIDE * SIDE * 3 / 20;
+	// The chance that a player reveals a cell it knows holds a mine, ending the game
+	private static final double MISTAKE_RATE = 0.002;
+
+	private final int players;
+	private final int readers;
+
+	/**
+	 * @param players the number of threads making moves
+	 * @param readers the number of threads following the board
+	 */
+	public SharedBoardStress(int players, int readers) {
+		if (players < 1 || readers < 1)
+			throw new IllegalArgumentException("At least one player and one reader are needed");
+		this.players = players;
+		this.readers = readers;
+	}
+
+	/**
+	 * Runs the rounds and prints a summary.
+	 *
+	 * @param args the number of rounds (500 if absent), of players (twice the
+	 *             processors, at least 4, if absent) and of readers (4 if absent)
+	 * @throws InterruptedException if interrupted while a round runs
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int players = args.length > 1 ? Integer.parseInt(args[1])
+				: Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+		int readers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+		SharedBoardStress stress = new SharedBoardStress(players, readers);
+		int[] results = new int[Status.values().length];
+		int fullLogs = 0;
+		long snapshots = 0;
+		long start = System.nanoTime();
+		for (int round = 1; round <= rounds; round++) {
+			try {
+				Round result = stress.run(round);
+				results[result.status.ordinal()]++;
+				if (result.fullLog)
+					fullLogs++;
+				snapshots += result.snapshots;
+			} catch (IllegalStateException e) {
+				System.err.println("Round " + round + " failed: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		System.out.println(String.format(Locale.ROOT,
+				"%d rounds with %d players and %d readers in %.1f s: %d won, %d lost, %d unfinished; "
+						+ "%d checked against their whole log; readers started again from %d snapshots",
+				rounds, players, readers, (System.nanoTime() - start) / 1e9, results[Status.WIN.ordinal()],
+				results[Status.LOSE.ordinal()], results[Status.INPROGRESS.ordinal()], fullLogs, snapshots));
+	}
+
+	/**
+	 * Plays one round and checks it.
+	 *
+	 * @param seed the seed of the round's board and of its players' choices
+	 * @return what happened in the round
+	 * @throws IllegalStateException if a check fails
+	 * @throws InterruptedException  if interrupted while the round runs
+	 */
+	Round run(long seed) throws InterruptedException {
+		SharedBoard board = new SharedBoard(SIDE, SIDE, MINES, seed);
+		SplittableRandom random = new SplittableRandom(seed);
+		int moves = 50 + random.nextInt(8 * SharedBoard.LOG_CAPACITY / players);
+		// Rounds with few reveals last long enough for the log to drop deltas
+		double share = random.nextDouble();
+		double reveals = 0.002 + 0.5 * share * share;
+		CountDownLatch go = new CountDownLatch(1);
+		AtomicBoolean playing = new AtomicBoolean(true);
+
+		ExecutorService threads = Executors.newFixedThreadPool(players + readers,
+				new DaemonThreadFactory("shared-board-stress"));
+		try {
+			List<Future<?>> played = new ArrayList<>();
+			for (int p = 1; p <= players; p++)
+				played.add(threads.submit(player(board, p, random.split(), moves, reveals, go)));
+			List<Future<Reader>> followed = new ArrayList<>();
+			for (int r = 0; r < readers; r++)
+				followed.add(threads.submit(reader(board, r % 2 == 1, random.split(), playing, go)));
+			go.countDown();
+
+			for (Future<?> player : played)
+				get(player);
+			playing.set(false);
+			Round round = new Round(board.getStatus());
+			for (Future<Reader> reader : followed) {
+				Reader done = get(reader);
+				round.snapshots += done.snapshots;
+				for (int i = 0; i < board.size(); i++) {
+					int word = board.getWord(i);
+					if (SharedBoard.visibleValue(done.words[i]) != SharedBoard.visibleValue(word)
+							|| SharedBoard.version(done.words[i]) != SharedBoard.version(word))
+						throw new IllegalStateException("A reader sees cell " + i + " as "
+								+ describe(done.words[i]) + ", not " + describe(word));
+				}
+			}
+			checkBoard(board);
+			round.fullLog = checkLog(board);
+			return round;
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+
+	/**
+	 * What happened in a round.
+	 */
+	static final class Round {
+
+		private final Status status;
+		private boolean fullLog;
+		private long snapshots;
+
+		Round(Status status) {
+			this.status = status;
+		}
+
+	}
+
+	private static Callable<Void> player(SharedBoard board, int player, SplittableRandom random, int moves,
+			double reveals, CountDownLatch go) {
+		return new Callable<Void>() {
+			public Void call() throws InterruptedException {
+				go.await();
+				try {
+					for (int n = 0; n < moves; n++) {
+						int cell = random.nextInt(board.size());
+						double choice = random.nextDouble();
+						boolean mine = (board.getWord(cell) & SharedBoard.MINE) != 0;
+						if (choice < reveals) {
+							// Reveals of revealed cells are chords
+							if (!mine || random.nextDouble() < MISTAKE_RATE)
+								board.play(player, Move.Kind.REVEAL, cell);
+							else
+								board.play(player, Move.Kind.FLAG, cell);
+						} else if (choice < 0.85) {
+							board.play(player, Move.Kind.FLAG, cell);
+							// A flag on a safe cell races the reveals, but is taken back before a chord trusts it
+							if (!mine)
+								board.play(player, Move.Kind.FLAG, cell);
+						} else {
+							board.play(player, Move.Kind.CHORD, cell);
+						}
+					}
+				} catch (IllegalStateException e) {
+					// The game is over
+				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * A copy of a board kept up to date from its log.
+	 */
+	private static final class Reader {
+
+		private final SharedBoard board;
+		private final int[] words;
+		private long next;
+		private long snapshots;
+		private final List<SharedBoard.Delta> deltas = new ArrayList<>();
+
+		Reader(SharedBoard board) {
+			this.board = board;
+			words = new int[board.size()];
+			next = board.snapshot(words);
+		}
+
+		/**
+		 * Applies the deltas published since the last call.
+		 *
+		 * @return true if there were any
+		 */
+		boolean catchUp() {
+			deltas.clear();
+			if (!board.read(next, deltas)) {
+				next = board.snapshot(words);
+				snapshots++;
+				return true;
+			}
+			for (SharedBoard.Delta delta : deltas) {
+				if (delta.getSequence() != next)
+					throw new IllegalStateException("Read delta " + delta.getSequence() + " when expecting " + next);
+				for (int n = 0; n < delta.size(); n++) {
+					int i = delta.getCell(n);
+					int word = delta.getWord(n);
+					if (SharedBoard.isNewer(SharedBoard.version(word), SharedBoard.version(words[i])))
+						words[i] = word;
+					else if (SharedBoard.version(word) == SharedBoard.version(words[i])
+							&& SharedBoard.visibleValue(word) != SharedBoard.visibleValue(words[i]))
+						throw new IllegalStateException("Cell " + i + " has two values at version "
+								+ SharedBoard.version(word) + ": " + describe(word) + " and " + describe(words[i]));
+				}
+				next++;
+			}
+			return !deltas.isEmpty();
+		}
+
+	}
+
+	private static Callable<Reader> reader(SharedBoard board, boolean lagging, SplittableRandom random,
+			AtomicBoolean playing, CountDownLatch go) {
+		return new Callable<Reader>() {
+			public Reader call() throws InterruptedException {
+				go.await();
+				// Start from a snapshot taken while the players are at it
+				LockSupport.parkNanos(random.nextLong(TimeUnit.MILLISECONDS.toNanos(1)));
+				Reader reader = new Reader(board);
+				while (playing.get()) {
+					if (!reader.catchUp())
+						Thread.onSpinWait();
+					if (lagging && random.nextInt(8) == 0)
+						LockSupport.parkNanos(random.nextLong(TimeUnit.MILLISECONDS.toNanos(5)));
+				}
+				// Every move is published by now
+				while (reader.next < board.getSequence())
+					reader.catchUp();
+				return reader;
+			}
+		};
+	}
+
+	private static void checkBoard(SharedBoard board) {
+		int flags = 0;
+		int hiddenSafe = 0;
+		boolean mineRevealed = false;
+		for (int i = 0; i < board.size(); i++) {
+			int word = board.getWord(i);
+			boolean revealed = (word & SharedBoard.REVEALED) != 0;
+			if (revealed && (word & SharedBoard.FLAG) != 0)
+				throw new IllegalStateException("Cell " + i + " is both flagged and revealed");
+			if ((word & SharedBoard.FLAG) != 0)
+				flags++;
+			if ((word & SharedBoard.MINE) != 0)
+				mineRevealed |= revealed;
+			else if (!revealed)
+				hiddenSafe++;
+		}
+		if (flags != board.getNumFlags())
+			throw new IllegalStateException(board.getNumFlags() + " flags counted, but " + flags + " on the board");
+
+		Status status = board.getStatus();
+		boolean consistent;
+		if (status == Status.WIN)
+			consistent = hiddenSafe == 0;
+		else if (status == Status.LOSE)
+			consistent = mineRevealed;
+		else
+			consistent = !mineRevealed && hiddenSafe > 0;
+		if (!consistent)
+			throw new IllegalStateException("Status " + status + " with " + hiddenSafe + " safe cells hidden and "
+					+ (mineRevealed ? "a" : "no") + " mine revealed");
+	}
+
+	/**
+	 * Replays the whole log against the board, if it still holds every delta.
+	 *
+	 * @return false if the log has dropped deltas, so nothing was checked
+	 */
+	private static boolean checkLog(SharedBoard board) {
+		List<SharedBoard.Delta> all = new ArrayList<>();
+		if (board.getSequence() > SharedBoard.LOG_CAPACITY || !board.read(0, all))
+			return false;
+		if (all.size() != board.getSequence())
+			throw new IllegalStateException("Read " + all.size() + " of " + board.getSequence() + " deltas");
+
+		int[] changes = new int[board.size()];
+		int[] reveals = new int[board.size()];
+		for (SharedBoard.Delta delta : all) {
+			for (int n = 0; n < delta.size(); n++) {
+				int i = delta.getCell(n);
+				changes[i]++;
+				if ((delta.getWord(n) & SharedBoard.REVEALED) != 0)
+					reveals[i]++;
+			}
+		}
+		for (int i = 0; i < board.size(); i++) {
+			int word = board.getWord(i);
+			int expected = (word & SharedBoard.REVEALED) != 0 ? 1 : 0;
+			if (reveals[i] != expected)
+				throw new IllegalStateException("Cell " + i + " revealed by " + reveals[i] + " moves");
+			if (SharedBoard.version(word) != changes[i])
+				throw new IllegalStateException(
+						"Cell " + i + " is at version " + SharedBoard.version(word) + " after " + changes[i] + " changes");
+		}
+		return true;
+	}
+
+	private static String describe(int word) {
+		return "value " + SharedBoard.visibleValue(word) + " version " + SharedBoard.version(word);
+	}
+
+	private static <T> T get(Future<T> task) throws InterruptedException {
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IllegalStateException)
+				throw (IllegalStateException) e.getCause();
+			throw new IllegalStateException("A thread failed", e.getCause());
+		}
+	}
+
+}
@@ -0,0 +1,334 @@
+package minesweeper;
+
+/**
+ * Deduces which unrevealed cells are certainly safe and which certainly hold a
+ * mine, using only what the player can see: the numbers on revealed cells. The
+ * player's flags are ignored, since they may be wrong.
+ * <p>
+ * Every revealed number is a constraint: the number of mines among its
+ * unrevealed neighbors. The solver applies two kinds of rules to them:
+ * <ul>
+ * <li>single-cell rules: if a number already touches as many known mines as it
+ * shows, its other unknown neighbors are safe, and if it has exactly as many
+ * unknown neighbors as missing mines, they are all mines;</li>
+ * <li>pair rules: for two numbers sharing unknown cells, if the mines one needs
+ * outside the shared cells can only be placed in one way, the cells only one
+ * of them touches are all safe or all mines. This includes the subset rule,
+ * where one number's unknown cells are all shared.</li>
+ * </ul>
+ * The solver is incremental: {@link #update(CellDelta)} only re-examines the
+ * numbers next to cells which changed, and a deduction only re-examines the
+ * numbers next to the deduced cell, so the cost of a move depends on how much
+ * of the frontier it changed rather than on the size of the board.
+ *
+ * @author laurencousin
+ *
+ */
+public class Solver {
+
+	private static final byte SAFE = 1;
+	private static final byte MINE = 2;
+	private static final byte QUEUED = 4;
+
+	private final BoardModel model;
+	private final byte[] knowledge;
+
+	// Numbers waiting to be examined, and cells deduced safe but not yet revealed
+	private final IntQueue work = new IntQueue();
+	private final IntQueue safeCells = new IntQueue();
+	private final IntQueue mineCells = new IntQueue();
+	private int knownMines;
+
+	// Scratch space for one pair of constraints
+	private final int[] adj = new int[8];
+	private final int[] around = new int[8];
+	private final int[] unknownA = new int[8];
+	private final int[] unknownB = new int[8];
+	private final int[] onlyB = new int[8];
+	private final int[] partners = new int[64];
+
+	/**
+	 * Creates a solver for the given board and examines every number already
+	 * revealed on it.
+	 *
+	 * @param model the board model
+	 */
+	public Solver(BoardModel model) {
+		this.model = model;
+		this.knowledge = new byte[model.size()];
+		for (int i = 0; i < model.size(); i++) {
+			if (model.isRevealed(i))
+				enqueue(i);
+		}
+		solve();
+	}
+
+	/**
+	 * Updates the deductions after a move, re-examining only the numbers around
+	 * the cells the move revealed. Cells which an undo hid or unflagged again are
+	 * offered again as safe cells or unflagged mines if their state was deduced.
+	 *
+	 * @param delta the cells changed by the move
+	 */
+	public void update(CellDelta delta) {
+		for (int n = 0; n < delta.size(); n++) {
+			int c = delta.get(n);
+			if (!model.isRevealed(c)) {
+				restore(c);
+				continue;
+			}
+
+			enqueue(c);
+			// The neighbors of this cell have one unknown cell fewer
+			int count = model.neighbors(c, adj);
+			for (int k = 0; k < count; k++) {
+				if (model.isRevealed(adj[k]))
+					enqueue(adj[k]);
+			}
+		}
+		solve();
+	}
+
+	/**
+	 * Returns true if the cell is unrevealed and certainly safe.
+	 *
+	 * @param i the cell index
+	 * @return whether the cell is known to be safe
+	 */
+	public boolean isKnownSafe(int i) {
+		return (knowledge[i] & SAFE) != 0 && !model.isRevealed(i);
+	}
+
+	/**
+	 * Returns true if the cell certainly holds a mine.
+	 *
+	 * @param i the cell index
+	 * @return whether the cell is known to be a mine
+	 */
+	public boolean isKnownMine(int i) {
+		return (knowledge[i] & MINE) != 0;
+	}
+
+	/**
+	 * @return the number of cells deduced to hold a mine
+	 */
+	public int getKnownMines() {
+		return knownMines;
+	}
+
+	/**
+	 * Returns an unrevealed cell which is certainly safe, or -1 if none can be
+	 * deduced.
+	 *
+	 * @return the cell index, or -1
+	 */
+	public int findSafeCell() {
+		while (!safeCells.isEmpty()) {
+			int c = safeCells.peek();
+			if (!model.isRevealed(c))
+				return c;
+			safeCells.poll();
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns an unflagged cell which certainly holds a mine, or -1 if none can be
+	 * deduced.
+	 *
+	 * @return the cell index, or -1
+	 */
+	public int findUnflaggedMine() {
+		while (!mineCells.isEmpty()) {
+			int c = mineCells.peek();
+			if (!model.hasFlag(c) && !model.isRevealed(c))
+				return c;
+			mineCells.poll();
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns a cell to suggest to the player: a safe cell if one is known,
+	 * otherwise an unflagged mine, otherwise -1.
+	 *
+	 * @return the cell index, or -1
+	 */
+	public int hint() {
+		int c = findSafeCell();
+		return c >= 0 ? c : findUnflaggedMine();
+	}
+
+	/**
+	 * Queues an unrevealed cell again if its state is known, since it may have
+	 * been taken from the queue while it was revealed or flagged.
+	 */
+	private void restore(int c) {
+		if ((knowledge[c] & SAFE) != 0)
+			safeCells.add(c);
+		else if ((knowledge[c] & MINE) != 0 && !model.hasFlag(c))
+			mineCells.add(c);
+	}
+
+	private void enqueue(int c) {
+		if ((knowledge[c] & QUEUED) == 0 && model.isRevealed(c) && !model.hasMine(c)
+				&& model.getNumAdjacentMines(c) > 0) {
+			knowledge[c] |= QUEUED;
+			work.add(c);
+		}
+	}
+
+	private void solve() {
+		while (!work.isEmpty()) {
+			int a = work.poll();
+			knowledge[a] &= ~QUEUED;
+			examine(a);
+		}
+	}
+
+	/**
+	 * Applies the single-cell rules to a number, then the pair rules to it and
+	 * each number sharing one of its unknown cells.
+	 */
+	private void examine(int a) {
+		int unknownCount = 0;
+		int mines = 0;
+		int count = model.neighbors(a, adj);
+		for (int k = 0; k < count; k++) {
+			int c = adj[k];
+			if (model.isRevealed(c) || (knowledge[c] & SAFE) != 0)
+				continue;
+			if ((knowledge[c] & MINE) != 0)
+				mines++;
+			else
+				unknownA[unknownCount++] = c;
+		}
+		if (unknownCount == 0)
+			return;
+
+		int missing = model.getNumAdjacentMines(a) - mines;
+		if (missing == 0) {
+			for (int k = 0; k < unknownCount; k++)
+				markSafe(unknownA[k]);
+			return;
+		}
+		if (missing == unknownCount) {
+			for (int k = 0; k < unknownCount; k++)
+				markMine(unknownA[k]);
+			return;
+		}
+
+		// Find the other numbers which touch one of this number's unknown cells
+		int partnerCount = 0;
+		for (int k = 0; k < unknownCount; k++) {
+			int n = model.neighbors(unknownA[k], adj);
+			for (int m = 0; m < n; m++) {
+				int b = adj[m];
+				if (b == a || !model.isRevealed(b) || model.hasMine(b))
+					continue;
+				boolean seen = false;
+				for (int p = 0; p < partnerCount && !seen; p++)
+					seen = partners[p] == b;
+				if (!seen)
+					partners[partnerCount++] = b;
+			}
+		}
+
+		for (int p = 0; p < partnerCount; p++) {
+			if (applyPairRule(a, unknownCount, missing, partners[p])) {
+				// The unknown cells of this number are stale now; look at it again later
+				enqueue(a);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Applies the pair rule to number a and number b. The unknown cells of b are
+	 * encoded as a bit mask over the unknown cells of a, plus a list of the cells
+	 * only b touches.
+	 *
+	 * @return true if a deduction was made
+	 */
+	private boolean applyPairRule(int a, int unknownCountA, int missingA, int b) {
+		int unknownCountB = 0;
+		int minesB = 0;
+		int count = model.neighbors(b, unknownB);
+		for (int k = 0; k < count; k++) {
+			int c = unknownB[k];
+			if (model.isRevealed(c) || (knowledge[c] & SAFE) != 0)
+				continue;
+			if ((knowledge[c] & MINE) != 0)
+				minesB++;
+			else
+				unknownB[unknownCountB++] = c;
+		}
+		int missingB = model.getNumAdjacentMines(b) - minesB;
+
+		int shared = 0;
+		int onlyBCount = 0;
+		for (int k = 0; k < unknownCountB; k++) {
+			int c = unknownB[k];
+			int slot = -1;
+			for (int s = 0; s < unknownCountA && slot < 0; s++) {
+				if (unknownA[s] == c)
+					slot = s;
+			}
+			if (slot >= 0)
+				shared |= 1 << slot;
+			else
+				onlyB[onlyBCount++] = c;
+		}
+		int onlyA = ~shared & ((1 << unknownCountA) - 1);
+		int onlyACount = Integer.bitCount(onlyA);
+
+		if (missingA - missingB == onlyACount && onlyACount + onlyBCount > 0) {
+			// a's extra mines fill the cells only a touches; the cells only b touches are safe
+			for (int s = 0; s < unknownCountA; s++) {
+				if ((onlyA & (1 << s)) != 0)
+					markMine(unknownA[s]);
+			}
+			for (int k = 0; k < onlyBCount; k++)
+				markSafe(onlyB[k]);
+			return true;
+		}
+		if (missingB - missingA == onlyBCount && onlyACount + onlyBCount > 0) {
+			// b's extra mines fill the cells only b touches; the cells only a touches are safe
+			for (int k = 0; k < onlyBCount; k++)
+				markMine(onlyB[k]);
+			for (int s = 0; s < unknownCountA; s++) {
+				if ((onlyA & (1 << s)) != 0)
+					markSafe(unknownA[s]);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private void markSafe(int c) {
+		if ((knowledge[c] & (SAFE | MINE)) != 0)
+			return;
+		knowledge[c] |= SAFE;
+		safeCells.add(c);
+		requeueNeighbors(c);
+	}
+
+	private void markMine(int c) {
+		if ((knowledge[c] & (SAFE | MINE)) != 0)
+			return;
+		knowledge[c] |= MINE;
+		knownMines++;
+		mineCells.add(c);
+		requeueNeighbors(c);
+	}
+
+	/**
+	 * Queues the numbers around a cell whose state was just deduced.
+	 */
+	private void requeueNeighbors(int c) {
+		int count = model.neighbors(c, around);
+		for (int k = 0; k < count; k++)
+			enqueue(around[k]);
+	}
+
+}
@@ -0,0 +1,87 @@
+package minesweeper;
+
+import java.util.SplittableRandom;
+
+/**
+ * A bot which starts in the center and then reveals every cell the
+ * {@link Solver} can prove is safe. When nothing can be proven it has to
+ * guess: either a random unrevealed cell which is not a known mine, or, if
+ * the bot uses probabilities, the cell the {@link ProbabilityEngine} finds
+ * least likely to hold a mine.
+ *
+ * @author laurencousin
+ *
+ */
+public class SolverBot implements Bot {
+
+	// Analyses which take longer than this fall back to a random guess
+	private static final long ANALYSIS_BUDGET_MILLIS = 1000;
+
+	private final ProbabilityEngine engine;
+	private final SplittableRandom random;
+	private Solver solver;
+
+	/**
+	 * Creates a bot which guesses at random.
+	 */
+	public SolverBot() {
+		this(false);
+	}
+
+	/**
+	 * Creates a bot.
+	 *
+	 * @param probabilities true to guess the safest cell, false to guess at
+	 *                      random
+	 */
+	public SolverBot(boolean probabilities) {
+		this.engine = probabilities ? new ProbabilityEngine() : null;
+		this.random = new SplittableRandom(MinePlacer.newSeed());
+	}
+
+	@Override
+	public String getName() {
+		return engine == null ? "solver" : "solver+probabilities";
+	}
+
+	@Override
+	public void newGame(VisibleBoard board) {
+		solver = new Solver(board.model());
+	}
+
+	@Override
+	public Move nextMove(VisibleBoard board) {
+		if (!board.hasMinesPlaced())
+			return Move.reveal(NoGuessGenerator.startCell(board.getWidth(), board.getHeight()));
+
+		int i = solver.findSafeCell();
+		if (i < 0 && engine != null)
+			i = engine.analyze(board.model(), ANALYSIS_BUDGET_MILLIS).safestCell();
+		if (i < 0)
+			i = randomGuess(board);
+		return Move.reveal(i);
+	}
+
+	@Override
+	public void moveMade(Move move, CellDelta changed) {
+		solver.update(changed);
+	}
+
+	/**
+	 * Returns a random unrevealed cell which is not known to hold a mine.
+	 */
+	private int randomGuess(VisibleBoard board) {
+		int candidates = 0;
+		for (int i = 0; i < board.size(); i++) {
+			if (!board.isRevealed(i) && !solver.isKnownMine(i))
+				candidates++;
+		}
+
+		int rank = random.nextInt(candidates);
+		for (int i = 0;; i++) {
+			if (!board.isRevealed(i) && !solver.isKnownMine(i) && rank-- == 0)
+				return i;
+		}
+	}
+
+}
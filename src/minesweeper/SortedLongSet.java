@@ -0,0 +1,129 @@
+package minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * A sorted set of longs kept in blocks of sorted arrays, used by
+ * {@link GameHistoryStore} as an index of millions of entries without boxing.
+ * Finding the block of a value is a binary search over the first value of
+ * each block, so adding a value takes O(log n) comparisons plus a copy within
+ * one block, and the smallest values are read in order from the first blocks.
+ *
+ * @author laurencousin
+ *
+ */
+class SortedLongSet {
+
+	// Full blocks are split in two halves
+	private static final int BLOCK_SIZE = 1024;
+
+	private long[][] blocks = new long[4][];
+	private int[] sizes = new int[4];
+	private int blockCount;
+	private int size;
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Adds a value, unless it is already in the set.
+	 *
+	 * @param value the value
+	 * @return true if the value was added
+	 */
+	boolean add(long value) {
+		if (blockCount == 0) {
+			blocks[0] = new long[BLOCK_SIZE];
+			blockCount = 1;
+		}
+		int b = blockOf(value);
+		long[] block = blocks[b];
+		int n = sizes[b];
+		int position = Arrays.binarySearch(block, 0, n, value);
+		if (position >= 0)
+			return false;
+		position = -position - 1;
+
+		if (n == BLOCK_SIZE) {
+			split(b);
+			if (position > BLOCK_SIZE / 2) {
+				b++;
+				position -= BLOCK_SIZE / 2;
+			}
+			block = blocks[b];
+			n = sizes[b];
+		}
+		System.arraycopy(block, position, block, position + 1, n - position);
+		block[position] = value;
+		sizes[b]++;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Returns the smallest value.
+	 *
+	 * @return the smallest value
+	 * @throws IllegalStateException if the set is empty
+	 */
+	long first() {
+		if (size == 0)
+			throw new IllegalStateException("Set is empty");
+		return blocks[0][0];
+	}
+
+	/**
+	 * Copies the smallest values, in order, into <code>out</code>.
+	 *
+	 * @param out the array to fill
+	 * @return the number of values copied: the length of the array, or the size
+	 *         of the set if smaller
+	 */
+	int head(long[] out) {
+		int copied = 0;
+		for (int b = 0; b < blockCount && copied < out.length; b++) {
+			int n = Math.min(sizes[b], out.length - copied);
+			System.arraycopy(blocks[b], 0, out, copied, n);
+			copied += n;
+		}
+		return copied;
+	}
+
+	/**
+	 * Returns the block which should hold the value: the last block whose first
+	 * value is not greater, or the first block.
+	 */
+	private int blockOf(long value) {
+		int low = 1;
+		int high = blockCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (blocks[middle][0] <= value)
+				low = middle + 1;
+			else
+				high = middle - 1;
+		}
+		return low - 1;
+	}
+
+	private void split(int b) {
+		if (blockCount == blocks.length) {
+			blocks = Arrays.copyOf(blocks, blockCount * 2);
+			sizes = Arrays.copyOf(sizes, blockCount * 2);
+		}
+		System.arraycopy(blocks, b + 1, blocks, b + 2, blockCount - b - 1);
+		System.arraycopy(sizes, b + 1, sizes, b + 2, blockCount - b - 1);
+		long[] upper = new long[BLOCK_SIZE];
+		System.arraycopy(blocks[b], BLOCK_SIZE / 2, upper, 0, BLOCK_SIZE / 2);
+		blocks[b + 1] = upper;
+		sizes[b + 1] = BLOCK_SIZE / 2;
+		sizes[b] = BLOCK_SIZE / 2;
+		blockCount++;
+	}
+
+}
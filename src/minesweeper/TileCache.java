@@ -0,0 +1,170 @@
+package minesweeper;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+
+/**
+ * Loads the game's images once and shares them between every cell and board.
+ * <p>
+ * The number, flag and missed-flag tiles are decoded a single time into a
+ * sprite atlas, a single image holding every tile side by side. Scaled copies
+ * of the atlas are created on first use for each zoom level or screen scale
+ * factor and kept for later paints. The colors used for cells are shared
+ * constants as well, so revealing cells never loads an image or allocates a
+ * color.
+ *
+ * @author laurencousin
+ *
+ */
+public final class TileCache {
+
+	/** The width and height of a tile at a scale of 1, in pixels. */
+	public static final int TILE_SIZE = 30;
+
+	/** Tiles 1 to 8 show the number of adjacent mines. */
+	public static final int FLAG = 9;
+	public static final int MISSED_FLAG = 10;
+	private static final int TILE_COUNT = 11;
+
+	public static final Color HIDDEN_COLOR = new Color(200, 200, 200); // light grey
+	public static final Color REVEALED_COLOR = Color.WHITE;
+	public static final Color MINE_COLOR = Color.RED;
+	public static final Color WIN_COLOR = new Color(230, 255, 200); // pale green
+	public static final Color SHADOW_COLOR = new Color(130, 130, 130);
+	public static final Color GRID_COLOR = Color.LIGHT_GRAY;
+	public static final Color SAFE_HINT_COLOR = new Color(150, 220, 150); // green
+	public static final Color MINE_HINT_COLOR = new Color(240, 150, 150); // pink
+
+	private static final BufferedImage ATLAS = loadAtlas();
+	private static final Icon[] ICONS = createIcons();
+	private static final Icon TIMER_ICON = new ImageIcon(loadImage("hourglass"));
+
+	// Scaled copies of the atlas, keyed by the scale in hundredths
+	private static final Map<Integer, BufferedImage> SCALED_ATLASES = new ConcurrentHashMap<>();
+
+	private TileCache() {
+	}
+
+	/**
+	 * Returns the shared icon for a tile: 1 to 8 for numbers, {@link #FLAG} or
+	 * {@link #MISSED_FLAG}.
+	 *
+	 * @param tile the tile number
+	 * @return the icon
+	 */
+	public static Icon icon(int tile) {
+		return ICONS[tile];
+	}
+
+	/**
+	 * Returns the shared icon showing a number of adjacent mines, or null for 0.
+	 *
+	 * @param numAdjacentMines the number of adjacent mines
+	 * @return the icon, or null
+	 */
+	public static Icon numberIcon(int numAdjacentMines) {
+		return numAdjacentMines >= 1 && numAdjacentMines <= 8 ? ICONS[numAdjacentMines] : null;
+	}
+
+	/**
+	 * @return the shared hourglass icon shown next to the timer
+	 */
+	public static Icon timerIcon() {
+		return TIMER_ICON;
+	}
+
+	/**
+	 * Draws a tile centered in a cell. The tile is taken from a copy of the atlas
+	 * pre-scaled to the product of <code>zoom</code> and the scale of the
+	 * graphics context, so it stays sharp on HiDPI screens without rescaling on
+	 * every paint.
+	 *
+	 * @param g        the graphics context
+	 * @param tile     the tile number
+	 * @param x        the left edge of the cell
+	 * @param y        the top edge of the cell
+	 * @param cellSize the size of the cell
+	 * @param zoom     the zoom level of the board
+	 */
+	public static void drawTile(Graphics g, int tile, int x, int y, int cellSize, double zoom) {
+		double deviceScale = 1;
+		if (g instanceof Graphics2D) {
+			AffineTransform transform = ((Graphics2D) g).getTransform();
+			deviceScale = Math.max(Math.abs(transform.getScaleX()), Math.abs(transform.getScaleY()));
+		}
+
+		BufferedImage atlas = scaledAtlas(zoom * deviceScale);
+		int sourceSize = atlas.getHeight();
+		int size = (int) Math.round(TILE_SIZE * zoom);
+		int left = x + (cellSize - size) / 2;
+		int top = y + (cellSize - size) / 2;
+		g.drawImage(atlas, left, top, left + size, top + size, tile * sourceSize, 0, (tile + 1) * sourceSize,
+				sourceSize, null);
+	}
+
+	/**
+	 * Returns the atlas scaled by the given factor, creating it the first time
+	 * that factor is requested.
+	 *
+	 * @param scale the scale factor
+	 * @return the scaled atlas
+	 */
+	static BufferedImage scaledAtlas(double scale) {
+		int key = (int) Math.round(scale * 100);
+		if (key == 100)
+			return ATLAS;
+
+		return SCALED_ATLASES.computeIfAbsent(key, k -> {
+			int size = Math.max(1, Math.round(TILE_SIZE * k / 100f));
+			BufferedImage scaled = new BufferedImage(size * TILE_COUNT, size, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = scaled.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+			g.drawImage(ATLAS, 0, 0, size * TILE_COUNT, size, null);
+			g.dispose();
+			return scaled;
+		});
+	}
+
+	private static BufferedImage loadAtlas() {
+		BufferedImage atlas = new BufferedImage(TILE_SIZE * TILE_COUNT, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = atlas.createGraphics();
+		for (int tile = 1; tile < TILE_COUNT; tile++) {
+			String name = tile == FLAG ? "flag" : tile == MISSED_FLAG ? "missedflag" : String.valueOf(tile);
+			g.drawImage(loadImage(name), tile * TILE_SIZE, 0, TILE_SIZE, TILE_SIZE, null);
+		}
+		g.dispose();
+		return atlas;
+	}
+
+	private static Icon[] createIcons() {
+		Icon[] icons = new Icon[TILE_COUNT];
+		for (int tile = 1; tile < TILE_COUNT; tile++) {
+			icons[tile] = new ImageIcon(ATLAS.getSubimage(tile * TILE_SIZE, 0, TILE_SIZE, TILE_SIZE));
+		}
+		return icons;
+	}
+
+	private static BufferedImage loadImage(String name) {
+		try (InputStream in = TileCache.class.getResourceAsStream("/resources/" + name + ".png")) {
+			if (in == null)
+				throw new IOException("Missing image /resources/" + name + ".png");
+			return ImageIO.read(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
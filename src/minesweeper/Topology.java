@@ -0,0 +1,159 @@
+package minesweeper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ways the cells of a board can be connected, offered in the Settings
+ * menu. Every neighbor lookup of a {@link BoardModel}, and so of the solvers,
+ * goes through a {@link NeighborTable} built from the board's topology.
+ *
+ * @author laurencousin
+ *
+ */
+public enum Topology {
+
+	/** The classic grid: each cell touches the up to 8 cells around it. */
+	SQUARE("Square", 8) {
+		@Override
+		int neighbors(int x, int y, int width, int height, int[] out) {
+			int n = 0;
+			for (int nx = Math.max(0, x - 1); nx <= Math.min(height - 1, x + 1); nx++) {
+				for (int ny = Math.max(0, y - 1); ny <= Math.min(width - 1, y + 1); ny++) {
+					if (nx != x || ny != y)
+						out[n++] = nx * width + ny;
+				}
+			}
+			return n;
+		}
+	},
+
+	/**
+	 * A grid whose opposite edges are joined, so every cell has 8 neighbors
+	 * (fewer on boards less than 3 cells wide or high).
+	 */
+	TORUS("Torus", 8) {
+		@Override
+		int neighbors(int x, int y, int width, int height, int[] out) {
+			int n = 0;
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					int i = Math.floorMod(x + dx, height) * width + Math.floorMod(y + dy, width);
+					if (i != x * width + y && !contains(out, n, i))
+						out[n++] = i;
+				}
+			}
+			return n;
+		}
+	},
+
+	/**
+	 * A grid of hexagons in rows, with every odd row shifted right by half a cell,
+	 * so each cell touches the up to 6 cells around it.
+	 */
+	HEX("Hexagonal", 6) {
+		@Override
+		int neighbors(int x, int y, int width, int height, int[] out) {
+			int n = 0;
+			// The rows above and below share the columns y - 1 and y, or y and y + 1 on odd rows
+			int shift = x & 1;
+			for (int nx = x - 1; nx <= x + 1; nx++) {
+				if (nx < 0 || nx >= height)
+					continue;
+				int first = nx == x ? y - 1 : y - 1 + shift;
+				int last = nx == x ? y + 1 : y + shift;
+				for (int ny = Math.max(0, first); ny <= Math.min(width - 1, last); ny++) {
+					if (nx != x || ny != y)
+						out[n++] = nx * width + ny;
+				}
+			}
+			return n;
+		}
+	};
+
+	/** The most neighbors a cell can have in any topology. */
+	public static final int MAX_NEIGHBORS = 8;
+
+	// Tables of recently used sizes, so boards of the same size share one
+	private static final int CACHED_TABLES = 32;
+
+	private final String label;
+	private final int maxNeighbors;
+	private final Map<Long, NeighborTable> tables = new ConcurrentHashMap<>();
+
+	private Topology(String label, int maxNeighbors) {
+		this.label = label;
+		this.maxNeighbors = maxNeighbors;
+	}
+
+	/**
+	 * @return the most neighbors a cell can have
+	 */
+	public int getMaxNeighbors() {
+		return maxNeighbors;
+	}
+
+	/**
+	 * Returns the neighbor table for boards of the given size, building it on
+	 * first use.
+	 *
+	 * @param width  the number of columns
+	 * @param height the number of rows
+	 * @return the table
+	 */
+	public NeighborTable table(int width, int height) {
+		long key = (long) width << 32 | height;
+		NeighborTable table = tables.get(key);
+		if (table == null) {
+			if (tables.size() >= CACHED_TABLES)
+				tables.clear();
+			table = new NeighborTable(this, width, height);
+			tables.put(key, table);
+		}
+		return table;
+	}
+
+	/**
+	 * Writes the indices of the cells adjacent to the cell at (x, y) into
+	 * <code>out</code>, computed from coordinates. This is only used to build a
+	 * {@link NeighborTable}.
+	 *
+	 * @param x      the row
+	 * @param y      the column
+	 * @param width  the number of columns
+	 * @param height the number of rows
+	 * @param out    an array with room for at least {@link #MAX_NEIGHBORS}
+	 *               indices
+	 * @return the number of neighbors written
+	 */
+	abstract int neighbors(int x, int y, int width, int height, int[] out);
+
+	private static boolean contains(int[] values, int count, int value) {
+		for (int k = 0; k < count; k++) {
+			if (values[k] == value)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the topology with the given ordinal, as stored in files. Files
+	 * written before topologies existed hold 0, which is {@link #SQUARE}.
+	 *
+	 * @param ordinal the ordinal
+	 * @return the topology
+	 * @throws IllegalArgumentException if no topology has the ordinal
+	 */
+	static Topology of(int ordinal) {
+		Topology[] topologies = values();
+		if (ordinal < 0 || ordinal >= topologies.length)
+			throw new IllegalArgumentException("Unknown board topology " + ordinal);
+		return topologies[ordinal];
+	}
+
+	@Override
+	public String toString() {
+		return label;
+	}
+
+}
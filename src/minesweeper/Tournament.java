@@ -0,0 +1,326 @@
+package minesweeper;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Plays many games with a {@link Bot}, without a user interface, on every
+ * processor, and reports how well and how fast the bot plays.
+ * <p>
+ * Game <i>n</i> of a run is played on the board drawn from seed
+ * <code>firstSeed + n</code>, so two bots can be compared on exactly the same
+ * boards. Worker threads claim games in batches and each plays them with its
+ * own bot. After every batch, the worker hands its totals to the thread which
+ * started the run, which appends a line of running totals to the CSV output
+ * about twice a second, so a long run can be watched as it goes.
+ * <p>
+ * The main method runs a tournament on each preset:
+ *
+ * <pre>
+ * java -cp minesweeper.jar minesweeper.Tournament [games] [csv file] [solver|probabilities]
+ * </pre>
+ *
+ * With <code>-Dminesweeper.history=&lt;file&gt;</code>, every game is also
+ * recorded in that {@link GameHistoryStore}.
+ *
+ * @author laurencousin
+ *
+ */
+public class Tournament {
+
+	/** The header line of the CSV output. */
+	public static final String CSV_HEADER = "difficulty,bot,games,wins,win_rate,moves_per_game,micros_per_move,"
+			+ "games_per_second,games_per_second_per_core";
+
+	// Games a worker claims at once
+	private static final int BATCH_SIZE = 256;
+	// Time between two lines of running totals
+	private static final long REPORT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+	private final Supplier<Bot> bots;
+	private final String botName;
+	private final int threads;
+	private GameHistoryStore history;
+
+	/**
+	 * Creates a tournament with a worker thread for each processor.
+	 *
+	 * @param bots creates a bot for each worker thread
+	 */
+	public Tournament(Supplier<Bot> bots) {
+		this(bots, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a tournament with the given number of worker threads.
+	 *
+	 * @param bots    creates a bot for each worker thread
+	 * @param threads the number of games to play at once
+	 */
+	public Tournament(Supplier<Bot> bots, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one worker thread is needed");
+		this.bots = bots;
+		this.botName = bots.get().getName();
+		this.threads = threads;
+	}
+
+	/**
+	 * Records every game played from now on in the given store.
+	 *
+	 * @param history the store, or null to stop recording games
+	 */
+	public void setHistory(GameHistoryStore history) {
+		this.history = history;
+	}
+
+	/**
+	 * Runs a tournament on each preset and writes the results to a CSV file.
+	 *
+	 * @param args the number of games per preset (default 1,000,000), the CSV
+	 *             file (default tournament.csv) and the bot, either
+	 *             <code>solver</code> (the default) or <code>probabilities</code>
+	 * @throws IOException          if the results cannot be written
+	 * @throws InterruptedException if interrupted while waiting for the games
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		long games = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+		String file = args.length > 1 ? args[1] : "tournament.csv";
+		boolean probabilities = args.length > 2 && args[2].equals("probabilities");
+		if (args.length > 2 && !probabilities && !args[2].equals("solver"))
+			throw new IllegalArgumentException("Unknown bot: " + args[2]);
+
+		Tournament tournament = new Tournament(new Supplier<Bot>() {
+			public Bot get() {
+				return new SolverBot(probabilities);
+			}
+		});
+		String historyFile = System.getProperty("minesweeper.history");
+		GameHistoryStore history = historyFile == null ? null : new GameHistoryStore(Paths.get(historyFile));
+		tournament.setHistory(history);
+		try (Writer csv = Files.newBufferedWriter(Paths.get(file))) {
+			csv.write(CSV_HEADER);
+			csv.write(System.lineSeparator());
+			for (Difficulty difficulty : Difficulty.values()) {
+				Tally result = tournament.run(difficulty, games, 1, csv);
+				System.out.println(tournament.format(difficulty, result));
+			}
+		} finally {
+			if (history != null)
+				history.close();
+		}
+	}
+
+	/**
+	 * Plays the given number of games on a preset.
+	 *
+	 * @param difficulty the preset
+	 * @param games      the number of games to play
+	 * @param firstSeed  the seed of the first game's board
+	 * @param csv        where to write lines of running totals, or null
+	 * @return the totals of the run
+	 * @throws IOException          if the CSV output cannot be written
+	 * @throws InterruptedException if interrupted while waiting for the games
+	 */
+	public Tally run(Difficulty difficulty, long games, long firstSeed, Writer csv)
+			throws IOException, InterruptedException {
+		AtomicLong nextGame = new AtomicLong();
+		BlockingQueue<Tally> batches = new LinkedBlockingQueue<>();
+		ExecutorService workers = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("tournament"));
+		List<Future<?>> tasks = new ArrayList<>();
+		Tally total = new Tally();
+		long start = System.nanoTime();
+
+		try {
+			for (int t = 0; t < threads; t++) {
+				tasks.add(workers.submit(new Runnable() {
+					public void run() {
+						Bot bot = bots.get();
+						GameHistoryStore store = history;
+						long first;
+						while ((first = nextGame.getAndAdd(BATCH_SIZE)) < games) {
+							Tally batch = new Tally();
+							for (long n = first; n < Math.min(first + BATCH_SIZE, games); n++) {
+								BoardModel model = new BoardModel(difficulty.getWidth(), difficulty.getHeight(),
+										difficulty.getNumMines(), firstSeed + n);
+								long gameStart = System.nanoTime();
+								int moves = play(bot, model);
+								long gameNanos = System.nanoTime() - gameStart;
+								batch.add(model.getStatus() == Status.WIN, moves, gameNanos);
+								if (store != null)
+									store.record(GameRecord.of(model, TimeUnit.NANOSECONDS.toMillis(gameNanos), moves));
+							}
+							batches.add(batch);
+						}
+					}
+				}));
+			}
+
+			long lastReport = start;
+			while (total.games < games) {
+				Tally batch = batches.poll(100, TimeUnit.MILLISECONDS);
+				if (batch == null) {
+					checkFailures(tasks);
+					continue;
+				}
+				total.add(batch);
+				long now = System.nanoTime();
+				if (csv != null && (now - lastReport >= REPORT_INTERVAL_NANOS || total.games == games)) {
+					total.elapsedNanos = now - start;
+					csv.write(toCsv(difficulty, total));
+					csv.write(System.lineSeparator());
+					csv.flush();
+					lastReport = now;
+				}
+			}
+		} finally {
+			workers.shutdownNow();
+		}
+		total.elapsedNanos = System.nanoTime() - start;
+		return total;
+	}
+
+	/**
+	 * Plays one game to the end and returns the number of moves made. A bot
+	 * which keeps making moves that change nothing loses the game.
+	 *
+	 * @param bot   the bot
+	 * @param model a board on which no cell has been revealed
+	 * @return the number of moves
+	 */
+	static int play(Bot bot, BoardModel model) {
+		VisibleBoard board = new VisibleBoard(model);
+		bot.newGame(board);
+		int moves = 0;
+		int wasted = 0;
+		while (model.getStatus() == Status.INPROGRESS && wasted < model.size()) {
+			Move move = bot.nextMove(board);
+			CellDelta changed = move.apply(model);
+			moves++;
+			wasted = changed.isEmpty() ? wasted + 1 : 0;
+			bot.moveMade(move, changed);
+		}
+		return moves;
+	}
+
+	/**
+	 * Rethrows the failure of a worker which stopped with an exception.
+	 */
+	private static void checkFailures(List<Future<?>> tasks) throws InterruptedException {
+		for (Future<?> task : tasks) {
+			if (task.isDone()) {
+				try {
+					task.get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("A tournament worker failed", e.getCause());
+				}
+			}
+		}
+	}
+
+	private String toCsv(Difficulty difficulty, Tally tally) {
+		return String.format(Locale.ROOT, "%s,%s,%d,%d,%.6f,%.3f,%.3f,%.1f,%.1f", difficulty, botName,
+				tally.games, tally.wins, tally.winRate(), tally.movesPerGame(), tally.microsPerMove(),
+				tally.gamesPerSecond(), tally.gamesPerSecond() / threads);
+	}
+
+	/**
+	 * Returns a one-line summary of a run, led by its throughput per core.
+	 *
+	 * @param difficulty the preset
+	 * @param tally      the totals of the run
+	 * @return the summary
+	 */
+	public String format(Difficulty difficulty, Tally tally) {
+		return String.format(Locale.ROOT,
+				"%s: %.0f games/s per core (%d threads), win rate %.2f%%, %.1f moves/game, %.2f us/move",
+				difficulty, tally.gamesPerSecond() / threads, threads, tally.winRate() * 100, tally.movesPerGame(),
+				tally.microsPerMove());
+	}
+
+	/**
+	 * Running totals of the games played.
+	 */
+	public static final class Tally {
+
+		private long games;
+		private long wins;
+		private long moves;
+		private long gameNanos;
+		private long elapsedNanos;
+
+		void add(boolean won, int moves, long nanos) {
+			games++;
+			if (won)
+				wins++;
+			this.moves += moves;
+			gameNanos += nanos;
+		}
+
+		void add(Tally other) {
+			games += other.games;
+			wins += other.wins;
+			moves += other.moves;
+			gameNanos += other.gameNanos;
+		}
+
+		/**
+		 * @return the number of games played
+		 */
+		public long getGames() {
+			return games;
+		}
+
+		/**
+		 * @return the number of games won
+		 */
+		public long getWins() {
+			return wins;
+		}
+
+		/**
+		 * @return the fraction of games won
+		 */
+		public double winRate() {
+			return games == 0 ? 0 : (double) wins / games;
+		}
+
+		/**
+		 * @return the average number of moves in a game
+		 */
+		public double movesPerGame() {
+			return games == 0 ? 0 : (double) moves / games;
+		}
+
+		/**
+		 * @return the average time a move took, including the bot's thinking, in
+		 *         microseconds
+		 */
+		public double microsPerMove() {
+			return moves == 0 ? 0 : gameNanos / 1e3 / moves;
+		}
+
+		/**
+		 * @return the number of games finished per second of wall-clock time
+		 */
+		public double gamesPerSecond() {
+			return elapsedNanos == 0 ? 0 : games * 1e9 / elapsedNanos;
+		}
+
+	}
+
+}
@@ -0,0 +1,185 @@
+package minesweeper;
+
+import java.util.BitSet;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Applies changes to the cells of a view in slices of at most one frame's
+ * work, so a move which changes thousands of cells never blocks the event
+ * dispatch thread for long.
+ * <p>
+ * Changed cells are collected into a change set, which holds each cell once
+ * however often it changes before it is drawn, and is drawn from the model as
+ * it is when the cell's turn comes. Each slice runs in a single event, so
+ * Swing coalesces the repaints of all the cells it changes into one paint; if
+ * cells are left when the slice's time is up, the rest are drawn in the next
+ * event, after that paint and any input waiting for the window. The end of a
+ * game is drawn the same way, by a sweep over every cell once the change set
+ * is empty.
+ * <p>
+ * All methods must be called on the event dispatch thread.
+ *
+ * @author laurencousin
+ *
+ */
+abstract class ViewUpdater implements Runnable {
+
+	/** The longest a slice runs: half a frame at 60 frames per second. */
+	static final long FRAME_BUDGET_NANOS = 8_000_000L;
+
+	// Cells drawn between two looks at the clock
+	private static final int CHECK_INTERVAL = 32;
+
+	private final int size;
+	// The change set, as a ring of cell indices and a bit per cell queued
+	private final int[] queue;
+	private final BitSet queued;
+	private int head, count;
+
+	// The status being drawn by the end-of-game sweep and its next cell, or null
+	private Status endStatus;
+	private int endCursor;
+
+	private boolean scheduled;
+
+	/**
+	 * Creates an updater for a view of the given number of cells.
+	 *
+	 * @param size the number of cells
+	 */
+	ViewUpdater(int size) {
+		this.size = size;
+		this.queue = new int[size];
+		this.queued = new BitSet(size);
+	}
+
+	/**
+	 * Draws a cell as it is in the model.
+	 *
+	 * @param i the cell index
+	 */
+	abstract void updateCell(int i);
+
+	/**
+	 * Draws the end of the game on a cell, once it has been drawn as it is in the
+	 * model.
+	 *
+	 * @param i      the cell index
+	 * @param status the final status of the game
+	 */
+	abstract void drawEnd(int i, Status status);
+
+	/**
+	 * Adds the changed cells to the change set and starts drawing them.
+	 *
+	 * @param delta the changed cells
+	 */
+	void update(CellDelta delta) {
+		for (int n = 0; n < delta.size(); n++)
+			add(delta.get(n));
+		start();
+	}
+
+	/**
+	 * Drops any work not done yet and adds every cell to the change set, for a
+	 * new model.
+	 */
+	void updateAll() {
+		cancel();
+		for (int i = 0; i < size; i++)
+			add(i);
+		start();
+	}
+
+	/**
+	 * Draws the end of the game on every cell, after the cells already in the
+	 * change set.
+	 *
+	 * @param status the final status of the game
+	 */
+	void showEnd(Status status) {
+		endStatus = status;
+		endCursor = 0;
+		start();
+	}
+
+	/**
+	 * Drops every change not drawn yet and stops the end-of-game sweep.
+	 */
+	void cancel() {
+		queued.clear();
+		head = 0;
+		count = 0;
+		endStatus = null;
+	}
+
+	/**
+	 * Draws everything left to draw now, however long it takes. Used before
+	 * changes which must be drawn over the current state of every cell.
+	 */
+	void flush() {
+		draw(Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return true if nothing is left to draw
+	 */
+	boolean isIdle() {
+		return count == 0 && endStatus == null;
+	}
+
+	/**
+	 * Draws one slice now, unless a slice is already due, so small changes are
+	 * drawn in the same event as the move which made them.
+	 */
+	private void start() {
+		if (!scheduled)
+			run();
+	}
+
+	/**
+	 * Draws for at most {@link #FRAME_BUDGET_NANOS}, then queues the next slice if
+	 * anything is left.
+	 */
+	@Override
+	public void run() {
+		scheduled = false;
+		draw(FRAME_BUDGET_NANOS);
+		if (!isIdle()) {
+			scheduled = true;
+			SwingUtilities.invokeLater(this);
+		}
+	}
+
+	private void draw(long budget) {
+		long start = System.nanoTime();
+		int drawn = 0;
+		while (count > 0) {
+			int i = queue[head];
+			head = head + 1 == size ? 0 : head + 1;
+			count--;
+			queued.clear(i);
+			updateCell(i);
+			if (++drawn % CHECK_INTERVAL == 0 && System.nanoTime() - start >= budget)
+				return;
+		}
+		while (endStatus != null) {
+			drawEnd(endCursor, endStatus);
+			if (++endCursor == size)
+				endStatus = null;
+			if (++drawn % CHECK_INTERVAL == 0 && System.nanoTime() - start >= budget)
+				return;
+		}
+	}
+
+	private void add(int i) {
+		if (queued.get(i))
+			return;
+		queued.set(i);
+		int tail = head + count;
+		queue[tail >= size ? tail - size : tail] = i;
+		count++;
+	}
+
+}
@@ -0,0 +1,121 @@
+package minesweeper;
+
+/**
+ * What a player can see of a board: its size, the number of mines, which
+ * cells are revealed or flagged and the numbers on the revealed cells. This is
+ * all a {@link Bot} is given, so a bot cannot peek at the hidden mines.
+ *
+ * @author laurencousin
+ *
+ */
+public final class VisibleBoard {
+
+	private final BoardModel model;
+
+	/**
+	 * @param model the board model to show
+	 */
+	VisibleBoard(BoardModel model) {
+		this.model = model;
+	}
+
+	/**
+	 * @return the number of columns
+	 */
+	public int getWidth() {
+		return model.getWidth();
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getHeight() {
+		return model.getHeight();
+	}
+
+	/**
+	 * @return the number of cells
+	 */
+	public int size() {
+		return model.size();
+	}
+
+	/**
+	 * @return the number of mines on the board
+	 */
+	public int getNumMines() {
+		return model.getNumMines();
+	}
+
+	/**
+	 * Returns the index of the cell at the given coordinates.
+	 *
+	 * @param x the row
+	 * @param y the column
+	 * @return the cell index
+	 */
+	public int index(int x, int y) {
+		return model.index(x, y);
+	}
+
+	/**
+	 * Writes the indices of the up to 8 cells adjacent to the given cell into
+	 * <code>out</code>.
+	 *
+	 * @param i   the cell index
+	 * @param out an array with room for at least 8 indices
+	 * @return the number of neighbors written
+	 */
+	public int neighbors(int i, int[] out) {
+		return model.neighbors(i, out);
+	}
+
+	/**
+	 * @return the status of the game
+	 */
+	public Status getStatus() {
+		return model.getStatus();
+	}
+
+	/**
+	 * @return true once the first cell has been revealed
+	 */
+	public boolean hasMinesPlaced() {
+		return model.hasMinesPlaced();
+	}
+
+	/**
+	 * @param i the cell index
+	 * @return whether the cell has been revealed
+	 */
+	public boolean isRevealed(int i) {
+		return model.isRevealed(i);
+	}
+
+	/**
+	 * @param i the cell index
+	 * @return whether the cell is marked with a flag
+	 */
+	public boolean hasFlag(int i) {
+		return model.hasFlag(i);
+	}
+
+	/**
+	 * Returns the number shown on a revealed cell.
+	 *
+	 * @param i the cell index
+	 * @return the number of adjacent mines, or -1 if the cell is not revealed
+	 */
+	public int getNumber(int i) {
+		return model.isRevealed(i) ? model.getNumAdjacentMines(i) : -1;
+	}
+
+	/**
+	 * Returns the model behind this view, for the solvers in this package, which
+	 * only read the visible state of the board.
+	 */
+	BoardModel model() {
+		return model;
+	}
+
+}